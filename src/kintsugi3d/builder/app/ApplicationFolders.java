@@ -158,6 +158,17 @@ public class ApplicationFolders
         }
     }
 
+    /**
+     * Get the folder used to cache environment maps (.env files) converted from HDR images.
+     * Each HDR image has its own subfolder, which is cleaned up along with the project caches.
+     *
+     * @return environment map cache folder
+     */
+    public static Path getEnvironmentCacheDirectory()
+    {
+        return getUserCacheDirectory().resolve("environment");
+    }
+
     public static Path getExtensionDirectory()
     {
         Path preferred = GlobalUserPreferencesManager.getInstance().getPreferences().getDirectoryPreferences().getExtensionDirectory();
@@ -0,0 +1,586 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+package kintsugi3d.builder.app;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persisted record of how much disk space each project uses in each cache root directory (i.e. preview images, fit cache,
+ * and environment maps, where each cached environment is treated as a project)
+ * and when each project's cache was last used, so that the cache size and least recently used projects can be found
+ * without walking every file in the caches.
+ * Code that writes to a project's cache marks it dirty; dirty projects (and projects that the ledger has not seen before)
+ * are the only ones that are rescanned when the ledger is reconciled with the disk.
+ * A watch service on the cache roots catches projects that are added or removed by other means.
+ * Changes are written to disk at most once every few seconds, and on shutdown, rather than every time a project is marked.
+ */
+public final class CacheSizeLedger
+{
+    private static final Logger LOG = LoggerFactory.getLogger(CacheSizeLedger.class);
+
+    private static final String FILE_NAME = "cache-ledger.tsv";
+
+    /**
+     * Time to wait after a change before writing the ledger, so that bursts of changes are written at once.
+     */
+    private static final long SAVE_DELAY_SECONDS = 5;
+
+    private static final CacheSizeLedger INSTANCE = new CacheSizeLedger();
+
+    public static CacheSizeLedger getInstance()
+    {
+        return INSTANCE;
+    }
+
+    private static final class Entry
+    {
+        /**
+         * Size in bytes, or -1 if unknown (i.e. the project needs to be rescanned).
+         */
+        long size;
+
+        /**
+         * Time of last use, in milliseconds since the epoch.
+         */
+        long lastUsed;
+
+        /**
+         * Incremented each time the project is marked dirty, so that a scan that raced with a write is not trusted.
+         */
+        int version;
+
+        Entry(long size, long lastUsed)
+        {
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * Cache root -> project ID -> entry.  Guarded by this.
+     */
+    private final Map<Path, Map<String, Entry>> roots = new HashMap<>(4);
+
+    private final Path ledgerFile;
+
+    private WatchService watchService;
+    private final Set<Path> watchedRoots = new HashSet<>(4);
+
+    private final ScheduledExecutorService saveScheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+    {
+        Thread thread = new Thread(runnable, "Cache Ledger Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Whether the ledger has changed since it was last written.  Guarded by this.
+     */
+    private boolean unsaved = false;
+
+    /**
+     * Whether a write is scheduled.  Guarded by this.
+     */
+    private boolean saveScheduled = false;
+
+    private final Object saveLock = new Object();
+
+    private CacheSizeLedger()
+    {
+        this.ledgerFile = ApplicationFolders.getUserCacheDirectory().resolve(FILE_NAME);
+        load();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "Cache Ledger Shutdown"));
+    }
+
+    private static Path normalize(File file)
+    {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    private Collection<Path> getKnownRoots()
+    {
+        Collection<Path> knownRoots = new ArrayList<>(roots.keySet());
+        for (Path root : List.of(ApplicationFolders.getPreviewImagesRootDirectory(), ApplicationFolders.getFitCacheRootDirectory(),
+            ApplicationFolders.getEnvironmentCacheDirectory()))
+        {
+            Path normalized = root.toAbsolutePath().normalize();
+            if (!knownRoots.contains(normalized))
+            {
+                knownRoots.add(normalized);
+            }
+        }
+        return knownRoots;
+    }
+
+    /**
+     * Finds the entry for the project whose cache contains a file, creating it if necessary.
+     * @return The entry, or null if the file is not within a project directory of a known cache root.
+     */
+    private Entry findEntry(File fileInCache)
+    {
+        Path path = normalize(fileInCache);
+        for (Path root : getKnownRoots())
+        {
+            if (path.startsWith(root) && path.getNameCount() > root.getNameCount())
+            {
+                String projectID = path.getName(root.getNameCount()).toString();
+                return roots.computeIfAbsent(root, r -> new HashMap<>(64))
+                    .computeIfAbsent(projectID, id -> new Entry(-1, System.currentTimeMillis()));
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Records that a project's cache has been written to, so its size will be recalculated at the next reconciliation.
+     * Also counts as a use of the project's cache.
+     * @param fileInCache Any file or directory within the project's cache (or the project cache directory itself).
+     */
+    public void markDirty(File fileInCache)
+    {
+        synchronized (this)
+        {
+            Entry entry = findEntry(fileInCache);
+            if (entry == null)
+            {
+                return;
+            }
+
+            entry.size = -1;
+            entry.version++;
+            entry.lastUsed = System.currentTimeMillis();
+        }
+
+        scheduleSave();
+    }
+
+    /**
+     * Records that a project's cache has been used without being modified.
+     * @param fileInCache Any file or directory within the project's cache (or the project cache directory itself).
+     */
+    public void markUsed(File fileInCache)
+    {
+        synchronized (this)
+        {
+            Entry entry = findEntry(fileInCache);
+            if (entry == null)
+            {
+                return;
+            }
+
+            entry.lastUsed = System.currentTimeMillis();
+        }
+
+        scheduleSave();
+    }
+
+    /**
+     * Removes a project's cache from the ledger after it has been deleted.
+     * @param projectCacheDir The project's directory within one of the cache roots.
+     */
+    public void forget(File projectCacheDir)
+    {
+        Path path = normalize(projectCacheDir);
+
+        synchronized (this)
+        {
+            Map<String, Entry> projects = roots.get(path.getParent());
+            if (projects == null || projects.remove(path.getFileName().toString()) == null)
+            {
+                return;
+            }
+        }
+
+        scheduleSave();
+    }
+
+    /**
+     * Brings the ledger up to date with the contents of the cache roots.
+     * Only lists the project directories in each root; projects are only scanned if they are new or dirty,
+     * and projects that no longer exist are removed.
+     * @param cacheRoots The cache root directories.
+     */
+    public void reconcile(Collection<File> cacheRoots)
+    {
+        for (File cacheRoot : cacheRoots)
+        {
+            Path root = normalize(cacheRoot);
+            watch(root);
+
+            File[] projectDirs = cacheRoot.listFiles(File::isDirectory);
+            Set<String> present = new HashSet<>(projectDirs == null ? 0 : projectDirs.length);
+
+            if (projectDirs != null)
+            {
+                for (File projectDir : projectDirs)
+                {
+                    String projectID = projectDir.getName();
+                    present.add(projectID);
+
+                    int version;
+                    synchronized (this)
+                    {
+                        Entry entry = roots.computeIfAbsent(root, r -> new HashMap<>(64))
+                            .computeIfAbsent(projectID, id -> new Entry(-1, projectDir.lastModified()));
+
+                        if (entry.size >= 0)
+                        {
+                            continue;
+                        }
+
+                        version = entry.version;
+                    }
+
+                    long size = scan(projectDir.toPath());
+
+                    synchronized (this)
+                    {
+                        Entry entry = roots.get(root).get(projectID);
+
+                        // If the project was written to during the scan, leave it dirty for next time.
+                        if (entry != null && entry.version == version)
+                        {
+                            entry.size = size;
+                        }
+                    }
+                }
+            }
+
+            synchronized (this)
+            {
+                Map<String, Entry> projects = roots.get(root);
+                if (projects != null)
+                {
+                    projects.keySet().retainAll(present);
+                }
+            }
+        }
+
+        scheduleSave();
+    }
+
+    private static long scan(Path projectDir)
+    {
+        long[] size = { 0 };
+
+        try
+        {
+            Files.walkFileTree(projectDir, new SimpleFileVisitor<>()
+            {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                {
+                    size[0] += attrs.size();
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc)
+                {
+                    // Most likely deleted while walking.
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch (IOException e)
+        {
+            LOG.warn("Error measuring cache directory {}", projectDir, e);
+        }
+
+        LOG.debug("Directory size for {}: {}", projectDir, size[0]);
+        return size[0];
+    }
+
+    /**
+     * Gets the size of each project's cache, summed over the specified cache roots.
+     * Projects that have not been scanned since they were last modified are omitted; call {@link #reconcile} first.
+     * @param cacheRoots The cache root directories.
+     * @return A map from project IDs to sizes in bytes.
+     */
+    public synchronized Map<String, Long> getProjectSizes(Collection<File> cacheRoots)
+    {
+        Map<String, Long> projectSizes = new HashMap<>(64);
+        for (File cacheRoot : cacheRoots)
+        {
+            Map<String, Entry> projects = roots.get(normalize(cacheRoot));
+            if (projects != null)
+            {
+                for (Map.Entry<String, Entry> project : projects.entrySet())
+                {
+                    if (project.getValue().size >= 0)
+                    {
+                        projectSizes.merge(project.getKey(), project.getValue().size, Long::sum);
+                    }
+                }
+            }
+        }
+        return projectSizes;
+    }
+
+    /**
+     * Gets the most recent time that a project's cache was used in any cache root.
+     * @param projectID The project ID (i.e. the name of the project's directory in each cache root).
+     * @return The time in milliseconds since the epoch, or 0 if the project is not in the ledger.
+     */
+    public synchronized long getLastUsed(String projectID)
+    {
+        long lastUsed = 0;
+        for (Map<String, Entry> projects : roots.values())
+        {
+            Entry entry = projects.get(projectID);
+            if (entry != null)
+            {
+                lastUsed = Math.max(lastUsed, entry.lastUsed);
+            }
+        }
+        return lastUsed;
+    }
+
+    private synchronized void watch(Path root)
+    {
+        if (watchedRoots.contains(root) || !Files.isDirectory(root))
+        {
+            return;
+        }
+
+        try
+        {
+            if (watchService == null)
+            {
+                watchService = FileSystems.getDefault().newWatchService();
+
+                Thread watchThread = new Thread(this::processWatchEvents, "Cache Ledger Watcher");
+                watchThread.setDaemon(true);
+                watchThread.start();
+            }
+
+            root.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watchedRoots.add(root);
+        }
+        catch (IOException | UnsupportedOperationException e)
+        {
+            // Not fatal; sizes will only be as current as the marks made by cache writers.
+            LOG.warn("Unable to watch cache directory {}", root, e);
+        }
+    }
+
+    private void processWatchEvents()
+    {
+        try
+        {
+            while (true)
+            {
+                WatchKey key = watchService.take();
+                Path root = (Path) key.watchable();
+
+                for (WatchEvent<?> event : key.pollEvents())
+                {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                    {
+                        markAllDirty(root);
+                    }
+                    else
+                    {
+                        Path project = root.resolve((Path) event.context());
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE)
+                        {
+                            forget(project.toFile());
+                        }
+                        else if (Files.isDirectory(project))
+                        {
+                            markStale(root, project.getFileName().toString());
+                        }
+                    }
+                }
+
+                if (!key.reset())
+                {
+                    synchronized (this)
+                    {
+                        watchedRoots.remove(root);
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ClosedWatchServiceException e)
+        {
+            LOG.debug("Cache ledger watch service closed", e);
+        }
+    }
+
+    /**
+     * Like {@link #markDirty(File)} but without counting as a use, since the change may not have been made by this application.
+     */
+    private void markStale(Path root, String projectID)
+    {
+        synchronized (this)
+        {
+            Entry entry = roots.computeIfAbsent(root, r -> new HashMap<>(64))
+                .computeIfAbsent(projectID, id -> new Entry(-1, System.currentTimeMillis()));
+
+            if (entry.size < 0)
+            {
+                return; // Already stale
+            }
+
+            entry.size = -1;
+            entry.version++;
+        }
+
+        scheduleSave();
+    }
+
+    private void markAllDirty(Path root)
+    {
+        synchronized (this)
+        {
+            Map<String, Entry> projects = roots.get(root);
+            if (projects != null)
+            {
+                for (Entry entry : projects.values())
+                {
+                    entry.size = -1;
+                    entry.version++;
+                }
+            }
+        }
+
+        scheduleSave();
+    }
+
+    private synchronized void load()
+    {
+        if (!Files.exists(ledgerFile))
+        {
+            return;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(ledgerFile, StandardCharsets.UTF_8))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                String[] parts = line.split("\t");
+                if (parts.length == 4)
+                {
+                    roots.computeIfAbsent(Paths.get(parts[0]), r -> new HashMap<>(64))
+                        .put(parts[1], new Entry(Long.parseLong(parts[2]), Long.parseLong(parts[3])));
+                }
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // Start over; everything will be rescanned.
+            LOG.warn("Failed to read cache ledger; cache sizes will be recalculated", e);
+            roots.clear();
+        }
+    }
+
+    /**
+     * Marks the ledger as changed and schedules it to be written, unless a write is already scheduled.
+     */
+    private synchronized void scheduleSave()
+    {
+        unsaved = true;
+
+        if (!saveScheduled)
+        {
+            saveScheduled = true;
+
+            try
+            {
+                saveScheduler.schedule(this::flush, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // Shutting down; the shutdown hook writes the ledger.
+                saveScheduled = false;
+            }
+        }
+    }
+
+    /**
+     * Writes the ledger to disk now if it has changed since it was last written.
+     */
+    public void flush()
+    {
+        // Only one write at a time, so that an older snapshot can't replace a newer one.
+        synchronized (saveLock)
+        {
+            String contents;
+            synchronized (this)
+            {
+                saveScheduled = false;
+
+                if (!unsaved)
+                {
+                    return;
+                }
+
+                unsaved = false;
+                contents = serialize();
+            }
+
+            // Written without holding the ledger's lock, so that marking projects never waits on the disk.
+            save(contents);
+        }
+    }
+
+    private String serialize()
+    {
+        StringBuilder contents = new StringBuilder(4096);
+        for (Map.Entry<Path, Map<String, Entry>> root : roots.entrySet())
+        {
+            for (Map.Entry<String, Entry> project : root.getValue().entrySet())
+            {
+                contents.append(String.format("%s\t%s\t%d\t%d%n",
+                    root.getKey(), project.getKey(), project.getValue().size, project.getValue().lastUsed));
+            }
+        }
+        return contents.toString();
+    }
+
+    private void save(String contents)
+    {
+        try
+        {
+            Files.createDirectories(ledgerFile.getParent());
+            Path tempFile = ledgerFile.resolveSibling(FILE_NAME + ".tmp");
+            Files.writeString(tempFile, contents, StandardCharsets.UTF_8);
+            Files.move(tempFile, ledgerFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            // Not fatal; the ledger will just be rebuilt next session.
+            LOG.warn("Failed to save cache ledger", e);
+        }
+    }
+}
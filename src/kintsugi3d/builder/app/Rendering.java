@@ -67,11 +67,21 @@ public final class Rendering
     {
     }
 
+    /**
+     * Runs a request on the graphics thread in the background lane of the request queue.
+     * It runs after any background or batch requests that were already queued, but interactive requests
+     * (see {@link #runInteractive(Runnable)}) queued later may run ahead of it.
+     */
     public static void runLater(GraphicsRequest request)
     {
         requestQueue.addBackgroundGraphicsRequest(request);
     }
 
+    /**
+     * Runs a request on the graphics thread in the background lane of the request queue.
+     * It runs after any background or batch requests that were already queued, but interactive requests
+     * (see {@link #runInteractive(Runnable)}) queued later may run ahead of it.
+     */
     public static void runLater(Runnable runnable)
     {
         requestQueue.addBackgroundGraphicsRequest(new GraphicsRequest()
@@ -84,6 +94,22 @@ public final class Rendering
         });
     }
 
+    /**
+     * Runs a task on the graphics thread before the next frame, ahead of any queued background or batch requests.
+     * Only for short tasks that the user is directly waiting on.
+     */
+    public static void runInteractive(Runnable runnable)
+    {
+        requestQueue.addBackgroundGraphicsRequest(new GraphicsRequest()
+        {
+            @Override
+            public <ContextType extends Context<ContextType>> void executeRequest(ContextType context)
+            {
+                runnable.run();
+            }
+        }, GraphicsRequestLane.INTERACTIVE);
+    }
+
     private static GraphicsRequestManager<OpenGLContext> requestQueue;
 
     public static GraphicsRequestManager<OpenGLContext> getRequestQueue()
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+package kintsugi3d.builder.core;
+
+/**
+ * Lanes of the graphics request queue.
+ * Each lane is drained in order, but lanes are drained with different time budgets on each pass of the rendering loop
+ * so that quick work triggered by the user is not stuck behind long-running jobs, and long-running jobs do not
+ * starve the viewport.
+ */
+public enum GraphicsRequestLane
+{
+    /**
+     * Short requests that the user is waiting on (i.e. responses to UI actions);
+     * everything queued in this lane is run before the next frame.
+     * These may run ahead of background and batch requests that were queued earlier,
+     * so they must not depend on the results of such requests.
+     */
+    INTERACTIVE,
+
+    /**
+     * Short requests that nobody is directly waiting on (i.e. loading, preview generation);
+     * run until the frame budget is used up, but at least one per frame.
+     * A background request never runs ahead of a batch request that was queued before it.
+     */
+    BACKGROUND,
+
+    /**
+     * Long-running jobs with a progress monitor (i.e. fitting, exporting);
+     * at most one is run per frame.
+     */
+    BATCH
+}
@@ -24,14 +24,55 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Queues requests from any thread to be run on the graphics thread.
+ * Requests are queued without locking, in one of several lanes (see {@link GraphicsRequestLane}),
+ * and each call to {@link #executeQueue()} runs only as much work from each lane as fits in the frame budget,
+ * so that the viewport keeps rendering while long-running jobs are queued.
+ * <p>
+ * Requests run in the order they were queued, with one exception: interactive requests run ahead of any background
+ * or batch requests that are still waiting.  Background requests never overtake a batch request that was queued
+ * before them, so a request may depend on the results of any earlier non-interactive request.
+ */
 public class GraphicsRequestManager<ContextType extends Context<ContextType>> implements GraphicsRequestQueue<ContextType>
 {
     private static final Logger LOG = LoggerFactory.getLogger(GraphicsRequestManager.class);
+
+    /**
+     * Time that background requests may use on each pass of the rendering loop before yielding to the next frame.
+     */
+    private static final long FRAME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(8);
+
+    /**
+     * Minimum time between logging the lane metrics when the queue runs empty.
+     */
+    private static final long METRICS_LOG_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
     private final ContextType context;
-    private final Queue<Runnable> requestList;
+    private final Map<GraphicsRequestLane, Lane> lanes = new EnumMap<>(GraphicsRequestLane.class);
+
+    /**
+     * Requests that have been queued but have not finished running, in all lanes.
+     */
+    private final AtomicInteger pendingCount = new AtomicInteger(0);
+
+    /**
+     * Order in which requests were queued, across all lanes.
+     */
+    private final AtomicLong nextSequenceNumber = new AtomicLong(0);
+
+    // Only accessed on the graphics thread.
+    private long lastMetricsLogNanos = System.nanoTime();
+    private boolean ranSinceMetricsLog = false;
+
     private final Collection<Runnable> requestAddedListeners = new ArrayList<>(1);
     private ProjectInstanceManager<ContextType> instanceManager;
     private ProgressMonitor progressMonitor;
@@ -39,12 +80,82 @@ public class GraphicsRequestManager<ContextType extends Context<ContextType>> im
     public GraphicsRequestManager(ContextType context)
     {
         this.context = context;
-        this.requestList = new LinkedList<>();
+
+        for (GraphicsRequestLane lane : GraphicsRequestLane.values())
+        {
+            lanes.put(lane, new Lane(lane));
+        }
     }
 
+    private static final class QueuedRequest
+    {
+        final Runnable task;
+        final String requestType;
+        final long sequenceNumber;
+        final long queuedNanos = System.nanoTime();
+
+        QueuedRequest(Runnable task, Object request, long sequenceNumber)
+        {
+            this.task = task;
+            this.requestType = request.getClass().getName();
+            this.sequenceNumber = sequenceNumber;
+        }
+    }
+
+    private static final class Lane
+    {
+        final GraphicsRequestLane lane;
+
+        // Lock-free so that producers never wait on each other or on the graphics thread.
+        final Queue<QueuedRequest> requests = new ConcurrentLinkedQueue<>();
+
+        // Tracked separately since ConcurrentLinkedQueue.size() is not constant time.
+        final AtomicInteger depth = new AtomicInteger(0);
+
+        final AtomicLong completedCount = new AtomicLong(0);
+        final AtomicLong totalWaitNanos = new AtomicLong(0);
+        final AtomicLong maxWaitNanos = new AtomicLong(0);
+        final AtomicLong totalRunNanos = new AtomicLong(0);
+        final AtomicLong maxRunNanos = new AtomicLong(0);
+
+        Lane(GraphicsRequestLane lane)
+        {
+            this.lane = lane;
+        }
+
+        GraphicsRequestMetrics getMetrics()
+        {
+            return new GraphicsRequestMetrics(lane, depth.get(), completedCount.get(),
+                totalWaitNanos.get(), maxWaitNanos.get(), totalRunNanos.get(), maxRunNanos.get());
+        }
+    }
+
+    /**
+     * Whether there are any requests queued or currently running.
+     * @return True if there is nothing left to do.
+     */
     public boolean isEmpty()
     {
-        return requestList.isEmpty();
+        return pendingCount.get() == 0;
+    }
+
+    /**
+     * Gets the current queue depth and the wait and run times of completed requests in a lane.
+     * @param lane The lane.
+     * @return A snapshot of the lane's metrics.
+     */
+    public GraphicsRequestMetrics getMetrics(GraphicsRequestLane lane)
+    {
+        return lanes.get(lane).getMetrics();
+    }
+
+    private void enqueue(GraphicsRequestLane lane, Object request, Runnable task)
+    {
+        // Count before queueing so that isEmpty() can't return true while the request is in the queue.
+        pendingCount.incrementAndGet();
+        Lane target = lanes.get(lane);
+        target.depth.incrementAndGet();
+        target.requests.add(new QueuedRequest(task, request, nextSequenceNumber.getAndIncrement()));
     }
 
     public void setInstanceManager(ProjectInstanceManager<ContextType> instanceManager)
@@ -83,36 +194,33 @@ public class GraphicsRequestManager<ContextType extends Context<ContextType>> im
         }
         else
         {
-            synchronized (requestList)
+            enqueue(GraphicsRequestLane.BACKGROUND, request, () ->
             {
-                this.requestList.add(() ->
+                // Check again for null, just in case
+                if (instanceManager.getMainRenderable() == null)
                 {
-                    // Check again for null, just in case
-                    if (instanceManager.getMainRenderable() == null)
+                    // Instance is currently null, wait for a load and then call this function again (recursive-ish)
+                    instanceManager.addMainRenderableLoadCallback(instance -> addBackgroundGraphicsRequest(request));
+                }
+                else
+                {
+                    // Suppress warning about catching and not rethrowing AssertionError.
+                    // The request should effectively be regarded a "sandbox" where a critical logic error should not result in the application terminating.
+                    //noinspection ErrorNotRethrown
+                    try
                     {
-                        // Instance is currently null, wait for a load and then call this function again (recursive-ish)
-                        instanceManager.addMainRenderableLoadCallback(instance -> addBackgroundGraphicsRequest(request));
+                        request.executeRequest(instanceManager.getMainRenderable());
                     }
-                    else
+                    catch (UserCancellationException e)
                     {
-                        // Suppress warning about catching and not rethrowing AssertionError.
-                        // The request should effectively be regarded a "sandbox" where a critical logic error should not result in the application terminating.
-                        //noinspection ErrorNotRethrown
-                        try
-                        {
-                            request.executeRequest(instanceManager.getMainRenderable());
-                        }
-                        catch (UserCancellationException e)
-                        {
-                            LOG.error("Operation was cancelled while executing request", e);
-                        }
-                        catch (Exception | AssertionError e)
-                        {
-                            LOG.error("Error occurred while executing request", e);
-                        }
+                        LOG.error("Operation was cancelled while executing request", e);
                     }
-                });
-            }
+                    catch (Exception | AssertionError e)
+                    {
+                        LOG.error("Error occurred while executing request", e);
+                    }
+                }
+            });
 
             // Notify listeners
             for (Runnable r :  requestAddedListeners)
@@ -137,47 +245,44 @@ public class GraphicsRequestManager<ContextType extends Context<ContextType>> im
         }
         else
         {
-            synchronized (requestList)
+            enqueue(GraphicsRequestLane.BATCH, request, () ->
             {
-                this.requestList.add(() ->
+                if (progressMonitor != null)
                 {
-                    if (progressMonitor != null)
-                    {
-                        progressMonitor.start();
-                    }
+                    progressMonitor.start();
+                }
 
-                    // Check again for null, just in case
-                    if (instanceManager.getMainRenderable() == null)
+                // Check again for null, just in case
+                if (instanceManager.getMainRenderable() == null)
+                {
+                    // Instance is currently null, wait for a load and then call this function again (recursive-ish)
+                    instanceManager.addMainRenderableLoadCallback(instance -> addGraphicsRequest(request));
+                }
+                else
+                {
+                    // Suppress warning about catching and not rethrowing AssertionError.
+                    // The request should effectively be regarded a "sandbox" where a critical logic error should not result in the application terminating.
+                    //noinspection ErrorNotRethrown
+                    try
                     {
-                        // Instance is currently null, wait for a load and then call this function again (recursive-ish)
-                        instanceManager.addMainRenderableLoadCallback(instance -> addGraphicsRequest(request));
+                        request.executeRequest(instanceManager.getMainRenderable(), progressMonitor);
                     }
-                    else
+                    catch (UserCancellationException e)
                     {
-                        // Suppress warning about catching and not rethrowing AssertionError.
-                        // The request should effectively be regarded a "sandbox" where a critical logic error should not result in the application terminating.
-                        //noinspection ErrorNotRethrown
-                        try
-                        {
-                            request.executeRequest(instanceManager.getMainRenderable(), progressMonitor);
-                        }
-                        catch (UserCancellationException e)
-                        {
-                            LOG.error("Operation was cancelled while executing request", e);
-                            handleCancellation();
-                        }
-                        catch (Exception | AssertionError e)
-                        {
-                            ExceptionHandling.error("Error occured while excecuting request", e);
-                        }
+                        LOG.error("Operation was cancelled while executing request", e);
+                        handleCancellation();
                     }
-
-                    if (progressMonitor != null)
+                    catch (Exception | AssertionError e)
                     {
-                        progressMonitor.complete();
+                        ExceptionHandling.error("Error occured while excecuting request", e);
                     }
-                });
-            }
+                }
+
+                if (progressMonitor != null)
+                {
+                    progressMonitor.complete();
+                }
+            });
         }
 
         // Notify listeners
@@ -195,29 +300,37 @@ public class GraphicsRequestManager<ContextType extends Context<ContextType>> im
     @Override
     public void addBackgroundGraphicsRequest(GraphicsRequest request)
     {
-        synchronized (requestList)
+        addBackgroundGraphicsRequest(request, GraphicsRequestLane.BACKGROUND);
+    }
+
+    /**
+     * Add a graphics request without a loading monitor to a specific lane of the queue
+     *
+     * @param request
+     * @param lane
+     */
+    public void addBackgroundGraphicsRequest(GraphicsRequest request, GraphicsRequestLane lane)
+    {
+        enqueue(lane, request, () ->
         {
-            this.requestList.add(() ->
-            {
 
-                // Suppress warning about catching and not rethrowing AssertionError.
-                // The request should effectively be regarded a "sandbox" where a critical logic error should not result in the application terminating.
-                // noinspection ErrorNotRethrown
-                try
-                {
-                    request.executeRequest(context);
-                }
-                catch (UserCancellationException e)
-                {
-                    LOG.error("Operation was cancelled while executing request", e);
-                }
-                catch (Exception | AssertionError e)
-                {
-                    LOG.error("Error occurred while executing request", e);
-                    progressMonitor.fail(e);
-                }
-            });
-        }
+            // Suppress warning about catching and not rethrowing AssertionError.
+            // The request should effectively be regarded a "sandbox" where a critical logic error should not result in the application terminating.
+            // noinspection ErrorNotRethrown
+            try
+            {
+                request.executeRequest(context);
+            }
+            catch (UserCancellationException e)
+            {
+                LOG.error("Operation was cancelled while executing request", e);
+            }
+            catch (Exception | AssertionError e)
+            {
+                LOG.error("Error occurred while executing request", e);
+                progressMonitor.fail(e);
+            }
+        });
 
         // Notify listeners
         for (Runnable r :  requestAddedListeners)
@@ -229,44 +342,41 @@ public class GraphicsRequestManager<ContextType extends Context<ContextType>> im
     @Override
     public void addGraphicsRequest(ObservableGraphicsRequest request)
     {
-        synchronized (requestList)
+        enqueue(GraphicsRequestLane.BATCH, request, () ->
         {
-            this.requestList.add(() ->
+            if (progressMonitor != null)
             {
-                if (progressMonitor != null)
+                if (this.progressMonitor.isConflictingProcess())
                 {
-                    if (this.progressMonitor.isConflictingProcess())
-                    {
-                        return;
-                    }
-                    progressMonitor.start();
+                    return;
                 }
+                progressMonitor.start();
+            }
 
-                // Suppress warning about catching and not rethrowing AssertionError.
-                // The request should effectively be regarded a "sandbox" where a critical logic error should not result in the application terminating.
-                // noinspection ErrorNotRethrown
-                try
-                {
-                    request.executeRequest(context, progressMonitor);
-                }
-                catch (UserCancellationException e)
-                {
-                    LOG.error("Operation was cancelled while executing request", e);
-                    handleCancellation();
-                }
-                catch (Exception | AssertionError e)
-                {
-                    LOG.error("Error occurred while executing request", e);
-                    Platform.runLater(() ->
-                        new Alert(AlertType.ERROR, "An error occurred processing request. Processing has stopped.\nCheck the log for more info.").show());
-                }
+            // Suppress warning about catching and not rethrowing AssertionError.
+            // The request should effectively be regarded a "sandbox" where a critical logic error should not result in the application terminating.
+            // noinspection ErrorNotRethrown
+            try
+            {
+                request.executeRequest(context, progressMonitor);
+            }
+            catch (UserCancellationException e)
+            {
+                LOG.error("Operation was cancelled while executing request", e);
+                handleCancellation();
+            }
+            catch (Exception | AssertionError e)
+            {
+                LOG.error("Error occurred while executing request", e);
+                Platform.runLater(() ->
+                    new Alert(AlertType.ERROR, "An error occurred processing request. Processing has stopped.\nCheck the log for more info.").show());
+            }
 
-                if (progressMonitor != null)
-                {
-                    progressMonitor.complete();
-                }
-            });
-        }
+            if (progressMonitor != null)
+            {
+                progressMonitor.complete();
+            }
+        });
 
         // Notify listeners
         for (Runnable r :  requestAddedListeners)
@@ -275,21 +385,98 @@ public class GraphicsRequestManager<ContextType extends Context<ContextType>> im
         }
     }
 
+    /**
+     * Runs queued requests on the graphics thread.
+     * All interactive requests that were queued when this is called are run,
+     * then background requests until the frame budget is used up (but at least one),
+     * stopping at any background request that was queued after the next batch request,
+     * then at most one batch request.  Anything left over is run on the next call.
+     */
     public void executeQueue()
     {
         context.makeContextCurrent();
 
-        synchronized (requestList)
+        // Only run interactive requests that were already queued, so that a request that queues another can't livelock.
+        Lane interactive = lanes.get(GraphicsRequestLane.INTERACTIVE);
+        int interactiveCount = interactive.depth.get();
+        boolean ran = true;
+        for (int i = 0; i < interactiveCount && ran; i++)
         {
-            while (!requestList.isEmpty())
+            ran = runNext(interactive, Long.MAX_VALUE);
+        }
+
+        long deadline = System.nanoTime() + FRAME_BUDGET_NANOS;
+        Lane background = lanes.get(GraphicsRequestLane.BACKGROUND);
+        Lane batch = lanes.get(GraphicsRequestLane.BATCH);
+
+        // Background requests queued after the next batch request have to wait for it.
+        QueuedRequest nextBatchRequest = batch.requests.peek();
+        long backgroundLimit = nextBatchRequest == null ? Long.MAX_VALUE : nextBatchRequest.sequenceNumber;
+        do
+        {
+            ran = runNext(background, backgroundLimit);
+        }
+        while (ran && System.nanoTime() - deadline < 0);
+
+        runNext(batch, Long.MAX_VALUE);
+
+        if (ranSinceMetricsLog && isEmpty() && LOG.isDebugEnabled()
+            && System.nanoTime() - lastMetricsLogNanos > METRICS_LOG_INTERVAL_NANOS)
+        {
+            for (Lane lane : lanes.values())
             {
-                if (requestList.peek() != null)
-                {
-                    requestList.peek().run(); // Peek first to ensure that isEmpty() returns false when called from other threads.
-                }
+                LOG.debug("Graphics requests: {}", lane.getMetrics());
+            }
 
-                requestList.poll();       // Once the task is done, remove the request from the queue.
+            lastMetricsLogNanos = System.nanoTime();
+            ranSinceMetricsLog = false;
+        }
+    }
+
+    /**
+     * Runs the request at the head of a lane, if any, and if it was queued before a given point.
+     * Only the graphics thread removes requests, so the head can't change between peeking and polling.
+     * @param sequenceLimit Requests with this sequence number or later are not run.
+     * @return True if a request was run.
+     */
+    private boolean runNext(Lane lane, long sequenceLimit)
+    {
+        QueuedRequest request = lane.requests.peek();
+        if (request == null || request.sequenceNumber >= sequenceLimit)
+        {
+            return false;
+        }
+
+        lane.requests.poll();
+        ranSinceMetricsLog = true;
+
+        long start = System.nanoTime();
+        try
+        {
+            request.task.run();
+        }
+        finally
+        {
+            long end = System.nanoTime();
+            long waitNanos = start - request.queuedNanos;
+            long runNanos = end - start;
+
+            lane.completedCount.incrementAndGet();
+            lane.totalWaitNanos.addAndGet(waitNanos);
+            lane.maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+            lane.totalRunNanos.addAndGet(runNanos);
+            lane.maxRunNanos.accumulateAndGet(runNanos, Math::max);
+
+            // Decrement after running so that isEmpty() returns false while a request is running.
+            lane.depth.decrementAndGet();
+            pendingCount.decrementAndGet();
+
+            if (lane.lane != GraphicsRequestLane.BATCH && runNanos > FRAME_BUDGET_NANOS)
+            {
+                LOG.debug("{} request {} ran for {} ms", lane.lane, request.requestType, TimeUnit.NANOSECONDS.toMillis(runNanos));
             }
         }
+
+        return true;
     }
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+package kintsugi3d.builder.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of the activity in one lane of the graphics request queue.
+ */
+public final class GraphicsRequestMetrics
+{
+    private final GraphicsRequestLane lane;
+    private final int queueDepth;
+    private final long completedCount;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+    private final long totalRunNanos;
+    private final long maxRunNanos;
+
+    GraphicsRequestMetrics(GraphicsRequestLane lane, int queueDepth, long completedCount,
+        long totalWaitNanos, long maxWaitNanos, long totalRunNanos, long maxRunNanos)
+    {
+        this.lane = lane;
+        this.queueDepth = queueDepth;
+        this.completedCount = completedCount;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+        this.totalRunNanos = totalRunNanos;
+        this.maxRunNanos = maxRunNanos;
+    }
+
+    public GraphicsRequestLane getLane()
+    {
+        return lane;
+    }
+
+    /**
+     * Number of requests that have been queued but have not finished running.
+     */
+    public int getQueueDepth()
+    {
+        return queueDepth;
+    }
+
+    public long getCompletedCount()
+    {
+        return completedCount;
+    }
+
+    /**
+     * Average time between a request being queued and it starting to run.
+     */
+    public double getAverageWaitMillis()
+    {
+        return completedCount == 0 ? 0.0 : (double) totalWaitNanos / completedCount / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaxWaitMillis()
+    {
+        return (double) maxWaitNanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getAverageRunMillis()
+    {
+        return completedCount == 0 ? 0.0 : (double) totalRunNanos / completedCount / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaxRunMillis()
+    {
+        return (double) maxRunNanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s: %d queued, %d completed, wait %.1f ms avg / %.1f ms max, run %.1f ms avg / %.1f ms max",
+            lane, queueDepth, completedCount, getAverageWaitMillis(), getMaxWaitMillis(), getAverageRunMillis(), getMaxRunMillis());
+    }
+}
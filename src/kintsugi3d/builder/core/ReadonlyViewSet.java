@@ -32,14 +32,34 @@ import java.util.UUID;
 
 public interface ReadonlyViewSet
 {
+    /**
+     * Gets the camera poses as a new native buffer of 4x4 column-major matrices.
+     * The buffer is allocated from the native buffer pool, so the caller should close it once it has been uploaded.
+     * @return The camera pose data, or null if there are no views.
+     */
     ReadonlyNativeVectorBuffer getCameraPoseData();
 
+    /**
+     * Gets the camera projections as a new native buffer of 4x4 column-major matrices.
+     * The buffer is allocated from the native buffer pool, so the caller should close it once it has been uploaded.
+     * @return The camera projection data, or null if there are no camera projections.
+     */
     ReadonlyNativeVectorBuffer getCameraProjectionData();
 
     ReadonlyNativeVectorBuffer getCameraProjectionIndexData();
 
+    /**
+     * Gets the light positions as a new native buffer of 4-component vectors.
+     * The buffer is allocated from the native buffer pool, so the caller should close it once it has been uploaded.
+     * @return The light position data, or null if there are no lights.
+     */
     ReadonlyNativeVectorBuffer getLightPositionData();
 
+    /**
+     * Gets the light intensities as a new native buffer of 4-component vectors.
+     * The buffer is allocated from the native buffer pool, so the caller should close it once it has been uploaded.
+     * @return The light intensity data, or null if there are no lights.
+     */
     ReadonlyNativeVectorBuffer getLightIntensityData();
 
     ReadonlyNativeVectorBuffer getLightIndexData();
@@ -688,7 +688,8 @@ public final class ViewSet implements ReadonlyViewSet, Observable
         else
         {
             // Flatten the camera pose matrices into 16-component vectors and store them in the vertex list data structure.
-            NativeVectorBuffer cameraPoseData = NativeVectorBufferFactory.getInstance().createEmpty(
+            // Pooled, since the caller closes it once it has been uploaded.
+            NativeVectorBuffer cameraPoseData = NativeVectorBufferFactory.getInstance().createEmptyPooled(
                 NativeDataType.FLOAT, 16, combinedViewSetData.size());
 
 
@@ -720,7 +721,9 @@ public final class ViewSet implements ReadonlyViewSet, Observable
         else
         {
             // Flatten the camera projection matrices into 16-component vectors and store them in the vertex list data structure.
-            NativeVectorBuffer cameraProjectionData = NativeVectorBufferFactory.getInstance().createEmpty(NativeDataType.FLOAT, 16, cameraProjectionList.size());
+            // Pooled, since the caller closes it once it has been uploaded.
+            NativeVectorBuffer cameraProjectionData = NativeVectorBufferFactory.getInstance().createEmptyPooled(
+                NativeDataType.FLOAT, 16, cameraProjectionList.size());
 
             for (int k = 0; k < cameraProjectionList.size(); k++)
             {
@@ -765,7 +768,7 @@ public final class ViewSet implements ReadonlyViewSet, Observable
         }
         else
         {
-            NativeVectorBuffer lightPositionData = NativeVectorBufferFactory.getInstance().createEmpty(NativeDataType.FLOAT, 4, lightPositionList.size());
+            NativeVectorBuffer lightPositionData = NativeVectorBufferFactory.getInstance().createEmptyPooled(NativeDataType.FLOAT, 4, lightPositionList.size());
             for (int k = 0; k < lightPositionList.size(); k++)
             {
                 lightPositionData.set(k, 0, lightPositionList.get(k).x);
@@ -788,7 +791,7 @@ public final class ViewSet implements ReadonlyViewSet, Observable
         }
         else
         {
-            NativeVectorBuffer lightIntensityData = NativeVectorBufferFactory.getInstance().createEmpty(NativeDataType.FLOAT, 4, lightIntensityList.size());
+            NativeVectorBuffer lightIntensityData = NativeVectorBufferFactory.getInstance().createEmptyPooled(NativeDataType.FLOAT, 4, lightIntensityList.size());
             for (int k = 0; k < lightIntensityList.size(); k++)
             {
                 lightIntensityData.set(k, 0, lightIntensityList.get(k).x);
@@ -20,6 +20,7 @@ public class ColorAppearanceRMSE
     private double normalizedSRGB = Double.POSITIVE_INFINITY;
     private double encodedGroundTruth = Double.POSITIVE_INFINITY;
     private long sampleCount = 0;
+    private ReconstructionErrorStatistics statistics;
 
     public double getNormalizedLinear()
     {
@@ -60,4 +61,18 @@ public class ColorAppearanceRMSE
     {
         this.sampleCount = sampleCount;
     }
+
+    /**
+     * Gets the per-channel statistics that these metrics were computed from, if available.
+     * @return The statistics, or null if these metrics were not computed from per-pixel errors.
+     */
+    public ReconstructionErrorStatistics getStatistics()
+    {
+        return statistics;
+    }
+
+    public void setStatistics(ReconstructionErrorStatistics statistics)
+    {
+        this.statistics = statistics;
+    }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.builder.core.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes reconstruction errors to a CSV file as each view is evaluated, so that progress can be followed
+ * (and partial results survive) during long evaluations.
+ * Each view and reconstruction type gets one row per color channel plus one row over all channels,
+ * each including a histogram of the absolute encoded error.
+ * Rows for the errors pooled over all views are written when the report is closed.
+ */
+public class ReconstructionErrorReport implements AutoCloseable
+{
+    private static final String[] CHANNEL_NAMES = { "red", "green", "blue" };
+
+    private final PrintStream out;
+    private final Map<String, ReconstructionErrorStatistics> totals = new LinkedHashMap<>(4);
+
+    public ReconstructionErrorReport(File file) throws IOException
+    {
+        this.out = new PrintStream(file, StandardCharsets.UTF_8);
+
+        out.print("view, type, channel, samples, encoded ground truth, normalized sRGB, normalized linear");
+        for (int bin = 0; bin < ReconstructionErrorStatistics.HISTOGRAM_BINS - 1; bin++)
+        {
+            out.printf(Locale.ROOT, ", <%.4f", (bin + 1.0) / ReconstructionErrorStatistics.HISTOGRAM_BINS);
+        }
+
+        // The last bin also counts anything out of range.
+        out.printf(Locale.ROOT, ", >=%.4f", (ReconstructionErrorStatistics.HISTOGRAM_BINS - 1.0) / ReconstructionErrorStatistics.HISTOGRAM_BINS);
+        out.println();
+        out.flush();
+    }
+
+    /**
+     * Writes the errors for one view and reconstruction type.
+     * @param viewIndex The index of the view that was evaluated.
+     * @param reconstructionType The name of the reconstruction (i.e. "basis" or "reflectivity").
+     * @param statistics The errors for the view.
+     */
+    public void write(int viewIndex, String reconstructionType, ReconstructionErrorStatistics statistics)
+    {
+        writeRows(Integer.toString(viewIndex), reconstructionType, statistics);
+        out.flush();
+
+        totals.computeIfAbsent(reconstructionType, type -> new ReconstructionErrorStatistics()).combine(statistics);
+    }
+
+    @Override
+    public void close()
+    {
+        for (var entry : totals.entrySet())
+        {
+            writeRows("all", entry.getKey(), entry.getValue());
+        }
+
+        out.close();
+    }
+
+    private void writeRows(String view, String reconstructionType, ReconstructionErrorStatistics statistics)
+    {
+        long[] combinedHistogram = new long[ReconstructionErrorStatistics.HISTOGRAM_BINS];
+
+        for (int channel = 0; channel < 3; channel++)
+        {
+            out.printf(Locale.ROOT, "%s, %s, %s, %d, %s, %s, %s", view, reconstructionType, CHANNEL_NAMES[channel],
+                statistics.getSampleCount(), statistics.getEncodedGroundTruthRMSE(channel),
+                statistics.getNormalizedSRGBRMSE(channel), statistics.getNormalizedLinearRMSE(channel));
+
+            long[] histogram = statistics.getHistogram(channel);
+            writeHistogram(histogram);
+
+            for (int bin = 0; bin < histogram.length; bin++)
+            {
+                combinedHistogram[bin] += histogram[bin];
+            }
+        }
+
+        ColorAppearanceRMSE rmse = statistics.toRMSE();
+        out.printf(Locale.ROOT, "%s, %s, all, %d, %s, %s, %s", view, reconstructionType, statistics.getSampleCount(),
+            rmse.getEncodedGroundTruth(), rmse.getNormalizedSRGB(), rmse.getNormalizedLinear());
+        writeHistogram(combinedHistogram);
+    }
+
+    private void writeHistogram(long[] histogram)
+    {
+        for (long count : histogram)
+        {
+            out.print(", ");
+            out.print(count);
+        }
+
+        out.println();
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.builder.core.metrics;
+
+import kintsugi3d.gl.vecmath.DoubleVector3;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates per-pixel reconstruction errors for each color channel, in each of the color spaces reported by
+ * {@link ColorAppearanceRMSE}, along with a histogram of the absolute encoded error for each channel.
+ * Sums are accumulated with Neumaier's compensated summation so that the result does not drift for images with
+ * tens of millions of pixels, and instances can be combined, so that partial results can be accumulated in parallel
+ * (i.e. by passing {@link #accept}-based accumulators and {@link #combine} to {@link java.util.stream.IntStream#collect}).
+ */
+public class ReconstructionErrorStatistics
+{
+    /**
+     * Number of histogram bins covering absolute encoded errors from 0 to 1.
+     * Errors beyond that range (and NaN) are counted in the last bin.
+     */
+    public static final int HISTOGRAM_BINS = 32;
+
+    private static final int ENCODED = 0;
+    private static final int SRGB = 3;
+    private static final int LINEAR = 6;
+
+    private final double[] sums = new double[9];
+    private final double[] compensation = new double[9];
+    private final long[][] histograms = new long[3][HISTOGRAM_BINS];
+    private long sampleCount = 0;
+
+    /**
+     * Adds the error of a single pixel.
+     * @param encodedError Difference between the encoded ground truth and the encoded reconstruction.
+     * @param sRGBError Difference between the normalized ground truth and reconstruction in sRGB space.
+     * @param linearError Difference between the normalized ground truth and reconstruction in linear space.
+     */
+    public void accept(DoubleVector3 encodedError, DoubleVector3 sRGBError, DoubleVector3 linearError)
+    {
+        addSquared(ENCODED, encodedError);
+        addSquared(SRGB, sRGBError);
+        addSquared(LINEAR, linearError);
+
+        histograms[0][histogramBin(encodedError.x)]++;
+        histograms[1][histogramBin(encodedError.y)]++;
+        histograms[2][histogramBin(encodedError.z)]++;
+
+        sampleCount++;
+    }
+
+    /**
+     * Merges the errors accumulated by another instance into this one.
+     * @param other The statistics to merge in; not modified.
+     */
+    public void combine(ReconstructionErrorStatistics other)
+    {
+        for (int i = 0; i < sums.length; i++)
+        {
+            add(i, other.sums[i]);
+            compensation[i] += other.compensation[i];
+        }
+
+        for (int channel = 0; channel < 3; channel++)
+        {
+            for (int bin = 0; bin < HISTOGRAM_BINS; bin++)
+            {
+                histograms[channel][bin] += other.histograms[channel][bin];
+            }
+        }
+
+        sampleCount += other.sampleCount;
+    }
+
+    public long getSampleCount()
+    {
+        return sampleCount;
+    }
+
+    /**
+     * @param channel 0 for red, 1 for green, 2 for blue.
+     * @return The RMSE of the given channel relative to the encoded ground truth.
+     */
+    public double getEncodedGroundTruthRMSE(int channel)
+    {
+        return rmse(ENCODED + channel);
+    }
+
+    /**
+     * @param channel 0 for red, 1 for green, 2 for blue.
+     * @return The RMSE of the given channel in normalized sRGB space.
+     */
+    public double getNormalizedSRGBRMSE(int channel)
+    {
+        return rmse(SRGB + channel);
+    }
+
+    /**
+     * @param channel 0 for red, 1 for green, 2 for blue.
+     * @return The RMSE of the given channel in normalized linear space.
+     */
+    public double getNormalizedLinearRMSE(int channel)
+    {
+        return rmse(LINEAR + channel);
+    }
+
+    /**
+     * @param channel 0 for red, 1 for green, 2 for blue.
+     * @return A copy of the histogram of absolute encoded errors for the given channel;
+     * bin i counts errors in [i / HISTOGRAM_BINS, (i + 1) / HISTOGRAM_BINS).
+     */
+    public long[] getHistogram(int channel)
+    {
+        return Arrays.copyOf(histograms[channel], HISTOGRAM_BINS);
+    }
+
+    /**
+     * Summarizes these statistics as RMSE over all three channels.
+     * @return RMSE metrics that also reference these statistics.
+     */
+    public ColorAppearanceRMSE toRMSE()
+    {
+        ColorAppearanceRMSE rmse = new ColorAppearanceRMSE();
+        rmse.setEncodedGroundTruth(rmseOverChannels(ENCODED));
+        rmse.setNormalizedSRGB(rmseOverChannels(SRGB));
+        rmse.setNormalizedLinear(rmseOverChannels(LINEAR));
+        rmse.setSampleCount(sampleCount);
+        rmse.setStatistics(this);
+        return rmse;
+    }
+
+    private void addSquared(int offset, DoubleVector3 error)
+    {
+        add(offset, error.x * error.x);
+        add(offset + 1, error.y * error.y);
+        add(offset + 2, error.z * error.z);
+    }
+
+    private void add(int index, double value)
+    {
+        double sum = sums[index];
+        double total = sum + value;
+
+        // Recover the low-order bits lost by the addition from whichever operand is smaller in magnitude.
+        if (Math.abs(sum) >= Math.abs(value))
+        {
+            compensation[index] += (sum - total) + value;
+        }
+        else
+        {
+            compensation[index] += (value - total) + sum;
+        }
+
+        sums[index] = total;
+    }
+
+    private double total(int index)
+    {
+        return sums[index] + compensation[index];
+    }
+
+    private double rmse(int index)
+    {
+        return Math.sqrt(total(index) / sampleCount);
+    }
+
+    private double rmseOverChannels(int offset)
+    {
+        // mean squared error for the three channels, then mean over pixels
+        return Math.sqrt((total(offset) + total(offset + 1) + total(offset + 2)) / 3 / sampleCount);
+    }
+
+    private static int histogramBin(double error)
+    {
+        double magnitude = Math.abs(error);
+        return Double.isNaN(magnitude) ? HISTOGRAM_BINS - 1 : (int) Math.min(magnitude * HISTOGRAM_BINS, HISTOGRAM_BINS - 1);
+    }
+}
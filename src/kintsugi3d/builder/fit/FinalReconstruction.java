@@ -14,6 +14,7 @@ package kintsugi3d.builder.fit;
 import kintsugi3d.builder.core.ReadonlyViewSet;
 import kintsugi3d.builder.core.TextureResolution;
 import kintsugi3d.builder.core.metrics.ColorAppearanceRMSE;
+import kintsugi3d.builder.core.metrics.ReconstructionErrorReport;
 import kintsugi3d.builder.fit.settings.ReconstructionSettings;
 import kintsugi3d.builder.rendering.ImageReconstruction;
 import kintsugi3d.builder.rendering.ReconstructionView;
@@ -40,10 +41,16 @@ public class FinalReconstruction<ContextType extends Context<ContextType>>
         this.reconstructionSettings = reconstructionSettings;
     }
 
+    /**
+     * Reconstructs every view with each of the given programs and measures the error against the ground truth photos.
+     * @param errorReport If not null, the errors for each view are written to this report as soon as they are known.
+     * @return The errors for each view and reconstruction program, or null if an error occurred.
+     */
     public List<Map<String, ColorAppearanceRMSE>> reconstruct(TextureResources<ContextType> specularFit,
                                                               Map<String, ProgramBuilder<ContextType>> reconstructionProgramBuilders,
                                                               ProgramBuilder<ContextType> incidentRadianceProgramBuilder,
-                                                              File debugDirectory, File groundTruthDirectory)
+                                                              File debugDirectory, File groundTruthDirectory,
+                                                              ReconstructionErrorReport errorReport)
     {
         if (debugDirectory != null)
         {
@@ -113,6 +120,11 @@ public class FinalReconstruction<ContextType extends Context<ContextType>>
                     // Record RMSE
                     rmseOut.get(view.getIndex()).put(entry.getKey(), rmse);
 
+                    if (errorReport != null)
+                    {
+                        errorReport.write(view.getIndex(), entry.getKey(), rmse.getStatistics());
+                    }
+
                     LOG.info("{}: \nencoded ground truth = {}\nnormalized sRGB = {}\nnormalized linear = {}",
                         entry.getKey(), rmse.getEncodedGroundTruth(), rmse.getNormalizedSRGB(), rmse.getNormalizedLinear());
                 }
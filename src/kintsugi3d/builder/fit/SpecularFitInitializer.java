@@ -13,11 +13,15 @@ package kintsugi3d.builder.fit;
 
 import kintsugi3d.builder.fit.decomposition.SpecularDecomposition;
 import kintsugi3d.builder.fit.settings.BasisSettings;
+import kintsugi3d.builder.fit.settings.ClusteringInitialization;
 import kintsugi3d.builder.resources.project.ReadonlyGraphicsResources;
 import kintsugi3d.gl.core.*;
 import kintsugi3d.gl.vecmath.Vector3;
+import kintsugi3d.optimization.FastPartialSVD;
 import kintsugi3d.optimization.KMeansClustering;
+import kintsugi3d.optimization.RandomizedPartialSVD;
 import kintsugi3d.util.ColorArrayList;
+import org.ejml.simple.SimpleMatrix;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,6 +31,7 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.function.Function;
 import java.util.stream.IntStream;
 
 public class SpecularFitInitializer<ContextType extends Context<ContextType>>
@@ -78,7 +83,23 @@ public class SpecularFitInitializer<ContextType extends Context<ContextType>>
 
             float[] averages = framebuffer.getTextureReaderForColorAttachment(0).readFloatingPointRGBA();
 
-            List<Vector3> centers = new KMeansClustering(new ColorArrayList(averages)).makeClusters(solution.getWeightsList());
+            int[] clusterAssignments = new int[averages.length / 4];
+            List<Vector3> centers = new KMeansClustering(new ColorArrayList(averages))
+                .setRandomSeed(basisSettings.getClusteringRandomSeed())
+                .setMiniBatch(basisSettings.getClusteringMiniBatchSize(), basisSettings.getClusteringMiniBatchIterations())
+                .setPrincipalAxisSplitting(getPrincipalAxisFinder(basisSettings.getClusteringInitialization()))
+                .makeClusters(basisSettings.getBasisCount(), clusterAssignments);
+
+            // Set weight to one for the cluster that each pixel belongs to.
+            for (int p = 0; p < clusterAssignments.length; p++)
+            {
+                solution.zeroWeights(p);
+
+                if (clusterAssignments[p] >= 0)
+                {
+                    solution.setWeight(clusterAssignments[p], p, 1.0);
+                }
+            }
 
             // Initialize weight validity.
             IntStream.range(0, averages.length / 4)
@@ -98,6 +119,21 @@ public class SpecularFitInitializer<ContextType extends Context<ContextType>>
         }
     }
 
+    private Function<SimpleMatrix, SimpleMatrix> getPrincipalAxisFinder(ClusteringInitialization initialization)
+    {
+        switch (initialization)
+        {
+            case PRINCIPAL_AXIS_POWER_ITERATION:
+                return matrix -> FastPartialSVD.compute(matrix, 1).getV();
+            case PRINCIPAL_AXIS_RANDOMIZED:
+                Long seed = basisSettings.getClusteringRandomSeed();
+                return matrix -> RandomizedPartialSVD.compute(matrix, 1, seed == null ? 0L : seed).getV();
+            case K_MEANS_PLUS_PLUS:
+            default:
+                return null;
+        }
+    }
+
     public void saveDebugImage(SpecularDecomposition solution, File outputDirectory)
     {
         int width = solution.getTextureResolution().width;
@@ -113,7 +149,7 @@ public class SpecularFitInitializer<ContextType extends Context<ContextType>>
 
                 for (int b = 0; b < basisSettings.getBasisCount(); b++)
                 {
-                    if (solution.getWeights(p).get(b) > 0)
+                    if (solution.getWeight(b, p) > 0)
                     {
                         bSelect = b;
                     }
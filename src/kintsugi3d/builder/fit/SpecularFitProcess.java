@@ -468,7 +468,8 @@ public class SpecularFitProcess
 
                             // Use basis functions previously optimized at a lower resolution
                             SpecularDecomposition blockDecomposition =
-                                new SpecularDecompositionFromExistingBasis(blockResolution, basis);
+                                new SpecularDecompositionFromExistingBasis(blockResolution, basis,
+                                    settings.getSpecularBasisSettings().getWeightStorage());
 
                             if (basis.getMaterialCount() == 1)
                             {
@@ -14,11 +14,15 @@ package kintsugi3d.builder.fit;
 import kintsugi3d.builder.app.ApplicationFolders;
 import kintsugi3d.builder.core.*;
 import kintsugi3d.builder.core.metrics.ColorAppearanceRMSE;
+import kintsugi3d.builder.core.metrics.ReconstructionErrorReport;
 import kintsugi3d.builder.fit.decomposition.BasisResources;
+import kintsugi3d.builder.fit.decomposition.PackedBasisWeights;
 import kintsugi3d.builder.fit.settings.BasisSettings;
+import kintsugi3d.builder.fit.settings.ClusteringInitialization;
 import kintsugi3d.builder.fit.settings.SpecularFitSettings;
 import kintsugi3d.builder.javafx.core.ExceptionHandling;
 import kintsugi3d.builder.resources.project.GraphicsResourcesImageSpace;
+import kintsugi3d.builder.resources.project.ImageCacheFormat;
 import kintsugi3d.builder.resources.project.ReadonlyGraphicsResources;
 import kintsugi3d.builder.resources.project.specular.TextureResources;
 import kintsugi3d.builder.state.cards.TabsManager;
@@ -83,6 +87,10 @@ public class SpecularFitRequest implements ObservableProjectGraphicsRequest
         settings.getSpecularBasisSettings().setBasisResolution(basisResolution);
         settings.getSpecularBasisSettings().setBasisCount(projectSettings.getInt("basisCount"));
         settings.getSpecularBasisSettings().setSmithMaskingShadowingEnabled(projectSettings.getBoolean("smithMaskingShadowingEnabled"));
+        settings.getSpecularBasisSettings().setWeightStorage(
+            Global.state().getSettingsModel().get("basisWeightStorage", PackedBasisWeights.Storage.class));
+        settings.getSpecularBasisSettings().setClusteringInitialization(
+            Global.state().getSettingsModel().get("clusteringInitialization", ClusteringInitialization.class));
 
         // Specular / general settings
         int specularMinWidthDiscrete = Math.round(projectSettings.getFloat("specularMinWidthFrac") * basisResolution);
@@ -111,6 +119,8 @@ public class SpecularFitRequest implements ObservableProjectGraphicsRequest
 
         // Image cache settings
         settings.getImageCacheSettings().setCacheParentDirectory(ApplicationFolders.getFitCacheRootDirectory().toFile());
+        settings.getImageCacheSettings().setFormat(Global.state().getSettingsModel().getBoolean("uncompressedFitCacheEnabled") ?
+            ImageCacheFormat.RAW : ImageCacheFormat.PNG);
 
         return settings;
     }
@@ -217,12 +227,18 @@ public class SpecularFitRequest implements ObservableProjectGraphicsRequest
                     new FinalReconstruction<>(resources, settings.getTextureResolution(), settings.getReconstructionSettings());
 
                 LOG.info("Reconstructing:");
-                List<Map<String, ColorAppearanceRMSE>> rmseList = reconstruction.reconstruct(specularFit, Map.of(
-                        "basis", ReconstructionShaders.getBasisModelReconstructionProgramBuilder(resources, specularFit, programFactory),
-                        "reflectivity", ReconstructionShaders.getReflectivityModelReconstructionProgramBuilder(resources, specularFit, programFactory)),
-                    ReconstructionShaders.getIncidentRadianceProgramBuilder(resources, programFactory),
-                    DEBUG_IMAGES ? settings.getOutputDirectory() : null,
-                    DEBUG_IMAGES ? new File(settings.getOutputDirectory(), "ground-truth") : null);
+                List<Map<String, ColorAppearanceRMSE>> rmseList;
+                try (ReconstructionErrorReport errorReport =
+                    new ReconstructionErrorReport(new File(settings.getOutputDirectory(), "reconstruction-errors.csv")))
+                {
+                    rmseList = reconstruction.reconstruct(specularFit, Map.of(
+                            "basis", ReconstructionShaders.getBasisModelReconstructionProgramBuilder(resources, specularFit, programFactory),
+                            "reflectivity", ReconstructionShaders.getReflectivityModelReconstructionProgramBuilder(resources, specularFit, programFactory)),
+                        ReconstructionShaders.getIncidentRadianceProgramBuilder(resources, programFactory),
+                        DEBUG_IMAGES ? settings.getOutputDirectory() : null,
+                        DEBUG_IMAGES ? new File(settings.getOutputDirectory(), "ground-truth") : null,
+                        errorReport);
+                }
 
                 double reconstructionRMSE = rmseList.stream().mapToDouble(map ->
                     {
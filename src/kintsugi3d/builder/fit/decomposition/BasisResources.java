@@ -91,39 +91,39 @@ public class BasisResources<ContextType extends Context<ContextType>> implements
     private void refreshGraphicsResources()
     {
         NativeVectorBufferFactory factory = NativeVectorBufferFactory.getInstance();
-        NativeVectorBuffer basisMapBuffer = factory.createEmpty(NativeDataType.FLOAT, 3,
-            basisCount * (basisResolution + 1));
-        NativeVectorBuffer diffuseNativeBuffer = factory.createEmpty(NativeDataType.FLOAT, 4, basisCount);
-
-        for (int b = 0; b < basisCount; b++)
+        try (NativeVectorBuffer basisMapBuffer = factory.createEmptyPooled(NativeDataType.FLOAT, 3, basisCount * (basisResolution + 1));
+            NativeVectorBuffer diffuseNativeBuffer = factory.createEmptyPooled(NativeDataType.FLOAT, 4, basisCount))
         {
-            // Copy basis functions by color channel into the basis map buffer that will eventually be sent to the GPU..
-            for (int m = 0; m <= basisResolution; m++)
+            for (int b = 0; b < basisCount; b++)
             {
-                // Format necessary for OpenGL is essentially transposed from the storage in the solution vectors.
-                basisMapBuffer.set(m + (basisResolution + 1) * b, 0, this.basis.evaluateSpecularRed(b, m));
-                basisMapBuffer.set(m + (basisResolution + 1) * b, 1, this.basis.evaluateSpecularGreen(b, m));
-                basisMapBuffer.set(m + (basisResolution + 1) * b, 2, this.basis.evaluateSpecularBlue(b, m));
-            }
+                // Copy basis functions by color channel into the basis map buffer that will eventually be sent to the GPU..
+                for (int m = 0; m <= basisResolution; m++)
+                {
+                    // Format necessary for OpenGL is essentially transposed from the storage in the solution vectors.
+                    basisMapBuffer.set(m + (basisResolution + 1) * b, 0, this.basis.evaluateSpecularRed(b, m));
+                    basisMapBuffer.set(m + (basisResolution + 1) * b, 1, this.basis.evaluateSpecularGreen(b, m));
+                    basisMapBuffer.set(m + (basisResolution + 1) * b, 2, this.basis.evaluateSpecularBlue(b, m));
+                }
 
-            // Store each channel of the diffuse albedo in the local buffer.
-            diffuseNativeBuffer.set(b, 0, this.basis.getDiffuseColor(b).x);
-            diffuseNativeBuffer.set(b, 1, this.basis.getDiffuseColor(b).y);
-            diffuseNativeBuffer.set(b, 2, this.basis.getDiffuseColor(b).z);
-            diffuseNativeBuffer.set(b, 3, 1.0f);
-        }
+                // Store each channel of the diffuse albedo in the local buffer.
+                diffuseNativeBuffer.set(b, 0, this.basis.getDiffuseColor(b).x);
+                diffuseNativeBuffer.set(b, 1, this.basis.getDiffuseColor(b).y);
+                diffuseNativeBuffer.set(b, 2, this.basis.getDiffuseColor(b).z);
+                diffuseNativeBuffer.set(b, 3, 1.0f);
+            }
 
-        if (basisCount != basisMaps.getHeight()) // if the number of basis functions has changed, reallocate
-        {
-            basisMaps.close();
-            basisMaps = createBasisMaps(context, basisCount, basisResolution);
-        }
+            if (basisCount != basisMaps.getHeight()) // if the number of basis functions has changed, reallocate
+            {
+                basisMaps.close();
+                basisMaps = createBasisMaps(context, basisCount, basisResolution);
+            }
 
-        // Send the basis functions to the GPU.
-        basisMaps.load(basisMapBuffer);
+            // Send the basis functions to the GPU.
+            basisMaps.load(basisMapBuffer);
 
-        // Send the diffuse albedos to the GPU.
-        diffuseUniformBuffer.setData(diffuseNativeBuffer);
+            // Send the diffuse albedos to the GPU.
+            diffuseUniformBuffer.setData(diffuseNativeBuffer);
+        }
     }
 
     /**
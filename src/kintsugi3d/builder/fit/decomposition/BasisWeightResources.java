@@ -83,27 +83,24 @@ public class BasisWeightResources<ContextType extends Context<ContextType>>
     public void updateFromSolution(SpecularDecomposition solution)
     {
         NativeVectorBufferFactory factory = NativeVectorBufferFactory.getInstance();
-        NativeVectorBuffer weightMaskBuffer = factory.createEmpty(NativeDataType.FLOAT, 1,
-            width * height);
-
-        // Load weight mask first.
-        for (int p = 0; p < width * height; p++)
-        {
-            weightMaskBuffer.set(p, 0, solution.areWeightsValid(p) ? 1.0 : 0.0);
-        }
-
-        weightMask.load(weightMaskBuffer);
-
-        for (int b = 0; b < basisCount; b++)
+        try (NativeVectorBuffer weightMaskBuffer = factory.createEmptyPooled(NativeDataType.FLOAT, 1, width * height))
         {
-            // Copy weights from the individual solutions into the weight buffer laid out in texture space to be sent to the GPU.
+            // Load weight mask first.
             for (int p = 0; p < width * height; p++)
             {
-                weightMaskBuffer.set(p, 0, solution.getWeights(p).get(b));
+                weightMaskBuffer.set(p, 0, solution.areWeightsValid(p) ? 1.0 : 0.0);
             }
 
-            // Immediately load the weight map so that we can reuse the local memory buffer.
-            weightMaps.loadLayer(b, weightMaskBuffer);
+            weightMask.load(weightMaskBuffer);
+
+            for (int b = 0; b < basisCount; b++)
+            {
+                // Copy weights from the solution into the weight buffer laid out in texture space to be sent to the GPU.
+                solution.getWeights().copyWeights(b, 0, width * height, weightMaskBuffer.getBuffer().asFloatBuffer());
+
+                // Immediately load the weight map so that we can reuse the local memory buffer.
+                weightMaps.loadLayer(b, weightMaskBuffer);
+            }
         }
     }
 
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.builder.fit.decomposition;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compact storage for the basis weights of every texel in a specular decomposition.
+ * Weights are stored as single precision floats, one contiguous buffer per basis function,
+ * so that a full weight map can be copied out in bulk (i.e. for saving to an image or uploading to the GPU)
+ * without touching any per-texel objects.
+ */
+public class PackedBasisWeights
+{
+    /**
+     * Where the weight buffers live.
+     */
+    public enum Storage
+    {
+        /**
+         * Ordinary Java arrays on the heap.
+         */
+        HEAP,
+
+        /**
+         * Direct buffers outside of the Java heap.
+         */
+        OFF_HEAP,
+
+        /**
+         * A temporary file mapped into memory, which the operating system can page out when memory is scarce.
+         */
+        MEMORY_MAPPED
+    }
+
+    private final int basisCount;
+    private final int texelCount;
+    private final FloatBuffer[] weightsByBasis;
+
+    public PackedBasisWeights(int basisCount, int texelCount, Storage storage)
+    {
+        this.basisCount = basisCount;
+        this.texelCount = texelCount;
+        this.weightsByBasis = new FloatBuffer[basisCount];
+
+        if (storage == Storage.MEMORY_MAPPED)
+        {
+            mapTemporaryFile();
+        }
+        else
+        {
+            for (int b = 0; b < basisCount; b++)
+            {
+                weightsByBasis[b] = storage == Storage.OFF_HEAP ?
+                    ByteBuffer.allocateDirect(Float.BYTES * texelCount).order(ByteOrder.nativeOrder()).asFloatBuffer()
+                    : FloatBuffer.allocate(texelCount);
+            }
+        }
+    }
+
+    private void mapTemporaryFile()
+    {
+        try
+        {
+            Path file = Files.createTempFile("kintsugi3d-weights", ".bin");
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+            {
+                long layerSize = (long) Float.BYTES * texelCount;
+
+                // Each basis function gets its own mapping so that no single mapping exceeds the 2 GB limit.
+                for (int b = 0; b < basisCount; b++)
+                {
+                    weightsByBasis[b] = channel.map(FileChannel.MapMode.READ_WRITE, b * layerSize, layerSize)
+                        .order(ByteOrder.nativeOrder()).asFloatBuffer();
+                }
+            }
+            finally
+            {
+                // The mappings remain valid after the channel is closed; delete the file once the process exits.
+                File tempFile = file.toFile();
+                if (!tempFile.delete())
+                {
+                    tempFile.deleteOnExit();
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not create memory-mapped storage for basis weights.", e);
+        }
+    }
+
+    public int getBasisCount()
+    {
+        return basisCount;
+    }
+
+    public int getTexelCount()
+    {
+        return texelCount;
+    }
+
+    public double get(int b, int p)
+    {
+        return weightsByBasis[b].get(p);
+    }
+
+    public void set(int b, int p, double weight)
+    {
+        weightsByBasis[b].put(p, (float) weight);
+    }
+
+    /**
+     * Sets all the weights of a texel to zero.
+     * @param p The texel index.
+     */
+    public void zero(int p)
+    {
+        for (int b = 0; b < basisCount; b++)
+        {
+            weightsByBasis[b].put(p, 0.0f);
+        }
+    }
+
+    /**
+     * Copies the weights of one basis function for a range of texels into a buffer.
+     * @param b The basis function.
+     * @param pStart The first texel to copy.
+     * @param count The number of texels to copy.
+     * @param destination The buffer into which to copy, starting at its current position;
+     *                    the position is advanced by the number of weights copied.
+     */
+    public void copyWeights(int b, int pStart, int count, FloatBuffer destination)
+    {
+        FloatBuffer source = weightsByBasis[b].duplicate();
+        source.position(pStart);
+        source.limit(pStart + count);
+        destination.put(source);
+    }
+}
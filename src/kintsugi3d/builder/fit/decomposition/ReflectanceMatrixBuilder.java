@@ -82,7 +82,7 @@ final class ReflectanceMatrixBuilder
                     new MatrixBuilderSample(
                         reflectanceData.getHalfwayIndex(p) * basisSettings.getBasisResolution(),
                         matrixBuilder.getBasisLibrary(), reflectanceData.getGeomRatio(p),
-                        reflectanceData.getAdditionalWeight(p), b -> solution.getWeights(p).get(b),
+                        reflectanceData.getAdditionalWeight(p), b -> solution.getWeight(b, p),
                         reflectanceData.getRed(p), reflectanceData.getGreen(p), reflectanceData.getBlue(p))));
         if (VALIDATE)
         {
@@ -134,7 +134,7 @@ final class ReflectanceMatrixBuilder
                 for (int b = 0; b < basisSettings.getBasisCount(); b++)
                 {
                     // diffuse
-                    mA.set(p, b, addlWeight * solution.getWeights(p).get(b) * diffuseFactor);
+                    mA.set(p, b, addlWeight * solution.getWeight(b, p) * diffuseFactor);
 
                     // specular
                     if (mExact < basisSettings.getBasisResolution())
@@ -155,7 +155,7 @@ final class ReflectanceMatrixBuilder
                             int j = basisSettings.getBasisCount() * (s + 1) + b;
 
                             // specular with blending between the two sampled locations.
-                            mA.set(p, j, addlWeight * geomRatio * solution.getWeights(p).get(b) * fInterp);
+                            mA.set(p, j, addlWeight * geomRatio * solution.getWeight(b, p) * fInterp);
                         }
                     }
                 }
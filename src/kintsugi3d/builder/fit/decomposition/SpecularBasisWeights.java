@@ -12,6 +12,7 @@
 package kintsugi3d.builder.fit.decomposition;
 
 import java.io.File;
+import java.nio.FloatBuffer;
 
 public interface SpecularBasisWeights // TODO: avoid use of anonymous classes, add copy() method to improve robustness
 {
@@ -32,5 +33,22 @@ public interface SpecularBasisWeights // TODO: avoid use of anonymous classes, a
 
     int getCount();
 
+    /**
+     * Copies the weights of one basis function for a range of samples into a buffer,
+     * for instance to save a weight map or upload it to the GPU.
+     * @param b The basis function for which to copy weights.
+     * @param pStart The first sample to copy.
+     * @param count The number of samples to copy.
+     * @param destination The buffer into which to copy, starting at its current position;
+     *                    the position is advanced by the number of weights copied.
+     */
+    default void copyWeights(int b, int pStart, int count, FloatBuffer destination)
+    {
+        for (int p = pStart; p < pStart + count; p++)
+        {
+            destination.put((float) getWeight(b, p));
+        }
+    }
+
     void save(File outputDirectory);
 }
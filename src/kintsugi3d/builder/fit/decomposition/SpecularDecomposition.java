@@ -33,11 +33,21 @@ public interface SpecularDecomposition
 
     double getWeight(int b, int p);
 
-    SimpleMatrix getWeights(int texelIndex);
-
+    void setWeight(int b, int p, double weight);
+
+    /**
+     * Copies the first getMaterialBasis().getMaterialCount() elements of a column vector into the weights for a texel.
+     * Any additional elements (i.e. Lagrange multipliers from a constrained solve) are ignored.
+     * @param texelIndex The texel for which to set weights.
+     * @param weights The new weights.
+     */
     void setWeights(int texelIndex, SimpleMatrix weights);
 
-    List<SimpleMatrix> getWeightsList();
+    /**
+     * Sets all the weights of a texel to zero.
+     * @param texelIndex The texel for which to clear weights.
+     */
+    void zeroWeights(int texelIndex);
 
     void invalidateWeights();
 
@@ -16,7 +16,6 @@ import kintsugi3d.builder.io.specular.SpecularFitSerializer;
 import kintsugi3d.gl.vecmath.DoubleVector3;
 import kintsugi3d.gl.vecmath.DoubleVector4;
 import kintsugi3d.util.SRGB;
-import org.ejml.data.DMatrixRMaj;
 import org.ejml.simple.SimpleMatrix;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,29 +25,31 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.FloatBuffer;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.List;
-import java.util.stream.IntStream;
 
 public abstract class SpecularDecompositionBase implements SpecularDecomposition
 {
     private static final Logger LOG = LoggerFactory.getLogger(SpecularDecompositionBase.class);
 
-    private final SimpleMatrix[] weightsByTexel;
+    private final PackedBasisWeights weights;
     private final boolean[] weightsValidity;
     private final TextureResolution textureResolution;
 
-    protected SpecularDecompositionBase(TextureResolution textureResolution, int basisCount)
+    protected SpecularDecompositionBase(TextureResolution textureResolution, int basisCount, PackedBasisWeights.Storage storage)
     {
-        weightsByTexel = IntStream.range(0, textureResolution.width * textureResolution.height)
-            .mapToObj(p -> new SimpleMatrix(basisCount, 1, DMatrixRMaj.class))
-            .toArray(SimpleMatrix[]::new);
+        weights = new PackedBasisWeights(basisCount, textureResolution.width * textureResolution.height, storage);
         weightsValidity = new boolean[textureResolution.width * textureResolution.height];
         this.textureResolution = textureResolution;
     }
 
+    protected SpecularDecompositionBase(TextureResolution textureResolution, int basisCount)
+    {
+        this(textureResolution, basisCount, PackedBasisWeights.Storage.HEAP);
+    }
+
     @Override
     public SpecularBasisWeights getWeights()
     {
@@ -59,7 +60,13 @@ public abstract class SpecularDecompositionBase implements SpecularDecomposition
             @Override
             public double getWeight(int b, int p)
             {
-                return weightsByTexel[p].get(b);
+                return weights.get(b, p);
+            }
+
+            @Override
+            public void copyWeights(int b, int pStart, int count, FloatBuffer destination)
+            {
+                weights.copyWeights(b, pStart, count, destination);
             }
 
             @Override
@@ -98,25 +105,36 @@ public abstract class SpecularDecompositionBase implements SpecularDecomposition
     @Override
     public double getWeight(int b, int p)
     {
-        return weightsByTexel[p].get(b);
+        return weights.get(b, p);
     }
 
     @Override
-    public SimpleMatrix getWeights(int texelIndex)
+    public void setWeight(int b, int p, double weight)
     {
-        return weightsByTexel[texelIndex];
+        weights.set(b, p, weight);
     }
 
     @Override
     public void setWeights(int texelIndex, SimpleMatrix weights)
     {
-        weightsByTexel[texelIndex] = weights;
+        int count = Math.min(weights.getNumElements(), this.weights.getBasisCount());
+
+        for (int b = 0; b < count; b++)
+        {
+            this.weights.set(b, texelIndex, weights.get(b));
+        }
+
+        // Missing weights (i.e. a 1x1 identity for a multi-material basis) are treated as zero.
+        for (int b = count; b < this.weights.getBasisCount(); b++)
+        {
+            this.weights.set(b, texelIndex, 0.0);
+        }
     }
 
     @Override
-    public List<SimpleMatrix> getWeightsList()
+    public void zeroWeights(int texelIndex)
     {
-        return Arrays.asList(weightsByTexel);
+        weights.zero(texelIndex);
     }
 
     @Override
@@ -162,31 +180,31 @@ public abstract class SpecularDecompositionBase implements SpecularDecomposition
 
                         if (this.areWeightsValid(left))
                         {
-                            sum += this.getWeights(left).get(b);
+                            sum += this.getWeight(b, left);
                             count++;
                         }
 
                         if (this.areWeightsValid(right))
                         {
-                            sum += this.getWeights(right).get(b);
+                            sum += this.getWeight(b, right);
                             count++;
                         }
 
                         if (this.areWeightsValid(up))
                         {
-                            sum += this.getWeights(up).get(b);
+                            sum += this.getWeight(b, up);
                             count++;
                         }
 
                         if (this.areWeightsValid(down))
                         {
-                            sum += this.getWeights(down).get(b);
+                            sum += this.getWeight(b, down);
                             count++;
                         }
 
                         if (sum > 0.0)
                         {
-                            this.getWeights(p).set(b, sum / count);
+                            this.setWeight(b, p, sum / count);
                         }
                     }
 
@@ -24,7 +24,13 @@ public class SpecularDecompositionFromExistingBasis extends SpecularDecompositio
 
     public SpecularDecompositionFromExistingBasis(TextureResolution textureResolution, MaterialBasis materialBasis)
     {
-        super(textureResolution, materialBasis.getMaterialCount());
+        this(textureResolution, materialBasis, PackedBasisWeights.Storage.HEAP);
+    }
+
+    public SpecularDecompositionFromExistingBasis(TextureResolution textureResolution, MaterialBasis materialBasis,
+        PackedBasisWeights.Storage weightStorage)
+    {
+        super(textureResolution, materialBasis.getMaterialCount(), weightStorage);
         this.diffuseAlbedos = materialBasis.getDiffuseColors();
         this.materialBasis = materialBasis;
     }
@@ -34,7 +34,13 @@ public class SpecularDecompositionFromScratch extends SpecularDecompositionBase
 
     public SpecularDecompositionFromScratch(TextureResolution textureResolution, BasisSettings basisSettings)
     {
-        super(textureResolution, basisSettings.getBasisCount());
+        this(textureResolution, basisSettings, basisSettings.getWeightStorage());
+    }
+
+    public SpecularDecompositionFromScratch(TextureResolution textureResolution, BasisSettings basisSettings,
+        PackedBasisWeights.Storage weightStorage)
+    {
+        super(textureResolution, basisSettings.getBasisCount(), weightStorage);
         this.basisSettings = basisSettings;
 
         diffuseAlbedos = new ArrayList<>(this.basisSettings.getBasisCount());
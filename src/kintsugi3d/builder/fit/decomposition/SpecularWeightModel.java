@@ -14,12 +14,13 @@ package kintsugi3d.builder.fit.decomposition;
 import kintsugi3d.builder.fit.ReflectanceData;
 import kintsugi3d.gl.vecmath.DoubleVector3;
 import kintsugi3d.optimization.LeastSquaresModel;
+import kintsugi3d.optimization.PrimitiveLeastSquaresModel;
 
 import java.util.function.IntFunction;
 
 import static java.lang.Math.PI;
 
-public class SpecularWeightModel implements LeastSquaresModel<ReflectanceData, DoubleVector3>
+public class SpecularWeightModel implements LeastSquaresModel<ReflectanceData, DoubleVector3>, PrimitiveLeastSquaresModel<ReflectanceData>
 {
     private final SpecularDecomposition solution;
 
@@ -99,6 +100,63 @@ public class SpecularWeightModel implements LeastSquaresModel<ReflectanceData, D
         };
     }
 
+    @Override
+    public int getSampleDimensions()
+    {
+        return 3;
+    }
+
+    @Override
+    public void fillSamples(ReflectanceData sampleData, int systemIndex, double[] destination)
+    {
+        // Sampler (ground truth data)
+        destination[0] = sampleData.getRed(systemIndex);
+        destination[1] = sampleData.getGreen(systemIndex);
+        destination[2] = sampleData.getBlue(systemIndex);
+    }
+
+    @Override
+    public void fillBasisFunctions(ReflectanceData sampleData, int systemIndex, double[] destination)
+    {
+        float halfwayIndex = sampleData.getHalfwayIndex(systemIndex);
+        float geomRatio = sampleData.getGeomRatio(systemIndex);
+
+        int specularResolution = solution.getMaterialBasis().getSpecularResolution();
+        double mExact = halfwayIndex * specularResolution;
+
+        int m1 = (int)Math.floor(mExact);
+        int m2 = m1 + 1;
+        double t = mExact - m1;
+
+        for (int b = 0; b < getBasisFunctionCount(); b++)
+        {
+            DoubleVector3 diffuseAlbedo = solution.getDiffuseAlbedo(b);
+
+            // Same as getBasisFunctions(), but written into the destination array instead of a new vector.
+            if (m1 < specularResolution)
+            {
+                destination[3 * b] = diffuseAlbedo.x / PI +
+                    (solution.getMaterialBasis().evaluateSpecularRed(b, m1) * (1 - t)
+                        + solution.getMaterialBasis().evaluateSpecularRed(b, m2) * t) * geomRatio;
+                destination[3 * b + 1] = diffuseAlbedo.y / PI +
+                    (solution.getMaterialBasis().evaluateSpecularGreen(b, m1) * (1 - t)
+                        + solution.getMaterialBasis().evaluateSpecularGreen(b, m2) * t) * geomRatio;
+                destination[3 * b + 2] = diffuseAlbedo.z / PI +
+                    (solution.getMaterialBasis().evaluateSpecularBlue(b, m1) * (1 - t)
+                        + solution.getMaterialBasis().evaluateSpecularBlue(b, m2) * t) * geomRatio;
+            }
+            else
+            {
+                destination[3 * b] = diffuseAlbedo.x / PI +
+                    solution.getMaterialBasis().evaluateSpecularRed(b, specularResolution) * geomRatio;
+                destination[3 * b + 1] = diffuseAlbedo.y / PI +
+                    solution.getMaterialBasis().evaluateSpecularGreen(b, specularResolution) * geomRatio;
+                destination[3 * b + 2] = diffuseAlbedo.z / PI +
+                    solution.getMaterialBasis().evaluateSpecularBlue(b, specularResolution) * geomRatio;
+            }
+        }
+    }
+
     @Override
     public int getBasisFunctionCount()
     {
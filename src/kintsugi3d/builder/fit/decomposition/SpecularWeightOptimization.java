@@ -15,6 +15,7 @@ import kintsugi3d.builder.core.TextureResolution;
 import kintsugi3d.builder.fit.ReflectanceData;
 import kintsugi3d.builder.resources.project.stream.GraphicsStream;
 import kintsugi3d.optimization.NonNegativeWeightOptimization;
+import kintsugi3d.optimization.PrimitiveLeastSquaresModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,41 +53,26 @@ public class SpecularWeightOptimization
         LOG.info("Building weight fitting matrices...");
 
         // Setup all the matrices for fitting weights (one per texel)
-        base.buildMatrices(viewStream, new SpecularWeightModel(solution),
+        // Use the primitive model to avoid allocating vectors for every sample.
+        PrimitiveLeastSquaresModel<ReflectanceData> weightModel = new SpecularWeightModel(solution);
+        base.buildMatrices(viewStream, weightModel,
             // If a pixel is valid in some view, mark it as such in the solution.
             p -> solution.setWeightsValidity(p, true),
             pStart, Math.min(pStart + weightBlockSize, textureResolution.width * textureResolution.height));
 
         // Dampen so that it doesn't "snap" to the optimal solution right away.
         // TODO expose the damping factor as a setting.
-//        base.dampenWithPreviousSolution(1.0, p -> b -> solution.getWeights(pStart + p).get(b));
+//        base.dampenWithPreviousSolution(1.0, p -> b -> solution.getWeight(b, pStart + p));
 
         LOG.info("Finished building matrices; solving now...");
 
         // Optimize the weights and store the result in the SpecularDecomposition.
-        if (pStart + weightBlockSize > textureResolution.width * textureResolution.height)
-        {
-            base.optimizeWeights(p -> solution.areWeightsValid(pStart + p),
-                (p, weights) ->
-                {
-                    solution.setWeights(pStart + p, weights);
-//                    solution.setWeights(pStart + p,
-//                        weights.extractMatrix(0, weights.numRows() - 1, 0, 1).scale(0.5)
-//                            .plus(solution.getWeights(pStart + p).scale(0.5)));
-                },
-                NonNegativeWeightOptimization.DEFAULT_TOLERANCE_SCALE, textureResolution.width * textureResolution.height - pStart);
-        }
-        else
-        {
-            base.optimizeWeights(p -> solution.areWeightsValid(pStart + p),
-                (p, weights) ->
-                {
-                    solution.setWeights(pStart + p, weights);
-//                    solution.setWeights(pStart + p,
-//                        weights.extractMatrix(0, weights.numRows() - 1, 0, 1).scale(0.5)
-//                            .plus(solution.getWeights(pStart + p).scale(0.5)));
-                });
-        }
+        // Systems are solved in parallel, each warm-started from the weights of the previous iteration.
+        base.optimizeWeights(p -> solution.areWeightsValid(pStart + p),
+            (p, weights) -> solution.setWeights(pStart + p, weights),
+            NonNegativeWeightOptimization.DEFAULT_TOLERANCE_SCALE,
+            Math.min(weightBlockSize, textureResolution.width * textureResolution.height - pStart),
+            p -> b -> solution.getWeight(b, pStart + p));
 
         LOG.info("DONE!");
     }
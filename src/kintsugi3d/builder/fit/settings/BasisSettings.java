@@ -11,11 +11,18 @@
 
 package kintsugi3d.builder.fit.settings;
 
+import kintsugi3d.builder.fit.decomposition.PackedBasisWeights;
+
 public class BasisSettings
 {
     private int basisCount = 8;
     private int basisResolution = 90;
     private boolean smithMaskingShadowingEnabled = true;
+    private Long clusteringRandomSeed = null;
+    private int clusteringMiniBatchSize = 0;
+    private int clusteringMiniBatchIterations = 100;
+    private ClusteringInitialization clusteringInitialization = ClusteringInitialization.K_MEANS_PLUS_PLUS;
+    private PackedBasisWeights.Storage weightStorage = PackedBasisWeights.Storage.HEAP;
 
     /**
      * @return The number of basis functions to use for the specular lobe.
@@ -80,4 +87,131 @@ public class BasisSettings
     {
         this.smithMaskingShadowingEnabled = smithMaskingShadowingEnabled;
     }
+
+    /**
+     * The seed used for the random number generator when clustering to initialize the basis weights,
+     * or null (the default) to use a different random seed every time.
+     * A fixed seed makes the initialization (and therefore the entire fit) reproducible.
+     * @return The clustering random seed, or null if a different seed is used every time.
+     */
+    public Long getClusteringRandomSeed()
+    {
+        return clusteringRandomSeed;
+    }
+
+    /**
+     * The seed used for the random number generator when clustering to initialize the basis weights,
+     * or null (the default) to use a different random seed every time.
+     * @param clusteringRandomSeed The clustering random seed, or null to use a different seed every time.
+     */
+    public void setClusteringRandomSeed(Long clusteringRandomSeed)
+    {
+        this.clusteringRandomSeed = clusteringRandomSeed;
+    }
+
+    /**
+     * The number of samples per batch when clustering to initialize the basis weights using mini-batch k-means,
+     * or zero (the default) to use standard k-means over every texel.
+     * @return The number of samples per mini-batch, or zero if mini-batches are not used.
+     */
+    public int getClusteringMiniBatchSize()
+    {
+        return clusteringMiniBatchSize;
+    }
+
+    /**
+     * The number of samples per batch when clustering to initialize the basis weights using mini-batch k-means,
+     * or zero (the default) to use standard k-means over every texel.
+     * Mini-batches are considerably faster for very high texture resolutions.
+     * @param clusteringMiniBatchSize The number of samples per mini-batch, or zero to disable mini-batches.
+     */
+    public void setClusteringMiniBatchSize(int clusteringMiniBatchSize)
+    {
+        if (clusteringMiniBatchSize < 0)
+        {
+            throw new IllegalArgumentException("Mini-batch size cannot be negative.");
+        }
+        else
+        {
+            this.clusteringMiniBatchSize = clusteringMiniBatchSize;
+        }
+    }
+
+    /**
+     * The maximum number of batches to process when clustering using mini-batch k-means.  Default is 100.
+     * @return The maximum number of mini-batches to process.
+     */
+    public int getClusteringMiniBatchIterations()
+    {
+        return clusteringMiniBatchIterations;
+    }
+
+    /**
+     * The maximum number of batches to process when clustering using mini-batch k-means.  Default is 100.
+     * @param clusteringMiniBatchIterations The maximum number of mini-batches to process.
+     */
+    public void setClusteringMiniBatchIterations(int clusteringMiniBatchIterations)
+    {
+        if (clusteringMiniBatchIterations <= 0)
+        {
+            throw new IllegalArgumentException("Mini-batch iteration count must be greater than zero.");
+        }
+        else
+        {
+            this.clusteringMiniBatchIterations = clusteringMiniBatchIterations;
+        }
+    }
+
+    /**
+     * How the clusters are seeded when clustering to initialize the basis weights.  Default is k-means++.
+     * @return The clustering initialization method.
+     */
+    public ClusteringInitialization getClusteringInitialization()
+    {
+        return clusteringInitialization;
+    }
+
+    /**
+     * How the clusters are seeded when clustering to initialize the basis weights.  Default is k-means++.
+     * Splitting along principal axes is deterministic apart from the SVD itself, so it doesn't depend on the random seed.
+     * @param clusteringInitialization The clustering initialization method.
+     */
+    public void setClusteringInitialization(ClusteringInitialization clusteringInitialization)
+    {
+        if (clusteringInitialization == null)
+        {
+            throw new IllegalArgumentException("Clustering initialization cannot be null.");
+        }
+        else
+        {
+            this.clusteringInitialization = clusteringInitialization;
+        }
+    }
+
+    /**
+     * Where the per-texel basis weights are stored while fitting.  Default is the Java heap.
+     * Storing them off-heap or in a memory-mapped temporary file allows fitting at full texture resolution
+     * without a heap large enough to hold every weight.
+     * @return The storage used for the basis weights.
+     */
+    public PackedBasisWeights.Storage getWeightStorage()
+    {
+        return weightStorage;
+    }
+
+    /**
+     * Where the per-texel basis weights are stored while fitting.  Default is the Java heap.
+     * @param weightStorage The storage to use for the basis weights.
+     */
+    public void setWeightStorage(PackedBasisWeights.Storage weightStorage)
+    {
+        if (weightStorage == null)
+        {
+            throw new IllegalArgumentException("Weight storage cannot be null.");
+        }
+        else
+        {
+            this.weightStorage = weightStorage;
+        }
+    }
 }
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.builder.fit.settings;
+
+/**
+ * How the clusters used to initialize the specular basis weights are seeded before k-means refines them.
+ */
+public enum ClusteringInitialization
+{
+    /**
+     * Randomly chosen centers, spread out using k-means++.
+     */
+    K_MEANS_PLUS_PLUS,
+
+    /**
+     * Repeatedly splits the cluster with the largest error along its principal axis,
+     * which is found using power iterations (FastPartialSVD).
+     */
+    PRINCIPAL_AXIS_POWER_ITERATION,
+
+    /**
+     * Repeatedly splits the cluster with the largest error along its principal axis,
+     * which is found using a randomized range finder (RandomizedPartialSVD).
+     */
+    PRINCIPAL_AXIS_RANDOMIZED
+}
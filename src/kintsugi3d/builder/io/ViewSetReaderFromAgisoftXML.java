@@ -16,18 +16,15 @@ import kintsugi3d.builder.core.Projection;
 import kintsugi3d.builder.core.SimpleProjection;
 import kintsugi3d.builder.core.ViewSet;
 import kintsugi3d.builder.core.ViewSet.Builder;
+import kintsugi3d.builder.io.metashape.MetashapeArchiveReader;
 import kintsugi3d.builder.io.metashape.MetashapeChunk;
 import kintsugi3d.builder.resources.project.MissingImagesException;
 import kintsugi3d.gl.vecmath.Matrix3;
 import kintsugi3d.gl.vecmath.Matrix4;
 import kintsugi3d.gl.vecmath.Vector3;
 import kintsugi3d.gl.vecmath.Vector4;
-import kintsugi3d.util.UnzipHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
@@ -1026,20 +1023,7 @@ public final class ViewSetReaderFromAgisoftXML implements ViewSetReader
      */
     private static Map<Integer, String> extractMaskFilenames(File masksZipFile) throws IOException
     {
-        LOG.info("Unzipping masks folder...");
-        Document docXml = UnzipHelper.unzipToDocument(masksZipFile, "doc.xml");
-        NodeList maskList = docXml.getElementsByTagName("mask");
-
-        Map<Integer, String> maskFiles = new HashMap<>(maskList.getLength());
-
-        for (int i = 0; i < maskList.getLength(); ++i)
-        {
-            Element maskElem = (Element) maskList.item(i);
-            int cameraId = Integer.parseInt(maskElem.getAttribute("camera_id"));
-            String path = maskElem.getAttribute("path");
-            maskFiles.put(cameraId, path);
-        }
-
-        return maskFiles;
+        LOG.info("Reading masks folder...");
+        return MetashapeArchiveReader.readMaskPaths(masksZipFile);
     }
 }
@@ -11,12 +11,15 @@
 
 package kintsugi3d.builder.io.gltf;
 
-import kintsugi3d.gl.util.ImageHelper;
+import kintsugi3d.builder.resources.project.specular.TextureResources;
+import kintsugi3d.gl.core.ColorTextureReader;
+import kintsugi3d.gl.core.Texture2D;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.IOException;
+import java.util.Map;
+import java.util.Map.Entry;
 
 public final class LODGenerator
 {
@@ -35,48 +38,121 @@ public final class LODGenerator
 
     void generateLODs(int minResolution, File directory, TextureExportSpecification... originalTextureSpecs)
     {
-        for (TextureExportSpecification t : originalTextureSpecs)
+        try (LODPyramidWriter writer = new LODPyramidWriter(minResolution))
         {
-            generateLODs(t.format, minResolution, directory, t.uri);
-        }
-    }
+            for (TextureExportSpecification t : originalTextureSpecs)
+            {
+                submitIfExists(writer, t.format, new File(directory, t.uri));
+            }
 
-    public void generateLODs(String format, int minResolution, File directory, String... originalImageFilenames)
-    {
-        for (String filename : originalImageFilenames)
+            writer.finish();
+        }
+        catch (InterruptedException e)
         {
-            generateLODs(format, minResolution, directory, filename);
+            LOG.error("Interrupted while generating LODs:", e);
+            Thread.currentThread().interrupt();
         }
     }
 
-    public void generateLODs(String format, int minResolution, File directory, String originalImageFilename)
+    /**
+     * Generates LODs for exported textures, reading back the full resolution texture from the GPU where possible
+     * instead of decoding the image that was just saved from that same readback.
+     * Must be called on the thread that owns the graphics context of the texture resources.
+     * @param minResolution The smallest height for which a level should be generated.
+     * @param directory The directory containing the exported textures.
+     * @param textureSpecs The exported textures, by texture name.
+     * @param readbackSource The texture resources that the textures were saved from.
+     */
+    void generateLODs(int minResolution, File directory, Map<String, TextureExportSpecification> textureSpecs,
+        TextureResources<?> readbackSource)
     {
-        File originalImageFile = new File(directory, originalImageFilename);
-
-        try
+        try (LODPyramidWriter writer = new LODPyramidWriter(minResolution))
         {
-            if (originalImageFile.exists()) // Among other things, should catch when non-standard textures like constant.png don't exist.
+            for (Entry<String, TextureExportSpecification> entry : textureSpecs.entrySet())
             {
-                String filename = originalImageFile.getName();
-                String extension = "";
-                int i = filename.lastIndexOf('.'); //Strip file extension
-                if (i > 0)
+                TextureExportSpecification t = entry.getValue();
+                File originalImageFile = new File(directory, t.uri);
+                Texture2D<?> texture = readbackSource.getTexture(entry.getKey());
+
+                // Only use the readback if the image was actually saved there; otherwise, behave as if reading from disk.
+                if (texture != null && originalImageFile.exists())
                 {
-                    extension = filename.substring(i);
-                    filename = filename.substring(0, i);
+                    ColorTextureReader reader = texture.getColorTextureReader();
+                    if (reader.getHeight() / 2 >= minResolution)
+                    {
+                        writer.submit(t.format, originalImageFile, reader.readARGB(), reader.getWidth(), reader.getHeight(), true);
+                    }
                 }
-
-                ImageHelper imageHelper = ImageHelper.read(originalImageFile);
-
-                for (int size = imageHelper.getBufferedImage().getHeight() / 2; size >= minResolution; size /= 2)
+                else
                 {
-                    imageHelper.saveAtResolution(format, new File(originalImageFile.getParent(), filename + "-" + size + extension), size);
+                    submitIfExists(writer, t.format, originalImageFile);
                 }
             }
+
+            writer.finish();
+        }
+        catch (InterruptedException e)
+        {
+            LOG.error("Interrupted while generating LODs:", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void generateLODs(String format, int minResolution, File directory, String... originalImageFilenames)
+    {
+        try (LODPyramidWriter writer = new LODPyramidWriter(minResolution))
+        {
+            for (String filename : originalImageFilenames)
+            {
+                submitIfExists(writer, format, new File(directory, filename));
+            }
+
+            writer.finish();
+        }
+        catch (InterruptedException e)
+        {
+            LOG.error("Interrupted while generating LODs:", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void generateLODs(String format, int minResolution, File directory, String originalImageFilename)
+    {
+        generateLODs(format, minResolution, directory, new String[] { originalImageFilename });
+    }
+
+    /**
+     * Generates LODs from pixels that are already in memory, without decoding the full resolution image from disk.
+     * @param format The image format to use for the LODs.
+     * @param minResolution The smallest height for which a level should be generated.
+     * @param originalImageFile The full resolution image, which determines the LOD filenames and where they are written.
+     * @param pixels The full resolution pixels, packed as ARGB.
+     * @param width The width of the full resolution image.
+     * @param height The height of the full resolution image.
+     * @param bottomRowFirst Whether the pixels are stored with the bottom row first, as returned by
+     *                       {@link ColorTextureReader#readARGB()}.
+     */
+    public void generateLODs(String format, int minResolution, File originalImageFile, int[] pixels, int width, int height,
+        boolean bottomRowFirst)
+    {
+        try (LODPyramidWriter writer = new LODPyramidWriter(minResolution))
+        {
+            writer.submit(format, originalImageFile, pixels, width, height, bottomRowFirst);
+            writer.finish();
         }
-        catch (IOException e)
+        catch (InterruptedException e)
+        {
+            LOG.error("Interrupted while generating LODs:", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void submitIfExists(LODPyramidWriter writer, String format, File originalImageFile)
+        throws InterruptedException
+    {
+        if (originalImageFile.exists()) // Among other things, should catch when non-standard textures like constant.png don't exist.
         {
-            LOG.error("Error generating LODs for file '{}':", originalImageFile, e);
+            writer.submit(format, originalImageFile);
         }
     }
 }
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.builder.io.gltf;
+
+import kintsugi3d.gl.util.ImageHelper;
+import kintsugi3d.gl.vecmath.IntVector2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the LOD pyramids of several textures at once on a pool of worker threads.
+ * Each level is downsampled from the previous level (rather than from the full resolution image),
+ * and is handed off to be encoded as soon as it has been computed, so that encoding one level
+ * overlaps with filtering the next one and with the pyramids of other textures.
+ * The number of textures in flight is bounded by a memory budget;
+ * submitting a texture blocks until an earlier one has been fully written if that budget has been exhausted.
+ * Failures are logged per texture and do not prevent the other textures from being processed.
+ */
+class LODPyramidWriter implements AutoCloseable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(LODPyramidWriter.class);
+
+    /**
+     * Fraction of the maximum heap size that textures being processed are allowed to occupy.
+     */
+    private static final double PENDING_MEMORY_FRACTION = 0.25;
+
+    private final int minResolution;
+
+    private final ExecutorService workerPool;
+
+    /**
+     * Memory budget, in kilobytes.
+     */
+    private final int budgetKB;
+    private final Semaphore pendingKB;
+
+    private final AtomicInteger levelsWritten = new AtomicInteger();
+
+    /**
+     * @param minResolution The smallest height for which a level should be generated.
+     */
+    LODPyramidWriter(int minResolution)
+    {
+        this.minResolution = minResolution;
+
+        int threadCount = Runtime.getRuntime().availableProcessors();
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.workerPool = Executors.newFixedThreadPool(threadCount, runnable ->
+        {
+            Thread thread = new Thread(runnable, "LOD-encoder-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.budgetKB = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+            Runtime.getRuntime().maxMemory() * PENDING_MEMORY_FRACTION / 1024));
+        this.pendingKB = new Semaphore(budgetKB);
+    }
+
+    /**
+     * Queues LODs to be generated for an image that has already been written to disk.
+     * The image is decoded on a worker thread; only its header is read by the calling thread.
+     * @param format The image format to use for the LODs.
+     * @param originalImageFile The full resolution image.  LODs will be written alongside it.
+     * @throws InterruptedException If interrupted while waiting for earlier textures to finish.
+     */
+    void submit(String format, File originalImageFile) throws InterruptedException
+    {
+        IntVector2 dimensions;
+        try
+        {
+            dimensions = ImageHelper.dimensionsOf(originalImageFile);
+        }
+        catch (IOException e)
+        {
+            LOG.error("Error generating LODs for file '{}':", originalImageFile, e);
+            return;
+        }
+
+        if (dimensions.y / 2 < minResolution)
+        {
+            return; // No levels to generate.
+        }
+
+        int permits = acquireFor(dimensions.x, dimensions.y);
+        PendingTexture pending = new PendingTexture(originalImageFile, permits);
+
+        workerPool.execute(() -> pending.run(() ->
+        {
+            BufferedImage image = ImageHelper.read(originalImageFile).getBufferedImage();
+            int width = image.getWidth();
+            int height = image.getHeight();
+            int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+            buildLevels(pending, format, pixels, width, height, false, image.getColorModel().hasAlpha());
+        }));
+    }
+
+    /**
+     * Queues LODs to be generated from pixels that are already in memory, such as a texture readback
+     * that was just used to write the full resolution image, to avoid decoding that image again.
+     * @param format The image format to use for the LODs.
+     * @param originalImageFile The full resolution image.  LODs will be written alongside it.
+     * @param pixels The full resolution pixels, packed as ARGB.  The array must not be modified by the caller after it is submitted.
+     * @param width The width of the full resolution image.
+     * @param height The height of the full resolution image.
+     * @param bottomRowFirst Whether the pixels are stored with the bottom row first, as returned by
+     *                       {@link kintsugi3d.gl.core.ColorTextureReader#readARGB()}.
+     * @throws InterruptedException If interrupted while waiting for earlier textures to finish.
+     */
+    void submit(String format, File originalImageFile, int[] pixels, int width, int height, boolean bottomRowFirst)
+        throws InterruptedException
+    {
+        if (height / 2 < minResolution)
+        {
+            return; // No levels to generate.
+        }
+
+        int permits = acquireFor(width, height);
+        PendingTexture pending = new PendingTexture(originalImageFile, permits);
+
+        // JPEG cannot store alpha; this matches how textures are saved from a readback in the first place.
+        boolean hasAlpha = !"JPEG".equalsIgnoreCase(format);
+        workerPool.execute(() -> pending.run(() -> buildLevels(pending, format, pixels, width, height, bottomRowFirst, hasAlpha)));
+    }
+
+    /**
+     * Waits for all submitted textures to finish being written.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    void finish() throws InterruptedException
+    {
+        pendingKB.acquire(budgetKB);
+        pendingKB.release(budgetKB);
+
+        LOG.info("Wrote {} LOD images", levelsWritten.get());
+    }
+
+    @Override
+    public void close()
+    {
+        workerPool.shutdownNow();
+    }
+
+    private int acquireFor(int width, int height) throws InterruptedException
+    {
+        // The full resolution pixels, plus roughly a third more for the rest of the pyramid.
+        long bytes = 4L * width * height * 4 / 3;
+        int permits = (int) Math.min(budgetKB, bytes / 1024 + 1);
+        pendingKB.acquire(permits);
+        return permits;
+    }
+
+    @FunctionalInterface
+    private interface IOTask
+    {
+        void run() throws IOException;
+    }
+
+    /**
+     * Tracks the outstanding tasks of one texture (the task building the pyramid, and one per level being encoded)
+     * so that its share of the memory budget is returned once the last of them finishes.
+     */
+    private final class PendingTexture
+    {
+        private final File originalImageFile;
+        private final int permits;
+        private final AtomicInteger remainingTasks = new AtomicInteger(1);
+
+        PendingTexture(File originalImageFile, int permits)
+        {
+            this.originalImageFile = originalImageFile;
+            this.permits = permits;
+        }
+
+        void run(IOTask task)
+        {
+            try
+            {
+                task.run();
+            }
+            catch (IOException | RuntimeException e)
+            {
+                LOG.error("Error generating LODs for file '{}':", originalImageFile, e);
+            }
+            finally
+            {
+                if (remainingTasks.decrementAndGet() == 0)
+                {
+                    pendingKB.release(permits);
+                }
+            }
+        }
+    }
+
+    private void buildLevels(PendingTexture pending, String format, int[] pixels, int width, int height,
+        boolean bottomRowFirst, boolean hasAlpha)
+    {
+        String filename = pending.originalImageFile.getName();
+        String extension = "";
+        int i = filename.lastIndexOf('.'); //Strip file extension
+        if (i > 0)
+        {
+            extension = filename.substring(i);
+            filename = filename.substring(0, i);
+        }
+
+        int[] previous = pixels;
+        int previousWidth = width;
+        int previousHeight = height;
+        boolean flip = bottomRowFirst;
+
+        for (int size = height / 2; size >= minResolution; size /= 2)
+        {
+            // Preserve the aspect ratio of the full resolution image (not of the previous level, which may have been truncated).
+            // Computed exactly as ImageHelper.saveAtResolution() does, truncating rather than rounding, so that level sizes don't change
+            // (this includes the height, which can come out one less than the size in the filename due to floating-point error).
+            double factor = (double) size / height;
+            int levelWidth = Math.max(1, (int) (width * factor));
+            int levelHeight = Math.max(1, (int) (height * factor));
+            int[] level = TextureDownsampler.downsample(previous, previousWidth, previousHeight, flip, levelWidth, levelHeight);
+
+            File levelFile = new File(pending.originalImageFile.getParent(), filename + "-" + size + extension);
+            pending.remainingTasks.incrementAndGet();
+            workerPool.execute(() -> pending.run(() -> writeLevel(format, levelFile, level, levelWidth, level.length / levelWidth, hasAlpha)));
+
+            previous = level;
+            previousWidth = levelWidth;
+            previousHeight = levelHeight;
+            flip = false;
+        }
+    }
+
+    private void writeLevel(String format, File file, int[] pixels, int width, int height, boolean hasAlpha) throws IOException
+    {
+        BufferedImage image = new BufferedImage(width, height, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        System.arraycopy(pixels, 0, ((DataBufferInt) image.getRaster().getDataBuffer()).getData(), 0, pixels.length);
+
+        if (!ImageIO.write(image, format, file))
+        {
+            throw new IOException("No image writer available for format: " + format);
+        }
+
+        levelsWritten.incrementAndGet();
+    }
+}
@@ -46,6 +46,7 @@ public class MaterialExporter
     private String textureFileFormat;
     private String filename;
     private boolean combineWeights;
+    private boolean lodsFromReadback = true;
 
     private TextureResources<?> textureResources;
 
@@ -95,6 +96,22 @@ public class MaterialExporter
         this.minLODSize = minLODSize;
     }
 
+    public boolean isLODsFromReadback()
+    {
+        return lodsFromReadback;
+    }
+
+    /**
+     * Sets whether LODs should be generated from a readback of the textures in memory (the default),
+     * rather than by decoding the exported full resolution images again.
+     * Generating from a readback requires makeLODs to be called on the graphics context thread.
+     * @param lodsFromReadback
+     */
+    public void setLODsFromReadback(boolean lodsFromReadback)
+    {
+        this.lodsFromReadback = lodsFromReadback;
+    }
+
 
     public final String getTextureFilePrefix()
     {
@@ -250,8 +267,15 @@ public class MaterialExporter
 
     public void makeLODs(File outputDirectory)
     {
-        LODGenerator.getInstance().generateLODs(minLODSize, outputDirectory,
-            textures.values().toArray(TextureExportSpecification[]::new));
+        if (lodsFromReadback)
+        {
+            LODGenerator.getInstance().generateLODs(minLODSize, outputDirectory, textures, textureResources);
+        }
+        else
+        {
+            LODGenerator.getInstance().generateLODs(minLODSize, outputDirectory,
+                textures.values().toArray(TextureExportSpecification[]::new));
+        }
     }
 
     private TextureInfo processTextureParam(String texName, Method method, Class<?> paramType, boolean requiresAlpha)
@@ -141,7 +141,6 @@ public class ModelExporter
     {
         materialExporter.saveTextures(outputDirectory);
 
-        LODGenerator lodGenerator = LODGenerator.getInstance();
         materialExporter.makeLODs(outputDirectory);
 
         materialExporter.postExport();
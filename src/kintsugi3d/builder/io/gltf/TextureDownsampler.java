@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.builder.io.gltf;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Resamples packed ARGB images to a lower resolution using a separable triangle (tent) filter
+ * whose support scales with the reduction factor.  For an exact halving this is the familiar [1 3 3 1] / 8 kernel.
+ * Each channel (including alpha) is filtered independently in the stored color space,
+ * since exported textures may pack non-color data into any of their channels.
+ */
+final class TextureDownsampler
+{
+    /**
+     * Number of output rows handled by each parallel task; each task allocates one row of intermediate results.
+     */
+    private static final int ROWS_PER_TASK = 16;
+
+    private TextureDownsampler()
+    {
+    }
+
+    /**
+     * Precomputed filter taps along one axis.  Source indices are clamped to the edge of the image,
+     * so every output sample has exactly the same number of taps.
+     */
+    private static final class Kernel
+    {
+        final int tapCount;
+        final int[] indices;
+        final float[] weights;
+
+        Kernel(int sourceLength, int destinationLength)
+        {
+            double scale = (double) sourceLength / destinationLength;
+            double radius = Math.max(1.0, scale);
+            this.tapCount = (int) Math.ceil(radius * 2);
+            this.indices = new int[destinationLength * tapCount];
+            this.weights = new float[destinationLength * tapCount];
+
+            for (int i = 0; i < destinationLength; i++)
+            {
+                // Center of the output sample in source pixel coordinates.
+                double center = (i + 0.5) * scale - 0.5;
+                int first = (int) Math.floor(center - radius) + 1;
+
+                double total = 0.0;
+                for (int t = 0; t < tapCount; t++)
+                {
+                    int j = first + t;
+                    double weight = Math.max(0.0, 1.0 - Math.abs(j - center) / radius);
+                    indices[i * tapCount + t] = Math.min(Math.max(j, 0), sourceLength - 1);
+                    weights[i * tapCount + t] = (float) weight;
+                    total += weight;
+                }
+
+                for (int t = 0; t < tapCount; t++)
+                {
+                    weights[i * tapCount + t] /= (float) total;
+                }
+            }
+        }
+    }
+
+    /**
+     * Downsamples an image.
+     * @param source The source pixels, packed as ARGB with rows contiguous.
+     * @param sourceWidth The width of the source image.
+     * @param sourceHeight The height of the source image.
+     * @param flipVertical Whether the source is stored with the bottom row first
+     *                     (as returned by {@link kintsugi3d.gl.core.ColorTextureReader#readARGB()});
+     *                     if true, the result will be flipped so that its top row comes first.
+     * @param width The width of the downsampled image.
+     * @param height The height of the downsampled image.
+     * @return The downsampled pixels, packed as ARGB with the top row first.
+     */
+    static int[] downsample(int[] source, int sourceWidth, int sourceHeight, boolean flipVertical, int width, int height)
+    {
+        Kernel horizontal = new Kernel(sourceWidth, width);
+        Kernel vertical = new Kernel(sourceHeight, height);
+        int[] result = new int[width * height];
+
+        IntStream.range(0, (height + ROWS_PER_TASK - 1) / ROWS_PER_TASK).parallel().forEach(task ->
+        {
+            // One source-width row of filtered channels (a, r, g, b interleaved).
+            float[] column = new float[sourceWidth * 4];
+
+            for (int y = task * ROWS_PER_TASK; y < Math.min(height, (task + 1) * ROWS_PER_TASK); y++)
+            {
+                Arrays.fill(column, 0.0f);
+
+                // Vertical pass: blend the source rows contributing to this output row.
+                for (int t = 0; t < vertical.tapCount; t++)
+                {
+                    int sourceRow = vertical.indices[y * vertical.tapCount + t];
+                    if (flipVertical)
+                    {
+                        sourceRow = sourceHeight - sourceRow - 1;
+                    }
+
+                    float weight = vertical.weights[y * vertical.tapCount + t];
+                    if (weight != 0.0f)
+                    {
+                        int rowStart = sourceRow * sourceWidth;
+                        for (int x = 0; x < sourceWidth; x++)
+                        {
+                            int argb = source[rowStart + x];
+                            column[4 * x] += weight * (argb >>> 24);
+                            column[4 * x + 1] += weight * ((argb >>> 16) & 0xFF);
+                            column[4 * x + 2] += weight * ((argb >>> 8) & 0xFF);
+                            column[4 * x + 3] += weight * (argb & 0xFF);
+                        }
+                    }
+                }
+
+                // Horizontal pass: blend within the intermediate row and repack.
+                for (int x = 0; x < width; x++)
+                {
+                    float a = 0.0f;
+                    float r = 0.0f;
+                    float g = 0.0f;
+                    float b = 0.0f;
+
+                    for (int t = 0; t < horizontal.tapCount; t++)
+                    {
+                        int k = 4 * horizontal.indices[x * horizontal.tapCount + t];
+                        float weight = horizontal.weights[x * horizontal.tapCount + t];
+                        a += weight * column[k];
+                        r += weight * column[k + 1];
+                        g += weight * column[k + 2];
+                        b += weight * column[k + 3];
+                    }
+
+                    result[y * width + x] = (toByte(a) << 24) | (toByte(r) << 16) | (toByte(g) << 8) | toByte(b);
+                }
+            }
+        });
+
+        return result;
+    }
+
+    private static int toByte(float value)
+    {
+        return Math.min(255, Math.max(0, (int) (value + 0.5f)));
+    }
+}
@@ -0,0 +1,597 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.builder.io.metashape;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.text.MessageFormat;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads the XML documents inside Metashape project archives (project.zip, chunk.zip, frame.zip and the masks archive)
+ * in a single streaming pass, straight from the zip entry, keeping only the information needed for import.
+ * Chunk summaries are cached, so re-opening the same project doesn't re-read archives that haven't changed.
+ */
+public final class MetashapeArchiveReader
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MetashapeArchiveReader.class);
+
+    private static final int MAX_CACHED_CHUNKS = 16;
+
+    /**
+     * Parsed chunks by chunk.zip file, most recently used last; guarded by itself.
+     */
+    private static final Map<File, CachedChunk> CHUNK_CACHE = new LinkedHashMap<>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, CachedChunk> eldest)
+        {
+            return size() > MAX_CACHED_CHUNKS;
+        }
+    };
+
+    private MetashapeArchiveReader()
+    {
+    }
+
+    /**
+     * A chunk as listed in a project's doc.xml.
+     */
+    static final class ChunkReference
+    {
+        final String id;
+        final String path;
+
+        ChunkReference(String id, String path)
+        {
+            this.id = id;
+            this.path = path;
+        }
+    }
+
+    /**
+     * The contents of a project's doc.xml that are needed to find its chunks.
+     */
+    static final class ProjectSummary
+    {
+        final String activeChunkID;
+        final List<ChunkReference> chunks;
+
+        ProjectSummary(String activeChunkID, List<ChunkReference> chunks)
+        {
+            this.activeChunkID = activeChunkID;
+            this.chunks = Collections.unmodifiableList(chunks);
+        }
+    }
+
+    /**
+     * A model element, from either a chunk or a frame document.
+     * Attributes that are missing are empty strings, as they would be when read from a DOM element.
+     */
+    static final class ModelInfo
+    {
+        final String id;
+        final String label;
+        final String path;
+
+        ModelInfo(String id, String label, String path)
+        {
+            this.id = id;
+            this.label = label;
+            this.path = path;
+        }
+    }
+
+    /**
+     * The contents of a frame's doc.xml that are needed for import.
+     */
+    static final class FrameSummary
+    {
+        final String thumbnailsPath;
+        final String masksPath;
+        final List<ModelInfo> models;
+        final Map<Integer, String> photoPaths;
+
+        FrameSummary(String thumbnailsPath, String masksPath, List<ModelInfo> models, Map<Integer, String> photoPaths)
+        {
+            this.thumbnailsPath = thumbnailsPath;
+            this.masksPath = masksPath;
+            this.models = Collections.unmodifiableList(models);
+            this.photoPaths = Collections.unmodifiableMap(photoPaths);
+        }
+    }
+
+    /**
+     * The contents of a chunk's doc.xml that are needed for import, along with its first frame if it could be read.
+     */
+    public static final class ChunkSummary
+    {
+        private final String label;
+        private final String activeModelID;
+        private final String framePath;
+        private final List<ModelInfo> models;
+        private final List<MetashapeCamera> cameras;
+        private FrameSummary frame;
+
+        private ChunkSummary(String label, String activeModelID, String framePath,
+            List<ModelInfo> models, List<MetashapeCamera> cameras)
+        {
+            this.label = label;
+            this.activeModelID = activeModelID;
+            this.framePath = framePath;
+            this.models = Collections.unmodifiableList(models);
+            this.cameras = Collections.unmodifiableList(cameras);
+        }
+
+        /**
+         * @return The chunk label, or an empty string if the chunk doesn't have one.
+         */
+        public String getLabel()
+        {
+            return label;
+        }
+
+        /**
+         * @return All the cameras in the chunk, enabled or not, in document order.
+         */
+        public List<MetashapeCamera> getCameras()
+        {
+            return cameras;
+        }
+
+        String getActiveModelID()
+        {
+            return activeModelID;
+        }
+
+        String getFramePath()
+        {
+            return framePath;
+        }
+
+        List<ModelInfo> getModels()
+        {
+            return models;
+        }
+
+        /**
+         * @return The first frame of the chunk, or null if there is none or it couldn't be read.
+         */
+        FrameSummary getFrame()
+        {
+            return frame;
+        }
+    }
+
+    private static final class CachedChunk
+    {
+        final long psxModified;
+        final long chunkModified;
+        final long chunkLength;
+        final File frameZip;
+        final long frameModified;
+        final long frameLength;
+        final ChunkSummary summary;
+
+        CachedChunk(File psxFile, File chunkZip, File frameZip, ChunkSummary summary)
+        {
+            this.psxModified = psxFile.lastModified();
+            this.chunkModified = chunkZip.lastModified();
+            this.chunkLength = chunkZip.length();
+            this.frameZip = frameZip;
+            this.frameModified = frameZip == null ? 0 : frameZip.lastModified();
+            this.frameLength = frameZip == null ? 0 : frameZip.length();
+            this.summary = summary;
+        }
+
+        boolean isCurrent(File psxFile, File chunkZip)
+        {
+            return psxModified == psxFile.lastModified()
+                && chunkModified == chunkZip.lastModified() && chunkLength == chunkZip.length()
+                && (frameZip == null || frameModified == frameZip.lastModified() && frameLength == frameZip.length());
+        }
+    }
+
+    /**
+     * Reads the list of chunks from a project archive.
+     * @param projectZip The project.zip file.
+     * @return The summary of the project.
+     * @throws IOException If the archive could not be read or its document is malformed.
+     */
+    static ProjectSummary readProject(File projectZip) throws IOException
+    {
+        try (ZipFile zip = new ZipFile(projectZip);
+            InputStream stream = openFirstXmlEntry(zip, projectZip))
+        {
+            XMLStreamReader reader = createReader(stream);
+            try
+            {
+                String activeChunkID = null;
+                List<ChunkReference> chunks = new ArrayList<>(4);
+
+                while (reader.hasNext())
+                {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT)
+                    {
+                        switch (reader.getLocalName())
+                        {
+                            case "chunks":
+                                if (activeChunkID == null)
+                                {
+                                    activeChunkID = attribute(reader, "active_id");
+                                }
+                                break;
+                            case "chunk":
+                                chunks.add(new ChunkReference(attribute(reader, "id"), attribute(reader, "path")));
+                                break;
+                            default:
+                                break;
+                        }
+                    }
+                }
+
+                return new ProjectSummary(activeChunkID, chunks);
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (XMLStreamException e)
+        {
+            throw new IOException(MessageFormat.format("Malformed project document in {0}", projectZip), e);
+        }
+    }
+
+    /**
+     * Reads a chunk archive along with its first frame archive, reusing a cached summary if neither archive
+     * nor the project file have been modified since it was read.
+     * A frame archive that can't be read is logged and left out of the summary rather than failing the whole chunk.
+     * @param psxFile The project file, whose modification time invalidates cached summaries.
+     * @param chunkZip The chunk.zip file.
+     * @return The summary of the chunk.
+     * @throws IOException If the chunk archive could not be read or its document is malformed.
+     */
+    static ChunkSummary readChunk(File psxFile, File chunkZip) throws IOException
+    {
+        File cacheKey = chunkZip.getAbsoluteFile();
+
+        synchronized (CHUNK_CACHE)
+        {
+            CachedChunk cached = CHUNK_CACHE.get(cacheKey);
+            if (cached != null && cached.isCurrent(psxFile, chunkZip))
+            {
+                LOG.info("Using cached summary of {}", chunkZip);
+                return cached.summary;
+            }
+        }
+
+        LOG.info("Reading {}", chunkZip);
+        ChunkSummary summary;
+        try (ZipFile zip = new ZipFile(chunkZip);
+            InputStream stream = openFirstXmlEntry(zip, chunkZip))
+        {
+            summary = readChunkDocument(stream);
+        }
+        catch (XMLStreamException e)
+        {
+            throw new IOException(MessageFormat.format("Malformed chunk document in {0}", chunkZip), e);
+        }
+
+        File frameZip = null;
+        if (summary.framePath != null && !summary.framePath.isBlank())
+        {
+            frameZip = new File(chunkZip.getAbsoluteFile().getParentFile(), summary.framePath);
+            try
+            {
+                summary.frame = readFrame(frameZip);
+            }
+            catch (IOException e)
+            {
+                LOG.error("An error occurred loading frame.xml for Metashape chunk:", e);
+            }
+        }
+
+        synchronized (CHUNK_CACHE)
+        {
+            CHUNK_CACHE.put(cacheKey, new CachedChunk(psxFile, chunkZip, frameZip, summary));
+        }
+
+        return summary;
+    }
+
+    /**
+     * Reads an uncompressed chunk document, such as the cameras file exported by Metashape.
+     * Frames referenced by the document are not read.
+     * @param xmlFile The XML file.
+     * @return The summary of the chunk.
+     * @throws IOException If the file could not be read or is malformed.
+     */
+    public static ChunkSummary readChunkDocument(File xmlFile) throws IOException
+    {
+        try (InputStream stream = new BufferedInputStream(new FileInputStream(xmlFile)))
+        {
+            return readChunkDocument(stream);
+        }
+        catch (XMLStreamException e)
+        {
+            throw new IOException(MessageFormat.format("Malformed chunk document: {0}", xmlFile), e);
+        }
+    }
+
+    private static ChunkSummary readChunkDocument(InputStream stream) throws XMLStreamException
+    {
+        XMLStreamReader reader = createReader(stream);
+        try
+        {
+            String label = null;
+            String activeModelID = null;
+            String framePath = null;
+            List<ModelInfo> models = new ArrayList<>(4);
+            List<MetashapeCamera> cameras = new ArrayList<>(256);
+
+            Deque<String> elementStack = new ArrayDeque<>(16);
+            String groupLabel = null;
+
+            while (reader.hasNext())
+            {
+                switch (reader.next())
+                {
+                    case XMLStreamConstants.START_ELEMENT:
+                    {
+                        String parent = elementStack.peek();
+                        String name = reader.getLocalName();
+                        elementStack.push(name);
+
+                        switch (name)
+                        {
+                            case "chunk":
+                                if (label == null)
+                                {
+                                    label = attribute(reader, "label");
+                                }
+                                break;
+                            case "group":
+                                groupLabel = attribute(reader, "label");
+                                break;
+                            case "camera":
+                            {
+                                String enabled = attribute(reader, "enabled");
+                                cameras.add(new MetashapeCamera(
+                                    parseCameraID(attribute(reader, "id")),
+                                    attribute(reader, "label"),
+                                    "true".equals(enabled) || "1".equals(enabled) || enabled.isEmpty(),
+                                    "group".equals(parent) ? groupLabel : null));
+                                break;
+                            }
+                            case "frame":
+                                if (framePath == null)
+                                {
+                                    framePath = attribute(reader, "path");
+                                }
+                                break;
+                            case "models":
+                                if (activeModelID == null)
+                                {
+                                    activeModelID = attribute(reader, "active_id");
+                                }
+                                break;
+                            case "model":
+                                models.add(readModel(reader));
+                                break;
+                            default:
+                                break;
+                        }
+                        break;
+                    }
+                    case XMLStreamConstants.END_ELEMENT:
+                        if ("group".equals(elementStack.pop()))
+                        {
+                            groupLabel = null;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            return new ChunkSummary(label == null ? "" : label, activeModelID, framePath, models, cameras);
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    private static FrameSummary readFrame(File frameZip) throws IOException
+    {
+        try (ZipFile zip = new ZipFile(frameZip);
+            InputStream stream = openFirstXmlEntry(zip, frameZip))
+        {
+            XMLStreamReader reader = createReader(stream);
+            try
+            {
+                String thumbnailsPath = null;
+                String masksPath = null;
+                List<ModelInfo> models = new ArrayList<>(4);
+                Map<Integer, String> photoPaths = new LinkedHashMap<>(256);
+
+                Integer cameraID = null; // set while within a <camera> tag until its first <photo> has been read
+
+                while (reader.hasNext())
+                {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT)
+                    {
+                        switch (reader.getLocalName())
+                        {
+                            case "camera":
+                                cameraID = Integer.parseInt(attribute(reader, "camera_id"));
+                                break;
+                            case "photo":
+                                if (cameraID != null)
+                                {
+                                    photoPaths.put(cameraID, attribute(reader, "path"));
+                                    cameraID = null;
+                                }
+                                break;
+                            case "thumbnails":
+                                if (thumbnailsPath == null)
+                                {
+                                    thumbnailsPath = attribute(reader, "path");
+                                }
+                                break;
+                            case "masks":
+                                if (masksPath == null)
+                                {
+                                    masksPath = attribute(reader, "path");
+                                }
+                                break;
+                            case "model":
+                                models.add(readModel(reader));
+                                break;
+                            default:
+                                break;
+                        }
+                    }
+                    else if (event == XMLStreamConstants.END_ELEMENT && "camera".equals(reader.getLocalName()))
+                    {
+                        cameraID = null;
+                    }
+                }
+
+                return new FrameSummary(thumbnailsPath, masksPath, models, photoPaths);
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (XMLStreamException | NumberFormatException e)
+        {
+            throw new IOException(MessageFormat.format("Malformed frame document in {0}", frameZip), e);
+        }
+    }
+
+    /**
+     * Reads mask paths from a Metashape masks archive's {@code doc.xml}, keyed by camera ID.
+     *
+     * @param masksZip The masks zip to inspect.
+     * @return A camera-ID → mask path map containing one entry per {@code <mask>} element in the document.
+     * @throws IOException If the archive could not be read or its document is malformed.
+     */
+    public static Map<Integer, String> readMaskPaths(File masksZip) throws IOException
+    {
+        try (ZipFile zip = new ZipFile(masksZip))
+        {
+            ZipEntry entry = zip.getEntry("doc.xml");
+            if (entry == null)
+            {
+                throw new FileNotFoundException(MessageFormat.format("Could not find file doc.xml in zip {0}", masksZip));
+            }
+
+            try (InputStream stream = new BufferedInputStream(zip.getInputStream(entry)))
+            {
+                XMLStreamReader reader = createReader(stream);
+                try
+                {
+                    Map<Integer, String> maskPaths = new HashMap<>(256);
+                    while (reader.hasNext())
+                    {
+                        if (reader.next() == XMLStreamConstants.START_ELEMENT && "mask".equals(reader.getLocalName()))
+                        {
+                            maskPaths.put(Integer.parseInt(attribute(reader, "camera_id")), attribute(reader, "path"));
+                        }
+                    }
+                    return maskPaths;
+                }
+                finally
+                {
+                    reader.close();
+                }
+            }
+        }
+        catch (XMLStreamException | NumberFormatException e)
+        {
+            throw new IOException(MessageFormat.format("Malformed masks document in {0}", masksZip), e);
+        }
+    }
+
+    /**
+     * Opens the first XML entry in a zip file, which is where Metashape puts the archive's document.
+     */
+    private static InputStream openFirstXmlEntry(ZipFile zip, File zipFile) throws IOException
+    {
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements())
+        {
+            ZipEntry entry = entries.nextElement();
+            if (entry.getName().endsWith(".xml"))
+            {
+                return new BufferedInputStream(zip.getInputStream(entry));
+            }
+        }
+
+        throw new FileNotFoundException(MessageFormat.format("Could not find an XML document in zip {0}", zipFile));
+    }
+
+    private static XMLStreamReader createReader(InputStream stream) throws XMLStreamException
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+
+        // Project documents never need a DTD; don't resolve anything outside the archive.
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        return factory.createXMLStreamReader(stream);
+    }
+
+    private static ModelInfo readModel(XMLStreamReader reader)
+    {
+        return new ModelInfo(attribute(reader, "id"), attribute(reader, "label"), attribute(reader, "path"));
+    }
+
+    private static int parseCameraID(String id)
+    {
+        if (id.isBlank())
+        {
+            return -1;
+        }
+
+        try
+        {
+            return Integer.parseInt(id);
+        }
+        catch (NumberFormatException e)
+        {
+            LOG.warn("Failed to parse camera id.", e);
+            return -1;
+        }
+    }
+
+    /**
+     * Gets an attribute of the current element, or an empty string if it's missing (like {@link org.w3c.dom.Element#getAttribute}).
+     */
+    private static String attribute(XMLStreamReader reader, String name)
+    {
+        String value = reader.getAttributeValue(null, name);
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.builder.io.metashape;
+
+/**
+ * A camera listed in a Metashape chunk document, with just the information needed for view selection.
+ */
+public final class MetashapeCamera
+{
+    private final int id;
+    private final String label;
+    private final boolean enabled;
+    private final String group;
+
+    MetashapeCamera(int id, String label, boolean enabled, String group)
+    {
+        this.id = id;
+        this.label = label;
+        this.enabled = enabled;
+        this.group = group;
+    }
+
+    /**
+     * @return The camera ID, or -1 if the camera has none.
+     */
+    public int getId()
+    {
+        return id;
+    }
+
+    /**
+     * @return The camera label, which is usually the image file name (possibly with a relative path); never null.
+     */
+    public String getLabel()
+    {
+        return label;
+    }
+
+    /**
+     * @return Whether the camera is enabled; cameras are enabled unless Metashape says otherwise.
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * @return The label of the camera group containing this camera, or null if it is not in a group.
+     */
+    public String getGroup()
+    {
+        return group;
+    }
+}
@@ -17,16 +17,13 @@ import kintsugi3d.util.ImageFinder;
 import kintsugi3d.util.UnzipHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.stream.Collectors;
 
 
 public final class MetashapeChunk
@@ -37,8 +34,7 @@ public final class MetashapeChunk
     private final String label;
     private int id;//TODO: is this optional?
 
-    private Document chunkXML;
-    private Document frameXML;
+    private MetashapeArchiveReader.ChunkSummary summary;
 
     private List<MetashapeModel> models = new ArrayList<>(8);
     private Optional<Integer> defaultModelID;
@@ -47,82 +43,56 @@ public final class MetashapeChunk
     private File masksDir = null;
     private File masksDirOverride = null;
 
-    public static MetashapeChunk parseFromElement(MetashapeDocument document, Element chunkElement) throws IOException
+    static MetashapeChunk parse(MetashapeDocument document, MetashapeArchiveReader.ChunkReference reference) throws IOException
     {
         Optional<Integer> chunkID = Optional.empty();
-        String tempChunkID = chunkElement.getAttribute("id");
-        if (!tempChunkID.isBlank())
+        if (!reference.id.isBlank())
         {
-            chunkID = Optional.of(Integer.parseInt(tempChunkID));
+            chunkID = Optional.of(Integer.parseInt(reference.id));
         }
 
-        String chunkZipPath = chunkElement.getAttribute("path"); //gives xx/chunk.zip where xx is a number
-
+        //reference path gives xx/chunk.zip where xx is a number
         //append this path to the psxFilePath (without ".psx" at the end)
-        chunkZipPath = new File(new File(document.getPSXPathBase() + ".files"), chunkZipPath).getPath();
+        File chunkZip = new File(new File(document.getPSXPathBase() + ".files"), reference.path);
 
-        //fullChunkDocument has info about chunk name, cameras, images, etc.
-        Document fullChunkDocument = UnzipHelper.unzipToDocument(new File(chunkZipPath));
+        //summary has info about chunk name, cameras, models, etc., as well as frame 0 from frame.zip
+        MetashapeArchiveReader.ChunkSummary summary = MetashapeArchiveReader.readChunk(document.getPsxFile(), chunkZip);
 
         //get default model id if the chunk has one
         Optional<Integer> defaultModelID = Optional.empty();
         try
         {
-            Element modelsElem = (Element) fullChunkDocument.getElementsByTagName("models").item(0);
-            defaultModelID = Optional.of(Integer.parseInt(modelsElem.getAttribute("active_id")));
+            defaultModelID = Optional.of(Integer.parseInt(summary.getActiveModelID()));
         }
-        catch (NumberFormatException | NullPointerException e)
+        catch (NumberFormatException e)
         {
             LOG.warn("Could not find active id for {}", document.getPsxFilePath(), e);
         }
 
-        //only one chunk in this inner chunk document, so no need for a for loop
-        Element fullChunkElement = (Element) fullChunkDocument.getElementsByTagName("chunk").item(0);
-
-        Optional<String> chunkName = Optional.of(fullChunkElement.getAttribute("label"));
+        Optional<String> chunkName = Optional.of(summary.getLabel());
         if (chunkName.get().isBlank())
         {
             chunkName = Optional.empty();
         }
 
-        //unzip frame.zip, use frame 0 by default
-        NodeList frames = fullChunkDocument.getElementsByTagName("frame");
-        String frameZipPath = "";
-        if (frames.getLength() > 0)
-        {
-            Element frameElem = (Element) frames.item(0);
-            String subPath = frameElem.getAttribute("path");
-            frameZipPath = new File(new File(chunkZipPath).getParent(), subPath).getAbsolutePath();
-        }
-
-        Document frameXML = null;
-        try
-        {
-            frameXML = UnzipHelper.unzipToDocument(new File(frameZipPath));
-        }
-        catch (IOException e)
-        {
-            LOG.error("An error occurred loading frame.xml for Metashape chunk:", e);
-        }
-
         MetashapeChunk returned = new MetashapeChunk(chunkName.orElse(null), document)
-            .setChunkXml(fullChunkDocument)
-            .setFrameXml(frameXML)
+            .setSummary(summary)
             .setChunkID(chunkID)
             .setDefaultModelID(defaultModelID);
 
-        NodeList modelList = fullChunkDocument.getElementsByTagName("model");
-        List<MetashapeModel> models = new ArrayList<>(modelList.getLength());
+        List<MetashapeArchiveReader.ModelInfo> modelList = summary.getModels();
+        List<MetashapeModel> models = new ArrayList<>(modelList.size());
 
-        if (frameXML != null)
+        MetashapeArchiveReader.FrameSummary frame = summary.getFrame();
+        if (frame != null)
         {
+            //paths in frame.xml are relative to frame.zip's parent directory
+            File frameDirectory = new File(chunkZip.getParentFile(), summary.getFramePath()).getParentFile();
+
             //parse thumbnail info
-            NodeList thumbnails = frameXML.getElementsByTagName("thumbnails");
-            if (thumbnails.getLength() > 0)
+            if (frame.thumbnailsPath != null)
             {
-                Element thumbnailsElem = (Element) thumbnails.item(0);
-                //thumbnails path is relative to frame.zip's parent directory
-                File thumbnailsDir = new File(new File(frameZipPath).getParent(), thumbnailsElem.getAttribute("path"));
+                File thumbnailsDir = new File(frameDirectory, frame.thumbnailsPath);
                 if (thumbnailsDir.exists())
                 {
                     returned.thumbnailsDir = thumbnailsDir;
@@ -130,38 +100,28 @@ public final class MetashapeChunk
             }
 
             //parse mask info
-            NodeList masks = frameXML.getElementsByTagName("masks");
-            if (masks.getLength() > 0)
+            if (frame.masksPath != null)
             {
-                Element masksElem = (Element) masks.item(0);
-                //masks path is relative to frame.zip's parent directory
-                File masksDir = new File(new File(frameZipPath).getParent(), masksElem.getAttribute("path"));
+                File masksDir = new File(frameDirectory, frame.masksPath);
                 if (masksDir.exists())
                 {
                     returned.masksDir = masksDir;
                 }
             }
 
-            //if model list is empty, then there is likely a single model listed in frameXml
-            if (modelList.getLength() == 0)
+            //if model list is empty, then there is likely a single model listed in frame.xml
+            if (modelList.isEmpty() && !frame.models.isEmpty())
             {
-                NodeList modelNodeList = frameXML.getElementsByTagName("model");
-                Element modelElem = (Element) modelNodeList.item(0);
-
-                if (modelElem != null)
-                {
-                    MetashapeModel model = MetashapeModel.parseFromElement(returned, modelElem);
-                    returned.currModel = model;
-                    models.add(model);
-                }
+                MetashapeModel model = MetashapeModel.parse(returned, frame.models.get(0));
+                returned.currModel = model;
+                models.add(model);
             }
         }
 
         boolean defaultIdNotFound = true;
-        for (int i = 0; i < modelList.getLength(); ++i)
+        for (MetashapeArchiveReader.ModelInfo modelInfo : modelList)
         {
-            Element elem = (Element) modelList.item(i);
-            MetashapeModel model = MetashapeModel.parseFromElement(returned, elem);
+            MetashapeModel model = MetashapeModel.parse(returned, modelInfo);
             if (model.getId().isPresent() && model.getId().equals(defaultModelID))
             {
                 returned.currModel = model;
@@ -212,15 +172,9 @@ public final class MetashapeChunk
         return this;
     }
 
-    private MetashapeChunk setFrameXml(Document frameXML)
+    private MetashapeChunk setSummary(MetashapeArchiveReader.ChunkSummary summary)
     {
-        this.frameXML = frameXML;
-        return this;
-    }
-
-    private MetashapeChunk setChunkXml(Document doc)
-    {
-        this.chunkXML = doc;
+        this.summary = summary;
         return this;
     }
 
@@ -229,9 +183,13 @@ public final class MetashapeChunk
         this.models = models;
     }
 
-    public Document getFrameXML()
+    /**
+     * @return The models listed in frame 0, or an empty list if the frame couldn't be read.
+     */
+    List<MetashapeArchiveReader.ModelInfo> getFrameModels()
     {
-        return frameXML;
+        MetashapeArchiveReader.FrameSummary frame = summary.getFrame();
+        return frame == null ? List.of() : frame.models;
     }
 
     public String getChunkDirectoryPath()
@@ -273,38 +231,16 @@ public final class MetashapeChunk
         return UnzipHelper.unzipImagesToMap(thumbnailsDir);
     }
 
-    public List<Element> findChunkXmlCameras()
+    public List<MetashapeCamera> getCameras()
     {
-        NodeList cams = this.chunkXML.getElementsByTagName("camera");
-        List<Element> cameras = new ArrayList<>(cams.getLength());
-        for (int i = 0; i < cams.getLength(); ++i)
-        {
-            Node camera = cams.item(i);
-            if (camera.getNodeType() == Node.ELEMENT_NODE)
-            {
-                cameras.add((Element) camera);
-            }
-        }
-        return cameras;
+        return summary.getCameras();
     }
 
-    public List<Element> findEnabledCameras()
+    public List<MetashapeCamera> findEnabledCameras()
     {
-        Collection<Element> cams = findChunkXmlCameras();
-        List<Element> enabledCams = new ArrayList<>(cams.size());
-
-        for (Element cam : cams)
-        {
-            String enabled = cam.getAttribute("enabled");
-
-            if ("true".equals(enabled) ||
-                "1".equals(enabled) ||
-                enabled.isEmpty() /*cam is enabled by default*/)
-            {
-                enabledCams.add(cam);
-            }
-        }
-        return enabledCams;
+        return summary.getCameras().stream()
+            .filter(MetashapeCamera::isEnabled)
+            .collect(Collectors.toUnmodifiableList());
     }
 
     public Map<Integer, String> buildCameraPathsMap(boolean useRelativePaths, Collection<File> disabledImageFiles)
@@ -318,16 +254,13 @@ public final class MetashapeChunk
 
         Map<Integer, String> cameraPathsMap = new HashMap<>(128);
 
-        // Open the xml files that contains all the cameras' ids and file paths
-        if (frameXML == null || frameXML.getDocumentElement() == null)
+        // frame.xml contains all the cameras' ids and file paths
+        MetashapeArchiveReader.FrameSummary frame = summary.getFrame();
+        if (frame == null)
         {
             throw new FileNotFoundException("No frame document found");
         }
 
-        // Loop through the cameras and store each pair of id and path in the map
-        NodeList cameraList = ((Element) frameXML.getElementsByTagName("frame").item(0))
-            .getElementsByTagName("camera");
-
         List<File> missingFiles = new ArrayList<>(8);
         File fullResOverride = this.getSelectedModel().getLoadPreferences().getFullResOverride();
         File fullResSearchDirectory = fullResOverride == null ?
@@ -338,10 +271,10 @@ public final class MetashapeChunk
 
         File exceptionFolder = null;
 
-        for (int i = 0; i < cameraList.getLength(); i++)
+        // Loop through the cameras and store each pair of id and path in the map
+        for (Map.Entry<Integer, String> photo : frame.photoPaths.entrySet())
         {
-            Element cameraElement = (Element) cameraList.item(i);
-            int cameraId = Integer.parseInt(cameraElement.getAttribute("camera_id"));
+            int cameraId = photo.getKey();
 
             // TODO: Doesn't work because frame.xml doesn't have enabled/disabled or sensor_id info
 //            String enabled = cameraElement.getAttribute("enabled");
@@ -350,7 +283,7 @@ public final class MetashapeChunk
 //            if ((enabled.isEmpty() || "true".equals(enabled) || "1".equals(enabled)) && !sensorID.isEmpty()) // skip disabled or uncalibrated images
 //            {
 
-            String pathAttribute = ((Element) cameraElement.getElementsByTagName("photo").item(0)).getAttribute("path");
+            String pathAttribute = photo.getValue();
 
             // Resolve directory override if present and search for variant file extensions
             File imageFile;
@@ -11,12 +11,10 @@
 
 package kintsugi3d.builder.io.metashape;
 
-import kintsugi3d.util.UnzipHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
@@ -36,7 +34,7 @@ public class MetashapeDocument
 
     private final String psxFilePath;
 
-    private List<MetashapeChunk> chunks;
+    private List<MetashapeChunk> chunks = List.of();
 
     private int activeChunkID;
 
@@ -70,30 +68,17 @@ public class MetashapeDocument
             documentPathInfo = documentPathInfo.substring(13);
             documentPathInfo = String.format("%s%s", getPSXPathBase(), documentPathInfo);
 
-            //extract project.zip and open the doc.xml
-            Document projectZipXML = UnzipHelper.unzipToDocument(new File(documentPathInfo));
-
-            if (projectZipXML == null)
-            {
-                return;
-            }
+            //extract project.zip and read the doc.xml
+            MetashapeArchiveReader.ProjectSummary project = MetashapeArchiveReader.readProject(new File(documentPathInfo));
 
             //set active chunk id if the project has one
-            NodeList chunksWrapper = projectZipXML.getElementsByTagName("chunks");
-            if (chunksWrapper.getLength() > 0)
+            if (project.activeChunkID != null && !project.activeChunkID.isBlank())
             {
-                Element chunkWrapperElem = (Element) chunksWrapper.item(0);
-                String activeID = chunkWrapperElem.getAttribute("active_id");
-                if (!activeID.isBlank())
-                {
-                    activeChunkID = Integer.parseInt(activeID);
-                }
+                activeChunkID = Integer.parseInt(project.activeChunkID);
             }
 
-            //find the chunks and open the .zip for each chunk
-            NodeList chunkList = projectZipXML.getElementsByTagName("chunk");
-
-            loadChunks(chunkList);
+            //open the .zip for each chunk
+            loadChunks(project.chunks);
         }
         catch (ParserConfigurationException | IOException | SAXException e)
         {
@@ -119,24 +104,17 @@ public class MetashapeDocument
         return psxFilePath.substring(0, psxFilePath.length() - 4);
     }
 
-    private void loadChunks(NodeList chunkList) throws IOException
+    private void loadChunks(List<MetashapeArchiveReader.ChunkReference> chunkList) throws IOException
     {
-        chunks = new ArrayList<>(chunkList.getLength());
-        for (int i = 0; i < chunkList.getLength(); ++i)
+        chunks = new ArrayList<>(chunkList.size());
+        for (MetashapeArchiveReader.ChunkReference chunkReference : chunkList)
         {
-            Node chunkNode = chunkList.item(i);
+            MetashapeChunk chunk = MetashapeChunk.parse(this, chunkReference);
+            chunks.add(chunk);
 
-            if (chunkNode.getNodeType() == Node.ELEMENT_NODE)
+            if (chunk.getID().equals(activeChunkID))
             {
-                Element chunkElement = (Element) chunkNode;
-
-                MetashapeChunk chunk = MetashapeChunk.parseFromElement(this, chunkElement);
-                chunks.add(chunk);
-
-                if (chunk.getID().equals(activeChunkID))
-                {
-                    selectChunk(chunk.getLabel());
-                }
+                selectChunk(chunk.getLabel());
             }
         }
     }
@@ -13,8 +13,6 @@ package kintsugi3d.builder.io.metashape;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
 import java.util.*;
 
@@ -36,13 +34,13 @@ public class MetashapeModel
         this.chunk = chunk;
     }
 
-    public static MetashapeModel parseFromElement(MetashapeChunk chunk, Element elem)
+    static MetashapeModel parse(MetashapeChunk chunk, MetashapeArchiveReader.ModelInfo modelInfo)
     {
         Optional<Integer> modelID = Optional.empty();
         String tempLabel = null;
         try
         {
-            modelID = Optional.of(Integer.parseInt(elem.getAttribute("id")));
+            modelID = Optional.of(Integer.parseInt(modelInfo.id));
         }
         catch (NumberFormatException nfe)
         {
@@ -51,7 +49,7 @@ public class MetashapeModel
 
         try
         {
-            tempLabel = elem.getAttribute("label");
+            tempLabel = modelInfo.label;
         }
         catch (NumberFormatException nfe)
         {
@@ -65,35 +63,27 @@ public class MetashapeModel
 
     private static String findModelPath(MetashapeChunk chunk, Optional<Integer> modelID)
     {
-        try
-        {
-            NodeList elems = ((Element) chunk.getFrameXML()
-                .getElementsByTagName("frame").item(0))
-                .getElementsByTagName("model");
+        List<MetashapeArchiveReader.ModelInfo> frameModels = chunk.getFrameModels();
 
-            //this if statement triggers if chunk has one model and that model has no id
-            if (elems.getLength() == 1 &&
-                ((Element) elems.item(0)).getAttribute("id").isEmpty())
-            {
-                return ((Element) elems.item(0)).getAttribute("path");
-            }
+        //this if statement triggers if chunk has one model and that model has no id
+        if (frameModels.size() == 1 && frameModels.get(0).id.isEmpty())
+        {
+            return frameModels.get(0).path;
+        }
 
-            //now we check to see if id's match
-            for (int i = 0; i < elems.getLength(); i++)
+        //now we check to see if id's match
+        if (modelID.isPresent())
+        {
+            for (MetashapeArchiveReader.ModelInfo frameModel : frameModels)
             {
-                Element element = (Element) elems.item(i);
-
-                if (Objects.equals(element.getAttribute("id"), String.valueOf(modelID.get())))
+                if (Objects.equals(frameModel.id, String.valueOf(modelID.get())))
                 {
-                    return element.getAttribute("path");
+                    return frameModel.path;
                 }
             }
-
-        }
-        catch (NullPointerException e)
-        {
-            //ignore, no path was found
         }
+
+        //no path was found
         return "";
     }
 
@@ -12,27 +12,20 @@
 package kintsugi3d.builder.io.primaryview;
 
 import javafx.scene.image.Image;
+import kintsugi3d.builder.io.metashape.MetashapeArchiveReader;
+import kintsugi3d.builder.io.metashape.MetashapeCamera;
 import kintsugi3d.builder.io.metashape.MetashapeChunk;
 import kintsugi3d.builder.io.metashape.MetashapeModel;
 import kintsugi3d.builder.resources.project.MissingImagesException;
 import kintsugi3d.util.ImageFinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 public final class MetashapeViewSelectionModel implements ViewSelectionModel
@@ -40,7 +33,7 @@ public final class MetashapeViewSelectionModel implements ViewSelectionModel
     private static final Logger LOG = LoggerFactory.getLogger(MetashapeViewSelectionModel.class);
     private final String chunkName;
     private final List<View> views;
-    private final List<Element> cameras;
+    private final List<MetashapeCamera> cameras;
     private File fullResSearchDir;
 
     private final Map<Integer, String> cameraIdToFullRes;
@@ -48,32 +41,18 @@ public final class MetashapeViewSelectionModel implements ViewSelectionModel
 
     //custom import path
     public MetashapeViewSelectionModel(File cameraFile, File fullResSearchDir, Collection<File> disabledImageFiles)
-            throws ParserConfigurationException, IOException, SAXException, MissingImagesException
+            throws IOException, MissingImagesException
     {
         this.fullResSearchDir = fullResSearchDir;
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder;
-        builder = factory.newDocumentBuilder();
 
-        Document cameraDocument = builder.parse(cameraFile);
+        MetashapeArchiveReader.ChunkSummary chunk = MetashapeArchiveReader.readChunkDocument(cameraFile);
 
         //get chunk name
-        Element chunkElem = (Element) cameraDocument.getElementsByTagName("chunk").item(0);
-        chunkName = chunkElem.getAttribute("label");
+        chunkName = chunk.getLabel();
 
         //get enabled cameras
-        NodeList cameraNodes = cameraDocument.getElementsByTagName("camera");
-
-        cameras = IntStream.range(0, cameraNodes.getLength())
-            .mapToObj(cameraNodes::item)
-            .filter(camera -> camera.getNodeType() == Node.ELEMENT_NODE)
-            .map(camera -> (Element) camera)
-            .collect(Collectors.toUnmodifiableList());
-
-        views = getViews(IntStream.range(0, cameraNodes.getLength())
-            .mapToObj(cameraNodes::item)
-            .filter(camera -> camera.getNodeType() == Node.ELEMENT_NODE)
-            .map(camera -> (Element) camera));
+        cameras = chunk.getCameras();
+        views = getViews(cameras.stream());
 
         //prev-res images haven't been generated and no thumbnails are present,
         //so leave thumbnails list empty
@@ -137,33 +116,24 @@ public final class MetashapeViewSelectionModel implements ViewSelectionModel
     {
         //find the camera (in chunk.xml) which holds the desired image
         //may have slightly different label from imageName --> "Processed\img123.jpg" vs. "img123.jpg"
-        Element selectedItemCam = findTargetCamera(imageName);
+        MetashapeCamera selectedItemCam = findTargetCamera(imageName);
         if (selectedItemCam == null)
         {
             return Optional.empty();
         }
 
         //hopefully the camera is in the camera paths map and we don't really have to do much work
-        String selectedCamId = selectedItemCam.getAttribute("id");
-        if (!selectedCamId.isBlank())
+        if (selectedItemCam.getId() != -1)
         {
-            try
-            {
-                int id = Integer.parseInt(selectedCamId);
-                String path = cameraIdToFullRes.get(id);
-                if (path != null)
-                {
-                    return Optional.of(path);
-                }
-            }
-            catch (NumberFormatException nfe)
+            String path = cameraIdToFullRes.get(selectedItemCam.getId());
+            if (path != null)
             {
-                LOG.warn("Failed to parse camera id.", nfe);
+                return Optional.of(path);
             }
         }
 
         //need full label to find img path
-        String pathAttribute = selectedItemCam.getAttribute("label");
+        String pathAttribute = selectedItemCam.getLabel();
         String pathAttributeName = new File(pathAttribute).getName();
         File imageFile = new File(fullResSearchDir, pathAttributeName);
 
@@ -203,40 +173,19 @@ public final class MetashapeViewSelectionModel implements ViewSelectionModel
         return Optional.empty();
     }
 
-    private static List<View> getViews(Stream<Element> cameras)
+    private static List<View> getViews(Stream<MetashapeCamera> cameras)
     {
         return cameras
-            .filter(camera ->
-            {
-                String enabled = camera.getAttribute("enabled");
-                return "true".equals(enabled) ||
-                    "1".equals(enabled) ||
-                    enabled.isEmpty(); /*cam is enabled by default*/
-            })
-            .map(camera ->
-            {
-                Element parent = (Element) camera.getParentNode();
-                String label = camera.getAttribute("label");
-                String id = camera.getAttribute("id");
-                int parsedId = id.isBlank() ? -1 : Integer.parseInt(id);
-
-                if ("group".equals(parent.getTagName())) // (either a group or the root node)
-                {
-                    return new View(label, parsedId, parent.getAttribute("label"));
-                }
-                else
-                {
-                    return new View(label, parsedId, null);
-                }
-            })
+            .filter(MetashapeCamera::isEnabled)
+            .map(camera -> new View(camera.getLabel(), camera.getId(), camera.getGroup())) // (group is null if not in a group)
             .collect(Collectors.toUnmodifiableList());
     }
 
-    private Element findTargetCamera(String imageName)
+    private MetashapeCamera findTargetCamera(String imageName)
     {
-        for (Element camera : cameras)
+        for (MetashapeCamera camera : cameras)
         {
-            if (camera.getAttribute("label").matches(".*" + imageName + ".*"))
+            if (camera.getLabel().matches(".*" + imageName + ".*"))
             {
                 return camera;
             }
@@ -26,6 +26,7 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.FloatBuffer;
 import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
 import java.util.ArrayList;
@@ -45,14 +46,19 @@ public final class SpecularFitSerializer
 
     public static void saveWeightImages(int basisCount, int width, int height, SpecularBasisWeights basisWeights, File outputDirectory)
     {
+        float[] weights = new float[width * height];
+
         for (int b = 0; b < basisCount; b++)
         {
             BufferedImage weightImg = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
             int[] weightDataPacked = new int[width * height];
 
+            // Copy all the weights for this basis function at once.
+            basisWeights.copyWeights(b, 0, width * height, FloatBuffer.wrap(weights));
+
             for (int p = 0; p < width * height; p++)
             {
-                float weight = (float)basisWeights.getWeight(b, p);
+                float weight = weights[p];
 
                 // Flip vertically
                 int dataBufferIndex = p % width + width * (height - p / width - 1);
@@ -45,6 +45,8 @@ public class CacheSettingsController implements SystemSettingsControllerBase
     @FXML private TextField numGB;
     @FXML private TextField numRecent;
     @FXML private TextField numDays;
+    @FXML private CheckBox uncompressedFitCacheCheck;
+    @FXML private TextField nativeBufferPoolMB;
     @FXML private Label previewImageCacheLabel;
     @FXML private Label specularFitCacheLabel;
     @FXML private Label cacheSizeLabel;
@@ -92,6 +94,10 @@ public class CacheSettingsController implements SystemSettingsControllerBase
             new SafeNumberStringConverter(5));
         numDays.textProperty().bindBidirectional(injectedSettingsModel.getNumericProperty("fileAgeLimit"),
             new SafeNumberStringConverter(30));
+
+        uncompressedFitCacheCheck.selectedProperty().bindBidirectional(injectedSettingsModel.getBooleanProperty("uncompressedFitCacheEnabled"));
+        nativeBufferPoolMB.textProperty().bindBidirectional(injectedSettingsModel.getNumericProperty("nativeBufferPoolMB"),
+            new SafeNumberStringConverter(256));
     }
 
     @FXML private void openDirectory(MouseEvent e)
@@ -12,36 +12,56 @@
 package kintsugi3d.builder.javafx.controllers.modals.viewselect;
 
 import javafx.application.Platform;
-import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
 import kintsugi3d.builder.io.primaryview.ViewSelectionModel;
 import kintsugi3d.builder.javafx.util.ImageThreadable;
-import kintsugi3d.gl.util.ImageHelper;
+import kintsugi3d.builder.javafx.util.SubsampledImageCache;
 import kintsugi3d.util.ImageFinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Map;
 
+/**
+ * Loads the full resolution image for a view (subsampled to the size it will be displayed at) and shows it,
+ * or just loads it into the cache when prefetching.
+ * Meant to run on {@link SubsampledImageCache#submit(Runnable)} so that it can be cancelled when the selection moves on.
+ */
 class ImageSelectionThread implements Runnable
 {
     private static final Logger LOG = LoggerFactory.getLogger(ImageSelectionThread.class);
     private final String imageName;
     private final ViewSelectionModel model;
-    private final ImageThreadable imageThreadable;
+    private final ImageThreadable imageThreadable; // null if prefetching
+    private final Map<String, File> imageFileCache;
+    private final int targetSize;
     private volatile boolean stopRequested = false;
     private volatile boolean isRunning = false;
 
-    ImageSelectionThread(String imageName, ImageThreadable imgThreadable, ViewSelectionModel model)
+    ImageSelectionThread(String imageName, ImageThreadable imgThreadable, ViewSelectionModel model, int targetSize)
+    {
+        this(imageName, imgThreadable, imgThreadable.getImageFileCache(), model, targetSize);
+    }
+
+    private ImageSelectionThread(String imageName, ImageThreadable imgThreadable, Map<String, File> imageFileCache,
+        ViewSelectionModel model, int targetSize)
     {
         this.imageName = imageName;
         this.imageThreadable = imgThreadable;
+        this.imageFileCache = imageFileCache;
         this.model = model;
+        this.targetSize = targetSize;
+    }
+
+    /**
+     * Creates a task that loads an image into the cache without showing it.
+     */
+    static ImageSelectionThread prefetch(String imageName, Map<String, File> imageFileCache, ViewSelectionModel model, int targetSize)
+    {
+        return new ImageSelectionThread(imageName, null, imageFileCache, model, targetSize);
     }
 
     @Override
@@ -57,6 +77,15 @@ class ImageSelectionThread implements Runnable
         return isRunning;
     }
 
+    public String getImageName()
+    {
+        return imageName;
+    }
+
+    /**
+     * Prevents the image from being shown once loaded; the image will still be loaded into the cache unless
+     * the task is also cancelled.
+     */
     public void stopThread()
     {
         stopRequested = true;
@@ -64,79 +93,71 @@ class ImageSelectionThread implements Runnable
 
     private void loadFullResImg(String imageName)
     {
-        ImageView imgView = imageThreadable.getImageView();
-        Map<String, Image> imgCache = imageThreadable.getImageCache();
+        Image image = null;
 
-        Image image = null; //use cached img if possible
-        if (imgCache.containsKey(imageName))
-        {
-            image = imgCache.get(imageName);
-        }
-        else
+        try
         {
-            try
+            File imgFile = imageFileCache.get(imageName); //use previously found file if possible
+            if (imgFile == null)
             {
                 String path = model.findFullResImagePath(imageName).orElse("");
 
-                File imgFile;
                 try
                 {
                     imgFile = ImageFinder.getInstance().findImageFile(new File(path));
                 }
                 catch (FileNotFoundException ignored)
                 {
-                    imageThreadable.setImageViewText(imageThreadable.getImageViewText() +
-                        " (full res image not found)");
-                    return;
-                }
-
-                if (stopRequested)
-                {
-                    return;
-                }
-
-                // load image and masks if present
-                BufferedImage bufferedImage = ImageHelper.read(imgFile).getBufferedImage();
-
-                if (stopRequested)
-                {
-                    return;
-                }
-
-                image = SwingFXUtils.toFXImage(bufferedImage, null);
-
-                if (stopRequested)
-                {
+                    showNotFound();
                     return;
                 }
 
-                imgCache.put(imageName, image);
-            }
-            catch (IllegalArgumentException e)
-            {
-                // could not find image
-                imageThreadable.setImageViewText(
-                    imageThreadable.getImageViewText() + " (full res image not found)");
-                LOG.warn("Could not find full res image", e);
-            }
-            catch (IOException e)
-            {
-                LOG.warn("Failed to read image", e);
-            }
-            catch (Exception e)
-            {
-                LOG.warn("Image selection thread failed to find " + imageName, e);
+                imageFileCache.put(imageName, imgFile);
             }
+
+            // load image, decoded at the resolution it will be displayed at (use cached img if possible)
+            image = SubsampledImageCache.getInstance().load(imgFile, targetSize);
+        }
+        catch (InterruptedException e)
+        {
+            // cancelled since the selection moved on
+            LOG.debug("Stopped loading {}", imageName);
+            return;
+        }
+        catch (IllegalArgumentException e)
+        {
+            // could not find image
+            showNotFound();
+            LOG.warn("Could not find full res image", e);
+        }
+        catch (IOException e)
+        {
+            LOG.warn("Failed to read image", e);
+        }
+        catch (Exception e)
+        {
+            LOG.warn("Image selection thread failed to find " + imageName, e);
         }
 
         Image finalImage = image; // copy here so a final version of image can be passed to lambda expression
-        if (finalImage != null && !stopRequested)
+        if (imageThreadable != null && finalImage != null && !stopRequested)
         {
             Platform.runLater(() ->
             {
-                imgView.setImage(finalImage);
-                imageThreadable.setImageViewText(imageName);
+                if (!stopRequested) // check again in case the selection moved on while waiting for the FX thread
+                {
+                    imageThreadable.getImageView().setImage(finalImage);
+                    imageThreadable.setImageViewText(imageName);
+                }
             });
         }
     }
+
+    private void showNotFound()
+    {
+        if (imageThreadable != null && !stopRequested)
+        {
+            imageThreadable.setImageViewText(imageThreadable.getImageViewText() + " (full res image not found)");
+        }
+    }
 }
@@ -12,6 +12,7 @@
 package kintsugi3d.builder.javafx.controllers.modals.viewselect;
 
 import javafx.fxml.FXML;
+import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
@@ -25,9 +26,12 @@ import kintsugi3d.builder.javafx.controllers.paged.DataReceiverPageControllerBas
 import kintsugi3d.builder.javafx.controllers.sidebar.SearchableTreeView;
 import kintsugi3d.builder.javafx.util.ImageThreadable;
 import kintsugi3d.builder.javafx.util.ScrollBarHelper;
+import kintsugi3d.builder.javafx.util.SubsampledImageCache;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -37,6 +41,12 @@ public abstract class ViewSelectController extends DataReceiverPageControllerBas
     //suppress warning?
 
     private static final int THUMBNAIL_SIZE = 30;
+
+    /**
+     * Number of images on either side of the selected one to load in the background.
+     */
+    private static final int PREFETCH_NEIGHBOR_COUNT = 2;
+
     private static final TreeItem<String> NONE_ITEM = new TreeItem<>("Keep Imported Orientation");
 
     @FXML private TreeView<String> chunkTreeView;
@@ -50,8 +60,10 @@ public abstract class ViewSelectController extends DataReceiverPageControllerBas
 
     private ViewSelectable newData;
     private ViewSelectable data;
-    private Map<String, Image> imageCache;
+    private Map<String, File> imageFileCache;
     private ImageSelectionThread loadImgThread;
+    private Future<?> loadImgFuture;
+    private final Map<String, Future<?>> prefetchFutures = new HashMap<>(PREFETCH_NEIGHBOR_COUNT * 4);
 
     protected abstract String getHintText();
 
@@ -73,7 +85,7 @@ public abstract class ViewSelectController extends DataReceiverPageControllerBas
     @Override
     public void initPage()
     {
-        this.imageCache = new HashMap<>(16);
+        this.imageFileCache = new ConcurrentHashMap<>(16);
 
         //TODO: temp hack to make text visible, need to change textflow css?
         imgViewText.setFill(Paint.valueOf("white"));
@@ -244,14 +256,11 @@ public abstract class ViewSelectController extends DataReceiverPageControllerBas
 
         if (selectedItem.getValue() != null)
         {
-            //if loadImgThread is running, kill it and start a new one
-            if (loadImgThread != null && loadImgThread.isActive())
-            {
-                loadImgThread.stopThread();
-            }
-
             if (selectedItem.equals(NONE_ITEM))
             {
+                //no image to load, so stop anything still loading
+                stopLoadingImages(Collections.emptySet());
+
                 // Hide orientation controls
                 orientationControls.setVisible(false);
 
@@ -277,21 +286,136 @@ public abstract class ViewSelectController extends DataReceiverPageControllerBas
             }
 
             String imageName = selectedItem.getValue();
-            imgViewText.setText(String.format("%s (preview)", imageName));
-
-            //set thumbnail as main image, then update to full resolution later
-            //don't set thumbnail if img is cached, otherwise would cause a flash
-            if (!imageCache.containsKey(imageName))
+            int targetSize = getDisplayedImageSize();
+
+            //keep loading images that are still needed (as the selection or its neighbors) and stop the rest
+            List<TreeItem<String>> neighbors = findNeighbors(selectedItem);
+            Set<String> wantedNames = new HashSet<>(neighbors.size() * 2);
+            wantedNames.add(imageName);
+            neighbors.forEach(item -> wantedNames.add(item.getValue()));
+            stopLoadingImages(wantedNames);
+
+            //use cached img if possible; otherwise set thumbnail as main image, then update to full resolution later
+            File imageFile = imageFileCache.get(imageName);
+            Image cachedImage = imageFile == null ? null : SubsampledImageCache.getInstance().getIfPresent(imageFile, targetSize);
+            if (cachedImage != null)
             {
+                primaryImgView.setImage(cachedImage);
+                imgViewText.setText(imageName);
+            }
+            else
+            {
+                imgViewText.setText(String.format("%s (preview)", imageName));
                 setThumbnailAsFullImage(selectedItem);
+
+                loadImgThread = new ImageSelectionThread(imageName, this, getData().getViewSelectionModel(), targetSize);
+                loadImgFuture = SubsampledImageCache.getInstance().submit(loadImgThread);
             }
 
-            loadImgThread = new ImageSelectionThread(imageName, this, getData().getViewSelectionModel());
-            Thread myThread = new Thread(loadImgThread);
-            myThread.start();
+            //load neighbors in the background so that stepping through the list is quick
+            for (TreeItem<String> neighbor : neighbors)
+            {
+                String neighborName = neighbor.getValue();
+                File neighborFile = imageFileCache.get(neighborName);
+                if (!prefetchFutures.containsKey(neighborName) &&
+                    (neighborFile == null || SubsampledImageCache.getInstance().getIfPresent(neighborFile, targetSize) == null))
+                {
+                    prefetchFutures.put(neighborName, SubsampledImageCache.getInstance().submit(
+                        ImageSelectionThread.prefetch(neighborName, imageFileCache, getData().getViewSelectionModel(), targetSize)));
+                }
+            }
         }
     }
 
+    /**
+     * Stops showing the image being loaded for the previous selection, and cancels loading any images that
+     * are no longer wanted.
+     * @param wantedNames Names of images that should continue loading into the cache.
+     */
+    private void stopLoadingImages(Set<String> wantedNames)
+    {
+        if (loadImgThread != null)
+        {
+            loadImgThread.stopThread();
+            if (!wantedNames.contains(loadImgThread.getImageName()))
+            {
+                loadImgFuture.cancel(true);
+            }
+            else if (!loadImgFuture.isDone())
+            {
+                // Still loading an image that's wanted as a neighbor; track it like a prefetch.
+                prefetchFutures.putIfAbsent(loadImgThread.getImageName(), loadImgFuture);
+            }
+            loadImgThread = null;
+            loadImgFuture = null;
+        }
+
+        prefetchFutures.entrySet().removeIf(entry ->
+        {
+            if (entry.getValue().isDone())
+            {
+                return true;
+            }
+            else if (!wantedNames.contains(entry.getKey()))
+            {
+                entry.getValue().cancel(true);
+                return true;
+            }
+            else
+            {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Finds the images next to an item in the tree (within the same group), nearest first.
+     */
+    private static List<TreeItem<String>> findNeighbors(TreeItem<String> item)
+    {
+        List<TreeItem<String>> neighbors = new ArrayList<>(PREFETCH_NEIGHBOR_COUNT * 2);
+        TreeItem<String> next = item;
+        TreeItem<String> previous = item;
+        for (int i = 0; i < PREFETCH_NEIGHBOR_COUNT; i++)
+        {
+            next = next == null ? null : next.nextSibling();
+            previous = previous == null ? null : previous.previousSibling();
+
+            if (isImageItem(next))
+            {
+                neighbors.add(next);
+            }
+
+            if (isImageItem(previous))
+            {
+                neighbors.add(previous);
+            }
+        }
+        return neighbors;
+    }
+
+    private static boolean isImageItem(TreeItem<String> item)
+    {
+        return item != null && item.isLeaf() && !item.equals(NONE_ITEM) && item.getValue() != null;
+    }
+
+    /**
+     * Gets the size in (physical) pixels that the longer side of an image will be displayed at.
+     */
+    private int getDisplayedImageSize()
+    {
+        double fitSize = Math.max(primaryImgView.getFitWidth(), primaryImgView.getFitHeight());
+        if (fitSize <= 0)
+        {
+            // Not constrained, so the image will be shown at full resolution.
+            return Integer.MAX_VALUE;
+        }
+
+        Scene scene = primaryImgView.getScene();
+        double outputScale = scene == null || scene.getWindow() == null ? 1.0 : scene.getWindow().getOutputScaleX();
+        return (int) Math.ceil(fitSize * outputScale);
+    }
+
     private void setThumbnailAsFullImage(TreeItem<String> selectedItem)
     {
         //use thumbnail as main image
@@ -338,9 +462,9 @@ public abstract class ViewSelectController extends DataReceiverPageControllerBas
     }
 
     @Override
-    public Map<String, Image> getImageCache()
+    public Map<String, File> getImageFileCache()
     {
-        return imageCache;
+        return imageFileCache;
     }
 
     protected String getSelectedViewName()
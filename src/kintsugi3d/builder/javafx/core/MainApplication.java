@@ -32,6 +32,7 @@ import kintsugi3d.builder.javafx.internal.ObservableGeneralSettingsModel;
 import kintsugi3d.builder.preferences.GlobalUserPreferencesManager;
 import kintsugi3d.builder.preferences.serialization.JacksonUserPreferencesSerializer;
 import kintsugi3d.builder.state.settings.DefaultSettings;
+import kintsugi3d.gl.nativebuffer.NativeBufferArena;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -272,6 +273,10 @@ public class MainApplication extends Application
             alert.show();
         }
 
+        // Apply the native buffer pool limit now and whenever it changes.
+        applyNativeBufferPoolLimit(settingsModel);
+        settingsModel.getNumericProperty("nativeBufferPoolMB").addListener(nativeBufferPoolMB -> applyNativeBufferPoolLimit(settingsModel));
+
         //distribute to controllers
         sceneController.init(
             JavaFXState.getInstance().getCameraModel(),
@@ -337,6 +342,11 @@ public class MainApplication extends Application
         }
     }
 
+    private static void applyNativeBufferPoolLimit(ObservableGeneralSettingsModel settingsModel)
+    {
+        NativeBufferArena.getInstance().setMaxPooledBytes(Math.max(0L, (long) settingsModel.getInt("nativeBufferPoolMB") << 20));
+    }
+
     public static void launchWrapper(String args)
     {
         launch(args);
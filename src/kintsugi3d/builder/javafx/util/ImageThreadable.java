@@ -11,14 +11,19 @@
 
 package kintsugi3d.builder.javafx.util;
 
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 
+import java.io.File;
 import java.util.Map;
 
 public interface ImageThreadable {
     ImageView getImageView();
     String getImageViewText();
     void setImageViewText(String txt);
-    Map<String, Image> getImageCache();
+
+    /**
+     * Full resolution image files that have already been found, by image name; must be safe to use from any thread.
+     * The images themselves are cached by {@link SubsampledImageCache}.
+     */
+    Map<String, File> getImageFileCache();
 }
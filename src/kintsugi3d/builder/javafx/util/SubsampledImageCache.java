@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.builder.javafx.util;
+
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.Image;
+import kintsugi3d.gl.util.ImageHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Singleton cache of images decoded at (roughly) the resolution they will be displayed at, for dialogs that let the
+ * user browse through full resolution photos. Images are decoded with ImageIO source subsampling so that a full size
+ * photo is never held in memory, and the least recently used images are evicted once the cache exceeds its budget.
+ * Also provides a small pool of background threads to decode on; decodes stop early if their thread is interrupted.
+ */
+public final class SubsampledImageCache
+{
+    private static final Logger LOG = LoggerFactory.getLogger(SubsampledImageCache.class);
+
+    private static final SubsampledImageCache INSTANCE = new SubsampledImageCache();
+
+    /**
+     * Fraction of the maximum heap size that cached images are allowed to occupy.
+     */
+    private static final double CACHE_MEMORY_FRACTION = 0.125;
+
+    private static final int DECODER_THREAD_COUNT = 2;
+
+    public static SubsampledImageCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    private static final class Entry
+    {
+        final Image image;
+        final int targetSize;
+        final boolean fullResolution;
+        final long bytes;
+
+        Entry(Image image, int targetSize, boolean fullResolution)
+        {
+            this.image = image;
+            this.targetSize = targetSize;
+            this.fullResolution = fullResolution;
+            this.bytes = 4L * (long) image.getWidth() * (long) image.getHeight();
+        }
+
+        boolean satisfies(int requestedSize)
+        {
+            return fullResolution || targetSize >= requestedSize;
+        }
+    }
+
+    /**
+     * Cached images by absolute file, least recently used first; guarded by itself.
+     */
+    private final LinkedHashMap<File, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes = 0; // guarded by entries
+
+    /**
+     * Decodes in progress, so that a decode started by a prefetch can be picked up when the image is actually needed;
+     * guarded by entries.
+     */
+    private final Map<File, FutureTask<Entry>> pendingDecodes = new HashMap<>(8);
+
+    private final long maxCachedBytes;
+    private final ExecutorService decoderPool;
+
+    private SubsampledImageCache()
+    {
+        this.maxCachedBytes = (long) (Runtime.getRuntime().maxMemory() * CACHE_MEMORY_FRACTION);
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.decoderPool = Executors.newFixedThreadPool(DECODER_THREAD_COUNT, runnable ->
+        {
+            Thread thread = new Thread(runnable, "ImageDecoder-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs a task on one of the cache's background threads.
+     * Cancelling the returned future with interruption stops a decode that the task is running.
+     * @param task The task, which will usually call {@link #load(File, int)}.
+     * @return A future representing the task.
+     */
+    public Future<?> submit(Runnable task)
+    {
+        return decoderPool.submit(task);
+    }
+
+    /**
+     * Gets an image if it is already cached at a sufficient resolution, without decoding anything.
+     * @param file The image file.
+     * @param targetSize The size in pixels that the longer side of the image will be displayed at.
+     * @return The image, or null if it isn't cached at the requested resolution.
+     */
+    public Image getIfPresent(File file, int targetSize)
+    {
+        synchronized (entries)
+        {
+            Entry entry = entries.get(file.getAbsoluteFile());
+            return entry != null && entry.satisfies(targetSize) ? entry.image : null;
+        }
+    }
+
+    /**
+     * Gets an image, decoding it on the calling thread if it isn't cached at a sufficient resolution
+     * (or waiting for another thread that is already decoding it).
+     * @param file The image file.
+     * @param targetSize The size in pixels that the longer side of the image will be displayed at;
+     *                   the image is subsampled by the largest integer factor that keeps it at least this large.
+     * @return The image.
+     * @throws IOException If the image could not be read.
+     * @throws InterruptedException If the calling thread was interrupted while decoding or waiting.
+     */
+    public Image load(File file, int targetSize) throws IOException, InterruptedException
+    {
+        File key = file.getAbsoluteFile();
+
+        FutureTask<Entry> pendingDecode;
+        boolean decodeHere = false;
+        synchronized (entries)
+        {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.satisfies(targetSize))
+            {
+                return entry.image;
+            }
+
+            pendingDecode = pendingDecodes.get(key);
+            if (pendingDecode == null)
+            {
+                pendingDecode = new FutureTask<>(() -> decode(key, targetSize));
+                pendingDecodes.put(key, pendingDecode);
+                decodeHere = true;
+            }
+        }
+
+        try
+        {
+            if (decodeHere)
+            {
+                pendingDecode.run();
+            }
+
+            Entry entry = pendingDecode.get();
+
+            if (!entry.satisfies(targetSize))
+            {
+                // Another thread decoded it at a lower resolution; decode again at the resolution needed here.
+                entry = decode(key, targetSize);
+            }
+
+            put(key, entry);
+            return entry.image;
+        }
+        catch (CancellationException e)
+        {
+            throw new InterruptedException(String.format("Decoding %s was cancelled.", key.getName()));
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            else if (e.getCause() instanceof InterruptedException)
+            {
+                if (decodeHere)
+                {
+                    throw (InterruptedException) e.getCause();
+                }
+                else
+                {
+                    // The thread that was decoding it was interrupted, but this one wasn't; try again.
+                    return load(file, targetSize);
+                }
+            }
+            else
+            {
+                throw new IOException(String.format("Failed to decode %s", key.getName()), e.getCause());
+            }
+        }
+        finally
+        {
+            if (decodeHere)
+            {
+                synchronized (entries)
+                {
+                    pendingDecodes.remove(key, pendingDecode);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all images from the cache.
+     */
+    public void clear()
+    {
+        synchronized (entries)
+        {
+            entries.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    private void put(File key, Entry entry)
+    {
+        if (entry.bytes > maxCachedBytes)
+        {
+            return;
+        }
+
+        synchronized (entries)
+        {
+            Entry previous = entries.put(key, entry);
+            if (previous != null)
+            {
+                cachedBytes -= previous.bytes;
+            }
+            cachedBytes += entry.bytes;
+
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (cachedBytes > maxCachedBytes && iterator.hasNext())
+            {
+                Entry eldest = iterator.next();
+                if (eldest != entry)
+                {
+                    cachedBytes -= eldest.bytes;
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private static Entry decode(File file, int targetSize) throws IOException, InterruptedException
+    {
+        BufferedImage bufferedImage;
+        boolean fullResolution;
+
+        try (ImageInputStream stream = ImageIO.createImageInputStream(file))
+        {
+            Iterator<ImageReader> readers = stream == null ? Collections.emptyIterator() : ImageIO.getImageReaders(stream);
+            if (readers.hasNext())
+            {
+                ImageReader reader = readers.next();
+                try
+                {
+                    reader.setInput(stream, true, true);
+
+                    int longSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+                    int subsampling = Math.max(1, longSide / Math.max(1, targetSize));
+
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                    reader.addIIOReadProgressListener(new AbortOnInterrupt());
+
+                    bufferedImage = ImageHelper.of(reader.read(0, param)).getBufferedImage();
+                    fullResolution = subsampling == 1;
+                }
+                finally
+                {
+                    reader.dispose();
+                }
+            }
+            else
+            {
+                // No reader that can subsample; fall back to decoding the whole image.
+                LOG.debug("No subsampling reader for {}", file);
+                bufferedImage = ImageHelper.read(file).getBufferedImage();
+                fullResolution = true;
+            }
+        }
+
+        if (Thread.currentThread().isInterrupted())
+        {
+            throw new InterruptedException(String.format("Decoding %s was interrupted.", file.getName()));
+        }
+
+        return new Entry(SwingFXUtils.toFXImage(bufferedImage, null), targetSize, fullResolution);
+    }
+
+    /**
+     * Stops a read part way through if the thread doing it is interrupted, i.e. because the image is no longer needed.
+     */
+    private static final class AbortOnInterrupt implements IIOReadProgressListener
+    {
+        @Override
+        public void imageProgress(ImageReader source, float percentageDone)
+        {
+            if (Thread.currentThread().isInterrupted())
+            {
+                source.abort();
+            }
+        }
+
+        @Override
+        public void sequenceStarted(ImageReader source, int minIndex)
+        {
+        }
+
+        @Override
+        public void sequenceComplete(ImageReader source)
+        {
+        }
+
+        @Override
+        public void imageStarted(ImageReader source, int imageIndex)
+        {
+        }
+
+        @Override
+        public void imageComplete(ImageReader source)
+        {
+        }
+
+        @Override
+        public void thumbnailStarted(ImageReader source, int imageIndex, int thumbnailIndex)
+        {
+        }
+
+        @Override
+        public void thumbnailProgress(ImageReader source, float percentageDone)
+        {
+        }
+
+        @Override
+        public void thumbnailComplete(ImageReader source)
+        {
+        }
+
+        @Override
+        public void readAborted(ImageReader source)
+        {
+        }
+    }
+}
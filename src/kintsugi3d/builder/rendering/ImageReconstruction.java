@@ -13,6 +13,7 @@ package kintsugi3d.builder.rendering;
 
 import kintsugi3d.builder.core.ReadonlyViewSet;
 import kintsugi3d.builder.core.metrics.ColorAppearanceRMSE;
+import kintsugi3d.builder.core.metrics.ReconstructionErrorStatistics;
 import kintsugi3d.builder.resources.project.ReadonlyGraphicsResources;
 import kintsugi3d.gl.builders.ProgramBuilder;
 import kintsugi3d.gl.builders.framebuffer.FramebufferObjectBuilder;
@@ -57,8 +58,9 @@ public class ImageReconstruction<ContextType extends Context<ContextType>> imple
         ReadonlyGraphicsResources<ContextType> resources)
         throws IOException
     {
+        // Decoding full resolution photos doesn't need the graphics context, so upcoming views can be decoded in the background.
         this(viewSet, buildFramebufferAttachments, buildIncidentRadianceFramebufferAttachments, incidentRadianceProgramBuilder, resources,
-            viewIndex ->
+            new PrefetchingImageLoader(viewIndex ->
             {
                 // load new ground truth
                 try
@@ -71,7 +73,8 @@ public class ImageReconstruction<ContextType extends Context<ContextType>> imple
                     //noinspection ThrowInsideCatchBlockWhichIgnoresCaughtException,ProhibitedExceptionThrown
                     throw new RuntimeException(e.toString());
                 }
-            }
+            },
+            viewSet.getCombinedCameraPoseCount())
         );
     }
 
@@ -228,16 +231,11 @@ public class ImageReconstruction<ContextType extends Context<ContextType>> imple
 
                     reconstructionFramebuffer.getTextureReaderForColorAttachment(0).readFloatingPointRGBA(reconstructionBuffer);
 
-                    long sampleCount = IntStream.range(0, reconstructionBuffer.limit() / 4)
-                        .parallel()
-                        .filter(p -> reconstructionBuffer.get(4 * p + 3) > 0.0) // only count pixels where we have geometry (mask out the rest)
-                        .count();
-
-                    DoubleVector3 totalRMSEPacked =
+                    ReconstructionErrorStatistics statistics =
                         IntStream.range(0, reconstructionBuffer.limit() / 4)
                             .parallel()
                             .filter(p -> reconstructionBuffer.get(4 * p + 3) > 0.0) // only count pixels where we have geometry (mask out the rest)
-                            .mapToObj(p ->
+                            .collect(ReconstructionErrorStatistics::new, (stats, p) ->
                             {
                                 DoubleVector3 groundTruthEncoded = currentGroundTruth.get(p).getXYZ().asDoublePrecision();
                                 DoubleVector3 incidentRadiance = getIncidentRadiance(p);
@@ -252,27 +250,15 @@ public class ImageReconstruction<ContextType extends Context<ContextType>> imple
                                 DoubleVector3 groundTruthLinear = viewSet.getLuminanceEncoding().decode(groundTruthEncoded.times(255.0)).dividedBy(incidentRadiance);
                                 DoubleVector3 groundTruthSRGB = SRGB.fromLinear(groundTruthLinear);
 
-                                DoubleVector3 encodedError = groundTruthEncoded.minus(reconstructedEncoded);
-                                double encodedSqError = encodedError.dot(encodedError) / 3; // mean squared error for the three channels
-
-                                DoubleVector3 sRGBError = groundTruthSRGB.minus(reconstructedSRGB);
-                                double sRGBSqError = sRGBError.dot(sRGBError) / 3; // mean squared error for the three channels
-
-                                DoubleVector3 linearError = groundTruthLinear.minus(reconstructedLinear);
-                                double linearSqError = linearError.dot(linearError) / 3; // mean squared error for the three channels
-
-                                return new DoubleVector3(encodedSqError, sRGBSqError, linearSqError); // pack results into a Vector3
-                            })
-                            .reduce(DoubleVector3.ZERO, DoubleVector3::plus).dividedBy(sampleCount) // mean over pixels
-                            .applyOperator(Math::sqrt); // root
+                                stats.accept(
+                                    groundTruthEncoded.minus(reconstructedEncoded),
+                                    groundTruthSRGB.minus(reconstructedSRGB),
+                                    groundTruthLinear.minus(reconstructedLinear));
+                            },
+                            ReconstructionErrorStatistics::combine);
 
-                    ColorAppearanceRMSE totalRMSE = new ColorAppearanceRMSE();
-                    totalRMSE.setEncodedGroundTruth(totalRMSEPacked.x);
-                    totalRMSE.setNormalizedSRGB(totalRMSEPacked.y);
-                    totalRMSE.setNormalizedLinear(totalRMSEPacked.z);
-                    totalRMSE.setSampleCount(sampleCount);
-
-                    return totalRMSE;
+                    // mean squared error for the three channels, then mean over pixels, then root
+                    return statistics.toRMSE();
                 }
             };
         }
@@ -380,6 +366,11 @@ public class ImageReconstruction<ContextType extends Context<ContextType>> imple
     @Override
     public void close()
     {
+        if (groundTruthLoader instanceof PrefetchingImageLoader)
+        {
+            ((PrefetchingImageLoader) groundTruthLoader).close();
+        }
+
         incidentRadianceProgram.close();
         incidentRadianceDrawable.close();
     }
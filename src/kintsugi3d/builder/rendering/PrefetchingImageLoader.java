@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.builder.rendering;
+
+import kintsugi3d.util.ColorImage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Wraps a ground truth loader so that the views following the one being requested are decoded on a pool of worker
+ * threads in the meantime, on the assumption that views are mostly requested in order.
+ * The number of views decoded ahead is limited both by a fixed count and by a fraction of the maximum heap size,
+ * estimated from the size of the most recently loaded image.
+ * The wrapped loader must be safe to call from multiple threads (i.e. it must not use the graphics context).
+ * The loader itself should only be called from a single thread.
+ */
+class PrefetchingImageLoader implements IntFunction<ColorImage>, AutoCloseable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(PrefetchingImageLoader.class);
+
+    /**
+     * Maximum number of views to decode ahead of the one being requested.
+     */
+    private static final int MAX_LOOKAHEAD = 4;
+
+    /**
+     * Fraction of the maximum heap size that prefetched images are allowed to occupy.
+     */
+    private static final double PREFETCH_MEMORY_FRACTION = 0.25;
+
+    private final IntFunction<ColorImage> loader;
+    private final int viewCount;
+    private final ExecutorService decoderPool;
+    private final Map<Integer, Future<ColorImage>> pending = new HashMap<>(MAX_LOOKAHEAD * 2);
+
+    /**
+     * Decode only one view ahead until the size of an image is known.
+     */
+    private int lookahead = 1;
+
+    PrefetchingImageLoader(IntFunction<ColorImage> loader, int viewCount)
+    {
+        this.loader = loader;
+        this.viewCount = viewCount;
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.decoderPool = Executors.newFixedThreadPool(Math.min(MAX_LOOKAHEAD, Runtime.getRuntime().availableProcessors()), runnable ->
+        {
+            Thread thread = new Thread(runnable, "GroundTruth-decoder-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public ColorImage apply(int viewIndex)
+    {
+        Future<ColorImage> current = pending.remove(viewIndex);
+
+        // Discard prefetches outside of the new window (i.e. after jumping to another view) and start the missing ones
+        // before waiting for the requested view, so that decoding the next views overlaps with that wait.
+        pending.entrySet().removeIf(entry ->
+        {
+            boolean stale = entry.getKey() < viewIndex || entry.getKey() > viewIndex + lookahead;
+            if (stale)
+            {
+                entry.getValue().cancel(false);
+            }
+            return stale;
+        });
+
+        for (int i = viewIndex + 1; i <= viewIndex + lookahead && i < viewCount; i++)
+        {
+            pending.computeIfAbsent(i, index -> decoderPool.submit(() -> loader.apply(index)));
+        }
+
+        ColorImage image = current == null ? loader.apply(viewIndex) : await(current);
+
+        long bytesPerImage = 4L * image.getWidth() * image.getHeight();
+        long memoryBudget = (long) (Runtime.getRuntime().maxMemory() * PREFETCH_MEMORY_FRACTION);
+        int newLookahead = (int) Math.max(1, Math.min(MAX_LOOKAHEAD, memoryBudget / Math.max(1, bytesPerImage)));
+        if (newLookahead != lookahead)
+        {
+            LOG.debug("Prefetching {} ground truth images ahead.", newLookahead);
+            lookahead = newLookahead;
+        }
+
+        return image;
+    }
+
+    @Override
+    public void close()
+    {
+        pending.values().forEach(future -> future.cancel(false));
+        pending.clear();
+        decoderPool.shutdownNow();
+    }
+
+    private static ColorImage await(Future<ColorImage> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for ground truth image", e);
+        }
+        catch (ExecutionException e)
+        {
+            // Rethrow the loader's own exception as it would have been thrown without prefetching.
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            else if (e.getCause() instanceof Error)
+            {
+                throw (Error) e.getCause();
+            }
+            else
+            {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+}
@@ -11,12 +11,16 @@
 
 package kintsugi3d.builder.resources;
 
+import kintsugi3d.builder.app.ApplicationFolders;
+import kintsugi3d.builder.app.CacheSizeLedger;
 import kintsugi3d.builder.core.DynamicResourceManager;
 import kintsugi3d.builder.core.ProgressMonitor;
 import kintsugi3d.builder.rendering.components.RenderingSubject;
 import kintsugi3d.builder.resources.project.GraphicsResources;
 import kintsugi3d.gl.core.*;
+import kintsugi3d.gl.nativebuffer.NativeDataType;
 import kintsugi3d.gl.nativebuffer.NativeVectorBufferFactory;
+import kintsugi3d.gl.nativebuffer.ReadonlyNativeVectorBuffer;
 import kintsugi3d.gl.util.ImageHelper;
 import kintsugi3d.gl.vecmath.Vector3;
 import kintsugi3d.util.ArrayBackedColorImage;
@@ -29,6 +33,7 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -118,21 +123,13 @@ public class DynamicResourceLoader<ContextType extends Context<ContextType>> imp
                         EnvironmentMap environmentData = this.newEnvironmentData;
                         this.newEnvironmentData = null;
 
-                        float[][] sides = environmentData.getData();
-
                         newEnvironmentTexture = context.getTextureFactory().buildColorCubemap(environmentData.getSide())
-                            .loadFace(CubemapFace.POSITIVE_X, NativeVectorBufferFactory.getInstance().createFromFloatArray(3,
-                                sides[EnvironmentMap.PX].length / 3, sides[EnvironmentMap.PX]))
-                            .loadFace(CubemapFace.NEGATIVE_X, NativeVectorBufferFactory.getInstance().createFromFloatArray(3,
-                                sides[EnvironmentMap.NX].length / 3, sides[EnvironmentMap.NX]))
-                            .loadFace(CubemapFace.POSITIVE_Y, NativeVectorBufferFactory.getInstance().createFromFloatArray(3,
-                                sides[EnvironmentMap.PY].length / 3, sides[EnvironmentMap.PY]))
-                            .loadFace(CubemapFace.NEGATIVE_Y, NativeVectorBufferFactory.getInstance().createFromFloatArray(3,
-                                sides[EnvironmentMap.NY].length / 3, sides[EnvironmentMap.NY]))
-                            .loadFace(CubemapFace.POSITIVE_Z, NativeVectorBufferFactory.getInstance().createFromFloatArray(3,
-                                sides[EnvironmentMap.PZ].length / 3, sides[EnvironmentMap.PZ]))
-                            .loadFace(CubemapFace.NEGATIVE_Z, NativeVectorBufferFactory.getInstance().createFromFloatArray(3,
-                                sides[EnvironmentMap.NZ].length / 3, sides[EnvironmentMap.NZ]))
+                            .loadFace(CubemapFace.POSITIVE_X, getFaceData(environmentData, EnvironmentMap.PX))
+                            .loadFace(CubemapFace.NEGATIVE_X, getFaceData(environmentData, EnvironmentMap.NX))
+                            .loadFace(CubemapFace.POSITIVE_Y, getFaceData(environmentData, EnvironmentMap.PY))
+                            .loadFace(CubemapFace.NEGATIVE_Y, getFaceData(environmentData, EnvironmentMap.NY))
+                            .loadFace(CubemapFace.POSITIVE_Z, getFaceData(environmentData, EnvironmentMap.PZ))
+                            .loadFace(CubemapFace.NEGATIVE_Z, getFaceData(environmentData, EnvironmentMap.NZ))
                             .setInternalFormat(ColorFormat.RGB32F)
                             .setMipmapsEnabled(true)
                             .setLinearFilteringEnabled(true)
@@ -227,6 +224,22 @@ public class DynamicResourceLoader<ContextType extends Context<ContextType>> imp
         }
     }
 
+    private static ReadonlyNativeVectorBuffer getFaceData(EnvironmentMap environmentData, int face)
+    {
+        int texelCount = environmentData.getSide() * environmentData.getSide();
+
+        // Upload straight from the memory-mapped cache file when possible.
+        ByteBuffer mapped = environmentData.getMappedFace(face);
+        if (mapped != null)
+        {
+            return NativeVectorBufferFactory.getInstance().createFromExistingBuffer(NativeDataType.FLOAT, 3, texelCount, mapped);
+        }
+        else
+        {
+            return NativeVectorBufferFactory.getInstance().createFromFloatArray(3, texelCount, environmentData.getData()[face]);
+        }
+    }
+
     @Override
     public void requestFragmentShader(File shaderFile)
     {
@@ -281,7 +294,13 @@ public class DynamicResourceLoader<ContextType extends Context<ContextType>> imp
                     try
                     {
                         // Use Michael Ludwig's code to convert to a cube map (supports either cross or panorama input)
-                        this.newEnvironmentData = EnvironmentMap.createFromHDRFile(environmentFile);
+                        // The converted cube map is cached so that switching back to a previously used environment is fast.
+                        File environmentCacheDirectory = ApplicationFolders.getEnvironmentCacheDirectory().toFile();
+                        this.newEnvironmentData = EnvironmentMap.loadCached(environmentFile, environmentCacheDirectory);
+
+                        // Counts as a use of the cache entry, and picks up its size if it was just written.
+                        CacheSizeLedger.getInstance().markDirty(
+                            EnvironmentMap.getCacheEntryDirectory(environmentFile, environmentCacheDirectory));
                         this.currentEnvironmentFile = environmentFile;
                         width = newEnvironmentData.getSide() * 4;
                         height = newEnvironmentData.getSide() * 2;
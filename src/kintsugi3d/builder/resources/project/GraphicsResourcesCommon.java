@@ -27,6 +27,7 @@ import kintsugi3d.gl.geometry.ReadonlyVertexGeometry;
 import kintsugi3d.gl.geometry.VertexGeometry;
 import kintsugi3d.gl.material.*;
 import kintsugi3d.gl.nativebuffer.NativeVectorBufferFactory;
+import kintsugi3d.gl.nativebuffer.ReadonlyNativeVectorBuffer;
 import kintsugi3d.gl.vecmath.Vector3;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -101,56 +102,21 @@ final class GraphicsResourcesCommon<ContextType extends Context<ContextType>>
             viewSet.registerObserver(change -> updateViewIndicesData());
         }
 
-        // Store the poses in a uniform buffer
-        if (viewSet != null && viewSet.getCameraPoseData() != null)
+        if (viewSet != null)
         {
-            // Create the uniform buffer
-            cameraPoseBuffer = context.createUniformBuffer().setData(viewSet.getCameraPoseData());
+            // Store the poses, light positions, light intensities, light indices and view indices in uniform buffers
+            cameraPoseBuffer = createUniformBuffer(viewSet.getCameraPoseData());
+            lightPositionBuffer = createUniformBuffer(viewSet.getLightPositionData());
+            lightIntensityBuffer = createUniformBuffer(viewSet.getLightIntensityData());
+            lightIndexBuffer = createUniformBuffer(viewSet.getLightIndexData());
+            viewIndexBuffer = createUniformBuffer(viewSet.getViewIndexData());
         }
         else
         {
             cameraPoseBuffer = null;
-        }
-
-        // Store the light positions in a uniform buffer
-        if (viewSet != null && viewSet.getLightPositionData() != null)
-        {
-            // Create the uniform buffer
-            lightPositionBuffer = context.createUniformBuffer().setData(viewSet.getLightPositionData());
-        }
-        else
-        {
             lightPositionBuffer = null;
-        }
-
-        // Store the light intensities in a uniform buffer
-        if (viewSet != null && viewSet.getLightIntensityData() != null)
-        {
-            // Create the uniform buffer
-            lightIntensityBuffer = context.createUniformBuffer().setData(viewSet.getLightIntensityData());
-        }
-        else
-        {
             lightIntensityBuffer = null;
-        }
-
-        // Store the light indices in a uniform buffer
-        if (viewSet != null && viewSet.getLightIndexData() != null)
-        {
-            lightIndexBuffer = context.createUniformBuffer().setData(viewSet.getLightIndexData());
-        }
-        else
-        {
             lightIndexBuffer = null;
-        }
-
-        // Store the view indices in a uniform buffer
-        if (viewSet != null && viewSet.getViewIndexData() != null)
-        {
-            viewIndexBuffer = context.createUniformBuffer().setData(viewSet.getViewIndexData());
-        }
-        else
-        {
             viewIndexBuffer = null;
         }
 
@@ -172,9 +138,8 @@ final class GraphicsResourcesCommon<ContextType extends Context<ContextType>>
             {
                 this.cameraWeights = computeCameraWeights(viewSet, geometry);
 
-                this.cameraWeightBuffer = context.createUniformBuffer()
-                        .setData(NativeVectorBufferFactory.getInstance().createFromFloatArray(
-                                1, viewSet.getCombinedCameraPoseCount(), this.cameraWeights));
+                this.cameraWeightBuffer = createUniformBuffer(NativeVectorBufferFactory.getInstance().createFromFloatArray(
+                        1, viewSet.getCombinedCameraPoseCount(), this.cameraWeights));
 
                 ImportedMaterial material = geometry.getMaterial();
                 String geometryFileName = viewSet.getGeometryFileName();
@@ -433,17 +398,15 @@ final class GraphicsResourcesCommon<ContextType extends Context<ContextType>>
     public void updateLightData()
     {
         // Store the light positions in a uniform buffer
-        if (lightPositionBuffer != null && getViewSet().getLightPositionData() != null)
+        if (lightPositionBuffer != null)
         {
-            // Create the uniform buffer
-            lightPositionBuffer.setData(getViewSet().getLightPositionData());
+            updateUniformBuffer(lightPositionBuffer, getViewSet().getLightPositionData());
         }
 
-        // Store the light positions in a uniform buffer
-        if (lightIntensityBuffer != null && getViewSet().getLightIntensityData() != null)
+        // Store the light intensities in a uniform buffer
+        if (lightIntensityBuffer != null)
         {
-            // Create the uniform buffer
-            lightIntensityBuffer.setData(getViewSet().getLightIntensityData());
+            updateUniformBuffer(lightIntensityBuffer, getViewSet().getLightIntensityData());
         }
     }
 
@@ -454,7 +417,37 @@ final class GraphicsResourcesCommon<ContextType extends Context<ContextType>>
     {
         if (viewIndexBuffer != null)
         {
-            viewIndexBuffer.setData(viewSet.getViewIndexData());
+            updateUniformBuffer(viewIndexBuffer, viewSet.getViewIndexData());
+        }
+    }
+
+    /**
+     * Creates a uniform buffer from native data, returning the native buffer's memory for reuse once it has been uploaded.
+     * @param data The data to upload, or null.
+     * @return The uniform buffer, or null if there was no data.
+     */
+    private UniformBuffer<ContextType> createUniformBuffer(ReadonlyNativeVectorBuffer data)
+    {
+        if (data == null)
+        {
+            return null;
+        }
+
+        try (data)
+        {
+            return context.createUniformBuffer().setData(data);
+        }
+    }
+
+    private static <ContextType extends Context<ContextType>> void updateUniformBuffer(
+        UniformBuffer<ContextType> uniformBuffer, ReadonlyNativeVectorBuffer data)
+    {
+        if (data != null)
+        {
+            try (data)
+            {
+                uniformBuffer.setData(data);
+            }
         }
     }
 
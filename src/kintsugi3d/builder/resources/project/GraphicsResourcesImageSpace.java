@@ -26,6 +26,7 @@ import kintsugi3d.gl.material.TextureLoadOptions;
 import kintsugi3d.gl.nativebuffer.NativeDataType;
 import kintsugi3d.gl.nativebuffer.NativeVectorBuffer;
 import kintsugi3d.gl.nativebuffer.NativeVectorBufferFactory;
+import kintsugi3d.gl.nativebuffer.ReadonlyNativeVectorBuffer;
 import kintsugi3d.gl.util.ImageHelper;
 import kintsugi3d.gl.vecmath.IntVector2;
 import kintsugi3d.gl.vecmath.Matrix4;
@@ -41,8 +42,11 @@ import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.concurrent.ForkJoinPool;
-import java.util.stream.IntStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A class that encapsulates all of the GPU resources like vertex buffers, uniform buffers, and textures for a given
@@ -53,9 +57,12 @@ import java.util.stream.IntStream;
 public final class GraphicsResourcesImageSpace<ContextType extends Context<ContextType>> extends GraphicsResourcesBase<ContextType>
     implements GraphicsResourcesCacheable<ContextType>
 {
-    private static final boolean MULTITHREAD_PREVIEW_IMAGE_GENERATION = false;
-
     private static final Logger LOG = LoggerFactory.getLogger(GraphicsResourcesImageSpace.class);
+
+    /**
+     * Fraction of the maximum heap size that decoded view images waiting to be sent to the GPU are allowed to occupy.
+     */
+    private static final double DECODED_LAYER_MEMORY_FRACTION = 0.25;
     /**
      * A GPU buffer containing projection transformations defining the intrinsic properties of each camera.
      */
@@ -358,26 +365,7 @@ public final class GraphicsResourcesImageSpace<ContextType extends Context<Conte
                 progressMonitor.setMaxProgress(viewSet.getCombinedCameraPoseCount());
             }
 
-            for (int i = 0; i < viewSet.getCombinedCameraPoseCount(); i++)
-            {
-                if (progressMonitor != null)
-                {
-                    progressMonitor.setProgress(i, MessageFormat.format("{0} ({1}/{2})", viewSet.getImageFileName(i), i + 1, viewSet.getCombinedCameraPoseCount()));
-                    progressMonitor.allowUserCancellation();
-                }
-
-                try
-                {
-                    File imageFile = findOrGeneratePreviewImageFile(i);
-
-                    this.colorTextures.loadLayer(i, imageFile, true);
-                }
-                catch (FileNotFoundException e)
-                {
-                    // If the file is not found, continue and try to load other images.
-                    LOG.error("Failed to load image.", e);
-                }
-            }
+            loadColorTextureLayers(colorTextures, loadOptions.getMaxLoadingThreads(), progressMonitor);
 
             if (progressMonitor != null)
             {
@@ -397,10 +385,14 @@ public final class GraphicsResourcesImageSpace<ContextType extends Context<Conte
         }
 
         // Store the camera projections in a uniform buffer
-        if ((viewSet != null) && (viewSet.getCameraProjectionData() != null))
+        ReadonlyNativeVectorBuffer cameraProjectionData = viewSet == null ? null : viewSet.getCameraProjectionData();
+        if (cameraProjectionData != null)
         {
-            // Create the uniform buffer
-            cameraProjectionBuffer = context.createUniformBuffer().setData(viewSet.getCameraProjectionData());
+            // Create the uniform buffer; the native data can be reused once uploaded.
+            try (cameraProjectionData)
+            {
+                cameraProjectionBuffer = context.createUniformBuffer().setData(cameraProjectionData);
+            }
         }
         else
         {
@@ -408,9 +400,13 @@ public final class GraphicsResourcesImageSpace<ContextType extends Context<Conte
         }
 
         // Store the camera projection indices in a uniform buffer
-        if ((viewSet != null) && (viewSet.getCameraProjectionIndexData() != null))
+        ReadonlyNativeVectorBuffer cameraProjectionIndexData = viewSet == null ? null : viewSet.getCameraProjectionIndexData();
+        if (cameraProjectionIndexData != null)
         {
-            cameraProjectionIndexBuffer = context.createUniformBuffer().setData(viewSet.getCameraProjectionIndexData());
+            try (cameraProjectionIndexData)
+            {
+                cameraProjectionIndexBuffer = context.createUniformBuffer().setData(cameraProjectionIndexData);
+            }
         }
         else
         {
@@ -526,11 +522,12 @@ public final class GraphicsResourcesImageSpace<ContextType extends Context<Conte
                             .createFramebufferObject();
 
                     // Load the program
-                    DepthMapGenerator<ContextType> depthMapGenerator = DepthMapGenerator.createFromGeometryResources(getGeometryResources())
+                    DepthMapGenerator<ContextType> depthMapGenerator = DepthMapGenerator.createFromGeometryResources(getGeometryResources());
+
+                    // Flatten the camera pose matrices into 16-component vectors and store them in the vertex list data structure.
+                    NativeVectorBuffer flattenedShadowMatrices = NativeVectorBufferFactory.getInstance().createEmptyPooled(NativeDataType.FLOAT, 16, this.getViewSet().getCombinedCameraPoseCount())
                 )
             {
-                // Flatten the camera pose matrices into 16-component vectors and store them in the vertex list data structure.
-                NativeVectorBuffer flattenedShadowMatrices = NativeVectorBufferFactory.getInstance().createEmpty(NativeDataType.FLOAT, 16, this.getViewSet().getCombinedCameraPoseCount());
 
                 // Render each depth texture
                 for (int i = 0; i < this.getViewSet().getCombinedCameraPoseCount(); i++)
@@ -699,6 +696,160 @@ public final class GraphicsResourcesImageSpace<ContextType extends Context<Conte
         }
     }
 
+    private static final class DecodedView
+    {
+        final int layerIndex;
+        final DecodedTextureLayer layer;
+        final Exception error;
+
+        DecodedView(int layerIndex, DecodedTextureLayer layer, Exception error)
+        {
+            this.layerIndex = layerIndex;
+            this.layer = layer;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Loads the preview image for every view into a layer of the color texture array.
+     * Images are decoded and scaled on a pool of worker threads; only sending the decoded pixels to the GPU happens on
+     * this (the graphics) thread.  Decoded layers waiting to be sent are limited to a fraction of the heap size.
+     */
+    private void loadColorTextureLayers(Texture3D<ContextType> textures, int threadCount, ProgressMonitor progressMonitor)
+        throws IOException, UserCancellationException
+    {
+        int viewCount = getViewSet().getCombinedCameraPoseCount();
+        long layerBytes = 4L * textures.getWidth() * textures.getHeight();
+        long memoryBudget = (long) (Runtime.getRuntime().maxMemory() * DECODED_LAYER_MEMORY_FRACTION);
+        int maxPendingLayers = (int) Math.max(1, Math.min(viewCount, memoryBudget / Math.max(1, layerBytes)));
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService decoders = Executors.newFixedThreadPool(Math.max(1, threadCount), runnable ->
+        {
+            Thread thread = new Thread(runnable, "ViewImage-decoder-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        BlockingQueue<DecodedView> decodedViews = new LinkedBlockingQueue<>();
+        int pendingCount = 0;
+        int finishedCount = 0;
+
+        // Only started once a preview image turns out to be missing, and then shared by every view in this pass
+        // so that the cache manifests are read and written once rather than once per view.
+        PreviewImageGenerator previewImageGenerator = null;
+
+        try
+        {
+            for (int i = 0; i < viewCount; i++)
+            {
+                if (progressMonitor != null)
+                {
+                    progressMonitor.allowUserCancellation();
+                }
+
+                File imageFile;
+                try
+                {
+                    // Stays on the graphics thread since generating a missing preview image may require undistortion.
+                    imageFile = tryFindPreviewImageFile(i);
+                    if (imageFile == null)
+                    {
+                        if (previewImageGenerator == null)
+                        {
+                            previewImageGenerator = PreviewImageGenerator.start(getViewSet());
+                        }
+
+                        imageFile = generatePreviewImageFile(previewImageGenerator, i);
+                    }
+                }
+                catch (FileNotFoundException e)
+                {
+                    // If the file is not found, continue and try to load other images.
+                    LOG.error("Failed to load image.", e);
+                    finishedCount++;
+                    continue;
+                }
+
+                // Wait for earlier views to be sent to the GPU if too many are already decoded or decoding.
+                while (pendingCount >= maxPendingLayers)
+                {
+                    uploadDecodedView(textures, decodedViews.take(), ++finishedCount, progressMonitor);
+                    pendingCount--;
+                }
+
+                int layerIndex = i;
+                decoders.execute(() ->
+                {
+                    try
+                    {
+                        decodedViews.add(new DecodedView(layerIndex, textures.decodeLayer(imageFile, true), null));
+                    }
+                    catch (IOException | RuntimeException e)
+                    {
+                        decodedViews.add(new DecodedView(layerIndex, null, e));
+                    }
+                });
+                pendingCount++;
+
+                // Send anything that has already finished decoding without waiting.
+                for (DecodedView decodedView = decodedViews.poll(); decodedView != null; decodedView = decodedViews.poll())
+                {
+                    uploadDecodedView(textures, decodedView, ++finishedCount, progressMonitor);
+                    pendingCount--;
+                }
+            }
+
+            while (pendingCount > 0)
+            {
+                uploadDecodedView(textures, decodedViews.take(), ++finishedCount, progressMonitor);
+                pendingCount--;
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading images", e);
+        }
+        finally
+        {
+            decoders.shutdownNow();
+
+            if (previewImageGenerator != null)
+            {
+                previewImageGenerator.saveCacheManifests();
+            }
+        }
+    }
+
+    private void uploadDecodedView(Texture3D<ContextType> textures, DecodedView decodedView, int finishedCount,
+        ProgressMonitor progressMonitor) throws IOException
+    {
+        if (decodedView.error instanceof FileNotFoundException)
+        {
+            // If the file is not found, continue and try to load other images.
+            LOG.error("Failed to load image.", decodedView.error);
+        }
+        else if (decodedView.error instanceof IOException)
+        {
+            throw (IOException) decodedView.error;
+        }
+        else if (decodedView.error != null)
+        {
+            throw (RuntimeException) decodedView.error;
+        }
+        else
+        {
+            textures.loadLayer(decodedView.layerIndex, decodedView.layer);
+        }
+
+        if (progressMonitor != null)
+        {
+            progressMonitor.setProgress(finishedCount, MessageFormat.format("{0} ({1}/{2})",
+                getViewSet().getImageFileName(decodedView.layerIndex), finishedCount, getViewSet().getCombinedCameraPoseCount()));
+        }
+    }
+
     /**
      * Creates a resource for just a single view, using the default image for that view but with custom load options
      *
@@ -749,18 +900,22 @@ public final class GraphicsResourcesImageSpace<ContextType extends Context<Conte
 
             PreviewImageGenerator previewImageGenerator = PreviewImageGenerator.start(viewSet, progressMonitor);
 
-            if (MULTITHREAD_PREVIEW_IMAGE_GENERATION && maxLoadingThreads > 1)
+            // Pipeline the work across the loading threads unless the user limited loading to a single thread.
+            if (maxLoadingThreads > 1)
             {
                 LOG.info("Using {} threads...", maxLoadingThreads);
-                generateAllPreviewImagesMultithread(previewImageGenerator, maxLoadingThreads);
+                try (PreviewImagePipeline pipeline = PreviewImagePipeline.start(previewImageGenerator, maxLoadingThreads))
+                {
+                    LOG.info("Waiting for preview image pipeline to finish");
+                    previewImageGenerator.waitAndFinish();
+                }
             }
             else // sequential mode
             {
                 generateAllPreviewImagesSequential(previewImageGenerator);
+                previewImageGenerator.waitAndFinish();
             }
 
-            previewImageGenerator.waitAndFinish();
-
             LOG.info("Undistorted preview images generated in {} milliseconds.", new Date().getTime() - timestamp.getTime());
         }
     }
@@ -789,54 +944,17 @@ public final class GraphicsResourcesImageSpace<ContextType extends Context<Conte
         LOG.info("Waiting for undistortion to finish on rendering thread");
     }
 
-    private static void generateAllPreviewImagesMultithread(PreviewImageGenerator previewImageGenerator, int maxLoadingThreads)
-    {
-        // Need to use custom ForkJoinPool so that number of threads doesn't go out of control and use up the Java heap space
-        ForkJoinPool customThreadPool = new ForkJoinPool(maxLoadingThreads);
-
-        customThreadPool.submit(() -> IntStream.range(0, previewImageGenerator.getViewCount())
-            .parallel() // allow images to be processed in parallel; especially important for ICC transformation if present
-            .forEach(i ->
-            {
-                PreviewImages previewImages = previewImageGenerator.forView(i);
-                if (previewImages.fullResImageExists() && previewImages.hasMissingFiles())
-                {
-                    if (previewImages.needsUndistortion())
-                    {
-                        // Do the undistortion on the rendering thread
-                        Rendering.runLater(new GraphicsRequest()
-                        {
-                            @Override
-                            public <ContextType extends Context<ContextType>> void executeRequest(ContextType context)
-                            {
-                                previewImages.tryGenerateUndistortedPreviewImage(context);
-
-                                // Write to a file on another thread so as not to block the rendering thread
-                                new Thread(previewImages::tryCreateMissingFiles).start();
-                            }
-                        });
-                    }
-                    else
-                    {
-                        // Fallback to simply resizing without undistorting
-                        // Does not require graphics context, so threading is simple.
-                        previewImages.tryCreateMissingFilesNoUndistortion();
-                    }
-                }
-            }));
-
-        LOG.info("Finished reading all images; waiting for undistortion to finish on other threads");
-    }
-
     /**
-     * Used to generate a single preview image if one is missing
+     * Used to generate a single preview image if one is missing.
+     * The cache manifests are not saved; that is left to the caller once it is done with the generator.
      *
-     * @param poseIndex
-     * @throws IOException
+     * @param previewImageGenerator The generator shared by every view being loaded.
+     * @param poseIndex The view to generate the preview image for.
+     * @return False if no preview image is used for this view (no distortion and preview dimensions are zero),
+     * in which case the full resolution image should be loaded instead.
      */
-    private boolean generatePreviewImages(int poseIndex)
+    private boolean generatePreviewImages(PreviewImageGenerator previewImageGenerator, int poseIndex)
     {
-        PreviewImageGenerator previewImageGenerator = PreviewImageGenerator.start(getViewSet());
         PreviewImages previewImages = previewImageGenerator.forView(poseIndex);
 
         if (previewImages.hasMissingFiles())
@@ -863,23 +981,32 @@ public final class GraphicsResourcesImageSpace<ContextType extends Context<Conte
         return previewImages.needsUndistortion() || (getViewSet().getPreviewWidth() > 0 && getViewSet().getPreviewHeight() > 0);
     }
 
-    private File findOrGeneratePreviewImageFile(int index) throws IOException
+    /**
+     * Sees if the preview image for a view is already there.
+     * @param index The view index.
+     * @return The preview image file, or null if it needs to be generated.
+     */
+    private File tryFindPreviewImageFile(int index)
     {
         try
         {
-            // See if the preview image is already there
             return ImageFinder.getInstance().findImageFile(getViewSet().getPreviewImageFile(index));
         }
         catch (FileNotFoundException e)
         {
-            if (generatePreviewImages(index)) // Generate file if necessary
-            {
-                return ImageFinder.getInstance().findImageFile(getViewSet().getPreviewImageFile(index));
-            }
-            else // File was not generated: no distortion and preview dimensions are zero.
-            {
-                return ImageFinder.getInstance().findImageFile(getViewSet().getFullResImageFile(index));
-            }
+            return null;
+        }
+    }
+
+    private File generatePreviewImageFile(PreviewImageGenerator previewImageGenerator, int index) throws IOException
+    {
+        if (generatePreviewImages(previewImageGenerator, index)) // Generate file if necessary
+        {
+            return ImageFinder.getInstance().findImageFile(getViewSet().getPreviewImageFile(index));
+        }
+        else // File was not generated: no distortion and preview dimensions are zero.
+        {
+            return ImageFinder.getInstance().findImageFile(getViewSet().getFullResImageFile(index));
         }
     }
 
@@ -21,6 +21,9 @@ import kintsugi3d.gl.core.*;
 import kintsugi3d.gl.geometry.GeometryMode;
 import kintsugi3d.gl.geometry.GeometryTextures;
 import kintsugi3d.gl.material.TextureLoadOptions;
+import kintsugi3d.gl.nativebuffer.NativeDataType;
+import kintsugi3d.gl.nativebuffer.NativeVectorBuffer;
+import kintsugi3d.gl.nativebuffer.NativeVectorBufferFactory;
 import kintsugi3d.util.ImageFinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +60,7 @@ public class GraphicsResourcesTextureSpace<ContextType extends Context<ContextTy
      * @param sharedResources
      * @param geometryTextureFactory This instance will take ownership of the textures produced
      * @param textureDirectory
+     * @param format The format of the image files in the texture directory
      * @param loadOptions
      * @param texWidth
      * @param texHeight
@@ -64,7 +68,7 @@ public class GraphicsResourcesTextureSpace<ContextType extends Context<ContextTy
      * @throws IOException
      */
     GraphicsResourcesTextureSpace(GraphicsResourcesCommon<ContextType> sharedResources,
-        Supplier<GeometryTextures<ContextType>> geometryTextureFactory, File textureDirectory,
+        Supplier<GeometryTextures<ContextType>> geometryTextureFactory, File textureDirectory, ImageCacheFormat format,
         TextureLoadOptions loadOptions, int texWidth, int texHeight, ProgressMonitor progressMonitor)
             throws IOException, UserCancellationException
     {
@@ -99,7 +103,10 @@ public class GraphicsResourcesTextureSpace<ContextType extends Context<ContextTy
             progressMonitor.setStage(0, "Loading textures...");
         }
 
-        try
+        // Raw blocks are read into a single reusable buffer and uploaded without decoding;
+        // the buffer is returned to the pool once all layers are loaded.
+        try (NativeVectorBuffer rawBuffer = format == ImageCacheFormat.RAW ?
+            NativeVectorBufferFactory.getInstance().createEmptyPooled(NativeDataType.UNSIGNED_BYTE, 4, texWidth * texHeight) : null)
         {
             // Iterate over the layers to load in the texture array
             for (int k = 0; k < getViewSet().getCombinedCameraPoseCount(); k++)
@@ -110,9 +117,19 @@ public class GraphicsResourcesTextureSpace<ContextType extends Context<ContextTy
                     progressMonitor.allowUserCancellation();
                 }
 
-                textureArray.loadLayer(k,
-                    ImageFinder.getInstance().findImageFile(new File(textureDirectory, getViewSet().getImageFileName(k))),
-                    true);
+                if (rawBuffer != null)
+                {
+                    File rawFile = new File(textureDirectory, ImageFinder.getInstance()
+                        .getImageFileNameWithExtension(getViewSet().getImageFileName(k), format.getFileExtension()));
+                    RawImageBlockFile.read(rawFile, texWidth, texHeight, rawBuffer.getBuffer());
+                    textureArray.loadLayer(k, rawBuffer);
+                }
+                else
+                {
+                    textureArray.loadLayer(k,
+                        ImageFinder.getInstance().findImageFile(new File(textureDirectory, getViewSet().getImageFileName(k))),
+                        true);
+                }
             }
 
             if (progressMonitor != null)
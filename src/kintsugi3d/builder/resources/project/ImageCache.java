@@ -11,6 +11,7 @@
 
 package kintsugi3d.builder.resources.project;
 
+import kintsugi3d.builder.app.CacheSizeLedger;
 import kintsugi3d.builder.core.*;
 import kintsugi3d.gl.core.*;
 import kintsugi3d.gl.geometry.GeometryFramebuffer;
@@ -28,7 +29,6 @@ import kintsugi3d.util.ImageFinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -39,12 +39,19 @@ import java.util.Arrays;
 import java.util.Locale;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public class ImageCache<ContextType extends Context<ContextType>>
 {
     private static final Logger LOG = LoggerFactory.getLogger(ImageCache.class);
+
+    /**
+     * Version of the cache layout recorded in the format stamp; caches with a different version are rebuilt.
+     */
+    private static final int CACHE_VERSION = 1;
+
     private final ContextType context;
     private final GraphicsResourcesImageSpace<ContextType> resources;
     private final ImageCacheSettings settings;
@@ -52,6 +59,12 @@ public class ImageCache<ContextType extends Context<ContextType>>
     private final File sampledDir;
     private final IntVector2[][] sampledPixelCoords;
 
+    /**
+     * The format of the blocks currently on disk, which may differ from the format requested by the settings
+     * if the cache was built previously.
+     */
+    private ImageCacheFormat format;
+
     private boolean initialized = false;
 
     ImageCache(GraphicsResourcesImageSpace<ContextType> resources, ImageCacheSettings settings)
@@ -67,15 +80,19 @@ public class ImageCache<ContextType extends Context<ContextType>>
             .mapToObj(i -> new IntVector2[settings.getSampledSize()])
             .toArray(IntVector2[][]::new);
 
+        this.format = settings.getFormat();
+
         // Check if the sample locations were previously generated, and if so, read them from the file.
         if (getSampleLocationsFile().exists())
         {
             try
             {
+                readFormatStamp();
                 readSampleLocationsFromFile();
                 initialized = true; // reading sample locations succeeded; assume that we already have a valid cache
 
                 LOG.info("Using existing cache.");
+                CacheSizeLedger.getInstance().markUsed(settings.getCacheDirectory());
             }
             catch (IOException | RuntimeException e)
             {
@@ -112,6 +129,15 @@ public class ImageCache<ContextType extends Context<ContextType>>
         return initialized;
     }
 
+    /**
+     * Gets the format of the cache blocks on disk.
+     * @return The format of the cache blocks.
+     */
+    public ImageCacheFormat getFormat()
+    {
+        return format;
+    }
+
     /**
      * Initializes the cache by loading each image one at a time and writing out texture space blocks as well as a "sampled" low-res texture for each image
      * As a side effect of this method, the context's state will have back face culling enabled,
@@ -122,6 +148,11 @@ public class ImageCache<ContextType extends Context<ContextType>>
         // Create directories to organize the cache
         sampledDir.mkdirs();
 
+        // Rebuilding always uses the requested format; stamp it before any blocks are written
+        // so that a partially built cache is never read using the wrong format.
+        this.format = settings.getFormat();
+        writeFormatStamp();
+
         // Make sure backface culling is disabled
         context.getState().disableBackFaceCulling();
 
@@ -140,6 +171,11 @@ public class ImageCache<ContextType extends Context<ContextType>>
             selectSampleLocations(fbo);
             buildCache(fbo, monitor);
         }
+        finally
+        {
+            // Record that the cache changed size, even if building it was cancelled partway.
+            CacheSizeLedger.getInstance().markDirty(settings.getCacheDirectory());
+        }
     }
 
     private void selectSampleLocations(ReadableFramebuffer<ContextType> fbo) throws IOException
@@ -208,6 +244,52 @@ public class ImageCache<ContextType extends Context<ContextType>>
         return new File(settings.getCacheDirectory(), "sampleLocations.txt");
     }
 
+    private File getFormatStampFile()
+    {
+        return new File(settings.getCacheDirectory(), "format.txt");
+    }
+
+    private void writeFormatStamp() throws IOException
+    {
+        try(PrintStream out = new PrintStream(getFormatStampFile(), StandardCharsets.UTF_8))
+        {
+            out.printf("%s %d%n", format, CACHE_VERSION);
+        }
+    }
+
+    private void readFormatStamp() throws IOException
+    {
+        if (!getFormatStampFile().exists())
+        {
+            // Caches built before the format stamp was introduced are always PNG.
+            this.format = ImageCacheFormat.PNG;
+            return;
+        }
+
+        try(Scanner scanner = new Scanner(getFormatStampFile(), StandardCharsets.UTF_8))
+        {
+            scanner.useLocale(Locale.ROOT);
+
+            if (!scanner.hasNext())
+            {
+                throw new IOException("Image cache format stamp is empty");
+            }
+
+            String formatName = scanner.next();
+            ImageCacheFormat stampedFormat = Arrays.stream(ImageCacheFormat.values())
+                .filter(candidate -> candidate.name().equals(formatName))
+                .findFirst()
+                .orElseThrow(() -> new IOException("Unrecognized image cache format: " + formatName));
+
+            if (!scanner.hasNextInt() || scanner.nextInt() != CACHE_VERSION)
+            {
+                throw new IOException("Image cache was built by an incompatible version");
+            }
+
+            this.format = stampedFormat;
+        }
+    }
+
     private void writeSampleLocationsToFile() throws IOException
     {
         try(PrintStream out = new PrintStream(getSampleLocationsFile(), StandardCharsets.UTF_8))
@@ -284,108 +366,57 @@ public class ImageCache<ContextType extends Context<ContextType>>
                 monitor.setMaxProgress(resources.getViewSet().getCombinedCameraPoseCount());
             }
 
-            // Loop over the images, processing each one at a time
-            for (int k = 0; k < resources.getViewSet().getCombinedCameraPoseCount(); k++)
-            {
-                if (monitor != null)
-                {
-                    monitor.setProgress(k, MessageFormat.format("{0} ({1}/{2})", resources.getViewSet().getImageFileName(k), k+1, resources.getViewSet().getCombinedCameraPoseCount()));
-                    monitor.allowUserCancellation();
-                }
+            long renderNanos = 0;
+            long readbackNanos = 0;
+            long startTime = System.nanoTime();
 
-                try (SingleCalibratedImageResource<ContextType> image = resources.createSingleImageResource(k, loadOptions))
+            try (ImageCacheBlockWriter blockWriter = new ImageCacheBlockWriter(settings, format, sampledPixelCoords, sampledDir))
+            {
+                // Loop over the images, rendering each one at a time; the block writer slices and encodes them on other threads.
+                for (int k = 0; k < resources.getViewSet().getCombinedCameraPoseCount(); k++)
                 {
-                    fbo.clearColorBuffer(0, 0.0f, 0.0f, 0.0f, 0.0f);
-                    image.setupShaderProgram(texSpaceProgram);
-                    texSpaceDrawable.draw(fbo);
-
-                    // Force PNG format for lossless encoding
-                    String pngFilename = ImageFinder.getInstance().getImageFileNameWithExtension(
-                        resources.getViewSet().getImageFileName(k), "png");
-
-                    // "Sampled" image to store randomly selected pixels for preliminary optimization at a lower resolution.
-                    BufferedImage sampled = new BufferedImage(settings.getSampledSize(), settings.getSampledSize(), BufferedImage.TYPE_INT_ARGB);
+                    if (monitor != null)
+                    {
+                        monitor.setProgress(k, MessageFormat.format("{0} ({1}/{2})", resources.getViewSet().getImageFileName(k), k+1, resources.getViewSet().getCombinedCameraPoseCount()));
+                        monitor.allowUserCancellation();
+                    }
 
-                    int x = 0;
-                    int y = 0;
+                    long renderStart = System.nanoTime();
+                    int[] pixels;
 
-                    // Generate block images
-                    // Loop over "columns"
-                    for (int i = 0; i < settings.getTextureSubdiv(); i++)
+                    try (SingleCalibratedImageResource<ContextType> image = resources.createSingleImageResource(k, loadOptions))
                     {
-                        int xNext = getSettings().getBlockStartX(i + 1);
-
-                        // xRand < round(texture width * (xSample + 1) / sampled width)
-                        // xRand <= texture width * (xSample + 1) / sampled width - 0.5;
-                        // xSample >= (xRand + 0.5) * sampled width / texture width - 1
-                        // When i = 0: x = 0, xSampleStart should be 0 [ceil(0.5 * sampled width / texture width) - 1 = 1 - 1]
-                        // -------
-                        // xRand >= round(texture width * xSample / sampled width)
-                        // xRand > texture width * xSample / sampled width - 0.5;
-                        // xSample < (xRand + 0.5) * sampled width / texture width
-                        // xRand < xNext, therefore:
-                        // xSample < (xNext - 0.5) * sampled width / texture width
-                        // When i = sampled width - 1: xNext = texture width, xSampleEnd should be sampled width
-                        // [ceil((texture width - 0.5) * sampled width / texture width) = ceil(sampled width - 0.5 * sampled width / textured width)]
-                        int xSampleStart = (int) Math.ceil((x + 0.5) * (double) settings.getSampledSize() / (double) settings.getTextureWidth()) - 1;
-                        int xSampleEnd = (int) Math.ceil((xNext - 0.5) * (double) settings.getSampledSize() / (double) settings.getTextureWidth());
-
-                        // Loop over "rows"
-                        for (int j = 0; j < settings.getTextureSubdiv(); j++)
-                        {
-                            int yNext = getSettings().getBlockStartY(j + 1);
-
-                            int width = xNext - x;
-                            int height = yNext - y;
-
-                            // Read pixels from the framebuffer
-                            int[] block = fbo.getTextureReaderForColorAttachment(0).readARGB(x, y, width, height);
-                            BufferedImage blockImage = BufferedImageBuilder.build()
-                                .setDataFromArray(block, width, height)
-                                .flipVertical()
-                                .create();
-//                            blockImage.setRGB(0, 0, width, height, block, 0, width);
-
-                            // Write the block image out to disk
-                            ImageIO.write(blockImage, "PNG",
-                                new File(new File(settings.getCacheDirectory(), String.format("%d_%d", i, j)), pngFilename));
-
-                            // See derivations for x above
-                            int ySampleStart = (int) Math.ceil((y + 0.5) * (double) settings.getSampledSize() / (double) settings.getTextureHeight()) - 1;
-                            int ySampleEnd = (int) Math.ceil((yNext - 0.5) * (double) settings.getSampledSize() / (double) settings.getTextureHeight());
-
-                            // Fill in any pixels in the "sampled" image that come from this block, using the pixel coordinates selected randomly earlier.
-                            for (int xSample = xSampleStart; xSample < xSampleEnd; xSample++)
-                            {
-                                for (int ySample = ySampleStart; ySample < ySampleEnd; ySample++)
-                                {
-                                    // Copy the randomly selected pixel into the sampled image.
-                                    IntVector2 coords = sampledPixelCoords[xSample][ySample];
-
-                                    // due to randomness, no guarantee that all coords are in this block
-                                    if (coords.x >= x && coords.x < xNext && coords.y >= y && coords.y < yNext)
-                                    {
-                                        // Make sure to account for the start of the block to avoid out-of-bounds indices after the first block
-                                        // Need to flip both the source and destination y-components (since the block image is already flipped,
-                                        // our coordinates are in non-flipped space, but we ultimately do want the sampled image to also be flipped).
-                                        sampled.setRGB(xSample, settings.getSampledSize() - ySample - 1,
-                                            blockImage.getRGB(coords.x - x, height - (coords.y - y) - 1));
-                                    }
-                                }
-                            }
-
-                            // Advance to the next row
-                            y = yNext;
-                        }
+                        fbo.clearColorBuffer(0, 0.0f, 0.0f, 0.0f, 0.0f);
+                        image.setupShaderProgram(texSpaceProgram);
+                        texSpaceDrawable.draw(fbo);
+
+                        long readbackStart = System.nanoTime();
+                        renderNanos += readbackStart - renderStart;
 
-                        // Advance to the next column
-                        x = xNext;
-                        y = 0;
+                        // Read back the whole attachment once; blocks and the "sampled" image are cut from this on the encoder threads.
+                        pixels = fbo.getTextureReaderForColorAttachment(0).readARGB();
+                        readbackNanos += System.nanoTime() - readbackStart;
                     }
 
-                    ImageIO.write(sampled, "PNG", new File(sampledDir, pngFilename));
+                    // Force PNG or raw format for lossless encoding
+                    String blockFilename = ImageFinder.getInstance().getImageFileNameWithExtension(
+                        resources.getViewSet().getImageFileName(k), format.getFileExtension());
+
+                    // Blocks if the encoder threads have fallen too far behind.
+                    blockWriter.submit(blockFilename, pixels);
                 }
+
+                blockWriter.finish();
             }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new UserCancellationException("Interrupted while building image cache.");
+            }
+
+            LOG.info("Image cache built in {} ms; rendering: {} ms, readback: {} ms",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime),
+                TimeUnit.NANOSECONDS.toMillis(renderNanos), TimeUnit.NANOSECONDS.toMillis(readbackNanos));
 
             if (monitor != null)
             {
@@ -404,7 +435,7 @@ public class ImageCache<ContextType extends Context<ContextType>>
         try
         {
             return new GraphicsResourcesTextureSpace<>(resources.getSharedResources(), this::createSampledGeometryTextures,
-                sampledDir, loadOptions, settings.getSampledSize(), settings.getSampledSize(), monitor);
+                sampledDir, format, loadOptions, settings.getSampledSize(), settings.getSampledSize(), monitor);
         }
         catch (IOException e)
         {
@@ -441,18 +472,25 @@ public class ImageCache<ContextType extends Context<ContextType>>
         return highResCoords.x + highResCoords.y * settings.getTextureWidth();
     }
 
+    /**
+     * Samples a full resolution buffer at the sampled pixel coordinates; the full resolution buffer is closed afterwards.
+     * The returned buffer is pooled and must be closed by the caller.
+     */
     private ReadonlyNativeVectorBuffer sampleHighResBuffer(ReadonlyNativeVectorBuffer highResBuffer)
     {
-        NativeVectorBuffer sampledBuffer = NativeVectorBufferFactory.getInstance()
-            .createEmpty(NativeDataType.FLOAT, 3, settings.getSampledSize() * settings.getSampledSize());
-        for (int i = 0; i < sampledBuffer.getCount(); i++)
+        try (highResBuffer)
         {
-            int highResIndex = getHighResIndexForSample(i);
-            sampledBuffer.set(i, 0, highResBuffer.get(highResIndex, 0));
-            sampledBuffer.set(i, 1, highResBuffer.get(highResIndex, 1));
-            sampledBuffer.set(i, 2, highResBuffer.get(highResIndex, 2));
+            NativeVectorBuffer sampledBuffer = NativeVectorBufferFactory.getInstance()
+                .createEmptyPooled(NativeDataType.FLOAT, 3, settings.getSampledSize() * settings.getSampledSize());
+            for (int i = 0; i < sampledBuffer.getCount(); i++)
+            {
+                int highResIndex = getHighResIndexForSample(i);
+                sampledBuffer.set(i, 0, highResBuffer.get(highResIndex, 0));
+                sampledBuffer.set(i, 1, highResBuffer.get(highResIndex, 1));
+                sampledBuffer.set(i, 2, highResBuffer.get(highResIndex, 2));
+            }
+            return sampledBuffer;
         }
-        return sampledBuffer;
     }
 
     private GeometryTextures<ContextType> createSampledGeometryTextures()
@@ -466,24 +504,30 @@ public class ImageCache<ContextType extends Context<ContextType>>
 
             // Sample position buffer
             ReadableFramebuffer<ContextType> contextTypeFramebuffer2 = geomTexturesFullRes.getFramebuffer();
-            sampledGeometryTextures.getPositionTexture().load(
-                sampleHighResBuffer(NativeVectorBufferFactory.getInstance()
-                    .createFromFloatArray(4, settings.getTextureWidth() * settings.getTextureHeight(),
-                        contextTypeFramebuffer2.getTextureReaderForColorAttachment(0).readFloatingPointRGBA())));
+            try (ReadonlyNativeVectorBuffer sampledPositions = sampleHighResBuffer(NativeVectorBufferFactory.getInstance()
+                .createFromFloatArray(4, settings.getTextureWidth() * settings.getTextureHeight(),
+                    contextTypeFramebuffer2.getTextureReaderForColorAttachment(0).readFloatingPointRGBA())))
+            {
+                sampledGeometryTextures.getPositionTexture().load(sampledPositions);
+            }
 
             // Sample normal buffer
             ReadableFramebuffer<ContextType> contextTypeFramebuffer1 = geomTexturesFullRes.getFramebuffer();
-            sampledGeometryTextures.getNormalTexture().load(
-                sampleHighResBuffer(NativeVectorBufferFactory.getInstance()
-                    .createFromFloatArray(4, settings.getTextureWidth() * settings.getTextureHeight(),
-                        contextTypeFramebuffer1.getTextureReaderForColorAttachment(1).readFloatingPointRGBA())));
+            try (ReadonlyNativeVectorBuffer sampledNormals = sampleHighResBuffer(NativeVectorBufferFactory.getInstance()
+                .createFromFloatArray(4, settings.getTextureWidth() * settings.getTextureHeight(),
+                    contextTypeFramebuffer1.getTextureReaderForColorAttachment(1).readFloatingPointRGBA())))
+            {
+                sampledGeometryTextures.getNormalTexture().load(sampledNormals);
+            }
 
             // Sample tangent buffer
             ReadableFramebuffer<ContextType> contextTypeFramebuffer = geomTexturesFullRes.getFramebuffer();
-            sampledGeometryTextures.getTangentTexture().load(
-                sampleHighResBuffer(NativeVectorBufferFactory.getInstance()
-                    .createFromFloatArray(4, settings.getTextureWidth() * settings.getTextureHeight(),
-                        contextTypeFramebuffer.getTextureReaderForColorAttachment(2).readFloatingPointRGBA())));
+            try (ReadonlyNativeVectorBuffer sampledTangents = sampleHighResBuffer(NativeVectorBufferFactory.getInstance()
+                .createFromFloatArray(4, settings.getTextureWidth() * settings.getTextureHeight(),
+                    contextTypeFramebuffer.getTextureReaderForColorAttachment(2).readFloatingPointRGBA())))
+            {
+                sampledGeometryTextures.getTangentTexture().load(sampledTangents);
+            }
 
             return sampledGeometryTextures;
         }
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.builder.resources.project;
+
+import kintsugi3d.gl.vecmath.IntVector2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Slices full-resolution texture space readbacks into cache blocks and encodes them on a pool of worker threads,
+ * so that the rendering thread can move on to the next view while the previous one is still being written.
+ * The number of views that may be pending at once is bounded so that memory usage stays predictable;
+ * submitting a view blocks until an earlier view has been fully written if that limit has been reached.
+ */
+class ImageCacheBlockWriter implements AutoCloseable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ImageCacheBlockWriter.class);
+
+    /**
+     * Fraction of the maximum heap size that pending readbacks are allowed to occupy.
+     */
+    private static final double PENDING_MEMORY_FRACTION = 0.25;
+
+    private final ImageCacheSettings settings;
+    private final ImageCacheFormat format;
+    private final IntVector2[][] sampledPixelCoords;
+    private final File sampledDir;
+
+    private final ExecutorService encoderPool;
+    private final int maxPendingViews;
+    private final Semaphore pendingViews;
+
+    private final AtomicReference<IOException> firstError = new AtomicReference<>();
+
+    private final AtomicLong sliceNanos = new AtomicLong();
+    private final AtomicLong encodeNanos = new AtomicLong();
+    private final AtomicInteger blocksWritten = new AtomicInteger();
+
+    ImageCacheBlockWriter(ImageCacheSettings settings, ImageCacheFormat format, IntVector2[][] sampledPixelCoords, File sampledDir)
+    {
+        this.settings = settings;
+        this.format = format;
+        this.sampledPixelCoords = sampledPixelCoords;
+        this.sampledDir = sampledDir;
+
+        // Leave one core for the rendering thread.
+        int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.encoderPool = Executors.newFixedThreadPool(threadCount, runnable ->
+        {
+            Thread thread = new Thread(runnable, "ImageCache-encoder-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Each pending view holds a full readback of the texture (plus a copy of one block per encoder thread).
+        long bytesPerView = 4L * settings.getTextureWidth() * settings.getTextureHeight();
+        long memoryBudget = (long) (Runtime.getRuntime().maxMemory() * PENDING_MEMORY_FRACTION);
+        this.maxPendingViews = (int) Math.max(1, Math.min(threadCount, memoryBudget / Math.max(1, bytesPerView)));
+        this.pendingViews = new Semaphore(maxPendingViews);
+
+        LOG.info("Writing image cache using {} encoder threads with up to {} views pending.", threadCount, maxPendingViews);
+    }
+
+    /**
+     * Queues a view to be sliced into blocks and written to the cache.
+     * Blocks if too many views are already pending.
+     * @param blockFilename The filename to use for the block files and the sampled image of this view.
+     * @param pixels A readback of the entire texture space framebuffer, as returned by
+     *               {@link kintsugi3d.gl.core.ColorTextureReader#readARGB()} (i.e. with the bottom row first).
+     *               The array must not be modified by the caller after it is submitted.
+     * @throws IOException If an earlier view failed to be written.
+     * @throws InterruptedException If interrupted while waiting for an earlier view to finish.
+     */
+    void submit(String blockFilename, int[] pixels) throws IOException, InterruptedException
+    {
+        throwIfFailed();
+        pendingViews.acquire();
+
+        int blockCount = settings.getTextureSubdiv() * settings.getTextureSubdiv();
+
+        // The sampled image and each of the blocks are separate tasks; the last one to finish releases the view.
+        AtomicInteger remainingTasks = new AtomicInteger(blockCount + 1);
+        Runnable onTaskFinished = () ->
+        {
+            if (remainingTasks.decrementAndGet() == 0)
+            {
+                pendingViews.release();
+            }
+        };
+
+        encoderPool.execute(() -> runTask(() -> writeSampled(blockFilename, pixels), onTaskFinished));
+
+        for (int i = 0; i < settings.getTextureSubdiv(); i++)
+        {
+            for (int j = 0; j < settings.getTextureSubdiv(); j++)
+            {
+                int iFinal = i;
+                int jFinal = j;
+                encoderPool.execute(() -> runTask(() -> writeBlock(blockFilename, pixels, iFinal, jFinal), onTaskFinished));
+            }
+        }
+    }
+
+    /**
+     * Waits for all pending views to finish being written.
+     * @throws IOException If any view failed to be written.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    void finish() throws IOException, InterruptedException
+    {
+        pendingViews.acquire(maxPendingViews);
+        pendingViews.release(maxPendingViews);
+        throwIfFailed();
+
+        LOG.info("Wrote {} cache blocks; slicing: {} ms, encoding: {} ms (summed over encoder threads)",
+            blocksWritten.get(), TimeUnit.NANOSECONDS.toMillis(sliceNanos.get()), TimeUnit.NANOSECONDS.toMillis(encodeNanos.get()));
+    }
+
+    @Override
+    public void close()
+    {
+        encoderPool.shutdownNow();
+    }
+
+    @FunctionalInterface
+    private interface IOTask
+    {
+        void run() throws IOException;
+    }
+
+    private void runTask(IOTask task, Runnable onTaskFinished)
+    {
+        try
+        {
+            // Skip remaining work once something has gone wrong.
+            if (firstError.get() == null)
+            {
+                task.run();
+            }
+        }
+        catch (IOException e)
+        {
+            firstError.compareAndSet(null, e);
+        }
+        catch (RuntimeException e)
+        {
+            firstError.compareAndSet(null, new IOException(e));
+        }
+        finally
+        {
+            onTaskFinished.run();
+        }
+    }
+
+    private void throwIfFailed() throws IOException
+    {
+        IOException error = firstError.get();
+        if (error != null)
+        {
+            throw error;
+        }
+    }
+
+    private void writeBlock(String blockFilename, int[] pixels, int i, int j) throws IOException
+    {
+        long sliceStart = System.nanoTime();
+
+        int x = settings.getBlockStartX(i);
+        int y = settings.getBlockStartY(j);
+        int width = settings.getBlockStartX(i + 1) - x;
+        int height = settings.getBlockStartY(j + 1) - y;
+
+        File blockFile = new File(settings.getBlockDir(i, j), blockFilename);
+
+        if (format == ImageCacheFormat.RAW)
+        {
+            // Raw blocks keep the row order of the readback, so they can be written without an intermediate copy.
+            long encodeStart = System.nanoTime();
+            RawImageBlockFile.write(blockFile, pixels, y * settings.getTextureWidth() + x, settings.getTextureWidth(), width, height);
+            encodeNanos.addAndGet(System.nanoTime() - encodeStart);
+            blocksWritten.incrementAndGet();
+            return;
+        }
+
+        // Copy the rows belonging to this block, flipping vertically at the same time
+        // since the readback has the bottom row first.
+        int[] block = new int[width * height];
+        for (int row = 0; row < height; row++)
+        {
+            System.arraycopy(pixels, (y + height - row - 1) * settings.getTextureWidth() + x, block, row * width, width);
+        }
+
+        BufferedImage blockImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        blockImage.setRGB(0, 0, width, height, block, 0, width);
+
+        long encodeStart = System.nanoTime();
+        sliceNanos.addAndGet(encodeStart - sliceStart);
+
+        ImageIO.write(blockImage, "PNG", blockFile);
+
+        encodeNanos.addAndGet(System.nanoTime() - encodeStart);
+        blocksWritten.incrementAndGet();
+    }
+
+    private void writeSampled(String blockFilename, int[] pixels) throws IOException
+    {
+        long sliceStart = System.nanoTime();
+
+        // "Sampled" image to store randomly selected pixels for preliminary optimization at a lower resolution.
+        int sampledSize = settings.getSampledSize();
+
+        if (format == ImageCacheFormat.RAW)
+        {
+            // Same row order as the readback (not flipped).
+            int[] sampledPixels = new int[sampledSize * sampledSize];
+            for (int xSample = 0; xSample < sampledSize; xSample++)
+            {
+                for (int ySample = 0; ySample < sampledSize; ySample++)
+                {
+                    IntVector2 coords = sampledPixelCoords[xSample][ySample];
+                    sampledPixels[ySample * sampledSize + xSample] = pixels[coords.y * settings.getTextureWidth() + coords.x];
+                }
+            }
+
+            long encodeStart = System.nanoTime();
+            sliceNanos.addAndGet(encodeStart - sliceStart);
+
+            RawImageBlockFile.write(new File(sampledDir, blockFilename), sampledPixels, 0, sampledSize, sampledSize, sampledSize);
+
+            encodeNanos.addAndGet(System.nanoTime() - encodeStart);
+            return;
+        }
+
+        BufferedImage sampled = new BufferedImage(sampledSize, sampledSize, BufferedImage.TYPE_INT_ARGB);
+
+        for (int xSample = 0; xSample < sampledSize; xSample++)
+        {
+            for (int ySample = 0; ySample < sampledSize; ySample++)
+            {
+                // Copy the randomly selected pixel into the sampled image.
+                // The readback is not flipped, but the sampled image should be.
+                IntVector2 coords = sampledPixelCoords[xSample][ySample];
+                sampled.setRGB(xSample, sampledSize - ySample - 1, pixels[coords.y * settings.getTextureWidth() + coords.x]);
+            }
+        }
+
+        long encodeStart = System.nanoTime();
+        sliceNanos.addAndGet(encodeStart - sliceStart);
+
+        ImageIO.write(sampled, "PNG", new File(sampledDir, blockFilename));
+
+        encodeNanos.addAndGet(System.nanoTime() - encodeStart);
+    }
+}
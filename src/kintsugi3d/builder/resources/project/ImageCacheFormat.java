@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.builder.resources.project;
+
+/**
+ * The file format used to store texture space blocks and sampled images in the image cache.
+ */
+public enum ImageCacheFormat
+{
+    /**
+     * Lossless PNG images; compact on disk, but must be deflated when written and inflated again when loaded.
+     */
+    PNG("png"),
+
+    /**
+     * Uncompressed RGBA8 pixels behind a small fixed header, stored in the same row order as the GPU texture
+     * so that they can be uploaded to a texture layer without decoding or flipping.
+     */
+    RAW("k3dblock");
+
+    private final String fileExtension;
+
+    ImageCacheFormat(String fileExtension)
+    {
+        this.fileExtension = fileExtension;
+    }
+
+    public String getFileExtension()
+    {
+        return fileExtension;
+    }
+}
@@ -21,6 +21,7 @@ public class ImageCacheSettings
     private int textureSubdiv;
     private int sampledSize;
     private String cacheFolderName;
+    private ImageCacheFormat format = ImageCacheFormat.PNG;
 
     public File getCacheDirectory()
     {
@@ -52,6 +53,16 @@ public class ImageCacheSettings
         return sampledSize;
     }
 
+    /**
+     * Gets the format to use when the cache is built.
+     * An existing cache is always read in the format it was built with, regardless of this setting.
+     * @return The format for new cache blocks.
+     */
+    public ImageCacheFormat getFormat()
+    {
+        return format;
+    }
+
     public void setCacheParentDirectory(File cacheParentDirectory)
     {
         this.cacheParentDirectory = cacheParentDirectory;
@@ -77,6 +88,16 @@ public class ImageCacheSettings
         this.sampledSize = sampledSize;
     }
 
+    /**
+     * Sets the format to use when the cache is built.
+     * An existing cache is always read in the format it was built with, regardless of this setting.
+     * @param format The format for new cache blocks.
+     */
+    public void setFormat(ImageCacheFormat format)
+    {
+        this.format = format;
+    }
+
     public String getFolderNameFromSettings()
     {
         if (cacheFolderName != null)
@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+package kintsugi3d.builder.resources.project;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records, for each generated image in a directory, a key derived from the content of the source image it was
+ * generated from together with the parameters used to generate it.
+ * A generated image is only reused if its recorded key matches the key that would be used to generate it now,
+ * so that changes to the source images or generation parameters are detected even if the files themselves still exist,
+ * while moving a project to a different location does not invalidate anything.
+ * The size and modification time of each source are also recorded so that unchanged sources do not need to be rehashed.
+ * Images generated before the manifest existed are adopted based on modification time, and their sources are hashed
+ * in the background rather than while the project is loading.
+ */
+class PreviewCacheManifest
+{
+    private static final Logger LOG = LoggerFactory.getLogger(PreviewCacheManifest.class);
+
+    private static final String FILE_NAME = "cache-manifest.tsv";
+
+    private static final int HASH_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Concurrent loads of the same project may race to save the same manifest.
+     */
+    private static final Object SAVE_LOCK = new Object();
+
+    /**
+     * Hashes the sources of adopted images one view at a time, so that it stays out of the way of loading.
+     */
+    private static final ThreadPoolExecutor ADOPTION_HASHER = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(), runnable ->
+        {
+            Thread thread = new Thread(runnable, "Preview Cache Hasher");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+    /**
+     * Manifests with adopted entries that have not been saved yet; saved once the hasher runs out of work.
+     */
+    private static final Set<PreviewCacheManifest> UNSAVED_ADOPTIONS = ConcurrentHashMap.newKeySet();
+
+    private final File file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean modified = false;
+
+    private static final class Entry
+    {
+        final String sourceStamp;
+        final String sourceDigest;
+        final String key;
+
+        Entry(String sourceStamp, String sourceDigest, String key)
+        {
+            this.sourceStamp = sourceStamp;
+            this.sourceDigest = sourceDigest;
+            this.key = key;
+        }
+    }
+
+    /**
+     * A generated image to be adopted into a manifest once the digest of its sources is known.
+     */
+    static final class Adoption
+    {
+        final PreviewCacheManifest manifest;
+        final String name;
+        final Object[] parameters;
+
+        /**
+         * @param manifest The manifest for the directory containing the generated image.
+         * @param name The name of the generated image.
+         * @param parameters The parameters that would be used to generate the image now.
+         */
+        Adoption(PreviewCacheManifest manifest, String name, Object... parameters)
+        {
+            this.manifest = manifest;
+            this.name = name;
+            this.parameters = parameters;
+        }
+    }
+
+    private PreviewCacheManifest(File directory)
+    {
+        this.file = new File(directory, FILE_NAME);
+    }
+
+    /**
+     * Loads the manifest for a directory of generated images.
+     * A missing or unreadable manifest results in an empty manifest, so every existing image will be regenerated.
+     * @param directory The directory containing the generated images.
+     * @return The manifest.
+     */
+    static PreviewCacheManifest load(File directory)
+    {
+        PreviewCacheManifest manifest = new PreviewCacheManifest(directory);
+
+        try
+        {
+            manifest.readInto(manifest.entries);
+        }
+        catch (IOException e)
+        {
+            LOG.warn("Could not read cache manifest {}; generated images will be revalidated", manifest.file, e);
+        }
+
+        return manifest;
+    }
+
+    private void readInto(Map<String, Entry> destination) throws IOException
+    {
+        if (file.exists())
+        {
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    String[] fields = line.split("\t");
+                    if (fields.length == 4)
+                    {
+                        destination.putIfAbsent(fields[0], new Entry(fields[1], fields[2], fields[3]));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the digest of the content of a source image, if it was recorded for the same source files as they exist now.
+     * @param name The name of the generated image.
+     * @param sources The source files; null entries or files that do not exist are allowed.
+     * @return The recorded digest, or null if the sources have changed since it was recorded (or nothing was recorded).
+     */
+    String findSourceDigest(String name, File... sources)
+    {
+        Entry entry = entries.get(name);
+        return entry != null && entry.sourceStamp.equals(stampOf(sources)) ? entry.sourceDigest : null;
+    }
+
+    /**
+     * Checks whether anything has been recorded for a generated image.
+     * @param name The name of the generated image.
+     * @return True if the image has an entry, whether or not it is current.
+     */
+    boolean contains(String name)
+    {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * Checks whether a generated image was generated with a particular key.
+     * @param name The name of the generated image.
+     * @param key The key that would be used to generate the image now.
+     * @return True if the image can be reused.
+     */
+    boolean isCurrent(String name, String key)
+    {
+        Entry entry = entries.get(name);
+        return entry != null && entry.key.equals(key);
+    }
+
+    /**
+     * Records that a generated image has been written.
+     * @param name The name of the generated image.
+     * @param sourceDigest The digest of the content of the source files.
+     * @param key The key with which the image was generated.
+     * @param sources The source files that were digested.
+     */
+    void record(String name, String sourceDigest, String key, File... sources)
+    {
+        entries.put(name, new Entry(stampOf(sources), sourceDigest, key));
+        modified = true;
+    }
+
+    /**
+     * Checks whether a generated image with no entry can be adopted as it is, i.e. whether it was written after
+     * every one of its sources was last modified.
+     * @param generatedFile The generated image.
+     * @param sources The source files; null entries or files that do not exist are allowed.
+     * @return True if none of the sources are newer than the generated image.
+     */
+    static boolean isNewerThanSources(File generatedFile, File... sources)
+    {
+        long generatedTime = generatedFile.lastModified();
+        for (File source : sources)
+        {
+            if (source != null && source.lastModified() > generatedTime)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records images that were generated before their manifests existed, without holding up the caller.
+     * The sources are hashed on a background thread and the manifests are saved once there is nothing left to hash.
+     * If the application exits first, the images will simply be adopted again next time.
+     * Images that have been recorded by other means in the meantime are left alone.
+     * @param sources The source files shared by every image being adopted.
+     * @param adoptions The images to adopt.
+     */
+    static void adoptInBackground(File[] sources, Adoption... adoptions)
+    {
+        // Stamp the sources now so that any change made while hashing is caught the next time they are checked.
+        String sourceStamp = stampOf(sources);
+
+        ADOPTION_HASHER.execute(() ->
+        {
+            try
+            {
+                String sourceDigest = digestOf(sources);
+                for (Adoption adoption : adoptions)
+                {
+                    if (adoption.manifest.entries.putIfAbsent(adoption.name,
+                        new Entry(sourceStamp, sourceDigest, keyOf(sourceDigest, adoption.parameters))) == null)
+                    {
+                        adoption.manifest.modified = true;
+                        UNSAVED_ADOPTIONS.add(adoption.manifest);
+                    }
+                }
+            }
+            catch (IOException | RuntimeException e)
+            {
+                LOG.warn("Failed to hash {}; its generated images will be revalidated next time", sources[0], e);
+            }
+            finally
+            {
+                if (ADOPTION_HASHER.getQueue().isEmpty())
+                {
+                    saveAdoptions();
+                }
+            }
+        });
+    }
+
+    private static void saveAdoptions()
+    {
+        for (PreviewCacheManifest manifest : UNSAVED_ADOPTIONS)
+        {
+            UNSAVED_ADOPTIONS.remove(manifest);
+
+            try
+            {
+                manifest.save();
+            }
+            catch (IOException e)
+            {
+                LOG.warn("Failed to save cache manifest {}", manifest.file, e);
+            }
+        }
+    }
+
+    /**
+     * Writes the manifest if anything has been recorded since it was loaded.
+     * Entries recorded by someone else in the meantime are preserved unless this manifest has its own entry for the same image.
+     * @throws IOException If the manifest could not be written.
+     */
+    void save() throws IOException
+    {
+        if (!modified)
+        {
+            return;
+        }
+
+        synchronized (SAVE_LOCK)
+        {
+            // Cleared before taking the snapshot so that anything recorded while writing is saved next time.
+            modified = false;
+
+            try
+            {
+                Map<String, Entry> merged = new ConcurrentHashMap<>(entries);
+                readInto(merged);
+
+                File tempFile = new File(file.getParentFile(), FILE_NAME + ".tmp");
+                try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)))
+                {
+                    for (Map.Entry<String, Entry> entry : merged.entrySet())
+                    {
+                        writer.println(String.join("\t", entry.getKey(),
+                            entry.getValue().sourceStamp, entry.getValue().sourceDigest, entry.getValue().key));
+                    }
+                }
+
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (IOException | RuntimeException e)
+            {
+                modified = true;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Computes a digest of the content of some source files.
+     * @param sources The source files; null entries or files that do not exist are skipped.
+     * @return The digest as a hexadecimal string.
+     * @throws IOException If a source file could not be read.
+     */
+    static String digestOf(File... sources) throws IOException
+    {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+
+        for (File source : sources)
+        {
+            if (source != null && source.exists())
+            {
+                try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ))
+                {
+                    while (channel.read(buffer) >= 0)
+                    {
+                        buffer.flip();
+                        digest.update(buffer);
+                        buffer.clear();
+                    }
+                }
+            }
+
+            // Separate the sources so that e.g. a missing mask can't be confused with a longer image.
+            digest.update((byte) 0);
+        }
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Derives a key from the digest of the source content and the parameters used to generate an image from it.
+     * @param sourceDigest The digest of the content of the source files.
+     * @param parameters The generation parameters.
+     * @return The key as a hexadecimal string.
+     */
+    static String keyOf(String sourceDigest, Object... parameters)
+    {
+        MessageDigest digest = newDigest();
+        digest.update(sourceDigest.getBytes(StandardCharsets.UTF_8));
+
+        for (Object parameter : parameters)
+        {
+            digest.update((byte) '\n');
+            digest.update(String.valueOf(parameter).getBytes(StandardCharsets.UTF_8));
+        }
+
+        return toHex(digest.digest());
+    }
+
+    private static String stampOf(File... sources)
+    {
+        StringBuilder stamp = new StringBuilder();
+        for (File source : sources)
+        {
+            if (stamp.length() > 0)
+            {
+                stamp.append(';');
+            }
+
+            if (source != null && source.exists())
+            {
+                stamp.append(source.length()).append(':').append(source.lastModified());
+            }
+            else
+            {
+                stamp.append('-');
+            }
+        }
+        return stamp.toString();
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes)
+    {
+        StringBuilder hex = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes)
+        {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -11,21 +11,30 @@
 
 package kintsugi3d.builder.resources.project;
 
+import kintsugi3d.builder.app.CacheSizeLedger;
 import kintsugi3d.builder.core.DefaultProgressMonitor;
 import kintsugi3d.builder.core.ProgressMonitor;
 import kintsugi3d.builder.core.UserCancellationException;
 import kintsugi3d.builder.core.ViewSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 public class PreviewImageGenerator
 {
+    private static final Logger LOG = LoggerFactory.getLogger(PreviewImageGenerator.class);
+
     private final ViewSet viewSet;
     private final ProgressMonitor progressMonitor;
+    private final PreviewCacheManifest previewManifest;
+    private final PreviewCacheManifest thumbnailManifest;
 
     private final AtomicInteger finishedCount = new AtomicInteger(0);
     private final AtomicInteger failedCount = new AtomicInteger(0);
@@ -44,22 +53,28 @@ public class PreviewImageGenerator
         }
 
         viewSet.getPreviewImageDirectory().mkdirs(); // Create preview directory
-        new File(viewSet.getSupportingFilesDirectory(), "thumbnails").mkdirs(); // Create thumbnail directory
+        File thumbnailDirectory = new File(viewSet.getSupportingFilesDirectory(), "thumbnails");
+        thumbnailDirectory.mkdirs(); // Create thumbnail directory
 
         progressMonitor.setMaxProgress(viewSet.getCombinedCameraPoseCount());
 
-        return new PreviewImageGenerator(viewSet, progressMonitor);
+        return new PreviewImageGenerator(viewSet, progressMonitor,
+            PreviewCacheManifest.load(viewSet.getPreviewImageDirectory()), PreviewCacheManifest.load(thumbnailDirectory));
     }
 
-    private PreviewImageGenerator(ViewSet viewSet, ProgressMonitor progressMonitor)
+    private PreviewImageGenerator(ViewSet viewSet, ProgressMonitor progressMonitor,
+        PreviewCacheManifest previewManifest, PreviewCacheManifest thumbnailManifest)
     {
         this.viewSet = viewSet;
         this.progressMonitor = progressMonitor;
+        this.previewManifest = previewManifest;
+        this.thumbnailManifest = thumbnailManifest;
     }
 
     PreviewImages forView(int viewIndex)
     {
-        return new PreviewImages(viewIndex, viewSet, progressMonitor, finishedCount, failedCount);
+        return new PreviewImages(viewIndex, viewSet, progressMonitor, finishedCount, failedCount,
+            previewManifest, thumbnailManifest);
     }
 
     int getViewCount()
@@ -80,14 +95,38 @@ public class PreviewImageGenerator
         }
     }
 
+    /**
+     * Saves the record of which preview and thumbnail images are up to date.
+     * Failure to save is not fatal; it just means that the images will be regenerated next time.
+     */
+    void saveCacheManifests()
+    {
+        try
+        {
+            previewManifest.save();
+            thumbnailManifest.save();
+        }
+        catch (IOException e)
+        {
+            LOG.warn("Failed to save preview image cache manifest", e);
+        }
+
+        // Preview images may have been added or replaced.
+        CacheSizeLedger.getInstance().markDirty(viewSet.getPreviewImageDirectory());
+    }
+
     void waitAndFinish() throws IOException, UserCancellationException
     {
-        // Wait for all threads to finish
+        // Wait for all threads to finish.
+        // Park rather than spin so as not to take a core away from the threads doing the actual work.
         while (cancelled.get() == null && finishedCount.get() + failedCount.get() < viewSet.getCombinedCameraPoseCount())
         {
-            Thread.onSpinWait();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
         }
 
+        // Record whatever was generated, even if cancelled or partially failed.
+        saveCacheManifests();
+
         if (cancelled.get() != null)
         {
             throw cancelled.get();
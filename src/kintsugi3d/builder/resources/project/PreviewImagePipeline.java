@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+package kintsugi3d.builder.resources.project;
+
+import kintsugi3d.builder.app.Rendering;
+import kintsugi3d.builder.core.UserCancellationException;
+import kintsugi3d.gl.core.Context;
+import kintsugi3d.gl.interactive.GraphicsRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Generates preview and thumbnail images as a pipeline of stages:
+ * decode (including validation against the cache manifest), undistort (on the rendering thread), resize, and encode.
+ * Each stage hands views off to the next through a bounded queue,
+ * and the number of views in flight is limited so that only a few full resolution images are in memory at once;
+ * when a later stage falls behind, the decoders wait for it rather than reading ahead.
+ * Throughput of each stage is logged when the pipeline is closed.
+ */
+final class PreviewImagePipeline implements AutoCloseable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(PreviewImagePipeline.class);
+
+    /**
+     * Views in flight per decode thread, so that each stage has something queued while the others are busy.
+     */
+    private static final int VIEWS_IN_FLIGHT_PER_THREAD = 2;
+
+    private final PreviewImageGenerator generator;
+
+    private final Semaphore viewsInFlight;
+
+    private final ThreadPoolExecutor decodeStage;
+    private final BlockingQueue<PreviewImages> undistortQueue;
+    private final AtomicBoolean undistortScheduled = new AtomicBoolean(false);
+    private final ThreadPoolExecutor resizeStage;
+    private final ThreadPoolExecutor encodeStage;
+
+    private final StageMetrics decodeMetrics = new StageMetrics("decode");
+    private final StageMetrics undistortMetrics = new StageMetrics("undistort");
+    private final StageMetrics resizeMetrics = new StageMetrics("resize");
+    private final StageMetrics encodeMetrics = new StageMetrics("encode");
+
+    private PreviewImagePipeline(PreviewImageGenerator generator, int threadCount)
+    {
+        this.generator = generator;
+
+        int maxViewsInFlight = VIEWS_IN_FLIGHT_PER_THREAD * threadCount;
+        this.viewsInFlight = new Semaphore(maxViewsInFlight);
+
+        // The decode queue only holds view indices, so it can hold every view up front.
+        this.decodeStage = createStage("decode", threadCount, new LinkedBlockingQueue<>());
+
+        // Every other queue is bounded by the number of views in flight, so handing off never has to block.
+        this.undistortQueue = new ArrayBlockingQueue<>(maxViewsInFlight);
+        this.resizeStage = createStage("resize", threadCount, new ArrayBlockingQueue<>(maxViewsInFlight));
+        this.encodeStage = createStage("encode", threadCount, new ArrayBlockingQueue<>(maxViewsInFlight));
+    }
+
+    /**
+     * Starts generating preview and thumbnail images for every view.
+     * Use {@link PreviewImageGenerator#waitAndFinish()} to wait for the pipeline to finish, and then close it.
+     * @param generator The generator for the view set.
+     * @param threadCount The number of threads to use for each of the decode, resize and encode stages.
+     * @return The running pipeline.
+     */
+    static PreviewImagePipeline start(PreviewImageGenerator generator, int threadCount)
+    {
+        PreviewImagePipeline pipeline = new PreviewImagePipeline(generator, threadCount);
+
+        for (int i = 0; i < generator.getViewCount(); i++)
+        {
+            int viewIndex = i;
+            pipeline.decodeStage.execute(() -> pipeline.decode(viewIndex));
+        }
+
+        return pipeline;
+    }
+
+    private static ThreadPoolExecutor createStage(String name, int threadCount, BlockingQueue<Runnable> queue)
+    {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS, queue, runnable ->
+        {
+            Thread thread = new Thread(runnable, "PreviewImages-" + name + "-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void decode(int viewIndex)
+    {
+        try
+        {
+            generator.allowUserCancellation();
+            viewsInFlight.acquire();
+        }
+        catch (UserCancellationException e)
+        {
+            // Reported by the generator when waiting.
+            return;
+        }
+        catch (InterruptedException e)
+        {
+            // Pipeline is shutting down.
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        PreviewImages previewImages = decodeMetrics.time(() -> generator.forView(viewIndex));
+
+        if (!previewImages.fullResImageExists() || !previewImages.hasMissingFiles())
+        {
+            // Either up to date or failed to load; nothing left to do for this view.
+            viewsInFlight.release();
+        }
+        else if (previewImages.needsUndistortedPreview())
+        {
+            undistortQueue.add(previewImages);
+            scheduleUndistort();
+        }
+        else
+        {
+            handOff(resizeStage, () -> resize(previewImages));
+        }
+    }
+
+    private void scheduleUndistort()
+    {
+        if (undistortScheduled.compareAndSet(false, true))
+        {
+            Rendering.runLater(new GraphicsRequest()
+            {
+                @Override
+                public <ContextType extends Context<ContextType>> void executeRequest(ContextType context)
+                {
+                    undistortQueued(context);
+                }
+            });
+        }
+    }
+
+    private <ContextType extends Context<ContextType>> void undistortQueued(ContextType context)
+    {
+        // Clear the flag before draining so that anything queued after the queue is found empty schedules another request.
+        undistortScheduled.set(false);
+
+        PreviewImages previewImages;
+        while ((previewImages = undistortQueue.poll()) != null)
+        {
+            PreviewImages current = previewImages;
+            undistortMetrics.time(() -> current.tryGenerateUndistortedPreviewImage(context));
+
+            // Resize and encode on other threads so as not to block the rendering thread
+            handOff(resizeStage, () -> resize(current));
+        }
+    }
+
+    private void resize(PreviewImages previewImages)
+    {
+        if (resizeMetrics.time(previewImages::tryResize))
+        {
+            handOff(encodeStage, () -> encode(previewImages));
+        }
+        else
+        {
+            viewsInFlight.release();
+        }
+    }
+
+    private void encode(PreviewImages previewImages)
+    {
+        try
+        {
+            encodeMetrics.time(previewImages::tryEncode);
+        }
+        finally
+        {
+            viewsInFlight.release();
+        }
+    }
+
+    private void handOff(ThreadPoolExecutor stage, Runnable task)
+    {
+        try
+        {
+            stage.execute(task);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Only happens if the pipeline was closed early (i.e. cancelled).
+            viewsInFlight.release();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        decodeStage.shutdownNow();
+        resizeStage.shutdownNow();
+        encodeStage.shutdownNow();
+
+        decodeMetrics.log();
+        undistortMetrics.log();
+        resizeMetrics.log();
+        encodeMetrics.log();
+    }
+
+    private static final class StageMetrics
+    {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private final AtomicLong firstStartNanos = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong lastEndNanos = new AtomicLong(Long.MIN_VALUE);
+
+        StageMetrics(String name)
+        {
+            this.name = name;
+        }
+
+        <T> T time(Supplier<T> stage)
+        {
+            long start = System.nanoTime();
+            try
+            {
+                return stage.get();
+            }
+            finally
+            {
+                long end = System.nanoTime();
+                count.incrementAndGet();
+                busyNanos.addAndGet(end - start);
+                firstStartNanos.accumulateAndGet(start, Math::min);
+                lastEndNanos.accumulateAndGet(end, Math::max);
+            }
+        }
+
+        void time(Runnable stage)
+        {
+            time(() ->
+            {
+                stage.run();
+                return null;
+            });
+        }
+
+        void log()
+        {
+            if (count.get() > 0)
+            {
+                long wallNanos = Math.max(1, lastEndNanos.get() - firstStartNanos.get());
+                LOG.info("Preview image {} stage: {} views in {} ms ({} ms busy across threads, {} views/s)",
+                    name, count.get(), TimeUnit.NANOSECONDS.toMillis(wallNanos), TimeUnit.NANOSECONDS.toMillis(busyNanos.get()),
+                    String.format("%.1f", count.get() * 1.0e9 / wallNanos));
+            }
+        }
+    }
+}
@@ -23,9 +23,13 @@ import org.slf4j.LoggerFactory;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 class PreviewImages
 {
@@ -38,23 +42,33 @@ class PreviewImages
     private final ProgressMonitor progressMonitor;
     private final AtomicInteger finishedCount;
     private final AtomicInteger failedCount;
+    private final PreviewCacheManifest previewManifest;
+    private final PreviewCacheManifest thumbnailManifest;
 
     private final int projectionIndex;
 
     private boolean missingPreview;
     private boolean missingThumbnail;
 
+    private File[] sourceFiles;
+    private String sourceDigest;
+
     private ImageHelper fullResImage;
     private BufferedImage undistortedPreviewImage;
+    private BufferedImage previewImage;
+    private BufferedImage thumbnailImage;
 
     PreviewImages(int viewIndex, ViewSet viewSet, ProgressMonitor progressMonitor,
-        AtomicInteger finishedCount, AtomicInteger failedCount)
+        AtomicInteger finishedCount, AtomicInteger failedCount,
+        PreviewCacheManifest previewManifest, PreviewCacheManifest thumbnailManifest)
     {
         this.viewSet = viewSet;
         this.viewIndex = viewIndex;
         this.progressMonitor = progressMonitor;
         this.finishedCount = finishedCount;
         this.failedCount = failedCount;
+        this.previewManifest = previewManifest;
+        this.thumbnailManifest = thumbnailManifest;
 
         projectionIndex = viewSet.getCameraProjectionIndex(viewIndex);
 
@@ -63,9 +77,18 @@ class PreviewImages
 
         // If the preview image doesn't exist but the preview width / height are zero (i.e. scaling off)
         // and undistortion isn't necessary, we don't need it.
-        missingPreview = (previewImageFile == null || !previewImageFile.exists())
-            && ((viewSet.getPreviewWidth() > 0 && viewSet.getPreviewHeight() > 0) || needsUndistortion());
-        missingThumbnail = thumbnailImageFile == null || !thumbnailImageFile.exists();
+        boolean previewNeeded = (viewSet.getPreviewWidth() > 0 && viewSet.getPreviewHeight() > 0) || needsUndistortion();
+        List<PreviewCacheManifest.Adoption> adoptions = new ArrayList<>(2);
+        missingPreview = previewNeeded && !isCurrent(previewImageFile, previewManifest, this::getPreviewKey,
+            getPreviewParameters(), adoptions);
+        missingThumbnail = !isCurrent(thumbnailImageFile, thumbnailManifest, this::getThumbnailKey,
+            getThumbnailParameters(), adoptions);
+
+        if (!adoptions.isEmpty())
+        {
+            PreviewCacheManifest.adoptInBackground(sourceFiles,
+                adoptions.toArray(new PreviewCacheManifest.Adoption[0]));
+        }
 
         // If neither are missing, mark finished
         if (!missingPreview && !missingThumbnail)
@@ -93,6 +116,139 @@ class PreviewImages
         }
     }
 
+    /**
+     * Checks whether a generated file exists and was generated from the current source image with the current parameters.
+     * If the source image can't be found, an existing file is assumed to be current since there is nothing to regenerate it from.
+     * An existing file that isn't in the manifest yet (i.e. generated by an older version) is assumed to be current
+     * as long as it is newer than its sources, and is added to the list of files to be adopted into the manifest,
+     * so that the sources don't need to be hashed while loading.
+     */
+    private boolean isCurrent(File generatedFile, PreviewCacheManifest manifest, Supplier<String> key, Object[] parameters,
+        List<PreviewCacheManifest.Adoption> adoptions)
+    {
+        if (generatedFile == null || !generatedFile.exists())
+        {
+            return false;
+        }
+        else if (getSourceFiles() == null)
+        {
+            LOG.info("Unable to validate {} : Source image not available", generatedFile);
+            return true;
+        }
+        else if (!manifest.contains(generatedFile.getName()))
+        {
+            if (PreviewCacheManifest.isNewerThanSources(generatedFile, sourceFiles))
+            {
+                adoptions.add(new PreviewCacheManifest.Adoption(manifest, generatedFile.getName(), parameters));
+                return true;
+            }
+            else
+            {
+                LOG.info("Regenerating {} : Source image has changed", generatedFile);
+                return false;
+            }
+        }
+        else
+        {
+            String currentKey = key.get();
+            if (currentKey == null)
+            {
+                LOG.info("Unable to validate {} : Source image not available", generatedFile);
+                return true;
+            }
+            else if (manifest.isCurrent(generatedFile.getName(), currentKey))
+            {
+                return true;
+            }
+            else
+            {
+                LOG.info("Regenerating {} : Source image or parameters have changed", generatedFile);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Gets the full resolution image and mask that the generated files are produced from.
+     * @return The source files (the mask may be null), or null if the full resolution image can't be found.
+     */
+    private File[] getSourceFiles()
+    {
+        if (sourceFiles == null)
+        {
+            try
+            {
+                sourceFiles = new File[] { viewSet.findFullResImageFile(viewIndex), viewSet.getMask(viewIndex) };
+            }
+            catch (FileNotFoundException e)
+            {
+                return null;
+            }
+        }
+
+        return sourceFiles;
+    }
+
+    /**
+     * Gets the digest of the full resolution image and mask, hashing them only if they have changed since the digest
+     * was last recorded.
+     * @return The digest, or null if the full resolution image can't be found or read.
+     */
+    private String getSourceDigest()
+    {
+        if (sourceDigest == null && getSourceFiles() != null)
+        {
+            try
+            {
+                String previewName = viewSet.getPreviewImageFile(viewIndex).getName();
+                String thumbnailName = viewSet.getThumbnailImageFile(viewIndex).getName();
+
+                sourceDigest = previewManifest.findSourceDigest(previewName, sourceFiles);
+                if (sourceDigest == null)
+                {
+                    sourceDigest = thumbnailManifest.findSourceDigest(thumbnailName, sourceFiles);
+                }
+                if (sourceDigest == null)
+                {
+                    sourceDigest = PreviewCacheManifest.digestOf(sourceFiles);
+                }
+            }
+            catch (IOException | RuntimeException e)
+            {
+                LOG.warn("Failed to read source image for view {}", viewIndex, e);
+                return null;
+            }
+        }
+
+        return sourceDigest;
+    }
+
+    private Object[] getPreviewParameters()
+    {
+        return new Object[]
+        {
+            needsUndistortion() ? viewSet.getCameraProjection(projectionIndex).toVSETString() : "none",
+            viewSet.getPreviewWidth(), viewSet.getPreviewHeight()
+        };
+    }
+
+    private Object[] getThumbnailParameters()
+    {
+        return new Object[] { MAX_THUMBNAIL_SIZE };
+    }
+
+    private String getPreviewKey()
+    {
+        String digest = getSourceDigest();
+        return digest == null ? null : PreviewCacheManifest.keyOf(digest, getPreviewParameters());
+    }
+
+    private String getThumbnailKey()
+    {
+        String digest = getSourceDigest();
+        return digest == null ? null : PreviewCacheManifest.keyOf(digest, getThumbnailParameters());
+    }
+
     boolean fullResImageExists()
     {
         return fullResImage != null;
@@ -108,6 +264,14 @@ class PreviewImages
         return viewSet.getCameraProjection(projectionIndex) instanceof DistortionProjection;
     }
 
+    /**
+     * Whether the graphics context is required to generate the missing files.
+     */
+    boolean needsUndistortedPreview()
+    {
+        return missingPreview && needsUndistortion();
+    }
+
     <ContextType extends Context<ContextType>> void tryGenerateUndistortedPreviewImage(ContextType context)
     {
         try
@@ -140,7 +304,7 @@ class PreviewImages
      */
     <ContextType extends Context<ContextType>> void tryCreateMissingFiles(ContextType context)
     {
-        if (needsUndistortion() && missingPreview && undistortedPreviewImage == null)
+        if (needsUndistortedPreview() && undistortedPreviewImage == null)
         {
             tryGenerateUndistortedPreviewImage(context);
         }
@@ -152,47 +316,111 @@ class PreviewImages
      * Resizes and saves as necessary, but cannot undistort without graphics context
      */
     void tryCreateMissingFiles()
+    {
+        if (tryResize())
+        {
+            tryEncode();
+        }
+    }
+
+    /**
+     * Produces the preview and thumbnail images that are missing, without saving them yet.
+     * The full resolution image is released afterwards.
+     * @return False if the images could not be produced, in which case this view has been marked as failed.
+     */
+    boolean tryResize()
     {
         try
         {
-            if (needsUndistortion())
+            if (missingPreview)
             {
-                if (missingPreview && undistortedPreviewImage == null)
+                if (needsUndistortion())
                 {
-                    // Can't undistort without graphics context
-                    markFailed();
+                    if (undistortedPreviewImage == null)
+                    {
+                        // Can't undistort without graphics context
+                        markFailed();
+                        return false;
+                    }
+
+                    previewImage = undistortedPreviewImage;
                 }
                 else
                 {
-                    if (missingPreview)
-                    {
-                        ImageIO.write(undistortedPreviewImage, "PNG", viewSet.getPreviewImageFile(viewIndex));
-                        logFinished(viewSet.getPreviewImageFile(viewIndex));
-                    }
+                    // Fallback to simply resizing without undistorting
+                    previewImage = fullResImage.scaledToResolution(viewSet.getPreviewWidth(), viewSet.getPreviewHeight())
+                        .getBufferedImage();
+                }
+            }
 
-                    if (missingThumbnail)
-                    {
-                        Resolution thumbnailResolution = getThumbnailResolution();
+            if (missingThumbnail)
+            {
+                // Thumbnail doesn't need undistortion.
+                Resolution thumbnailResolution = getThumbnailResolution();
+                thumbnailImage = fullResImage.scaledToResolution(thumbnailResolution.width, thumbnailResolution.height)
+                    .getBufferedImage();
+            }
 
-                        // Thumbnail doesn't need undistortion.
-                        fullResImage.saveAtResolution("PNG", viewSet.getThumbnailImageFile(viewIndex),
-                            thumbnailResolution.width, thumbnailResolution.height);
-                        logFinished(viewSet.getThumbnailImageFile(viewIndex));
-                    }
+            return true;
+        }
+        catch (RuntimeException ex)
+        {
+            LOG.error(ex.getMessage(), ex);
+            markFailed();
+            return false;
+        }
+        finally
+        {
+            fullResImage = null;
+            undistortedPreviewImage = null;
+        }
+    }
 
-                    markCreated();
-                }
+    /**
+     * Saves the images produced by {@link #tryResize()} and records them in the cache manifests.
+     */
+    void tryEncode()
+    {
+        try
+        {
+            // Use PNG to ensure losslessness
+            if (missingPreview)
+            {
+                File previewImageFile = viewSet.getPreviewImageFile(viewIndex);
+                ImageIO.write(previewImage, "PNG", previewImageFile);
+                recordCreated(previewManifest, previewImageFile, getPreviewKey());
+                logFinished(previewImageFile);
             }
-            else
+
+            if (missingThumbnail)
             {
-                tryCreateMissingFilesNoUndistortion();
+                File thumbnailImageFile = viewSet.getThumbnailImageFile(viewIndex);
+                ImageIO.write(thumbnailImage, "PNG", thumbnailImageFile);
+                recordCreated(thumbnailManifest, thumbnailImageFile, getThumbnailKey());
+                logFinished(thumbnailImageFile);
             }
+
+            markCreated();
         }
         catch (RuntimeException | IOException ex)
         {
             LOG.error(ex.getMessage(), ex);
             markFailed();
         }
+        finally
+        {
+            previewImage = null;
+            thumbnailImage = null;
+        }
+    }
+
+    private void recordCreated(PreviewCacheManifest manifest, File generatedFile, String key)
+    {
+        // Key will only be null if the source image disappeared after it was loaded.
+        if (key != null)
+        {
+            manifest.record(generatedFile.getName(), sourceDigest, key, sourceFiles);
+        }
     }
 
     private static class Resolution
@@ -228,36 +456,6 @@ class PreviewImages
         return new Resolution(thumbnailWidth, thumbnailHeight);
     }
 
-    void tryCreateMissingFilesNoUndistortion()
-    {
-        try
-        {
-            // Fallback to simply resizing without undistorting
-            // Use PNG to ensure losslessness
-            if (missingPreview)
-            {
-                fullResImage.saveAtResolution("PNG", viewSet.getPreviewImageFile(viewIndex, "png"),
-                    viewSet.getPreviewWidth(), viewSet.getPreviewHeight());
-                logFinished(viewSet.getPreviewImageFile(viewIndex));
-            }
-
-            if (missingThumbnail)
-            {
-                Resolution thumbnailResolution = getThumbnailResolution();
-                fullResImage.saveAtResolution("PNG", viewSet.getThumbnailImageFile(viewIndex, "png"),
-                    thumbnailResolution.width, thumbnailResolution.height);
-                logFinished(viewSet.getThumbnailImageFile(viewIndex));
-            }
-
-            markCreated();
-        }
-        catch (RuntimeException | IOException ex)
-        {
-            LOG.error(ex.getMessage(), ex);
-            markFailed();
-        }
-    }
-
     private static void logExists(File file)
     {
         LOG.info("Skipping {} : Already exists", file);
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.builder.resources.project;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes image cache blocks in the {@link ImageCacheFormat#RAW} format.
+ * A file consists of a fixed size little-endian header (magic number, format version, width, height, channel count),
+ * followed by uncompressed RGBA8 pixels with the bottom row first, matching the layout of a GPU texture.
+ */
+final class RawImageBlockFile
+{
+    private static final int MAGIC = 0x4244334B; // "K3DB" when read as little-endian bytes
+    private static final int VERSION = 1;
+    private static final int CHANNELS = 4;
+    private static final int HEADER_SIZE = 32; // Padded to keep the pixel data aligned
+
+    private RawImageBlockFile()
+    {
+    }
+
+    /**
+     * Gets the number of bytes required to hold the pixels of a block.
+     * @param width The width of the block.
+     * @param height The height of the block.
+     * @return The size of the pixel data, excluding the header.
+     */
+    static int getPixelDataSize(int width, int height)
+    {
+        return width * height * CHANNELS;
+    }
+
+    /**
+     * Writes a block to a file.
+     * @param file The file to write.
+     * @param argb Packed ARGB pixels, as returned by a texture readback (bottom row first).
+     * @param offset The index in the array of the first pixel of the block.
+     * @param stride The number of pixels from the start of one row of the block to the start of the next.
+     * @param width The width of the block.
+     * @param height The height of the block.
+     * @throws IOException If the file could not be written.
+     */
+    static void write(File file, int[] argb, int offset, int stride, int width, int height) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + getPixelDataSize(width, height)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putInt(CHANNELS);
+        buffer.position(HEADER_SIZE);
+
+        for (int row = 0; row < height; row++)
+        {
+            int rowStart = offset + row * stride;
+            for (int col = 0; col < width; col++)
+            {
+                int pixel = argb[rowStart + col];
+                buffer.put((byte) (pixel >>> 16)); // red
+                buffer.put((byte) (pixel >>> 8));  // green
+                buffer.put((byte) pixel);          // blue
+                buffer.put((byte) (pixel >>> 24)); // alpha
+            }
+        }
+
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Reads the pixels of a block from a file into an existing buffer, which can then be uploaded directly to a texture.
+     * @param file The file to read.
+     * @param width The expected width of the block.
+     * @param height The expected height of the block.
+     * @param destination The buffer to fill, which must have at least {@link #getPixelDataSize(int, int)} bytes of capacity.
+     *                    It will be cleared before reading and flipped afterwards.
+     * @throws IOException If the file could not be read, is not a raw block file of a supported version,
+     * or does not have the expected dimensions.
+     */
+    static void read(File file, int width, int height, ByteBuffer destination) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, file);
+            header.flip();
+
+            if (header.getInt() != MAGIC)
+            {
+                throw new IOException(String.format("'%s' is not a raw image cache block.", file.getPath()));
+            }
+
+            int version = header.getInt();
+            if (version != VERSION)
+            {
+                throw new IOException(String.format("'%s' has unsupported version %d.", file.getPath(), version));
+            }
+
+            int fileWidth = header.getInt();
+            int fileHeight = header.getInt();
+            int fileChannels = header.getInt();
+            if (fileWidth != width || fileHeight != height || fileChannels != CHANNELS)
+            {
+                throw new IOException(String.format("'%s' is %dx%d with %d channels; expected %dx%d with %d channels.",
+                    file.getPath(), fileWidth, fileHeight, fileChannels, width, height, CHANNELS));
+            }
+
+            destination.clear();
+            destination.limit(getPixelDataSize(width, height));
+            readFully(channel, destination, file);
+            destination.flip();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer destination, File file) throws IOException
+    {
+        while (destination.hasRemaining())
+        {
+            if (channel.read(destination) < 0)
+            {
+                throw new IOException(String.format("Unexpected end of file in '%s'.", file.getPath()));
+            }
+        }
+    }
+}
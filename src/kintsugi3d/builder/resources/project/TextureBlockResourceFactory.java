@@ -57,7 +57,7 @@ public class TextureBlockResourceFactory<ContextType extends Context<ContextType
         {
             return new GraphicsResourcesTextureSpace<>(sharedResources,
                 () -> fullGeometryTextures.createViewportCopy(x, y, width, height), imageCache.getSettings().getBlockDir(i, j),
-                loadOptions, width, height, monitor);
+                imageCache.getFormat(), loadOptions, width, height, monitor);
         }
         catch (IOException e)
         {
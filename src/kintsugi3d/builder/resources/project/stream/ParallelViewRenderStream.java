@@ -19,47 +19,113 @@ import kintsugi3d.util.ColorNativeBufferList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+/**
+ * A stream that renders each view on the current (graphics) thread and hands the framebuffer contents to the consumer
+ * on a pool of reusable worker threads, so that rendering the next view overlaps with processing the previous one.
+ * The number of views being processed at once is limited by a pool of framebuffer copies; rendering waits for a copy
+ * to be returned to the pool when all are in use.
+ */
 public class ParallelViewRenderStream<ContextType extends Context<ContextType>> extends GraphicsStreamBase<ColorList[]>
 {
     private static final Logger LOG = LoggerFactory.getLogger(ParallelViewRenderStream.class);
+
+    /**
+     * Fraction of the maximum heap size that framebuffer copies may occupy when the thread count is not specified.
+     */
+    private static final double DEFAULT_BUFFER_MEMORY_FRACTION = 0.25;
+
+    /**
+     * Shared worker pool; threads are created as needed, reused across views and streams, and retired when idle.
+     * The number of consumers running at once is limited per stream by the number of framebuffer copies rather than by the pool.
+     */
+    private static final ExecutorService SHARED_WORKERS = Executors.newCachedThreadPool(new WorkerThreadFactory());
+
     private final int viewCount;
     private final Drawable<ContextType> drawable;
     private final ReadableFramebuffer<ContextType> framebuffer;
     private final int attachmentCount;
     private final int maxRunningThreads;
+    private final Executor executor;
 
-    private static final int DEFAULT_MAX_RUNNING_THREADS = 5;
+    /**
+     * Framebuffer copies not currently in use by a consumer.
+     */
+    private final BlockingQueue<ColorNativeBufferList[]> unusedColorBuffers;
 
-    private final Object threadsRunningLock = new Object();
-    private int threadsRunning = 0;
+    /**
+     * Number of framebuffer copies allocated so far; copies are allocated lazily, up to maxRunningThreads.
+     */
+    private int allocatedColorBuffers = 0;
 
-    private final Deque<ColorNativeBufferList[]> unusedColorBuffers;
+    private static final class WorkerThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger threadIndex = new AtomicInteger();
 
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "ParallelViewRenderStream-worker-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 
     ParallelViewRenderStream(int viewCount, Drawable<ContextType> drawable, ReadableFramebuffer<ContextType> framebuffer, int attachmentCount,
-        int maxRunningThreads)
+        int maxRunningThreads, Executor executor)
     {
+        if (maxRunningThreads < 1)
+        {
+            throw new IllegalArgumentException("At least one thread must be allowed to run.");
+        }
+
         this.viewCount = viewCount;
         this.drawable = drawable;
         this.framebuffer = framebuffer;
         this.attachmentCount = attachmentCount;
         this.maxRunningThreads = maxRunningThreads;
-        unusedColorBuffers = IntStream.range(0, maxRunningThreads)
-            .mapToObj(i -> IntStream.range(0, attachmentCount)
-                .mapToObj(j -> new ColorNativeBufferList(framebuffer.getSizeForRead().width * framebuffer.getSizeForRead().height))
-                .toArray(ColorNativeBufferList[]::new))
-            .collect(Collectors.toCollection(ArrayDeque::new));
+        this.executor = executor;
+        this.unusedColorBuffers = new LinkedBlockingQueue<>(maxRunningThreads);
+    }
+
+    ParallelViewRenderStream(int viewCount, Drawable<ContextType> drawable, ReadableFramebuffer<ContextType> framebuffer, int attachmentCount,
+        int maxRunningThreads)
+    {
+        this(viewCount, drawable, framebuffer, attachmentCount, maxRunningThreads, SHARED_WORKERS);
     }
 
     ParallelViewRenderStream(int viewCount, Drawable<ContextType> drawable, ReadableFramebuffer<ContextType> framebuffer, int attachmentCount)
     {
-        this(viewCount, drawable, framebuffer, attachmentCount, DEFAULT_MAX_RUNNING_THREADS);
+        this(viewCount, drawable, framebuffer, attachmentCount, getDefaultMaxRunningThreads(framebuffer, attachmentCount));
+    }
+
+    /**
+     * Determines a reasonable number of consumers to run at once based on the number of processor cores
+     * (leaving one for the rendering thread) and on the memory required for each copy of the framebuffer.
+     * @param framebuffer The framebuffer that will be read.
+     * @param attachmentCount The number of attachments that will be read.
+     * @return The default maximum number of running threads.
+     */
+    static int getDefaultMaxRunningThreads(ReadableFramebuffer<?> framebuffer, int attachmentCount)
+    {
+        int coreLimit = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+        // 4 floats per pixel per attachment
+        long bytesPerCopy = 16L * framebuffer.getSizeForRead().width * framebuffer.getSizeForRead().height * Math.max(1, attachmentCount);
+        long memoryLimit = (long)(Runtime.getRuntime().maxMemory() * DEFAULT_BUFFER_MEMORY_FRACTION) / Math.max(1, bytesPerCopy);
+
+        return (int) Math.max(1, Math.min(coreLimit, memoryLimit));
     }
 
     @Override
@@ -83,7 +149,7 @@ public class ParallelViewRenderStream<ContextType extends Context<ContextType>>
         }
         else
         {
-            return new ParallelViewRenderStream<>(viewCount, drawable, framebuffer, attachmentCount, maxRunningThreads);
+            return new ParallelViewRenderStream<>(viewCount, drawable, framebuffer, attachmentCount, maxRunningThreads, executor);
         }
     }
 
@@ -96,89 +162,156 @@ public class ParallelViewRenderStream<ContextType extends Context<ContextType>>
     @Override
     public void forEach(Consumer<? super ColorList[]> action)
     {
+        long startTime = System.nanoTime();
+        long renderNanos = 0;
+        long waitNanos = 0;
+        AtomicLong consumerNanos = new AtomicLong();
+
         for (int k = 0; k < viewCount; k++)
         {
-            ColorNativeBufferList[] colorBuffers;
+            // Make sure that we don't have too many consumers running.
+            // Wait until a consumer finishes and returns its buffer if we're at the max.
+            long waitStart = System.nanoTime();
+            ColorNativeBufferList[] colorBuffers = acquireColorBuffers();
+            long renderStart = System.nanoTime();
+            waitNanos += renderStart - waitStart;
+
+            // Set once a consumer has taken ownership of the buffers; until then they must be returned here,
+            // or awaitAllColorBuffers() would wait forever for them.
+            boolean submitted = false;
 
-            synchronized (threadsRunningLock)
+            try
             {
-                // Make sure that we don't have too many threads running.
-                // Wait until a thread finishes if we're at the max.
-                while (threadsRunning >= maxRunningThreads)
+                for (int i = 0; i < attachmentCount; i++)
+                {
+                    // Clear framebuffer
+                    framebuffer.clearColorBuffer(i, 0.0f, 0.0f, 0.0f, 0.0f);
+                }
+
+                // Run shader program to fill framebuffer with per-pixel information.
+                drawable.program().setUniform("viewIndex", k);
+                drawable.draw(framebuffer);
+
+                // Copy framebuffer from GPU to main memory.
+                IntStream.range(0, attachmentCount).forEach(i -> framebuffer.getTextureReaderForColorAttachment(i).readFloatingPointRGBA(colorBuffers[i].buffer));
+                renderNanos += System.nanoTime() - renderStart;
+
+                // Throws RejectedExecutionException if the executor has been shut down.
+                executor.execute(() ->
                 {
+                    long consumerStart = System.nanoTime();
+
                     try
                     {
-                        threadsRunningLock.wait(30000); // Double check every 30 seconds if notifyAll() was not called
+                        action.accept(colorBuffers);
                     }
-                    catch (InterruptedException e)
+                    catch (RuntimeException e)
                     {
-                        LOG.error("Error: Operation interrupted:", e);
+                        LOG.error("An error occurred while processing a stream of rendering data: ", e);
                     }
-                }
+                    finally
+                    {
+                        consumerNanos.addAndGet(System.nanoTime() - consumerStart);
 
-                // Grab a color buffer while we still have the lock.
-                colorBuffers = unusedColorBuffers.pop();
-            }
+                        // Return the buffer to the unused pool.
+                        unusedColorBuffers.add(colorBuffers);
+                    }
+                });
 
-            for (int i = 0; i < attachmentCount; i++)
+                submitted = true;
+            }
+            finally
             {
-                // Clear framebuffer
-                framebuffer.clearColorBuffer(i, 0.0f, 0.0f, 0.0f, 0.0f);
+                if (!submitted)
+                {
+                    // Rendering failed or the consumer was rejected; return the buffer to the unused pool.
+                    unusedColorBuffers.add(colorBuffers);
+                }
             }
+        }
 
-            // Run shader program to fill framebuffer with per-pixel information.
-            drawable.program().setUniform("viewIndex", k);
-            drawable.draw(framebuffer);
+        // Wait for all the consumers to finish.
+        awaitAllColorBuffers();
 
+        if (LOG.isDebugEnabled() && viewCount > 0)
+        {
+            LOG.debug(String.format("Streamed %d views in %.1f ms using up to %d threads; per view: render + readback %.2f ms, " +
+                    "consumer %.2f ms, waiting for a free buffer %.2f ms",
+                viewCount, (System.nanoTime() - startTime) / 1.0e6, maxRunningThreads, renderNanos / 1.0e6 / viewCount,
+                consumerNanos.get() / 1.0e6 / viewCount, waitNanos / 1.0e6 / viewCount));
+        }
+    }
 
-            // Copy framebuffer from GPU to main memory.
-            IntStream.range(0, attachmentCount).forEach(i -> framebuffer.getTextureReaderForColorAttachment(i).readFloatingPointRGBA(colorBuffers[i].buffer));
+    private ColorNativeBufferList[] acquireColorBuffers()
+    {
+        ColorNativeBufferList[] colorBuffers = unusedColorBuffers.poll();
 
-            synchronized (threadsRunningLock)
+        if (colorBuffers == null)
+        {
+            if (allocatedColorBuffers < maxRunningThreads)
             {
-                threadsRunning++;
+                allocatedColorBuffers++;
+                return IntStream.range(0, attachmentCount)
+                    .mapToObj(j -> new ColorNativeBufferList(framebuffer.getSizeForRead().width * framebuffer.getSizeForRead().height))
+                    .toArray(ColorNativeBufferList[]::new);
             }
-
-            Thread actionThread = new Thread(() ->
+            else
             {
-                try
-                {
-                    action.accept(colorBuffers);
-                }
-                catch (RuntimeException e)
-                {
-                    LOG.error("An error occurred while processing a stream of rendering data: ", e);
-                }
-                finally
-                {
-                    synchronized (threadsRunningLock)
-                    {
-                        // Return the buffer to the unused pool while we have the lock.
-                        unusedColorBuffers.push(colorBuffers);
+                return takeUninterruptibly();
+            }
+        }
+        else
+        {
+            return colorBuffers;
+        }
+    }
 
-                        threadsRunning--;
-                        threadsRunningLock.notifyAll();
-                    }
-                }
-            });
+    private void awaitAllColorBuffers()
+    {
+        ColorNativeBufferList[][] returned = new ColorNativeBufferList[allocatedColorBuffers][];
 
-            actionThread.start();
+        for (int i = 0; i < returned.length; i++)
+        {
+            returned[i] = takeUninterruptibly();
+        }
+
+        // Put the buffers back so that they can be reused if the stream is consumed again.
+        for (ColorNativeBufferList[] colorBuffers : returned)
+        {
+            unusedColorBuffers.add(colorBuffers);
         }
+    }
+
+    private ColorNativeBufferList[] takeUninterruptibly()
+    {
+        boolean interrupted = false;
 
-        // Wait for all the threads to finish.
-        synchronized (threadsRunningLock)
+        try
         {
-            while (threadsRunning > 0)
+            while (true)
             {
                 try
                 {
-                    threadsRunningLock.wait(30000); // Double check every 30 seconds if notifyAll() was not called
+                    ColorNativeBufferList[] colorBuffers = unusedColorBuffers.poll(30, TimeUnit.SECONDS);
+                    if (colorBuffers != null)
+                    {
+                        return colorBuffers;
+                    }
                 }
                 catch (InterruptedException e)
                 {
+                    // Consumers still hold references to the buffers, so we can't abandon them; keep waiting.
                     LOG.error("Error: Operation interrupted:", e);
+                    interrupted = true;
                 }
             }
         }
+        finally
+        {
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 }
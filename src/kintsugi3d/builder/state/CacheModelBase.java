@@ -12,10 +12,12 @@
 package kintsugi3d.builder.state;
 
 import kintsugi3d.builder.app.ApplicationFolders;
+import kintsugi3d.builder.app.CacheSizeLedger;
 import kintsugi3d.builder.core.Global;
 import kintsugi3d.builder.core.RecentProjects;
 import kintsugi3d.builder.core.ViewSet;
 import kintsugi3d.builder.io.ViewSetReaderFromVSET;
+import kintsugi3d.builder.resources.project.ImageCacheFormat;
 import kintsugi3d.builder.state.settings.GeneralSettingsModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +40,21 @@ public abstract class CacheModelBase implements CacheModel
 {
     private static final Logger LOG = LoggerFactory.getLogger(CacheModelBase.class);
 
+    /**
+     * Records which preview images are up to date; stored alongside the preview images.
+     */
+    private static final String PREVIEW_CACHE_MANIFEST = "cache-manifest.tsv";
+
+    /**
+     * Files other than blocks that may be stored in each resolution directory of the fit cache.
+     */
+    private static final List<String> FIT_CACHE_OPTIONAL_FILES = List.of("format.txt");
+
+    /**
+     * Cached environment maps, plus the temporary files they are written to first.
+     */
+    private static final List<String> ENVIRONMENT_CACHE_EXTENSIONS = List.of(".env", ".env.tmp");
+
     private final AtomicBoolean cacheCleanupInProgress;
 
     /**
@@ -76,10 +93,22 @@ public abstract class CacheModelBase implements CacheModel
     {
         File previewCacheDir = ApplicationFolders.getPreviewImagesRootDirectory().toFile();
         File fitCacheDir = ApplicationFolders.getFitCacheRootDirectory().toFile();
+        File environmentCacheDir = ApplicationFolders.getEnvironmentCacheDirectory().toFile();
 
-        return Map.of(
-            previewCacheDir, files -> tryDeletePreviewCacheFiles(previewCacheDir, files),
-            fitCacheDir, files -> tryDeleteFitCacheFiles(fitCacheDir, files));
+        if (environmentCacheDir.isDirectory())
+        {
+            return Map.of(
+                previewCacheDir, files -> tryDeletePreviewCacheFiles(previewCacheDir, files),
+                fitCacheDir, files -> tryDeleteFitCacheFiles(fitCacheDir, files),
+                environmentCacheDir, files -> tryDeleteEnvironmentCacheFiles(environmentCacheDir, files));
+        }
+        else
+        {
+            // Only created once an environment map has been cached.
+            return Map.of(
+                previewCacheDir, files -> tryDeletePreviewCacheFiles(previewCacheDir, files),
+                fitCacheDir, files -> tryDeleteFitCacheFiles(fitCacheDir, files));
+        }
     }
 
     private Collection<File> getCleanableCacheDirectories()
@@ -179,7 +208,7 @@ public abstract class CacheModelBase implements CacheModel
                         throw new IOException(String.format("Invalid image: %s.  Expected directory: %s",
                             imgName, directory));
                     }
-                    if (!imgName.toLowerCase(Locale.ROOT).endsWith(".png"))
+                    if (!imgName.toLowerCase(Locale.ROOT).endsWith(".png") && !PREVIEW_CACHE_MANIFEST.equals(image.getName()))
                     {
                         throw new IOException(String.format("Invalid image format: %s", imgName));
                     }
@@ -199,6 +228,8 @@ public abstract class CacheModelBase implements CacheModel
             {
                 throw new IOException(String.format("Directory couldn't be deleted: %s", project.getAbsolutePath()));
             }
+
+            CacheSizeLedger.getInstance().forget(project);
         }
     }
 
@@ -261,6 +292,21 @@ public abstract class CacheModelBase implements CacheModel
                     throw new IOException(String.format("File couldn't be deleted: %s", sampleLocations.getAbsolutePath()));
                 }
 
+                // Format stamp, which only exists for caches built by newer versions.
+                for (String metadataName : FIT_CACHE_OPTIONAL_FILES)
+                {
+                    File metadata = new File(resolution, metadataName);
+                    if (!metadata.toString().startsWith(directory.toString()))
+                    {
+                        throw new IOException(String.format("Invalid cache file: %s.  Expected directory: %s.",
+                            metadata, directory));
+                    }
+                    if (metadata.exists() && !metadata.delete())
+                    {
+                        throw new IOException(String.format("File couldn't be deleted: %s", metadata.getAbsolutePath()));
+                    }
+                }
+
                 // Everything left should be chunks folders (including the sampled folder)
                 File[] chunks = resolution.listFiles();
                 if (chunks == null)
@@ -289,7 +335,7 @@ public abstract class CacheModelBase implements CacheModel
                             throw new IOException(String.format("Invalid image: %s.  Expected directory: %s,",
                                 imgName, directory));
                         }
-                        if (!imgName.toLowerCase(Locale.ROOT).endsWith(".png"))
+                        if (!isFitCacheImage(imgName))
                         {
                             throw new IOException(String.format("Invalid image format: %s", imgName));
                         }
@@ -315,9 +361,18 @@ public abstract class CacheModelBase implements CacheModel
             {
                 throw new IOException(String.format("Directory couldn't be deleted: %s", project.getAbsolutePath()));
             }
+
+            CacheSizeLedger.getInstance().forget(project);
         }
     }
 
+    private static boolean isFitCacheImage(String imgName)
+    {
+        String lowerCaseName = imgName.toLowerCase(Locale.ROOT);
+        return Arrays.stream(ImageCacheFormat.values())
+            .anyMatch(format -> lowerCaseName.endsWith('.' + format.getFileExtension()));
+    }
+
     private void tryDeleteFitCacheFiles(File directory, File[] projects)
     {
         try
@@ -330,6 +385,63 @@ public abstract class CacheModelBase implements CacheModel
         }
     }
 
+    private static void deleteEnvironmentCacheFiles(File directory, File[] entries) throws IOException
+    {
+        for (File entry : entries)
+        {
+            LOG.info("Deleting environment cache for {}", entry);
+
+            if (!entry.isDirectory())
+            {
+                throw new NotDirectoryException(String.format("Invalid directory: %s", entry.getAbsolutePath()));
+            }
+
+            File[] environments = entry.listFiles();
+            if (environments == null)
+            {
+                throw new NotDirectoryException(String.format("Invalid directory: %s", entry.getAbsolutePath()));
+            }
+
+            for (File environment : environments)
+            {
+                // Extra check due to danger of this operation
+                String envName = environment.toString();
+                if (!envName.startsWith(directory.toString()))
+                {
+                    throw new IOException(String.format("Invalid environment map: %s.  Expected directory: %s",
+                        envName, directory));
+                }
+                if (ENVIRONMENT_CACHE_EXTENSIONS.stream().noneMatch(envName.toLowerCase(Locale.ROOT)::endsWith))
+                {
+                    throw new IOException(String.format("Invalid environment map format: %s", envName));
+                }
+                if (!environment.delete())
+                {
+                    throw new IOException(String.format("Environment map couldn't be deleted: %s", environment.getAbsolutePath()));
+                }
+            }
+
+            if (!entry.delete()) // Will only work if directory is empty.
+            {
+                throw new IOException(String.format("Directory couldn't be deleted: %s", entry.getAbsolutePath()));
+            }
+
+            CacheSizeLedger.getInstance().forget(entry);
+        }
+    }
+
+    private void tryDeleteEnvironmentCacheFiles(File directory, File[] entries)
+    {
+        try
+        {
+            deleteEnvironmentCacheFiles(directory, entries);
+        }
+        catch (IOException e)
+        {
+            handleCacheCleanupError(e);
+        }
+    }
+
     @Override
     public void requestCleanUpBothCaches(Map<File, Consumer<File[]>> deleteMethods)
     {
@@ -379,7 +491,9 @@ public abstract class CacheModelBase implements CacheModel
                     List<File> nonRecentProjects = new ArrayList<>(Arrays.asList(Objects.requireNonNull(directory.listFiles())));
                     List<File> oldProjects = new ArrayList<>(Arrays.asList(Objects.requireNonNull(directory.listFiles())));
 
-                    if (settingsModel.getBoolean("recentPromptEnabled"))
+                    // Cached environment maps don't belong to a project, so they are only cleaned up by age and size.
+                    if (settingsModel.getBoolean("recentPromptEnabled")
+                        && !directory.equals(ApplicationFolders.getEnvironmentCacheDirectory().toFile()))
                     {
                         filterByRecentProjectLimit(directory, nonRecentProjects);
                         deletableProjects.addAll(nonRecentProjects);
@@ -504,10 +618,8 @@ public abstract class CacheModelBase implements CacheModel
         List<String> retainedProjectIDs =
             cleanableCacheProjects.entrySet().stream()
                 .sorted(Comparator.comparingLong(
-                        (Entry<String, Collection<File>> entry) -> // sort with least recently modified (i.e. "oldest") first
-                            entry.getValue().stream()
-                                .mapToLong(File::lastModified).max() // find most recent modification over various cache directories (i.e. preview, fit)
-                                .orElse(0L)) // shouldn't really ever need the default
+                        (Entry<String, Collection<File>> entry) -> // sort with least recently used (i.e. "oldest") first
+                            getLastUsed(entry.getKey(), entry.getValue()))
                     .reversed()) // Reverse so that the oldest projects are now last.
                 .map(Entry::getKey) // Keep just the key / project ID
                 .collect(Collectors.toCollection(ArrayList<String>::new)); // Explicit ArrayList constructor to ensure mutability
@@ -567,6 +679,16 @@ public abstract class CacheModelBase implements CacheModel
         }
     }
 
+    /**
+     * Gets the last time a project's cache was used according to the cache ledger,
+     * falling back to the most recent modification over its cache directories (i.e. preview, fit) if the ledger has no record.
+     */
+    private static long getLastUsed(String projectID, Collection<File> projectCacheDirs)
+    {
+        long lastUsed = CacheSizeLedger.getInstance().getLastUsed(projectID);
+        return lastUsed > 0 ? lastUsed : projectCacheDirs.stream().mapToLong(File::lastModified).max().orElse(0L);
+    }
+
     private static List<UUID> getRecentUUIDs(int numProjectsToKeep)
     {
         List<String> recentProjects = RecentProjects.getRecentProjectFilenames().stream().limit(numProjectsToKeep).collect(Collectors.toList());
@@ -594,48 +716,6 @@ public abstract class CacheModelBase implements CacheModel
         return recentUUIDs;
     }
 
-    /**
-     *
-     * @param directory       The current directory whose size is being evaluated.
-     * @param newProjectSizes Will be populated with updated individual project cache sizes.
-     * @param projectID       The name of project whose cache size is being calculated.
-     * @return The total size of the cache over all projects.
-     */
-    private long getDirectorySize(File directory, Map<String, Long> newProjectSizes, String projectID)
-    {
-        if (!Objects.equals(Thread.currentThread(), cacheSizeCalcThread))
-        {
-            throw new IllegalStateException("Thread is no longer the current cache size thread; terminating.");
-        }
-
-        long length = 0;
-        File[] files = directory.listFiles();
-        if (files != null)
-        {
-            for (File file : files)
-            {
-                if (file.isFile())
-                {
-                    length += file.length();
-                    newProjectSizes.put(projectID, ((newProjectSizes.get(projectID) == null) ? 0 : newProjectSizes.get(projectID)) + file.length());
-                }
-                else
-                {
-                    if (projectID == null)
-                    {
-                        length += getDirectorySize(file, newProjectSizes, file.getName());
-                    }
-                    else
-                    {
-                        length += getDirectorySize(file, newProjectSizes, projectID);
-                    }
-                }
-            }
-        }
-        LOG.debug("Directory size for {}: {}", directory, length);
-        return length;
-    }
-
     /**
      * Requests that the cache size be recalculated without any callback.
      * If a request is already running when this method is invoked, another request will not be started.
@@ -748,10 +828,18 @@ public abstract class CacheModelBase implements CacheModel
      */
     private long calcCacheSize(Map<String, Long> newProjectSizes)
     {
+        if (!Objects.equals(Thread.currentThread(), cacheSizeCalcThread))
+        {
+            throw new IllegalStateException("Thread is no longer the current cache size thread; terminating.");
+        }
+
+        // Only projects that were written to (or added) since the last calculation are rescanned.
+        Collection<File> cacheDirectories = getCleanableCacheDirectories();
+        CacheSizeLedger.getInstance().reconcile(cacheDirectories);
+
         // Calculates both the total cache size as well as individual project sizes.
-        return getCleanableCacheDirectories().stream()
-            .mapToLong(dir -> getDirectorySize(dir, newProjectSizes, null))
-            .sum();
+        newProjectSizes.putAll(CacheSizeLedger.getInstance().getProjectSizes(cacheDirectories));
+        return newProjectSizes.values().stream().mapToLong(Long::longValue).sum();
     }
 
     /**
@@ -95,7 +95,7 @@ public class MaterialCardFactory implements ProjectDataCardFactory
                     }),
                 Map.of("Delete Material", () ->
                     cardsModel.confirm("Delete Material", "Delete Material?", "This will delete the material from the project.",
-                        () -> Rendering.runLater(() -> // needs to run on graphics thread to replace GPU resources
+                        () -> Rendering.runInteractive(() -> // needs to run on graphics thread to replace GPU resources
                         {
                             try
                             {
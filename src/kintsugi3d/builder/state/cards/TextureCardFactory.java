@@ -244,7 +244,7 @@ public class TextureCardFactory implements ProjectDataCardFactory
     private void refreshTexture(TextureDetails key, int weightmapIndex)
     {
         // Texture replacement must happen on graphics thread.
-        Rendering.runLater(() ->
+        Rendering.runInteractive(() ->
         {
             TextureResources<?> resources = instance.getResources().getTextureResources();
 
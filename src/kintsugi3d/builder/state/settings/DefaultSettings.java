@@ -12,7 +12,10 @@
 package kintsugi3d.builder.state.settings;
 
 import kintsugi3d.builder.app.OperatingSystem;
+import kintsugi3d.builder.fit.decomposition.PackedBasisWeights;
+import kintsugi3d.builder.fit.settings.ClusteringInitialization;
 import kintsugi3d.builder.io.ExportType;
+import kintsugi3d.gl.nativebuffer.NativeBufferArena;
 import kintsugi3d.gl.vecmath.Vector2;
 import kintsugi3d.util.ShadingParameterMode;
 
@@ -70,6 +73,17 @@ public final class DefaultSettings
         settingsModel.createBooleanSetting("fileAgePromptEnabled", true, true);
         settingsModel.createNumericSetting("fileAgeLimit", 30, true);
 
+        // Cache format options
+        settingsModel.createBooleanSetting("uncompressedFitCacheEnabled", false, true);
+
+        // Specular fit memory options
+        settingsModel.createObjectSetting("basisWeightStorage", PackedBasisWeights.Storage.HEAP, true);
+        settingsModel.createObjectSetting("clusteringInitialization", ClusteringInitialization.K_MEANS_PLUS_PLUS, true);
+
+        // Native memory options; the default comes from the Kintsugi3D.nativeBufferPoolMB system property, if set.
+        settingsModel.createNumericSetting("nativeBufferPoolMB",
+            (int) (NativeBufferArena.getInstance().getMaxPooledBytes() >> 20), true);
+
         // External application options
         switch (OperatingSystem.getCurrentOS())
         {
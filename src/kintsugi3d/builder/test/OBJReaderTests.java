@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.builder.test;
+
+import kintsugi3d.gl.geometry.VertexGeometry;
+import kintsugi3d.gl.nativebuffer.ReadonlyNativeVectorBuffer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OBJReaderTests
+{
+    private static final int RANDOM_VALUE_COUNT = 30000;
+
+    @Test
+    @DisplayName("OBJ vertex positions round-trip exactly against Float.parseFloat")
+    void floatRoundTrip() throws IOException
+    {
+        List<String> tokens = new ArrayList<>(List.of(
+            "0", "-0", "0.0", "-0.000000", "1", "-1", "1.500000", "0.1", "0.7", "3.14159265",
+            "16777215", "16777216", "16777217", "0.16777217", "123.456789", "1e10", "1e-10", "1.5e11", "7e-11",
+            "1.17549435e-38", "3.4028235e38", "1e39", "1e-46", "0.000000000000000000001",
+            "123456789012345678901234567890", "8.589973e9", "1.00000017881393421514957253748434595763683319091796875"));
+
+        Random random = new Random(0);
+        for (int i = 0; i < RANDOM_VALUE_COUNT; i++)
+        {
+            switch (i % 3)
+            {
+                case 0:
+                    // Typical exporter output: fixed precision.
+                    tokens.add(String.format(Locale.ROOT, "%." + random.nextInt(10) + "f", (random.nextDouble() - 0.5) * 1000.0));
+                    break;
+                case 1:
+                    // Shortest representation of an arbitrary float.
+                    tokens.add(Float.toString(Float.intBitsToFloat(random.nextInt() & 0x7F7FFFFF)
+                        * (random.nextBoolean() ? 1.0f : -1.0f)));
+                    break;
+                default:
+                    // Short mantissas with explicit exponents, around the edge of the fast path.
+                    tokens.add((random.nextInt(20000000) - 10000000) + "e" + (random.nextInt(25) - 12));
+                    break;
+            }
+        }
+
+        // Pad to whole triangles.
+        while (tokens.size() % 9 != 0)
+        {
+            tokens.add("0");
+        }
+
+        StringBuilder obj = new StringBuilder();
+        int vertexCount = tokens.size() / 3;
+        for (int v = 0; v < vertexCount; v++)
+        {
+            obj.append("v ").append(tokens.get(3 * v)).append(' ')
+                .append(tokens.get(3 * v + 1)).append(' ')
+                .append(tokens.get(3 * v + 2)).append('\n');
+        }
+        for (int v = 1; v <= vertexCount; v += 3)
+        {
+            obj.append("f ").append(v).append(' ').append(v + 1).append(' ').append(v + 2).append('\n');
+        }
+
+        VertexGeometry geometry = VertexGeometry.createFromOBJStream(
+            new ByteArrayInputStream(obj.toString().getBytes(StandardCharsets.UTF_8)));
+        ReadonlyNativeVectorBuffer vertices = geometry.getVertices();
+
+        assertEquals(vertexCount, vertices.getCount());
+        for (int i = 0; i < tokens.size(); i++)
+        {
+            float expected = Float.parseFloat(tokens.get(i));
+            float actual = vertices.get(i / 3, i % 3).floatValue();
+            assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits(actual), "Mismatch parsing \"" + tokens.get(i) + '"');
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.builder.test;
+
+import org.jengineering.sjmply.PLY;
+import org.jengineering.sjmply.PLYElementList;
+import org.jengineering.sjmply.PLYType;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.jengineering.sjmply.PLYFormat.BINARY_LITTLE_ENDIAN;
+import static org.jengineering.sjmply.PLYType.*;
+
+/**
+ * Compares the bulk binary element reader against the value by value reader on generated
+ * binary little endian meshes, both for plain files and for files inside a zip archive.
+ * <p>
+ * Usage: <code>PLYReadBenchmark [vertexCount] [repetitions]</code>
+ */
+public final class PLYReadBenchmark
+{
+    private static final long SEED = 1337;
+
+    @FunctionalInterface
+    private interface Source
+    {
+        InputStream open() throws IOException;
+    }
+
+    private PLYReadBenchmark()
+    {
+    }
+
+    private static PLY generate(int vertexCount, long seed)
+    {
+        Random random = new Random(seed);
+        PLY ply = new PLY(BINARY_LITTLE_ENDIAN, "1.0");
+
+        PLYElementList vertices = new PLYElementList(vertexCount);
+        for (String name : new String[] { "x", "y", "z", "nx", "ny", "nz", "s", "t" })
+        {
+            float[] property = vertices.addProperty(FLOAT32, name);
+            for (int i = 0; i < vertexCount; i++)
+            {
+                property[i] = random.nextFloat();
+            }
+        }
+        for (String name : new String[] { "red", "green", "blue" })
+        {
+            random.nextBytes(vertices.addProperty(UINT8, name));
+        }
+        ply.elements.put("vertex", vertices);
+
+        int faceCount = 2 * vertexCount;
+        PLYElementList faces = new PLYElementList(faceCount);
+        int[][] indices = faces.addProperty(LIST(UINT8, INT32), "vertex_indices");
+        for (int i = 0; i < faceCount; i++)
+        {
+            indices[i] = new int[] { random.nextInt(vertexCount), random.nextInt(vertexCount), random.nextInt(vertexCount) };
+        }
+        ply.elements.put("face", faces);
+
+        return ply;
+    }
+
+    private static boolean sameData(PLY a, PLY b)
+    {
+        if (!a.elements.keySet().equals(b.elements.keySet()))
+        {
+            return false;
+        }
+
+        for (String element : a.elements.keySet())
+        {
+            PLYElementList listA = a.elements(element);
+            PLYElementList listB = b.elements(element);
+            if (!listA.properties.equals(listB.properties))
+            {
+                return false;
+            }
+
+            for (String property : listA.properties.keySet())
+            {
+                PLYType<?> type = listA.properties.get(property);
+                if (!Arrays.deepEquals(new Object[] { listA.property(type, property) }, new Object[] { listB.property(type, property) }))
+                {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static PLY readZipEntry(InputStream in, boolean bulk) throws IOException
+    {
+        ZipInputStream zipIn = new ZipInputStream(in);
+        zipIn.getNextEntry();
+        return PLY.read(new BufferedInputStream(zipIn), bulk);
+    }
+
+    /**
+     * @return The best time over all repetitions, in milliseconds.
+     */
+    private static double time(Source source, boolean bulk, boolean zipped, int repetitions) throws IOException
+    {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < repetitions; i++)
+        {
+            long start = System.nanoTime();
+            try (InputStream in = source.open())
+            {
+                if (zipped)
+                {
+                    readZipEntry(in, bulk);
+                }
+                else
+                {
+                    PLY.read(in, bulk);
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best * 1.0e-6;
+    }
+
+    public static void main(String... args) throws IOException
+    {
+        int vertexCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Path file = Files.createTempFile("ply-benchmark-", ".ply");
+        Path zip = Files.createTempFile("ply-benchmark-", ".zip");
+        try
+        {
+            PLY ply = generate(vertexCount, SEED);
+            ply.save(file);
+            try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip)))
+            {
+                out.putNextEntry(new ZipEntry("mesh.ply"));
+                ply.write(out);
+                out.closeEntry();
+            }
+
+            Source plain = () -> new BufferedInputStream(Files.newInputStream(file));
+            Source zipped = () -> Files.newInputStream(zip);
+
+            PLY expected;
+            try (InputStream in = plain.open())
+            {
+                expected = PLY.read(in, false);
+            }
+            try (InputStream in = plain.open(); InputStream zipIn = zipped.open())
+            {
+                if (!sameData(expected, PLY.read(in, true)) || !sameData(expected, readZipEntry(zipIn, true)))
+                {
+                    throw new AssertionError("Bulk and value by value reading disagree.");
+                }
+            }
+
+            System.out.printf("%,d vertices, %,d faces (%,d bytes)%n", vertexCount, 2 * vertexCount, Files.size(file));
+            for (boolean isZip : new boolean[] { false, true })
+            {
+                Source source = isZip ? zipped : plain;
+                double valueByValue = time(source, false, isZip, repetitions);
+                double bulk = time(source, true, isZip, repetitions);
+                System.out.printf("%-6s value by value: %8.1f ms, bulk: %8.1f ms (%.1fx)%n",
+                    isZip ? "zip" : "file", valueByValue, bulk, valueByValue / bulk);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(zip);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.builder.test;
+
+import kintsugi3d.optimization.FastPartialSVD;
+import kintsugi3d.optimization.KMeansClustering;
+import kintsugi3d.optimization.RandomizedPartialSVD;
+import kintsugi3d.util.ColorArrayList;
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartialSVDTests
+{
+    private static final int ROWS = 64;
+    private static final int COLS = 24;
+
+    /**
+     * Exact singular values of the test matrix; decaying so that the power iterations in FastPartialSVD converge quickly.
+     */
+    private static final double[] SINGULAR_VALUES = { 8.0, 4.0, 2.0, 1.0, 0.5, 0.25, 0.125, 0.0625 };
+    private static final int SINGULAR_VALUE_COUNT = 4;
+
+    private static final double TOLERANCE = 1.0e-3;
+
+    /**
+     * Cosine (DCT-II) basis vectors are orthonormal, so the singular values of the sum below are known exactly.
+     */
+    private static double cosineBasis(int k, int i, int n)
+    {
+        return Math.sqrt(2.0 / n) * Math.cos(Math.PI * (i + 0.5) * (k + 1) / n);
+    }
+
+    private static SimpleMatrix createMatrix()
+    {
+        SimpleMatrix matrix = new SimpleMatrix(ROWS, COLS, FMatrixRMaj.class);
+        for (int i = 0; i < ROWS; i++)
+        {
+            for (int j = 0; j < COLS; j++)
+            {
+                double value = 0.0;
+                for (int k = 0; k < SINGULAR_VALUES.length; k++)
+                {
+                    value += SINGULAR_VALUES[k] * cosineBasis(k, i, ROWS) * cosineBasis(k, j, COLS);
+                }
+                matrix.set(i, j, value);
+            }
+        }
+        return matrix;
+    }
+
+    @Test
+    @DisplayName("Randomized partial SVD matches FastPartialSVD singular values and error")
+    void compareWithFastPartialSVD()
+    {
+        SimpleMatrix matrix = createMatrix();
+
+        RandomizedPartialSVD randomized = RandomizedPartialSVD.compute(matrix, SINGULAR_VALUE_COUNT, 0L);
+
+        // FastPartialSVD deflates the matrix in place, leaving the residual behind.
+        FastPartialSVD fast = FastPartialSVD.compute(matrix.copy(), SINGULAR_VALUE_COUNT);
+
+        float[] expected = fast.getSingularValues();
+        float[] actual = randomized.getSingularValues();
+        assertEquals(SINGULAR_VALUE_COUNT, expected.length);
+        assertEquals(SINGULAR_VALUE_COUNT, actual.length);
+        for (int k = 0; k < SINGULAR_VALUE_COUNT; k++)
+        {
+            assertEquals(SINGULAR_VALUES[k], expected[k], TOLERANCE);
+            assertEquals(expected[k], actual[k], TOLERANCE);
+        }
+
+        double exactResidual = 0.0;
+        for (int k = SINGULAR_VALUE_COUNT; k < SINGULAR_VALUES.length; k++)
+        {
+            exactResidual += SINGULAR_VALUES[k] * SINGULAR_VALUES[k];
+        }
+        exactResidual = Math.sqrt(exactResidual);
+
+        assertEquals(exactResidual, fast.getError().normF(), TOLERANCE);
+        assertEquals(fast.getError().normF(), randomized.getResidualNorm(), TOLERANCE);
+
+        // The reported error must bound the error of the actual reconstruction.
+        SimpleMatrix sigma = new SimpleMatrix(SINGULAR_VALUE_COUNT, SINGULAR_VALUE_COUNT, FMatrixRMaj.class);
+        for (int k = 0; k < SINGULAR_VALUE_COUNT; k++)
+        {
+            sigma.set(k, k, actual[k]);
+        }
+        double reconstructionError = matrix.minus(randomized.getU().mult(sigma).mult(randomized.getV().transpose())).normF();
+        assertTrue(reconstructionError <= randomized.getResidualNorm() + TOLERANCE);
+        assertEquals(exactResidual, reconstructionError, TOLERANCE);
+    }
+
+    @Test
+    @DisplayName("Principal axis splitting separates distinct colors using either partial SVD")
+    void principalAxisSplitting()
+    {
+        float[][] groupColors = { { 0.9f, 0.1f, 0.1f }, { 0.1f, 0.8f, 0.2f }, { 0.2f, 0.2f, 0.7f } };
+        int colorsPerGroup = 1000;
+
+        Random random = new Random(0);
+        float[] colorData = new float[4 * groupColors.length * colorsPerGroup];
+        for (int p = 0; p < groupColors.length * colorsPerGroup; p++)
+        {
+            for (int c = 0; c < 3; c++)
+            {
+                colorData[4 * p + c] = groupColors[p / colorsPerGroup][c] + 0.02f * (float) random.nextGaussian();
+            }
+            colorData[4 * p + 3] = 1.0f;
+        }
+
+        checkSplitting(colorData, colorsPerGroup, groupColors.length,
+            matrix -> FastPartialSVD.compute(matrix, 1).getV());
+        checkSplitting(colorData, colorsPerGroup, groupColors.length,
+            matrix -> RandomizedPartialSVD.compute(matrix, 1, 0L).getV());
+    }
+
+    private static void checkSplitting(float[] colorData, int colorsPerGroup, int groupCount,
+        Function<SimpleMatrix, SimpleMatrix> principalAxisFinder)
+    {
+        int[] assignments = new int[colorData.length / 4];
+        new KMeansClustering(new ColorArrayList(colorData))
+            .setPrincipalAxisSplitting(principalAxisFinder)
+            .makeClusters(groupCount, assignments);
+
+        for (int g = 0; g < groupCount; g++)
+        {
+            for (int p = g * colorsPerGroup; p < (g + 1) * colorsPerGroup; p++)
+            {
+                assertEquals(assignments[g * colorsPerGroup], assignments[p]);
+            }
+
+            for (int h = 0; h < g; h++)
+            {
+                assertNotEquals(assignments[h * colorsPerGroup], assignments[g * colorsPerGroup]);
+            }
+        }
+    }
+}
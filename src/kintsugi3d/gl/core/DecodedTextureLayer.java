@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+package kintsugi3d.gl.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pixel data for one layer of a texture array that has already been decoded and converted to the texture's resolution,
+ * stored as 8-bit BGRA in a native buffer so that it can be sent to the GPU without further processing.
+ * Produced by {@link Texture3D#decodeLayer(java.io.File, boolean)} on any thread and consumed by
+ * {@link Texture3D#loadLayer(int, DecodedTextureLayer)} on the graphics thread.
+ */
+public final class DecodedTextureLayer
+{
+    private final int width;
+    private final int height;
+    private final ByteBuffer buffer;
+
+    public DecodedTextureLayer(int width, int height, ByteBuffer buffer)
+    {
+        if (buffer.capacity() != 4 * width * height)
+        {
+            throw new IllegalArgumentException(String.format(
+                "Buffer does not have the required size for a %dx%d BGRA layer.  Expected: %d  Actual: %d",
+                width, height, 4 * width * height, buffer.capacity()));
+        }
+
+        this.width = width;
+        this.height = height;
+        this.buffer = buffer;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    public ByteBuffer getBuffer()
+    {
+        return buffer;
+    }
+
+    public int getSizeInBytes()
+    {
+        return buffer.capacity();
+    }
+}
@@ -171,6 +171,36 @@ public interface Texture3D<ContextType extends Context<ContextType>>
      */
     void loadLayer(int layerIndex, ReadonlyNativeVectorBuffer data);
 
+    /**
+     * Decodes an image and converts it to the resolution of this texture without sending it to the GPU.
+     * Does not use the graphics context, so it is safe to call from any thread;
+     * the result can then be sent to the GPU on the graphics thread using {@link #loadLayer(int, DecodedTextureLayer)}.
+     * @param file A file containing the image in a format supported by Java's ImageIO library.
+     * @param flipVertical Whether or not to automatically flip all of the pixels vertically to resolve discrepancies with respect to the orientation of the vertical axis.
+     * @return The decoded pixel data.
+     * @throws IOException Upon a File I/O problem while loading the image.
+     */
+    DecodedTextureLayer decodeLayer(File file, boolean flipVertical) throws IOException;
+
+    /**
+     * Decodes an image and alpha mask and converts them to the resolution of this texture without sending them to the GPU.
+     * Does not use the graphics context, so it is safe to call from any thread;
+     * the result can then be sent to the GPU on the graphics thread using {@link #loadLayer(int, DecodedTextureLayer)}.
+     * @param imageFile A file containing the image in a format supported by Java's ImageIO library.
+     * @param maskFile A file containing the alpha mask in a format supported by Java's ImageIO library.
+     * @param flipVertical Whether or not to automatically flip all of the pixels vertically to resolve discrepancies with respect to the orientation of the vertical axis.
+     * @return The decoded pixel data.
+     * @throws IOException Upon a File I/O problem while loading the image.
+     */
+    DecodedTextureLayer decodeLayer(File imageFile, File maskFile, boolean flipVertical) throws IOException;
+
+    /**
+     * Sends previously decoded pixel data to the GPU for a specific layer of the 3D texture, replacing whatever pixel data was there before.
+     * @param layerIndex The index of the layer where the pixel data should go.
+     * @param layer The decoded pixel data, which must match the width and height of this texture.
+     */
+    void loadLayer(int layerIndex, DecodedTextureLayer layer);
+
     /**
      * Gets a single layer of this texture for use as a framebuffer attachment.
      * @param layerIndex The layer to use as a framebuffer attachment.
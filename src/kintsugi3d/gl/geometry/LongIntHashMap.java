@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.gl.geometry;
+
+import java.util.Arrays;
+
+/**
+ * Minimal open-addressing hash map from long keys to non-negative int values.
+ * Used to de-duplicate vertex attribute combinations without boxing a key object for every triangle corner.
+ * Not thread-safe.
+ */
+final class LongIntHashMap
+{
+    /**
+     * Returned by get() and putIfAbsent() when the key is not in the map.
+     */
+    static final int NO_VALUE = -1;
+
+    private static final float MAX_LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    LongIntHashMap(int expectedSize)
+    {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) Math.min(1 << 30, (long) (expectedSize / MAX_LOAD_FACTOR)) - 1)) << 1;
+        allocate(capacity);
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    int get(long key)
+    {
+        for (int i = hash(key) & mask; values[i] != NO_VALUE; i = (i + 1) & mask)
+        {
+            if (keys[i] == key)
+            {
+                return values[i];
+            }
+        }
+
+        return NO_VALUE;
+    }
+
+    /**
+     * Associates the value with the key unless the key is already present.
+     * @param key The key.
+     * @param value The value, which must be non-negative.
+     * @return The value already associated with the key, or NO_VALUE if the new value was inserted.
+     */
+    int putIfAbsent(long key, int value)
+    {
+        if (value < 0)
+        {
+            throw new IllegalArgumentException("Values must be non-negative.");
+        }
+
+        int i = hash(key) & mask;
+        while (values[i] != NO_VALUE)
+        {
+            if (keys[i] == key)
+            {
+                return values[i];
+            }
+
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        size++;
+
+        if (size > keys.length * MAX_LOAD_FACTOR)
+        {
+            rehash(keys.length << 1);
+        }
+
+        return NO_VALUE;
+    }
+
+    private void allocate(int capacity)
+    {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, NO_VALUE);
+        mask = capacity - 1;
+    }
+
+    private void rehash(int newCapacity)
+    {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+
+        for (int j = 0; j < oldKeys.length; j++)
+        {
+            if (oldValues[j] != NO_VALUE)
+            {
+                int i = hash(oldKeys[j]) & mask;
+                while (values[i] != NO_VALUE)
+                {
+                    i = (i + 1) & mask;
+                }
+
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private static int hash(long key)
+    {
+        // Finalizer from MurmurHash3 to spread sequential keys across the table
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
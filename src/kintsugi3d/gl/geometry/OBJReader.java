@@ -0,0 +1,667 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.gl.geometry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming parser for Wavefront OBJ meshes.
+ * Reads the file as raw bytes and tokenizes each line in place, storing positions, normals, texture coordinates
+ * and face indices in growable primitive arrays, so that no objects are allocated per vertex or per face.
+ * Only the subset of the format used by VertexGeometry is supported: a single material,
+ * and polygonal faces (which are triangulated as fans).
+ */
+final class OBJReader
+{
+    private static final int INITIAL_BUFFER_SIZE = 1 << 20; // 1 MiB
+    private static final int INITIAL_ARRAY_CAPACITY = 100000;
+
+    /**
+     * Bounds the digits accumulated into the mantissa so that it can't overflow a long;
+     * longer numbers are handed to Float.parseFloat() instead.
+     */
+    private static final int MAX_FAST_DIGITS = 15;
+
+    /**
+     * Mantissas below this bound are exactly representable as a float.
+     */
+    private static final long MAX_FAST_MANTISSA = 1L << 24;
+
+    /**
+     * Powers of ten that are exactly representable as a float (5^10 < 2^24).
+     */
+    private static final float[] POWERS_OF_TEN =
+    {
+        1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+
+    private static final int MISSING_INDEX = Integer.MIN_VALUE;
+
+    private final GrowableFloatArray positions = new GrowableFloatArray(3 * INITIAL_ARRAY_CAPACITY);
+    private final GrowableFloatArray normals = new GrowableFloatArray(3 * INITIAL_ARRAY_CAPACITY);
+    private final GrowableFloatArray texCoords = new GrowableFloatArray(2 * INITIAL_ARRAY_CAPACITY);
+    private final GrowableIntArray vertexIndices = new GrowableIntArray(INITIAL_ARRAY_CAPACITY);
+    private final GrowableIntArray normalIndices = new GrowableIntArray(INITIAL_ARRAY_CAPACITY);
+    private final GrowableIntArray texCoordIndices = new GrowableIntArray(INITIAL_ARRAY_CAPACITY);
+
+    // Assume initially that normals and texture coordinates are present
+    private boolean hasNormals = true;
+    private boolean hasTexCoords = true;
+
+    private String materialFileName;
+    private String materialName;
+
+    // Current line being tokenized
+    private byte[] line;
+    private int pos;
+    private int end;
+    private long lineNumber;
+
+    /**
+     * Reads an entire OBJ file from a channel.
+     * The channel is read until the end of the stream, but is not closed.
+     * @param channel The channel to read from.
+     * @throws IOException If an I/O error occurs, or if the file is malformed.
+     */
+    void read(ReadableByteChannel channel) throws IOException
+    {
+        byte[] data = new byte[INITIAL_BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+
+        boolean endOfStream = false;
+        while (!endOfStream)
+        {
+            if (!buffer.hasRemaining())
+            {
+                // A single line fills the entire buffer; grow it so that the rest of the line fits.
+                data = Arrays.copyOf(data, data.length * 2);
+                buffer = ByteBuffer.wrap(data);
+                buffer.position(data.length / 2);
+            }
+
+            endOfStream = channel.read(buffer) < 0;
+            int limit = buffer.position();
+
+            // Parse every complete line in the buffer.
+            int lineStart = 0;
+            for (int i = 0; i < limit; i++)
+            {
+                if (data[i] == '\n')
+                {
+                    parseLine(data, lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+
+            if (endOfStream)
+            {
+                // Last line may not be terminated.
+                if (lineStart < limit)
+                {
+                    parseLine(data, lineStart, limit);
+                }
+            }
+            else
+            {
+                // Move the incomplete line to the start of the buffer and keep reading after it.
+                System.arraycopy(data, lineStart, data, 0, limit - lineStart);
+                buffer.position(limit - lineStart);
+            }
+        }
+    }
+
+    boolean hasNormals()
+    {
+        return hasNormals;
+    }
+
+    boolean hasTexCoords()
+    {
+        return hasTexCoords;
+    }
+
+    String getMaterialFileName()
+    {
+        return materialFileName;
+    }
+
+    String getMaterialName()
+    {
+        return materialName;
+    }
+
+    /**
+     * Vertex positions, three floats per vertex.  The array may be longer than necessary.
+     */
+    float[] getPositions()
+    {
+        return positions.array;
+    }
+
+    int getPositionCount()
+    {
+        return positions.size / 3;
+    }
+
+    /**
+     * Vertex normals (normalized), three floats per normal.  The array may be longer than necessary.
+     */
+    float[] getNormals()
+    {
+        return normals.array;
+    }
+
+    /**
+     * Texture coordinates, two floats per texture coordinate.  The array may be longer than necessary.
+     */
+    float[] getTexCoords()
+    {
+        return texCoords.array;
+    }
+
+    /**
+     * Zero-based position index for each corner of each triangle.  The array may be longer than necessary;
+     * the number of valid elements is given by getIndexCount().
+     */
+    int[] getVertexIndices()
+    {
+        return vertexIndices.array;
+    }
+
+    /**
+     * Zero-based normal index for each corner of each triangle.  Only meaningful if hasNormals() is true.
+     */
+    int[] getNormalIndices()
+    {
+        return normalIndices.array;
+    }
+
+    /**
+     * Zero-based texture coordinate index for each corner of each triangle.  Only meaningful if hasTexCoords() is true.
+     */
+    int[] getTexCoordIndices()
+    {
+        return texCoordIndices.array;
+    }
+
+    int getIndexCount()
+    {
+        return vertexIndices.size;
+    }
+
+    private void parseLine(byte[] data, int start, int lineEnd) throws IOException
+    {
+        this.line = data;
+        this.pos = start;
+        this.end = lineEnd;
+        this.lineNumber++;
+
+        skipWhitespace();
+
+        if (pos >= end || line[pos] == '#')
+        {
+            // Blank line or comment
+            return;
+        }
+
+        if (matchKeyword("v"))
+        {
+            // Vertex position
+            positions.add(nextFloat());
+            positions.add(nextFloat());
+            positions.add(nextFloat());
+        }
+        else if (matchKeyword("vt"))
+        {
+            // Texture coordinate
+            if (hasTexCoords)
+            {
+                texCoords.add(nextFloat());
+                texCoords.add(nextFloat());
+            }
+        }
+        else if (matchKeyword("vn"))
+        {
+            if (hasNormals)
+            {
+                // Vertex normal
+                float nx = nextFloat();
+                float ny = nextFloat();
+                float nz = nextFloat();
+
+                // Normalize to unit length
+                float scale = 1.0f / (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+                normals.add(nx * scale);
+                normals.add(ny * scale);
+                normals.add(nz * scale);
+            }
+        }
+        else if (matchKeyword("f"))
+        {
+            parseFace();
+        }
+        else if (matchKeyword("mtllib"))
+        {
+            if (materialFileName == null)
+            {
+                // Use first material filename found
+                materialFileName = nextToken();
+            }
+        }
+        else if (matchKeyword("usemtl"))
+        {
+            if (materialName == null)
+            {
+                // Use first material found
+                materialName = nextToken();
+            }
+        }
+        // Anything else (groups, objects, smoothing groups, etc.) is ignored.
+    }
+
+    private void parseFace() throws IOException
+    {
+        int firstVertex = 0;
+        int firstTexCoord = 0;
+        int firstNormal = 0;
+        int prevVertex = 0;
+        int prevTexCoord = 0;
+        int prevNormal = 0;
+        int cornerCount = 0;
+
+        skipWhitespace();
+        while (pos < end)
+        {
+            int vertex = resolveIndex(nextInt(), getPositionCount());
+            int texCoord = MISSING_INDEX;
+            int normal = MISSING_INDEX;
+
+            if (pos < end && line[pos] == '/')
+            {
+                pos++;
+                if (pos < end && line[pos] != '/' && !isWhitespace(line[pos]))
+                {
+                    texCoord = nextInt();
+                }
+
+                if (pos < end && line[pos] == '/')
+                {
+                    pos++;
+                    if (pos < end && !isWhitespace(line[pos]))
+                    {
+                        normal = nextInt();
+                    }
+                }
+            }
+
+            if (texCoord == MISSING_INDEX)
+            {
+                // No texture coordinate
+                hasTexCoords = false;
+            }
+            else if (hasTexCoords)
+            {
+                texCoord = resolveIndex(texCoord, texCoords.size / 2);
+            }
+
+            if (normal == MISSING_INDEX)
+            {
+                // No vertex normal
+                hasNormals = false;
+            }
+            else if (hasNormals)
+            {
+                normal = resolveIndex(normal, normals.size / 3);
+            }
+
+            if (cornerCount == 0)
+            {
+                firstVertex = vertex;
+                firstTexCoord = texCoord;
+                firstNormal = normal;
+            }
+            else if (cornerCount >= 2)
+            {
+                // Triangulate polygons as a fan around the first corner.
+                addCorner(firstVertex, firstTexCoord, firstNormal);
+                addCorner(prevVertex, prevTexCoord, prevNormal);
+                addCorner(vertex, texCoord, normal);
+            }
+
+            prevVertex = vertex;
+            prevTexCoord = texCoord;
+            prevNormal = normal;
+            cornerCount++;
+
+            skipWhitespace();
+        }
+
+        if (cornerCount < 3)
+        {
+            throw new IOException("Face with fewer than three vertices on line " + lineNumber + " of OBJ file.");
+        }
+    }
+
+    private void addCorner(int vertex, int texCoord, int normal)
+    {
+        vertexIndices.add(vertex);
+
+        if (hasTexCoords)
+        {
+            texCoordIndices.add(texCoord);
+        }
+
+        if (hasNormals)
+        {
+            normalIndices.add(normal);
+        }
+    }
+
+    private int resolveIndex(int index, int count) throws IOException
+    {
+        if (index > 0)
+        {
+            // Absolute index
+            // 1-based -> 0-based indexing
+            return index - 1;
+        }
+        else if (index < 0)
+        {
+            // Relative index
+            return count + index;
+        }
+        else
+        {
+            throw new IOException("Invalid index of zero on line " + lineNumber + " of OBJ file.");
+        }
+    }
+
+    private static boolean isWhitespace(byte b)
+    {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private void skipWhitespace()
+    {
+        while (pos < end && isWhitespace(line[pos]))
+        {
+            pos++;
+        }
+    }
+
+    /**
+     * If the current token is exactly the specified keyword, consumes it and returns true.
+     * Otherwise, leaves the position unchanged and returns false.
+     */
+    private boolean matchKeyword(String keyword)
+    {
+        int length = keyword.length();
+        if (end - pos < length)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++)
+        {
+            if (line[pos + i] != keyword.charAt(i))
+            {
+                return false;
+            }
+        }
+
+        if (pos + length < end && !isWhitespace(line[pos + length]))
+        {
+            // Keyword is only a prefix of the token
+            return false;
+        }
+
+        pos += length;
+        return true;
+    }
+
+    private String nextToken() throws IOException
+    {
+        skipWhitespace();
+        int start = pos;
+        while (pos < end && !isWhitespace(line[pos]))
+        {
+            pos++;
+        }
+
+        if (pos == start)
+        {
+            throw new IOException("Unexpected end of line " + lineNumber + " of OBJ file.");
+        }
+
+        return new String(line, start, pos - start, StandardCharsets.UTF_8);
+    }
+
+    private int nextInt() throws IOException
+    {
+        int start = pos;
+        boolean negative = false;
+        if (pos < end && (line[pos] == '-' || line[pos] == '+'))
+        {
+            negative = line[pos] == '-';
+            pos++;
+        }
+
+        long value = 0;
+        int digitStart = pos;
+        while (pos < end && line[pos] >= '0' && line[pos] <= '9' && value <= Integer.MAX_VALUE)
+        {
+            value = value * 10 + (line[pos] - '0');
+            pos++;
+        }
+
+        if (pos == digitStart || value > Integer.MAX_VALUE)
+        {
+            throw new IOException("Invalid index \"" + new String(line, start, Math.max(1, pos - start), StandardCharsets.UTF_8)
+                + "\" on line " + lineNumber + " of OBJ file.");
+        }
+
+        return negative ? (int) -value : (int) value;
+    }
+
+    private float nextFloat() throws IOException
+    {
+        skipWhitespace();
+        int start = pos;
+
+        boolean negative = false;
+        if (pos < end && (line[pos] == '-' || line[pos] == '+'))
+        {
+            negative = line[pos] == '-';
+            pos++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean anyDigits = false;
+
+        // Integer part
+        while (pos < end && line[pos] >= '0' && line[pos] <= '9')
+        {
+            int digit = line[pos] - '0';
+            if (mantissa != 0 || digit != 0)
+            {
+                significantDigits++;
+            }
+            mantissa = mantissa * 10 + digit;
+            anyDigits = true;
+            pos++;
+
+            if (significantDigits > MAX_FAST_DIGITS)
+            {
+                return parseFloatSlow(start);
+            }
+        }
+
+        // Fractional part
+        if (pos < end && line[pos] == '.')
+        {
+            pos++;
+            while (pos < end && line[pos] >= '0' && line[pos] <= '9')
+            {
+                int digit = line[pos] - '0';
+                if (mantissa != 0 || digit != 0)
+                {
+                    significantDigits++;
+                }
+                mantissa = mantissa * 10 + digit;
+                exponent--;
+                anyDigits = true;
+                pos++;
+
+                if (significantDigits > MAX_FAST_DIGITS)
+                {
+                    return parseFloatSlow(start);
+                }
+            }
+        }
+
+        if (!anyDigits)
+        {
+            // Could be "nan" or "inf", or just garbage.
+            return parseFloatSlow(start);
+        }
+
+        // Exponent
+        if (pos < end && (line[pos] == 'e' || line[pos] == 'E'))
+        {
+            pos++;
+            boolean negativeExponent = false;
+            if (pos < end && (line[pos] == '-' || line[pos] == '+'))
+            {
+                negativeExponent = line[pos] == '-';
+                pos++;
+            }
+
+            int exponentStart = pos;
+            int explicitExponent = 0;
+            while (pos < end && line[pos] >= '0' && line[pos] <= '9')
+            {
+                explicitExponent = Math.min(explicitExponent * 10 + (line[pos] - '0'), 1000);
+                pos++;
+            }
+
+            if (pos == exponentStart)
+            {
+                return parseFloatSlow(start);
+            }
+
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        if (pos < end && !isWhitespace(line[pos]))
+        {
+            // Trailing characters (i.e. a type suffix); let the JDK decide whether it is valid.
+            return parseFloatSlow(start);
+        }
+
+        // Trailing zeros (i.e. "1.500000") don't contribute to the value but would otherwise push the mantissa
+        // out of the exact range.
+        while (mantissa != 0 && mantissa % 10 == 0)
+        {
+            mantissa /= 10;
+            exponent++;
+        }
+
+        float value;
+        if (mantissa == 0)
+        {
+            value = 0.0f;
+        }
+        else if (mantissa >= MAX_FAST_MANTISSA)
+        {
+            return parseFloatSlow(start);
+        }
+        else if (exponent >= 0 && exponent < POWERS_OF_TEN.length)
+        {
+            // Both the mantissa and the power of ten are exact floats, so a single float operation
+            // rounds the result correctly (rounding in double first and then to float could round twice).
+            value = mantissa * POWERS_OF_TEN[exponent];
+        }
+        else if (exponent < 0 && -exponent < POWERS_OF_TEN.length)
+        {
+            value = mantissa / POWERS_OF_TEN[-exponent];
+        }
+        else
+        {
+            return parseFloatSlow(start);
+        }
+
+        return negative ? -value : value;
+    }
+
+    private float parseFloatSlow(int start) throws IOException
+    {
+        pos = start;
+        String token = nextToken();
+
+        try
+        {
+            return Float.parseFloat(token);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IOException("Invalid number \"" + token + "\" on line " + lineNumber + " of OBJ file.", e);
+        }
+    }
+
+    private static final class GrowableFloatArray
+    {
+        private float[] array;
+        private int size;
+
+        GrowableFloatArray(int initialCapacity)
+        {
+            this.array = new float[initialCapacity];
+        }
+
+        void add(float value)
+        {
+            if (size == array.length)
+            {
+                array = Arrays.copyOf(array, array.length + (array.length >> 1));
+            }
+
+            array[size++] = value;
+        }
+    }
+
+    private static final class GrowableIntArray
+    {
+        private int[] array;
+        private int size;
+
+        GrowableIntArray(int initialCapacity)
+        {
+            this.array = new int[initialCapacity];
+        }
+
+        void add(int value)
+        {
+            if (size == array.length)
+            {
+                array = Arrays.copyOf(array, array.length + (array.length >> 1));
+            }
+
+            array[size++] = value;
+        }
+    }
+}
@@ -11,14 +11,12 @@
 
 package kintsugi3d.gl.geometry;
 
-import javafx.util.Pair;
 import kintsugi3d.gl.core.Context;
 import kintsugi3d.gl.material.ImportedMaterial;
 import kintsugi3d.gl.nativebuffer.NativeDataType;
 import kintsugi3d.gl.nativebuffer.NativeVectorBuffer;
 import kintsugi3d.gl.nativebuffer.NativeVectorBufferFactory;
 import kintsugi3d.gl.nativebuffer.ReadonlyNativeVectorBuffer;
-import kintsugi3d.gl.vecmath.Vector2;
 import kintsugi3d.gl.vecmath.Vector3;
 import kintsugi3d.gl.vecmath.Vector4;
 import org.jengineering.sjmply.PLY;
@@ -30,9 +28,16 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.*;
-import java.util.Map.Entry;
+import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Dictionary;
+import java.util.List;
+import java.util.stream.IntStream;
 
 import static org.jengineering.sjmply.PLYType.*;
 
@@ -44,6 +49,12 @@ import static org.jengineering.sjmply.PLYType.*;
 public final class VertexGeometry implements ReadonlyVertexGeometry
 {
     private static final Logger LOG = LoggerFactory.getLogger(VertexGeometry.class);
+
+    // Granularity of the parallel loops used to assemble the vertex buffers
+    private static final int CORNERS_PER_TASK = 3 * 32768;
+    private static final int FACES_PER_TASK = 32768;
+    private static final int VERTICES_PER_TASK = 32768;
+
     private File filename;
 
     private boolean hasNormals;
@@ -66,40 +77,6 @@ public final class VertexGeometry implements ReadonlyVertexGeometry
         this.filename = filename;
     }
 
-    private static class NormalTexCoordPair
-    {
-        public final int normalIndex;
-        public final int texCoordIndex;
-
-        NormalTexCoordPair(int normalIndex, int texCoordIndex)
-        {
-            this.normalIndex = normalIndex;
-            this.texCoordIndex = texCoordIndex;
-        }
-
-        @Override
-        public boolean equals(Object obj)
-        {
-            if (obj instanceof NormalTexCoordPair)
-            {
-                NormalTexCoordPair otherPair = (NormalTexCoordPair) obj;
-                return this.normalIndex == otherPair.normalIndex && this.texCoordIndex == otherPair.texCoordIndex;
-            }
-            else
-            {
-                return false;
-            }
-        }
-
-        @Override
-        public int hashCode()
-        {
-            int result = normalIndex;
-            result = 31 * result + texCoordIndex;
-            return result;
-        }
-    }
-
     /**
      * Initializes the mesh from a file containing the mesh in Wavefront OBJ format OR in PLY format
      * @param geometryFile
@@ -125,183 +102,47 @@ public final class VertexGeometry implements ReadonlyVertexGeometry
     /**
      * Initializes the mesh from a stream containing the mesh in Wavefront OBJ format.
      * @param stream The stream to load.
-     * @throws FileNotFoundException Thrown if any File I/O errors occur.
+     * @throws IOException Thrown if any I/O errors occur, or if the stream is not a valid OBJ file.
      */
-    public static VertexGeometry createFromOBJStream(InputStream stream)
+    public static VertexGeometry createFromOBJStream(InputStream stream) throws IOException
     {
-        try(Scanner scanner = new Scanner(stream, StandardCharsets.UTF_8))
-        {
-            scanner.useLocale(Locale.ROOT);
-            return createFromOBJ(null, scanner);
-        }
+        return createFromOBJ(null, Channels.newChannel(stream));
     }
 
     /**
      * Initializes the mesh from a file containing the mesh in Wavefront OBJ format.
      * @param file The file to load.
-     * @throws FileNotFoundException Thrown if any File I/O errors occur.
+     * @throws IOException Thrown if any File I/O errors occur, or if the file is not a valid OBJ file.
      */
     public static VertexGeometry createFromOBJFile(File file) throws IOException
     {
-        try(Scanner scanner = new Scanner(file, StandardCharsets.UTF_8))
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
         {
-            scanner.useLocale(Locale.ROOT);
-            return createFromOBJ(file, scanner);
+            return createFromOBJ(file, channel);
         }
     }
 
-    private static VertexGeometry createFromOBJ(File file, Scanner scanner)
+    private static VertexGeometry createFromOBJ(File file, ReadableByteChannel channel) throws IOException
     {
         Date timestamp = new Date();
 
-        // Assume initially that normals and texture coordinates are present
-        boolean hasNormals = true;
-        boolean hasTexCoords = true;
-        String materialFileName = null;
-
-        // Initialize dynamic tables to store the data from the file
-        List<Vector3> vertexList = new ArrayList<>(100000);
-        List<Vector3> normalList = new ArrayList<>(100000);
-        List<Vector2> texCoordList = new ArrayList<>(100000);
-        List<Integer> vertexIndexList = new ArrayList<>(100000);
-        List<Integer> normalIndexList = new ArrayList<>(100000);
-        List<Integer> texCoordIndexList = new ArrayList<>(100000);
-
-        Vector3 sum = Vector3.ZERO;
-
-        String materialName = null;
-
-        while(scanner.hasNext())
-        {
-            String id = scanner.next();
-            switch (id)
-            {
-                case "mtllib":
-                    if (materialFileName == null)
-                    {
-                        // Use first material filename found
-                        materialFileName = scanner.next();
-                    }
-                    break;
-                case "usemtl":
-                    if (materialName == null)
-                    {
-                        // Use first material found
-                        materialName = scanner.next();
-                    }
-                    break;
-                case "v":
-                    // Vertex position
-                    float x = scanner.nextFloat();
-                    float y = scanner.nextFloat();
-                    float z = scanner.nextFloat();
-
-                    sum = sum.plus(new Vector3(x, y, z));
-
-                    vertexList.add(new Vector3(x, y, z));
-                    break;
-                case "vt":
-                    // Texture coordinate
-                    if (hasTexCoords)
-                    {
-                        texCoordList.add(new Vector2(scanner.nextFloat(), scanner.nextFloat()));
-                    }
-                    break;
-                case "vn":
-                    if (hasNormals)
-                    {
-                        // Vertex normal
-                        float nx = scanner.nextFloat();
-                        float ny = scanner.nextFloat();
-                        float nz = scanner.nextFloat();
-
-                        // Normalize to unit length
-                        normalList.add(new Vector3(nx, ny, nz).normalized());
-                    }
-                    break;
-                case "f":
-                    for (int i = 0; i < 3; i++) // Only support triangles
-                    {
-                        String[] parts = scanner.next().split("/");
-
-                        // Process vertex position
-                        int vertexIndex = Integer.parseInt(parts[0]);
-                        if (vertexIndex < 0)
-                        {
-                            // Relative index
-                            vertexIndexList.add(vertexList.size() + vertexIndex);
-                        }
-                        else
-                        {
-                            // Absolute index
-                            // 1-based -> 0-based indexing
-                            vertexIndexList.add(vertexIndex - 1);
-                        }
-
-                        if (parts.length < 2 || parts[1].isEmpty())
-                        {
-                            // No texture coordinate
-                            hasTexCoords = false;
-                        }
-                        else if (hasTexCoords)
-                        {
-                            // Process texture coordinate
-                            int texCoordIndex = Integer.parseInt(parts[1]);
-                            if (texCoordIndex < 0)
-                            {
-                                // Relative index
-                                texCoordIndexList.add(texCoordIndexList.size() + texCoordIndex);
-                            }
-                            else
-                            {
-                                // Absolute index
-                                // 1-based -> 0-based indexing
-                                texCoordIndexList.add(texCoordIndex - 1);
-                            }
-                        }
-
-                        if (parts.length < 3 || parts[2].isEmpty())
-                        {
-                            // No vertex normal
-                            hasNormals = false;
-                        }
-                        else if (hasNormals)
-                        {
-                            // Process vertex normal
-                            int normalIndex = Integer.parseInt(parts[2]);
-                            if (normalIndex < 0)
-                            {
-                                // Relative index
-                                normalIndexList.add(normalIndexList.size() + normalIndex);
-                            }
-                            else
-                            {
-                                // Absolute index
-                                // 1-based -> 0-based indexing
-                                normalIndexList.add(normalIndex - 1);
-                            }
-                        }
-                    }
-                    break;
-                default:
-                    break;
-            }
+        OBJReader reader = new OBJReader();
+        reader.read(channel);
 
-            // Always advance to the next line.
-            scanner.nextLine();
-        }
+        LOG.info("OBJ file parsed in {} milliseconds.", new Date().getTime() - timestamp.getTime());
 
-        VertexGeometry inst = createFromArrays(file, hasNormals, hasTexCoords, vertexList, vertexIndexList, normalList,
-                normalIndexList, texCoordList, texCoordIndexList);
+        VertexGeometry inst = createFromArrays(file, reader.hasNormals(), reader.hasTexCoords(), reader.getIndexCount(),
+            reader.getPositions(), reader.getPositionCount(), reader.getVertexIndices(),
+            reader.getNormals(), reader.getNormalIndices(), reader.getTexCoords(), reader.getTexCoordIndices());
 
         // Handle OBJ materials
-        inst.materialFileName = materialFileName;
+        inst.materialFileName = reader.getMaterialFileName();
         if (file != null && inst.materialFileName != null)
         {
             try
             {
                 Dictionary<String, ImportedMaterial> materialLibrary = ImportedMaterial.loadFromMTLFile(new File(file.getParentFile(), inst.materialFileName));
-                inst.material = materialLibrary.get(materialName);
+                inst.material = materialLibrary.get(reader.getMaterialName());
             }
             catch(IOException e)
             {
@@ -349,33 +190,20 @@ public final class VertexGeometry implements ReadonlyVertexGeometry
 
     private static VertexGeometry createFromPLY(File file, PLY ply)
     {
+        Date timestamp = new Date();
+
         PLYElementList vertex = ply.elements("vertex");
         boolean hasNormals = false;
         boolean hasTexCoords = false;
 
-        List<Vector3> vertexList = new ArrayList<>(100000);
-        List<Vector3> normalList = new ArrayList<>(100000);
-        List<Vector2> texCoordList = new ArrayList<>(100000);
-        List<Integer> vertexIndexList = new ArrayList<>(100000);
-        List<Integer> normalIndexList = new ArrayList<>(100000);
-        List<Integer> texCoordIndexList = new ArrayList<>(100000);
-        Map<NormalTexCoordPair, Vector3> tangentMap = new HashMap<>(100000);
-        Map<NormalTexCoordPair, Vector3> bitangentMap = new HashMap<>(100000);
-
         // Collect all values stored per-vertex
         vertex.convertProperty("x", FLOAT32);
         vertex.convertProperty("y", FLOAT32);
         vertex.convertProperty("z", FLOAT32);
-        float[] x = vertex.property(FLOAT32, "x");
-        float[] y = vertex.property(FLOAT32, "y");
-        float[] z = vertex.property(FLOAT32, "z");
+        float[] positions = interleave(vertex.property(FLOAT32, "x"), vertex.property(FLOAT32, "y"), vertex.property(FLOAT32, "z"));
 
-        float[] nx = {};
-        float[] ny = {};
-        float[] nz = {};
-
-        float[] s = {};
-        float[] t = {};
+        float[] normals = null;
+        float[] texCoords = null;
 
         if (vertex.properties.keySet().containsAll(List.of(new String[]{"nx", "ny", "nz"})))
         {
@@ -384,9 +212,7 @@ public final class VertexGeometry implements ReadonlyVertexGeometry
             vertex.convertProperty("nx", FLOAT32);
             vertex.convertProperty("ny", FLOAT32);
             vertex.convertProperty("nz", FLOAT32);
-            nx = vertex.property(FLOAT32, "nx");
-            ny = vertex.property(FLOAT32, "ny");
-            nz = vertex.property(FLOAT32, "nz");
+            normals = interleave(vertex.property(FLOAT32, "nx"), vertex.property(FLOAT32, "ny"), vertex.property(FLOAT32, "nz"));
         }
 
         if (vertex.properties.keySet().containsAll(List.of(new String[]{"s", "t"})))
@@ -395,33 +221,17 @@ public final class VertexGeometry implements ReadonlyVertexGeometry
 
             vertex.convertProperty("s", FLOAT32);
             vertex.convertProperty("t", FLOAT32);
-            s = vertex.property(FLOAT32, "s");
-            t = vertex.property(FLOAT32, "t");
-        }
-
-        for (int i = 0; i < vertex.size; i++)
-        {
-            vertexList.add(new Vector3(x[i], y[i], z[i]));
-
-            if (hasNormals)
-            {
-                normalList.add(new Vector3(nx[i], ny[i], nz[i]));
-            }
-
-            if (hasTexCoords)
-            {
-                texCoordList.add(new Vector2(s[i], t[i]));
-            }
+            texCoords = interleave(vertex.property(FLOAT32, "s"), vertex.property(FLOAT32, "t"));
         }
 
         // Load properties stored per-face
         PLYElementList face = ply.elements("face");
         face.convertProperty("vertex_indices", LIST(UINT32,INT32));
 
-        int[][] vertexIndices = face.property(LIST(UINT32,INT32),"vertex_indices");
+        int[][] faceVertexIndices = face.property(LIST(UINT32,INT32),"vertex_indices");
 
         boolean facialTexCoords = !hasTexCoords && face.properties.containsKey("texcoord");
-        float[][] faceCoords = {};
+        float[][] faceCoords = null;
         if (facialTexCoords)
         {
             hasTexCoords = true;
@@ -429,40 +239,111 @@ public final class VertexGeometry implements ReadonlyVertexGeometry
             faceCoords = face.property(LIST(UINT32, FLOAT32), "texcoord");
         }
 
+        // Polygons are triangulated as fans, so each face contributes (n - 2) triangles.
+        // A prefix sum over the faces gives the first corner of each face in the flattened index buffer.
+        int[] faceCornerStart = new int[face.size + 1];
         for (int i = 0; i < face.size; i++)
         {
-            for (int v = 0; v < 3; v++)
-            {
-                int vertexIndex = vertexIndices[i][v];
-                vertexIndexList.add(vertexIndex);
+            faceCornerStart[i + 1] = faceCornerStart[i] + 3 * Math.max(0, faceVertexIndices[i].length - 2);
+        }
 
-                if (hasNormals)
-                {
-                    normalIndexList.add(vertexIndex);
-                }
+        int indexCount = faceCornerStart[face.size];
+        int[] vertexIndices = new int[indexCount];
+        float[] cornerTexCoords = facialTexCoords ? new float[2 * indexCount] : null;
+        float[][] faceCoordsFinal = faceCoords;
 
-                if (hasTexCoords)
+        parallelForRanges(face.size, FACES_PER_TASK, (start, end) ->
+        {
+            for (int i = start; i < end; i++)
+            {
+                int[] polygon = faceVertexIndices[i];
+                int corner = faceCornerStart[i];
+                for (int v = 2; v < polygon.length; v++)
                 {
-                    if (facialTexCoords)
+                    for (int j = 0; j < 3; j++)
                     {
-                        texCoordList.add(new Vector2(faceCoords[i][v*2], faceCoords[i][(v*2)+1]));
-                        texCoordIndexList.add(i * 3 + v); // facial texCoords are already in order
-                    }
-                    else
-                    {
-                        texCoordIndexList.add(vertexIndex);
+                        // Corners 0, v - 1, v of the polygon
+                        int c = j == 0 ? 0 : v - 2 + j;
+                        vertexIndices[corner] = polygon[c];
+
+                        if (cornerTexCoords != null)
+                        {
+                            cornerTexCoords[2 * corner] = faceCoordsFinal[i][c * 2];
+                            cornerTexCoords[2 * corner + 1] = faceCoordsFinal[i][c * 2 + 1];
+                        }
+
+                        corner++;
                     }
                 }
             }
-        }
+        });
+
+        // Normals are always stored per-vertex, so they share the vertex index buffer;
+        // facial texture coordinates are already in order, so each corner indexes its own texture coordinate.
+        int[] texCoordIndices = facialTexCoords ? identityIndices(indexCount) : vertexIndices;
+
+        VertexGeometry inst = createFromArrays(file, hasNormals, hasTexCoords, indexCount,
+            positions, vertex.size, vertexIndices, normals, vertexIndices,
+            facialTexCoords ? cornerTexCoords : texCoords, texCoordIndices);
+
+        LOG.info("Mesh loaded in {} milliseconds.", new Date().getTime() - timestamp.getTime());
+
+        return inst;
+    }
+
+    private static float[] interleave(float[]... components)
+    {
+        int dimensions = components.length;
+        int count = components[0].length;
+        float[] interleaved = new float[dimensions * count];
+
+        parallelForRanges(count, VERTICES_PER_TASK, (start, end) ->
+        {
+            for (int i = start; i < end; i++)
+            {
+                for (int d = 0; d < dimensions; d++)
+                {
+                    interleaved[dimensions * i + d] = components[d][i];
+                }
+            }
+        });
+
+        return interleaved;
+    }
+
+    private static int[] identityIndices(int count)
+    {
+        int[] indices = new int[count];
+        Arrays.setAll(indices, i -> i);
+        return indices;
+    }
+
+    @FunctionalInterface
+    private interface RangeTask
+    {
+        void run(int start, int end);
+    }
 
-        return createFromArrays(file, hasNormals, hasTexCoords, vertexList, vertexIndexList, normalList,
-                normalIndexList, texCoordList, texCoordIndexList);
+    /**
+     * Splits [0, count) into ranges of a fixed size and runs the task on each range in the common fork-join pool.
+     */
+    private static void parallelForRanges(int count, int rangeSize, RangeTask task)
+    {
+        int rangeCount = (count + rangeSize - 1) / rangeSize;
+        IntStream.range(0, rangeCount).parallel()
+            .forEach(r -> task.run(r * rangeSize, Math.min(count, (r + 1) * rangeSize)));
     }
 
+    /**
+     * Builds the native buffers directly from primitive arrays without boxing each vertex.
+     * Each index array holds indexCount valid elements (three per triangle);
+     * the attribute arrays may be longer than the number of elements actually referenced.
+     * The work is split into ranges of faces which are processed in parallel.
+     */
     private static VertexGeometry createFromArrays(
-        File file, boolean hasNormals, boolean hasTexCoords, List<Vector3> vertexList, List<Integer> vertexIndexList,
-        List<Vector3> normalList, List<Integer> normalIndexList, List<Vector2> texCoordList, List<Integer> texCoordIndexList)
+        File file, boolean hasNormals, boolean hasTexCoords, int indexCount,
+        float[] positions, int positionCount, int[] vertexIndices,
+        float[] normals, int[] normalIndices, float[] texCoords, int[] texCoordIndices)
     {
         VertexGeometry inst = new VertexGeometry(file);
         inst.hasNormals = hasNormals;
@@ -471,267 +352,396 @@ public final class VertexGeometry implements ReadonlyVertexGeometry
         // Compute smooth normals if applicable
         if (!inst.hasNormals)
         {
-            Pair<List<Vector3>, List<Integer>> norms = computeNormals(vertexList, vertexIndexList);
-            normalList = norms.getKey();
-            normalIndexList = norms.getValue();
+            normals = computeNormals(positions, positionCount, vertexIndices, indexCount);
+            normalIndices = vertexIndices;
             inst.hasNormals = true;
         }
 
-        Vector3 sum = Vector3.ZERO;
-
-        float boundingBoxMinX = 0.0f;
-        float boundingBoxMinY = 0.0f;
-        float boundingBoxMinZ = 0.0f;
-        float boundingBoxMaxX = 0.0f;
-        float boundingBoxMaxY = 0.0f;
-        float boundingBoxMaxZ = 0.0f;
-        inst.boundingRadius = 0.0f;
-
         // Copy the vertex position data into a data structure that OpenGL can use.
-        int vertexCount = vertexIndexList.size();
-        inst.vertices = NativeVectorBufferFactory.getInstance().createEmpty(NativeDataType.FLOAT, 3, vertexCount);
+        inst.vertices = NativeVectorBufferFactory.getInstance().createEmpty(NativeDataType.FLOAT, 3, indexCount);
+        FloatBuffer vertexBuffer = inst.vertices.getBuffer().asFloatBuffer();
+
+        // Per-range partial sums and bounds, combined in order afterwards so that the result is deterministic.
+        int rangeCount = (indexCount + CORNERS_PER_TASK - 1) / CORNERS_PER_TASK;
+        double[] partialSums = new double[3 * rangeCount];
+        float[] partialMin = new float[3 * rangeCount];
+        float[] partialMax = new float[3 * rangeCount];
 
         // Centroid, bounding box, and populate vertex position buffer
-        int index = 0;
-        for (int k : vertexIndexList)
+        parallelForRanges(indexCount, CORNERS_PER_TASK, (start, end) ->
         {
-            Vector3 vertex = vertexList.get(k);
-
-            sum = sum.plus(vertex);
-
-            boundingBoxMinX = Math.min(boundingBoxMinX, vertex.x);
-            boundingBoxMinY = Math.min(boundingBoxMinY, vertex.y);
-            boundingBoxMinZ = Math.min(boundingBoxMinZ, vertex.z);
-
-            boundingBoxMaxX = Math.max(boundingBoxMaxX, vertex.x);
-            boundingBoxMaxY = Math.max(boundingBoxMaxY, vertex.y);
-            boundingBoxMaxZ = Math.max(boundingBoxMaxZ, vertex.z);
-
-
-            inst.vertices.set(index, 0, vertex.x);
-            inst.vertices.set(index, 1, vertex.y);
-            inst.vertices.set(index, 2, vertex.z);
+            int r = start / CORNERS_PER_TASK;
+            double sumX = 0.0;
+            double sumY = 0.0;
+            double sumZ = 0.0;
+
+            // Bounding box always includes the origin
+            float minX = 0.0f;
+            float minY = 0.0f;
+            float minZ = 0.0f;
+            float maxX = 0.0f;
+            float maxY = 0.0f;
+            float maxZ = 0.0f;
+
+            for (int i = start; i < end; i++)
+            {
+                int k = 3 * vertexIndices[i];
+                float x = positions[k];
+                float y = positions[k + 1];
+                float z = positions[k + 2];
+
+                sumX += x;
+                sumY += y;
+                sumZ += z;
+
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                minZ = Math.min(minZ, z);
+
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, y);
+                maxZ = Math.max(maxZ, z);
+
+                vertexBuffer.put(3 * i, x);
+                vertexBuffer.put(3 * i + 1, y);
+                vertexBuffer.put(3 * i + 2, z);
+            }
 
-            index++;
+            partialSums[3 * r] = sumX;
+            partialSums[3 * r + 1] = sumY;
+            partialSums[3 * r + 2] = sumZ;
+            partialMin[3 * r] = minX;
+            partialMin[3 * r + 1] = minY;
+            partialMin[3 * r + 2] = minZ;
+            partialMax[3 * r] = maxX;
+            partialMax[3 * r + 1] = maxY;
+            partialMax[3 * r + 2] = maxZ;
+        });
+
+        double[] sum = new double[3];
+        float[] boundingBoxMin = new float[3];
+        float[] boundingBoxMax = new float[3];
+        for (int r = 0; r < rangeCount; r++)
+        {
+            for (int d = 0; d < 3; d++)
+            {
+                sum[d] += partialSums[3 * r + d];
+                boundingBoxMin[d] = Math.min(boundingBoxMin[d], partialMin[3 * r + d]);
+                boundingBoxMax[d] = Math.max(boundingBoxMax[d], partialMax[3 * r + d]);
+            }
         }
 
-        inst.centroid = sum.dividedBy(vertexIndexList.size());
-        inst.boundingBoxCenter = new Vector3((boundingBoxMinX + boundingBoxMaxX) / 2, (boundingBoxMinY + boundingBoxMaxY) / 2, (boundingBoxMinZ + boundingBoxMaxZ) / 2);
-        inst.boundingBoxSize = new Vector3(boundingBoxMaxX - boundingBoxMinX, boundingBoxMaxY - boundingBoxMinY, boundingBoxMaxZ - boundingBoxMinZ);
+        inst.centroid = new Vector3((float) (sum[0] / indexCount), (float) (sum[1] / indexCount), (float) (sum[2] / indexCount));
+        inst.boundingBoxCenter = new Vector3((boundingBoxMin[0] + boundingBoxMax[0]) / 2, (boundingBoxMin[1] + boundingBoxMax[1]) / 2, (boundingBoxMin[2] + boundingBoxMax[2]) / 2);
+        inst.boundingBoxSize = new Vector3(boundingBoxMax[0] - boundingBoxMin[0], boundingBoxMax[1] - boundingBoxMin[1], boundingBoxMax[2] - boundingBoxMin[2]);
 
         // Bounding radius in a second pass (depends on centroid)
-        for (int k : vertexIndexList)
+        Vector3 centroid = inst.centroid;
+        float[] partialMaxDistanceSquared = new float[rangeCount];
+        parallelForRanges(indexCount, CORNERS_PER_TASK, (start, end) ->
         {
-            Vector3 vertex = vertexList.get(k);
-            inst.boundingRadius = Math.max(inst.boundingRadius, vertex.minus(inst.centroid).length());
+            float maxDistanceSquared = 0.0f;
+            for (int i = start; i < end; i++)
+            {
+                int k = 3 * vertexIndices[i];
+                float dx = positions[k] - centroid.x;
+                float dy = positions[k + 1] - centroid.y;
+                float dz = positions[k + 2] - centroid.z;
+                maxDistanceSquared = Math.max(maxDistanceSquared, dx * dx + dy * dy + dz * dz);
+            }
+
+            partialMaxDistanceSquared[start / CORNERS_PER_TASK] = maxDistanceSquared;
+        });
+
+        float maxDistanceSquared = 0.0f;
+        for (float distanceSquared : partialMaxDistanceSquared)
+        {
+            maxDistanceSquared = Math.max(maxDistanceSquared, distanceSquared);
         }
+        inst.boundingRadius = (float) Math.sqrt(maxDistanceSquared);
 
         // Texture coordinate buffer
         if (inst.hasTexCoords)
         {
-            inst.texCoords = NativeVectorBufferFactory.getInstance().createEmpty(NativeDataType.FLOAT, 2, vertexCount);
-            int i = 0;
-            for (int k : texCoordIndexList)
-            {
-                inst.texCoords.set(i, 0, texCoordList.get(k).x);
-                inst.texCoords.set(i, 1, texCoordList.get(k).y);
-                i++;
-            }
+            inst.texCoords = NativeVectorBufferFactory.getInstance().createEmpty(NativeDataType.FLOAT, 2, indexCount);
+            gather(texCoords, texCoordIndices, 2, indexCount, inst.texCoords.getBuffer().asFloatBuffer());
         }
 
-        if (inst.hasNormals)
+        // Normals buffer
+        inst.normals = NativeVectorBufferFactory.getInstance().createEmpty(NativeDataType.FLOAT, 3, indexCount);
+        gather(normals, normalIndices, 3, indexCount, inst.normals.getBuffer().asFloatBuffer());
+
+        if (inst.hasTexCoords)
         {
-            // Normals buffer
-            inst.normals = NativeVectorBufferFactory.getInstance().createEmpty(NativeDataType.FLOAT, 3, vertexCount);
-            int i = 0;
-            for (int k : normalIndexList)
-            {
-                inst.normals.set(i, 0, normalList.get(k).x);
-                inst.normals.set(i, 1, normalList.get(k).y);
-                inst.normals.set(i, 2, normalList.get(k).z);
-                i++;
-            }
+            // Calculate tangents from normals and texture coordinates
+            inst.tangents = NativeVectorBufferFactory.getInstance().createEmpty(NativeDataType.FLOAT, 4, indexCount);
+            computeTangents(positions, vertexIndices, texCoords, texCoordIndices, normals, normalIndices, indexCount,
+                inst.tangents.getBuffer().asFloatBuffer());
+        }
 
-            if (inst.hasTexCoords)
-            {
-                // Calculate tangents from normals and texture coordinates
-                Map<NormalTexCoordPair, Vector4> orthoTangentsMap =
-                    computeTangents(vertexList, vertexIndexList, texCoordList, texCoordIndexList, normalList, normalIndexList);
+        return inst;
+    }
 
-                // tangent buffer
-                inst.tangents = NativeVectorBufferFactory.getInstance().createEmpty(NativeDataType.FLOAT, 4, vertexCount);
-                for (i = 0; i < normalIndexList.size(); i++)
+    /**
+     * Copies the indexed attribute for each corner into a native buffer, in parallel.
+     */
+    private static void gather(float[] attributes, int[] indices, int dimensions, int indexCount, FloatBuffer out)
+    {
+        parallelForRanges(indexCount, CORNERS_PER_TASK, (start, end) ->
+        {
+            for (int i = start; i < end; i++)
+            {
+                int k = dimensions * indices[i];
+                for (int d = 0; d < dimensions; d++)
                 {
-                    Vector4 tangent = orthoTangentsMap.get(new NormalTexCoordPair(normalIndexList.get(i), texCoordIndexList.get(i)));
-                    if (tangent == null)
-                    {
-                        // Probably a degenerate face or a vertex not connected to any faces
-                        inst.tangents.set(i, 0, 0.0f);
-                        inst.tangents.set(i, 1, 0.0f);
-                        inst.tangents.set(i, 2, 0.0f);
-                        inst.tangents.set(i, 3, 0.0f);
-                    }
-                    else
-                    {
-                        inst.tangents.set(i, 0, tangent.x);
-                        inst.tangents.set(i, 1, tangent.y);
-                        inst.tangents.set(i, 2, tangent.z);
-                        inst.tangents.set(i, 3, tangent.w);
-                    }
+                    out.put(dimensions * i + d, attributes[k + d]);
                 }
             }
-        }
-
-        return inst;
+        });
     }
 
-    private static Pair<List<Vector3>, List<Integer>> computeNormals(List<Vector3> vertexList, List<Integer> vertexIndexList)
+    private static float[] computeNormals(float[] positions, int positionCount, int[] vertexIndices, int indexCount)
     {
-        List<Vector3> normals = new ArrayList<>(Collections.nCopies(vertexList.size(), Vector3.ZERO));
-        List<Integer> normalIndexList = new ArrayList<>(vertexIndexList.size());
+        // Angle-weighted facial normal for each corner, computed in parallel
+        float[] cornerNormals = new float[3 * indexCount];
 
-        // Iterate over faces
-        for (int i = 0; i < vertexIndexList.size() - 2; i+=3)
+        parallelForRanges(indexCount, CORNERS_PER_TASK, (start, end) ->
         {
-            int i0 = vertexIndexList.get(i);
-            int i1 = vertexIndexList.get(i + 1);
-            int i2 = vertexIndexList.get(i + 2);
-
-            Vector3 p0 = vertexList.get(i0);
-            Vector3 p1 = vertexList.get(i1);
-            Vector3 p2 = vertexList.get(i2);
-
-            Vector3 facialNorm = p1.minus(p0).cross(p2.minus(p0));
+            for (int i = start; i < end - 2; i += 3)
+            {
+                int k0 = 3 * vertexIndices[i];
+                int k1 = 3 * vertexIndices[i + 1];
+                int k2 = 3 * vertexIndices[i + 2];
 
-            Vector3 e10 = p1.minus(p0);
-            float e10Length = e10.length();
-            Vector3 e10Norm = e10.times(1 / e10Length); // normalized
+                float e10x = positions[k1] - positions[k0];
+                float e10y = positions[k1 + 1] - positions[k0 + 1];
+                float e10z = positions[k1 + 2] - positions[k0 + 2];
 
-            Vector3 e21 = p2.minus(p1);
-            float e21Length = e21.length();
-            Vector3 e21Norm = e21.times(1 / e21Length); // normalized
+                float e21x = positions[k2] - positions[k1];
+                float e21y = positions[k2 + 1] - positions[k1 + 1];
+                float e21z = positions[k2 + 2] - positions[k1 + 2];
 
-            Vector3 e02 = p0.minus(p2);
-            float e02Length = e02.length();
-            Vector3 e02Norm = e02.times(1 / e02Length); // normalized
+                float e02x = positions[k0] - positions[k2];
+                float e02y = positions[k0 + 1] - positions[k2 + 1];
+                float e02z = positions[k0 + 2] - positions[k2 + 2];
 
-            // Only update the normals if this faces is not degenerate
-            if (e10Length != 0.0f && e02Length != 0.0f && e21Length != 0.0f)
-            {
-                float angle0 = (float) Math.acos(Math.max(-1.0f, Math.min(1.0f, -e10Norm.dot(e02Norm))));
-                float angle1 = (float) Math.acos(Math.max(-1.0f, Math.min(1.0f, -e21Norm.dot(e10Norm))));
-                float angle2 = (float) Math.acos(Math.max(-1.0f, Math.min(1.0f, -e02Norm.dot(e21Norm))));
+                float e10Length = (float) Math.sqrt(e10x * e10x + e10y * e10y + e10z * e10z);
+                float e21Length = (float) Math.sqrt(e21x * e21x + e21y * e21y + e21z * e21z);
+                float e02Length = (float) Math.sqrt(e02x * e02x + e02y * e02y + e02z * e02z);
 
-                normals.set(i0, normals.get(i0).plus(facialNorm.times(angle0)));
-                normals.set(i1, normals.get(i1).plus(facialNorm.times(angle1)));
-                normals.set(i2, normals.get(i2).plus(facialNorm.times(angle2)));
+                // Only update the normals if this face is not degenerate
+                if (e10Length != 0.0f && e02Length != 0.0f && e21Length != 0.0f)
+                {
+                    // Facial normal: (p1 - p0) x (p2 - p0) = e10 x -e02
+                    float nx = e02y * e10z - e02z * e10y;
+                    float ny = e02z * e10x - e02x * e10z;
+                    float nz = e02x * e10y - e02y * e10x;
+
+                    float angle0 = cornerAngle(e10x, e10y, e10z, e10Length, e02x, e02y, e02z, e02Length);
+                    float angle1 = cornerAngle(e21x, e21y, e21z, e21Length, e10x, e10y, e10z, e10Length);
+                    float angle2 = cornerAngle(e02x, e02y, e02z, e02Length, e21x, e21y, e21z, e21Length);
+
+                    set(cornerNormals, 3 * i, nx * angle0, ny * angle0, nz * angle0);
+                    set(cornerNormals, 3 * i + 3, nx * angle1, ny * angle1, nz * angle1);
+                    set(cornerNormals, 3 * i + 6, nx * angle2, ny * angle2, nz * angle2);
+                }
             }
+        });
 
-            normalIndexList.add(i0);
-            normalIndexList.add(i1);
-            normalIndexList.add(i2);
+        // Sum the corners sharing each vertex; this is cheap compared to the above, and is kept sequential to avoid races.
+        float[] normals = new float[3 * positionCount];
+        for (int i = 0; i < indexCount; i++)
+        {
+            accumulate(normals, 3 * vertexIndices[i], cornerNormals[3 * i], cornerNormals[3 * i + 1], cornerNormals[3 * i + 2]);
         }
 
         // Normalize summed facial normals
-        normals.replaceAll(Vector3::normalizedSafe);
+        parallelForRanges(positionCount, VERTICES_PER_TASK, (start, end) ->
+        {
+            for (int k = 3 * start; k < 3 * end; k += 3)
+            {
+                float length = (float) Math.sqrt(normals[k] * normals[k] + normals[k + 1] * normals[k + 1] + normals[k + 2] * normals[k + 2]);
+                if (length != 0.0f)
+                {
+                    normals[k] /= length;
+                    normals[k + 1] /= length;
+                    normals[k + 2] /= length;
+                }
+            }
+        });
+
+        return normals;
+    }
+
+    /**
+     * Angle between two edges meeting at a corner, where the first edge leaves the corner and the second edge arrives at it.
+     */
+    private static float cornerAngle(float outX, float outY, float outZ, float outLength, float inX, float inY, float inZ, float inLength)
+    {
+        float cosine = -(outX * inX + outY * inY + outZ * inZ) / (outLength * inLength);
+        return (float) Math.acos(Math.max(-1.0f, Math.min(1.0f, cosine)));
+    }
 
-        return new Pair<>(normals, normalIndexList);
+    private static void set(float[] values, int offset, float x, float y, float z)
+    {
+        values[offset] = x;
+        values[offset + 1] = y;
+        values[offset + 2] = z;
     }
 
-    private static Map<NormalTexCoordPair, Vector4> computeTangents(
-        List<Vector3> vertexList, List<Integer> vertexIndexList, List<Vector2> texCoordList, List<Integer> texCoordIndexList,
-        List<Vector3> normalList, List<Integer> normalIndexList)
+    private static void accumulate(float[] sums, int offset, float x, float y, float z)
     {
-        Map<NormalTexCoordPair, Vector3> tangentMap = new HashMap<>(vertexIndexList.size());
-        Map<NormalTexCoordPair, Vector3> bitangentMap = new HashMap<>(vertexIndexList.size());
+        sums[offset] += x;
+        sums[offset + 1] += y;
+        sums[offset + 2] += z;
+    }
 
-        for (int f = 0; f < vertexIndexList.size() - 2; f += 3)
+    private static void computeTangents(float[] positions, int[] vertexIndices, float[] texCoords, int[] texCoordIndices,
+        float[] normals, int[] normalIndices, int indexCount, FloatBuffer tangentsOut)
+    {
+        // Each unique normal / texture coordinate pair gets a slot in which its tangent and bitangent are accumulated.
+        int[] cornerSlots;
+        int[] slotNormals;
+        if (normalIndices == texCoordIndices)
         {
-            Vector3 position0 = vertexList.get(vertexIndexList.get(f));
-            Vector3 position1 = vertexList.get(vertexIndexList.get(f + 1));
-            Vector3 position2 = vertexList.get(vertexIndexList.get(f + 2));
+            // Normals and texture coordinates share an index buffer (i.e. per-vertex attributes in a PLY file),
+            // so the index itself identifies the pair.
+            cornerSlots = normalIndices;
+            int slotCount = 0;
+            for (int i = 0; i < indexCount; i++)
+            {
+                slotCount = Math.max(slotCount, normalIndices[i] + 1);
+            }
+            slotNormals = identityIndices(slotCount);
+        }
+        else
+        {
+            cornerSlots = new int[indexCount];
+            LongIntHashMap slotMap = new LongIntHashMap(indexCount / 6);
+            int[] slotNormalsTemp = new int[indexCount];
+            for (int i = 0; i < indexCount; i++)
+            {
+                long key = ((long) normalIndices[i] << 32) | (texCoordIndices[i] & 0xFFFFFFFFL);
+                int newSlot = slotMap.size();
+                int existingSlot = slotMap.putIfAbsent(key, newSlot);
+                if (existingSlot == LongIntHashMap.NO_VALUE)
+                {
+                    cornerSlots[i] = newSlot;
+                    slotNormalsTemp[newSlot] = normalIndices[i];
+                }
+                else
+                {
+                    cornerSlots[i] = existingSlot;
+                }
+            }
+            slotNormals = Arrays.copyOf(slotNormalsTemp, slotMap.size());
+        }
 
-            Vector2 texCoords0 = texCoordList.get(texCoordIndexList.get(f));
-            Vector2 texCoords1 = texCoordList.get(texCoordIndexList.get(f + 1));
-            Vector2 texCoords2 = texCoordList.get(texCoordIndexList.get(f + 2));
+        // Angle-weighted tangent and bitangent for each corner, computed in parallel
+        float[] cornerTangents = new float[3 * indexCount];
+        float[] cornerBitangents = new float[3 * indexCount];
 
-            Vector3[] tangents = computeVertexTangents(position0, position1, position2, texCoords0, texCoords1, texCoords2);
+        parallelForRanges(indexCount, CORNERS_PER_TASK, (start, end) ->
+        {
+            for (int f = start; f < end - 2; f += 3)
+            {
+                int k0 = 3 * vertexIndices[f];
+                int k1 = 3 * vertexIndices[f + 1];
+                int k2 = 3 * vertexIndices[f + 2];
 
-            NormalTexCoordPair pair0 = new NormalTexCoordPair(normalIndexList.get(f), texCoordIndexList.get(f));
-            NormalTexCoordPair pair1 = new NormalTexCoordPair(normalIndexList.get(f + 1), texCoordIndexList.get(f + 1));
-            NormalTexCoordPair pair2 = new NormalTexCoordPair(normalIndexList.get(f + 2), texCoordIndexList.get(f + 2));
+                float e10x = positions[k1] - positions[k0];
+                float e10y = positions[k1 + 1] - positions[k0 + 1];
+                float e10z = positions[k1 + 2] - positions[k0 + 2];
 
-            Vector3 e10 = position1.minus(position0);
-            float e10Length = e10.length();
-            Vector3 e10Norm = e10.times(1 / e10Length); // normalized
+                float e21x = positions[k2] - positions[k1];
+                float e21y = positions[k2 + 1] - positions[k1 + 1];
+                float e21z = positions[k2 + 2] - positions[k1 + 2];
 
-            Vector3 e21 = position2.minus(position1);
-            float e21Length = e21.length();
-            Vector3 e21Norm = e21.times(1 / e21Length); // normalized
+                float e02x = positions[k0] - positions[k2];
+                float e02y = positions[k0 + 1] - positions[k2 + 1];
+                float e02z = positions[k0 + 2] - positions[k2 + 2];
 
-            Vector3 e02 = position0.minus(position2);
-            float e02Length = e02.length();
-            Vector3 e02Norm = e02.times(1 / e02Length); // normalized
+                float e10Length = (float) Math.sqrt(e10x * e10x + e10y * e10y + e10z * e10z);
+                float e21Length = (float) Math.sqrt(e21x * e21x + e21y * e21y + e21z * e21z);
+                float e02Length = (float) Math.sqrt(e02x * e02x + e02y * e02y + e02z * e02z);
 
-            // Only update the normals if this face is not degenerate
-            if (e10Length != 0.0f && e02Length != 0.0f && e21Length != 0.0f)
-            {
-                float angle0 = (float) Math.acos(Math.max(-1.0f, Math.min(1.0f, -e10Norm.dot(e02Norm))));
-                float angle1 = (float) Math.acos(Math.max(-1.0f, Math.min(1.0f, -e21Norm.dot(e10Norm))));
-                float angle2 = (float) Math.acos(Math.max(-1.0f, Math.min(1.0f, -e02Norm.dot(e21Norm))));
+                // Only update the tangents if this face is not degenerate
+                if (e10Length != 0.0f && e02Length != 0.0f && e21Length != 0.0f)
+                {
+                    int t0 = 2 * texCoordIndices[f];
+                    int t1 = 2 * texCoordIndices[f + 1];
+                    int t2 = 2 * texCoordIndices[f + 2];
 
-                tangentMap.put(pair0, tangentMap.getOrDefault(pair0, Vector3.ZERO).plus(tangents[0].times(angle0)));
-                tangentMap.put(pair1, tangentMap.getOrDefault(pair1, Vector3.ZERO).plus(tangents[0].times(angle1)));
-                tangentMap.put(pair2, tangentMap.getOrDefault(pair2, Vector3.ZERO).plus(tangents[0].times(angle2)));
+                    float s1 = texCoords[t1] - texCoords[t0];
+                    float s2 = texCoords[t2] - texCoords[t0];
+                    float tt1 = texCoords[t1 + 1] - texCoords[t0 + 1];
+                    float tt2 = texCoords[t2 + 1] - texCoords[t0 + 1];
 
-                bitangentMap.put(pair0, bitangentMap.getOrDefault(pair0, Vector3.ZERO).plus(tangents[1].times(angle0)));
-                bitangentMap.put(pair1, bitangentMap.getOrDefault(pair1, Vector3.ZERO).plus(tangents[1].times(angle1)));
-                bitangentMap.put(pair2, bitangentMap.getOrDefault(pair2, Vector3.ZERO).plus(tangents[1].times(angle2)));
-            }
-        }
+                    float rInv = s1 * tt2 - s2 * tt1;
 
-        Map<NormalTexCoordPair, Vector4> orthoTangentsMap = new HashMap<>(tangentMap.size());
-        for (Entry<NormalTexCoordPair, Vector3> entry : tangentMap.entrySet())
-        {
-            orthoTangentsMap.put(entry.getKey(),
-                orthogonalizeTangent(normalList.get(entry.getKey().normalIndex), entry.getValue(), bitangentMap.get(entry.getKey())));
-        }
+                    // Default to zero vector for indeterminate vertex
+                    // Will rely on neighboring faces, or worst case scenario, just have a tangent of zero (better than NaN)
+                    if (rInv != 0.0f)
+                    {
+                        float r = 1.0f / rInv;
 
-        return orthoTangentsMap;
-    }
+                        // q1 = p1 - p0 = e10; q2 = p2 - p0 = -e02
+                        float tx = e10x * (r * tt2) - e02x * (r * -tt1);
+                        float ty = e10y * (r * tt2) - e02y * (r * -tt1);
+                        float tz = e10z * (r * tt2) - e02z * (r * -tt1);
 
-    private static Vector3[] computeVertexTangents(
-            Vector3 position0, Vector3 position1, Vector3 position2,
-            Vector2 texCoords0, Vector2 texCoords1, Vector2 texCoords2)
-    {
-        Vector3[] tangents = new Vector3[2];
+                        float bx = e10x * (r * -s2) - e02x * (r * s1);
+                        float by = e10y * (r * -s2) - e02y * (r * s1);
+                        float bz = e10z * (r * -s2) - e02z * (r * s1);
 
-        float s1 = texCoords1.x - texCoords0.x;
-        float s2 = texCoords2.x - texCoords0.x;
-        float t1 = texCoords1.y - texCoords0.y;
-        float t2 = texCoords2.y - texCoords0.y;
+                        float angle0 = cornerAngle(e10x, e10y, e10z, e10Length, e02x, e02y, e02z, e02Length);
+                        float angle1 = cornerAngle(e21x, e21y, e21z, e21Length, e10x, e10y, e10z, e10Length);
+                        float angle2 = cornerAngle(e02x, e02y, e02z, e02Length, e21x, e21y, e21z, e21Length);
 
-        float rInv = s1 * t2 - s2 * t1;
+                        set(cornerTangents, 3 * f, tx * angle0, ty * angle0, tz * angle0);
+                        set(cornerTangents, 3 * f + 3, tx * angle1, ty * angle1, tz * angle1);
+                        set(cornerTangents, 3 * f + 6, tx * angle2, ty * angle2, tz * angle2);
 
-        if (rInv == 0.0f)
+                        set(cornerBitangents, 3 * f, bx * angle0, by * angle0, bz * angle0);
+                        set(cornerBitangents, 3 * f + 3, bx * angle1, by * angle1, bz * angle1);
+                        set(cornerBitangents, 3 * f + 6, bx * angle2, by * angle2, bz * angle2);
+                    }
+                }
+            }
+        });
+
+        // Sum the corners sharing each slot (sequential to avoid races)
+        float[] tangentSums = new float[3 * slotNormals.length];
+        float[] bitangentSums = new float[3 * slotNormals.length];
+        for (int i = 0; i < indexCount; i++)
         {
-            // Default to zero vector for indeterminate vertex
-            // Will rely on neighboring faces, or worst case scenario, just have a tangent of zero (better than NaN)
-            tangents[0] = Vector3.ZERO;
-            tangents[1] = Vector3.ZERO;
+            int k = 3 * cornerSlots[i];
+            accumulate(tangentSums, k, cornerTangents[3 * i], cornerTangents[3 * i + 1], cornerTangents[3 * i + 2]);
+            accumulate(bitangentSums, k, cornerBitangents[3 * i], cornerBitangents[3 * i + 1], cornerBitangents[3 * i + 2]);
         }
-        else
-        {
-            float r = 1.0f / rInv;
 
-            Vector3 q1 = position1.minus(position0);
-            Vector3 q2 = position2.minus(position0);
-
-            tangents[0] = q1.times(r * t2).plus(q2.times(r * -t1));
-            tangents[1] = q1.times(r * -s2).plus(q2.times(r * s1));
-        }
+        // Orthogonalize once per unique pair
+        float[] orthoTangents = new float[4 * slotNormals.length];
+        parallelForRanges(slotNormals.length, VERTICES_PER_TASK, (start, end) ->
+        {
+            for (int slot = start; slot < end; slot++)
+            {
+                int n = 3 * slotNormals[slot];
+                int k = 3 * slot;
+                Vector4 tangent = orthogonalizeTangent(
+                    new Vector3(normals[n], normals[n + 1], normals[n + 2]),
+                    new Vector3(tangentSums[k], tangentSums[k + 1], tangentSums[k + 2]),
+                    new Vector3(bitangentSums[k], bitangentSums[k + 1], bitangentSums[k + 2]));
+
+                orthoTangents[4 * slot] = tangent.x;
+                orthoTangents[4 * slot + 1] = tangent.y;
+                orthoTangents[4 * slot + 2] = tangent.z;
+                orthoTangents[4 * slot + 3] = tangent.w;
+            }
+        });
 
-        return tangents;
+        // Tangent buffer
+        gather(orthoTangents, cornerSlots, 4, indexCount, tangentsOut);
     }
 
     private static Vector4 orthogonalizeTangent(Vector3 normal, Vector3 tangent, Vector3 bitangent)
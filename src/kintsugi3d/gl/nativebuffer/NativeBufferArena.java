@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.gl.nativebuffer;
+
+import org.lwjgl.BufferUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A singleton allocator for the direct memory behind native vector buffers.
+ * By default, each buffer gets a direct buffer of exactly the requested size, just as if it had been allocated directly.
+ * Buffers whose owners close them when they are done (see {@link NativeVectorBufferFactory#createEmptyPooled})
+ * can instead be allocated from a pool: pooled memory is handed out in power-of-two size classes, and when such a buffer
+ * is closed its memory is kept and reused for later buffers of the same size class, rather than being left for the
+ * garbage collector to free.  The rounding up is only worthwhile when the memory is actually returned,
+ * which is why pooling is opt-in.
+ * The amount of memory kept in the pool is limited (256 MB by default, or the number of megabytes in the
+ * Kintsugi3D.nativeBufferPoolMB system property), and buffers larger than the largest size class are never pooled.
+ * Buffers that are never closed are still freed by the garbage collector as before; they just don't return to the pool.
+ * <p>
+ * In debug mode (enabled by the Kintsugi3D.nativeBufferDebug system property or {@link #setDebug(boolean)}),
+ * the allocation site of every buffer is recorded, buffers that are garbage collected without being closed are logged
+ * along with where they were allocated, and live native memory is reported by the package that allocated it
+ * (also on shutdown).
+ */
+public final class NativeBufferArena
+{
+    private static final Logger LOG = LoggerFactory.getLogger(NativeBufferArena.class);
+
+    private static final NativeBufferArena INSTANCE = new NativeBufferArena();
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /**
+     * The smallest size class, as a power of two (64 bytes).
+     */
+    private static final int MIN_SIZE_CLASS = 6;
+
+    /**
+     * The largest size class, as a power of two (64 MB).
+     */
+    private static final int MAX_SIZE_CLASS = 26;
+
+    private static final long DEFAULT_MAX_POOLED_MB = 256;
+
+    /**
+     * Gets the singleton instance.
+     * @return The singleton instance.
+     */
+    public static NativeBufferArena getInstance()
+    {
+        return INSTANCE;
+    }
+
+    private final List<ArrayDeque<ByteBuffer>> freeBlocks = new ArrayList<>(MAX_SIZE_CLASS - MIN_SIZE_CLASS + 1);
+    private long pooledBytes = 0; // guarded by this
+    private long maxPooledBytes; // guarded by this
+
+    private volatile boolean debug;
+    private final AtomicBoolean reportOnShutdown = new AtomicBoolean(false);
+    private final Set<Allocation> liveAllocations = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong liveBytes = new AtomicLong();
+    private final AtomicLong allocationCount = new AtomicLong();
+    private final AtomicLong reuseCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+
+    private NativeBufferArena()
+    {
+        for (int i = MIN_SIZE_CLASS; i <= MAX_SIZE_CLASS; i++)
+        {
+            freeBlocks.add(new ArrayDeque<>(4));
+        }
+
+        maxPooledBytes = Long.getLong("Kintsugi3D.nativeBufferPoolMB", DEFAULT_MAX_POOLED_MB) << 20;
+        setDebug(Boolean.getBoolean("Kintsugi3D.nativeBufferDebug"));
+    }
+
+    /**
+     * A block of memory handed out by the arena to a single native vector buffer.
+     * Also serves as the cleanup action that runs once the owning buffer is closed or garbage collected,
+     * so it must not reference the owner.
+     */
+    static final class Allocation implements Runnable
+    {
+        private final NativeBufferArena arena;
+        private final ByteBuffer block;
+        private final ByteBuffer buffer;
+        private final int sizeClass;
+        private final String subsystem;
+        private final Throwable site;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        private Cleaner.Cleanable cleanable;
+
+        private Allocation(NativeBufferArena arena, ByteBuffer block, int size, int sizeClass, String subsystem, Throwable site)
+        {
+            this.arena = arena;
+            this.block = block;
+            this.sizeClass = sizeClass;
+            this.subsystem = subsystem;
+            this.site = site;
+
+            // Expose exactly the requested size, so that the buffer looks the same as one allocated for that size.
+            this.buffer = block.duplicate().position(0).limit(size).slice().order(ByteOrder.nativeOrder());
+        }
+
+        ByteBuffer getBuffer()
+        {
+            return buffer;
+        }
+
+        /**
+         * Returns the memory to the arena. The buffer must not be used afterwards.
+         */
+        void release()
+        {
+            if (released.compareAndSet(false, true))
+            {
+                cleanable.clean();
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            // If the buffer wasn't released first, this is the cleaner thread finding an unreachable buffer.
+            boolean leaked = released.compareAndSet(false, true);
+            arena.free(this, leaked);
+        }
+    }
+
+    /**
+     * Allocates native memory of exactly the requested size for a buffer; the memory is not returned to the pool.
+     * @param owner The object using the memory; if it becomes unreachable before the memory is released,
+     *              the memory is accounted for as leaked.
+     * @param size The size of the buffer in bytes.
+     * @return The allocation, whose buffer is zeroed and in native byte order.
+     */
+    Allocation allocate(Object owner, int size)
+    {
+        return allocate(owner, size, -1);
+    }
+
+    /**
+     * Allocates native memory for a buffer from the pool, rounding the size up to a power of two.
+     * Only for buffers that will be closed when they are no longer needed,
+     * since memory that is never released costs up to twice the requested size and is never reused.
+     * @param owner The object using the memory; if it becomes unreachable before the memory is released,
+     *              the memory is accounted for as leaked.
+     * @param size The size of the buffer in bytes.
+     * @return The allocation, whose buffer is zeroed and in native byte order.
+     */
+    Allocation allocatePooled(Object owner, int size)
+    {
+        int sizeClass = Math.max(MIN_SIZE_CLASS, 32 - Integer.numberOfLeadingZeros(Math.max(0, size - 1)));
+        return allocate(owner, size, sizeClass > MAX_SIZE_CLASS ? -1 : sizeClass);
+    }
+
+    /**
+     * @param sizeClass The size class to allocate from, or -1 for an exact-size allocation outside the pool.
+     */
+    private Allocation allocate(Object owner, int size, int sizeClass)
+    {
+        ByteBuffer block = null;
+        if (sizeClass >= 0)
+        {
+            synchronized (this)
+            {
+                block = freeBlocks.get(sizeClass - MIN_SIZE_CLASS).poll();
+                if (block != null)
+                {
+                    pooledBytes -= block.capacity();
+                }
+            }
+        }
+
+        if (block == null)
+        {
+            block = BufferUtils.createByteBuffer(sizeClass >= 0 ? 1 << sizeClass : size);
+        }
+        else
+        {
+            zero(block, size);
+            reuseCount.incrementAndGet();
+        }
+
+        Allocation allocation;
+        if (debug)
+        {
+            allocation = new Allocation(this, block, size, sizeClass, findSubsystem(), new Throwable("Native buffer allocation site"));
+            liveAllocations.add(allocation);
+        }
+        else
+        {
+            allocation = new Allocation(this, block, size, sizeClass, null, null);
+        }
+
+        allocation.cleanable = CLEANER.register(owner, allocation);
+        liveBytes.addAndGet(size);
+        allocationCount.incrementAndGet();
+        return allocation;
+    }
+
+    private void free(Allocation allocation, boolean leaked)
+    {
+        liveBytes.addAndGet(-allocation.buffer.capacity());
+        liveAllocations.remove(allocation);
+
+        if (leaked)
+        {
+            leakCount.incrementAndGet();
+
+            if (allocation.site != null)
+            {
+                LOG.warn("Native buffer of {} bytes allocated by {} was garbage collected without being closed.",
+                    allocation.buffer.capacity(), allocation.subsystem, allocation.site);
+            }
+
+            // Someone else may still hold the buffer itself, so it can't be reused.
+        }
+        else if (allocation.sizeClass >= 0)
+        {
+            synchronized (this)
+            {
+                if (pooledBytes + allocation.block.capacity() <= maxPooledBytes)
+                {
+                    freeBlocks.get(allocation.sizeClass - MIN_SIZE_CLASS).push(allocation.block);
+                    pooledBytes += allocation.block.capacity();
+                }
+            }
+        }
+    }
+
+    private static void zero(ByteBuffer block, int size)
+    {
+        int i = 0;
+        for (; i + 8 <= size; i += 8)
+        {
+            block.putLong(i, 0L);
+        }
+        for (; i < size; i++)
+        {
+            block.put(i, (byte) 0);
+        }
+    }
+
+    private static String findSubsystem()
+    {
+        return StackWalker.getInstance().walk(frames -> frames
+            .map(StackWalker.StackFrame::getClassName)
+            .filter(className -> !className.startsWith(NativeBufferArena.class.getPackageName() + '.'))
+            .findFirst()
+            .map(className -> className.substring(0, Math.max(0, className.lastIndexOf('.'))))
+            .orElse("unknown"));
+    }
+
+    /**
+     * Sets the maximum amount of memory kept in the pool for reuse, releasing pooled memory beyond the new limit.
+     * @param maxPooledBytes The limit in bytes; 0 disables pooling.
+     */
+    public synchronized void setMaxPooledBytes(long maxPooledBytes)
+    {
+        this.maxPooledBytes = maxPooledBytes;
+
+        // Drop the largest blocks first until within the limit; the garbage collector frees their memory.
+        for (int i = freeBlocks.size() - 1; i >= 0 && pooledBytes > maxPooledBytes; i--)
+        {
+            ArrayDeque<ByteBuffer> blocks = freeBlocks.get(i);
+            while (!blocks.isEmpty() && pooledBytes > maxPooledBytes)
+            {
+                pooledBytes -= blocks.pop().capacity();
+            }
+        }
+    }
+
+    public synchronized long getMaxPooledBytes()
+    {
+        return maxPooledBytes;
+    }
+
+    /**
+     * Releases all memory currently kept in the pool.
+     */
+    public void trim()
+    {
+        long limit = getMaxPooledBytes();
+        setMaxPooledBytes(0);
+        setMaxPooledBytes(limit);
+    }
+
+    public synchronized long getPooledBytes()
+    {
+        return pooledBytes;
+    }
+
+    /**
+     * @return The total size of all buffers allocated by the arena that have been neither closed nor garbage collected.
+     */
+    public long getLiveBytes()
+    {
+        return liveBytes.get();
+    }
+
+    public boolean isDebug()
+    {
+        return debug;
+    }
+
+    /**
+     * Enables or disables recording allocation sites. Only buffers allocated while enabled are tracked.
+     * @param debug Whether debug mode should be enabled.
+     */
+    public void setDebug(boolean debug)
+    {
+        if (debug && reportOnShutdown.compareAndSet(false, true))
+        {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::logUsage, "NativeBufferArena-report"));
+        }
+
+        this.debug = debug;
+    }
+
+    /**
+     * Logs how much native memory is live and pooled. In debug mode, also logs the live memory for each package that
+     * allocated it, and (at debug level) where each live buffer was allocated.
+     */
+    public void logUsage()
+    {
+        LOG.info("Native buffers: {} bytes live, {} bytes pooled; {} allocations, {} reused from the pool, {} never closed.",
+            getLiveBytes(), getPooledBytes(), allocationCount.get(), reuseCount.get(), leakCount.get());
+
+        if (debug)
+        {
+            Map<String, Long> bytesBySubsystem = new TreeMap<>();
+            for (Allocation allocation : liveAllocations)
+            {
+                bytesBySubsystem.merge(allocation.subsystem, (long) allocation.buffer.capacity(), Long::sum);
+            }
+
+            bytesBySubsystem.forEach((subsystem, bytes) -> LOG.info("  {}: {} bytes live", subsystem, bytes));
+
+            if (LOG.isDebugEnabled())
+            {
+                for (Allocation allocation : liveAllocations)
+                {
+                    LOG.debug("Live native buffer of {} bytes:", allocation.buffer.capacity(), allocation.site);
+                }
+            }
+        }
+    }
+}
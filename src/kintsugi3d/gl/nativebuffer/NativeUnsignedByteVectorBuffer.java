@@ -11,8 +11,6 @@
 
 package kintsugi3d.gl.nativebuffer;
 
-import org.lwjgl.BufferUtils;
-
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Objects;
@@ -20,11 +18,17 @@ import java.util.Objects;
 class NativeUnsignedByteVectorBuffer implements NativeVectorBuffer
 {
     private final ByteBuffer buffer;
+    private final NativeBufferArena.Allocation allocation;
 
     final int dimensions;
     final int count;
 
     NativeUnsignedByteVectorBuffer(int dimensions, int count)
+    {
+        this(dimensions, count, false);
+    }
+
+    NativeUnsignedByteVectorBuffer(int dimensions, int count, boolean pooled)
     {
         if (dimensions < 0)
         {
@@ -37,7 +41,9 @@ class NativeUnsignedByteVectorBuffer implements NativeVectorBuffer
 
         this.dimensions = dimensions;
         this.count = count;
-        this.buffer = BufferUtils.createByteBuffer(dimensions * count);
+        this.allocation = pooled ? NativeBufferArena.getInstance().allocatePooled(this, dimensions * count)
+            : NativeBufferArena.getInstance().allocate(this, dimensions * count);
+        this.buffer = allocation.getBuffer();
     }
 
     NativeUnsignedByteVectorBuffer(int dimensions, int count, ByteBuffer buffer)
@@ -63,6 +69,7 @@ class NativeUnsignedByteVectorBuffer implements NativeVectorBuffer
         this.dimensions = dimensions;
         this.count = count;
         this.buffer = buffer;
+        this.allocation = null;
     }
 
     NativeUnsignedByteVectorBuffer(int dimensions, int count, byte... buffer)
@@ -144,4 +151,13 @@ class NativeUnsignedByteVectorBuffer implements NativeVectorBuffer
     {
         return NativeDataType.UNSIGNED_BYTE;
     }
+
+    @Override
+    public void close()
+    {
+        if (allocation != null)
+        {
+            allocation.release();
+        }
+    }
 }
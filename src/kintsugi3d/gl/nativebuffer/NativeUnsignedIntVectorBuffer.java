@@ -11,8 +11,6 @@
 
 package kintsugi3d.gl.nativebuffer;
 
-import org.lwjgl.BufferUtils;
-
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Objects;
@@ -20,11 +18,17 @@ import java.util.Objects;
 class NativeUnsignedIntVectorBuffer implements NativeVectorBuffer
 {
     private final ByteBuffer buffer;
+    private final NativeBufferArena.Allocation allocation;
 
     final int dimensions;
     final int count;
 
     NativeUnsignedIntVectorBuffer(int dimensions, int count)
+    {
+        this(dimensions, count, false);
+    }
+
+    NativeUnsignedIntVectorBuffer(int dimensions, int count, boolean pooled)
     {
         if (dimensions < 0)
         {
@@ -37,7 +41,9 @@ class NativeUnsignedIntVectorBuffer implements NativeVectorBuffer
 
         this.dimensions = dimensions;
         this.count = count;
-        this.buffer = BufferUtils.createByteBuffer(dimensions * count * 4);
+        this.allocation = pooled ? NativeBufferArena.getInstance().allocatePooled(this, dimensions * count * 4)
+            : NativeBufferArena.getInstance().allocate(this, dimensions * count * 4);
+        this.buffer = allocation.getBuffer();
     }
 
     NativeUnsignedIntVectorBuffer(int dimensions, int count, ByteBuffer buffer)
@@ -63,6 +69,7 @@ class NativeUnsignedIntVectorBuffer implements NativeVectorBuffer
         this.dimensions = dimensions;
         this.count = count;
         this.buffer = buffer;
+        this.allocation = null;
     }
 
     NativeUnsignedIntVectorBuffer(int dimensions, int count, byte... buffer)
@@ -150,4 +157,13 @@ class NativeUnsignedIntVectorBuffer implements NativeVectorBuffer
     {
         return NativeDataType.UNSIGNED_INT;
     }
+
+    @Override
+    public void close()
+    {
+        if (allocation != null)
+        {
+            allocation.release();
+        }
+    }
 }
@@ -15,6 +15,9 @@ import java.nio.ByteBuffer;
 
 /**
  * A singleton factory object for creating NativeVectorBuffer instances.
+ * Buffers that allocate their own storage get it from {@link NativeBufferArena}.
+ * Buffers created by {@link #createEmptyPooled} take their memory from the arena's pool, and closing them when they are
+ * no longer needed (i.e. once their data has been sent to the GPU) allows that memory to be reused.
  */
 public final class NativeVectorBufferFactory 
 {
@@ -51,6 +54,31 @@ public final class NativeVectorBufferFactory
         }
     }
 
+    /**
+     * Creates a new empty buffer with the specified number of dimensions and elements, taking its memory from the pool
+     * in {@link NativeBufferArena}.
+     * The buffer must be closed once it is no longer needed (i.e. in a try-with-resources block) so that its memory can be
+     * reused; otherwise its memory is wasted, since pooled memory is rounded up to a power of two.
+     * @param dataType The underlying type of the data in the buffer.
+     * @param dimensions The number of dimensions in each vector element.
+     * @param count The number of vector elements in the list.
+     */
+    public NativeVectorBuffer createEmptyPooled(NativeDataType dataType, int dimensions, int count)
+    {
+        switch(dataType)
+        {
+        case BYTE: return new NativeByteVectorBuffer(dimensions, count, true);
+        case UNSIGNED_BYTE: return new NativeUnsignedByteVectorBuffer(dimensions, count, true);
+        case SHORT: return new NativeShortVectorBuffer(dimensions, count, true);
+        case UNSIGNED_SHORT: return new NativeUnsignedShortVectorBuffer(dimensions, count, true);
+        case INT: return new NativeIntVectorBuffer(dimensions, count, true);
+        case UNSIGNED_INT: return new NativeUnsignedIntVectorBuffer(dimensions, count, true);
+        case FLOAT: return new NativeFloatVectorBuffer(dimensions, count, true);
+        case DOUBLE: return new NativeDoubleVectorBuffer(dimensions, count, true);
+        default: throw new IllegalArgumentException("Unrecognized data type " + dataType + '.');
+        }
+    }
+
     /**
      * Creates a new vector buffer with the specified number of dimensions and elements, using a pre-existing buffer as storage.
      * Any data already in the buffer will persist.
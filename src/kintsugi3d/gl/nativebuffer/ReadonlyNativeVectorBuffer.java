@@ -13,7 +13,7 @@ package kintsugi3d.gl.nativebuffer;
 
 import java.nio.ByteBuffer;
 
-public interface ReadonlyNativeVectorBuffer
+public interface ReadonlyNativeVectorBuffer extends AutoCloseable
 {
     /**
      * Gets the number of dimensions in each vector.
@@ -50,4 +50,13 @@ public interface ReadonlyNativeVectorBuffer
      * @return
      */
     ByteBuffer getBuffer();
+
+    /**
+     * Releases the native memory of this buffer; if it was allocated from the pool in {@link NativeBufferArena},
+     * the memory is returned to the pool so that it can be reused.
+     * The buffer, including any ByteBuffer returned by {@link #getBuffer()}, must not be used afterwards.
+     * Has no effect for buffers that wrap an existing ByteBuffer.
+     */
+    @Override
+    void close();
 }
@@ -322,53 +322,74 @@ final class OpenGLTexture3D extends OpenGLTexture implements Texture3D<OpenGLCon
     @Override
     public void loadLayer(int layerIndex, File file, boolean flipVertical) throws IOException
     {
-        this.loadLayer(layerIndex, new FileInputStream(file), flipVertical);
+        validateLayerIndex(layerIndex);
+        loadLayer(layerIndex, decodeLayer(file, flipVertical));
     }
 
     @Override
     public void loadLayer(int layerIndex, InputStream fileStream, boolean flipVertical) throws IOException
     {
         validateLayerIndex(layerIndex);
-
-        // Load the image
-        BufferedImage colorImg = ImageHelper.read(fileStream).scaledToResolution(width, height).getBufferedImage();
-
-        // Transfer data to byte buffer.
-        ByteBuffer buffer = bufferedImageToNativeBuffer(colorImg, flipVertical);
-
-        // Send the data to the GPU.
-        this.bind();
-
-        glPixelStorei(GL_UNPACK_ALIGNMENT, 4);
-        OpenGLContext.errorCheck();
-
-        glTexSubImage3D(this.openGLTextureTarget, 0, 0, 0, layerIndex, this.width, this.height, 1,
-            GL_BGRA, GL_UNSIGNED_BYTE, buffer);
-        OpenGLContext.errorCheck();
-
-        if (parameters.useMipmaps)
-        {
-            this.staleMipmaps = true;
-        }
+        loadLayer(layerIndex, decodeLayer(fileStream, null, flipVertical));
     }
 
     @Override
     public void loadLayer(int layerIndex, File imageFile, File maskFile, boolean flipVertical) throws IOException
     {
-        this.loadLayer(layerIndex, new FileInputStream(imageFile), new FileInputStream(maskFile), flipVertical);
+        validateLayerIndex(layerIndex);
+        loadLayer(layerIndex, decodeLayer(imageFile, maskFile, flipVertical));
     }
 
     @Override
     public void loadLayer(int layerIndex, InputStream imageStream, InputStream maskStream, boolean flipVertical) throws IOException
     {
         validateLayerIndex(layerIndex);
+        loadLayer(layerIndex, decodeLayer(imageStream, maskStream, flipVertical));
+    }
 
+    @Override
+    public DecodedTextureLayer decodeLayer(File file, boolean flipVertical) throws IOException
+    {
+        try (InputStream fileStream = new FileInputStream(file))
+        {
+            return decodeLayer(fileStream, null, flipVertical);
+        }
+    }
+
+    @Override
+    public DecodedTextureLayer decodeLayer(File imageFile, File maskFile, boolean flipVertical) throws IOException
+    {
+        try (InputStream imageStream = new FileInputStream(imageFile);
+            InputStream maskStream = new FileInputStream(maskFile))
+        {
+            return decodeLayer(imageStream, maskStream, flipVertical);
+        }
+    }
+
+    /**
+     * Decoding only touches CPU memory, so this is safe to call from any thread.
+     */
+    private DecodedTextureLayer decodeLayer(InputStream imageStream, InputStream maskStream, boolean flipVertical) throws IOException
+    {
         // Load the image
         BufferedImage colorImg =
             ImageHelper.read(imageStream).scaledToResolution(width, height).withAlphaMask(maskStream).getBufferedImage();
 
         // Transfer data to byte buffer.
-        ByteBuffer buffer = bufferedImageToNativeBuffer(colorImg, flipVertical);
+        return new DecodedTextureLayer(width, height, bufferedImageToNativeBuffer(colorImg, flipVertical));
+    }
+
+    @Override
+    public void loadLayer(int layerIndex, DecodedTextureLayer layer)
+    {
+        validateLayerIndex(layerIndex);
+
+        if (layer.getWidth() != this.width || layer.getHeight() != this.height)
+        {
+            throw new IllegalArgumentException(
+                String.format("Decoded layer does not have the same dimensions as this texture.  Expected: %dx%d  Actual: %dx%d",
+                    this.width, this.height, layer.getWidth(), layer.getHeight()));
+        }
 
         // Send the data to the GPU.
         this.bind();
@@ -377,7 +398,7 @@ final class OpenGLTexture3D extends OpenGLTexture implements Texture3D<OpenGLCon
         OpenGLContext.errorCheck();
 
         glTexSubImage3D(this.openGLTextureTarget, 0, 0, 0, layerIndex, this.width, this.height, 1,
-            GL_BGRA, GL_UNSIGNED_BYTE, buffer);
+            GL_BGRA, GL_UNSIGNED_BYTE, layer.getBuffer());
         OpenGLContext.errorCheck();
 
         if (parameters.useMipmaps)
@@ -0,0 +1,646 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+package kintsugi3d.optimization;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Solves many small non-negative least squares problems at once, in the premultiplied form with optional equality
+ * constraints accepted by {@link NonNegativeLeastSquares#solvePremultipliedWithEqualityConstraints}.
+ * Uses the same active set algorithm, but works directly on row-major arrays with scratch buffers that are allocated
+ * once per chunk of systems rather than once per iteration, and solves the chunks in parallel.
+ * Each system may be warm-started from an initial guess of which variables are free (i.e. the previous solution's
+ * non-zero weights), which usually leaves little for the active set iterations to do when the systems change slowly.
+ */
+public final class BatchedNonNegativeLeastSquares
+{
+    /**
+     * Number of systems solved by each parallel task.
+     */
+    private static final int CHUNK_SIZE = 1024;
+
+    /**
+     * Pivots smaller than this are treated as singular, matching EJML's LU decomposition.
+     */
+    private static final double SINGULAR_TOLERANCE = Math.ulp(1.0);
+
+    private final int variableCount;
+    private final int constraintCount;
+    private final int systemSize;
+
+    /**
+     * Summary of a batch of solves.
+     */
+    public static final class Statistics
+    {
+        private final int systemsSolved;
+        private final int warmStarts;
+        private final long totalIterations;
+        private final int maxIterations;
+        private final int unconverged;
+        private final int singular;
+
+        private Statistics(int systemsSolved, int warmStarts, long totalIterations, int maxIterations, int unconverged, int singular)
+        {
+            this.systemsSolved = systemsSolved;
+            this.warmStarts = warmStarts;
+            this.totalIterations = totalIterations;
+            this.maxIterations = maxIterations;
+            this.unconverged = unconverged;
+            this.singular = singular;
+        }
+
+        public int getSystemsSolved()
+        {
+            return systemsSolved;
+        }
+
+        /**
+         * @return The number of systems for which the initial guess of free variables was feasible and was used.
+         */
+        public int getWarmStarts()
+        {
+            return warmStarts;
+        }
+
+        public long getTotalIterations()
+        {
+            return totalIterations;
+        }
+
+        public int getMaxIterations()
+        {
+            return maxIterations;
+        }
+
+        public double getAverageIterations()
+        {
+            return systemsSolved == 0 ? 0.0 : (double) totalIterations / systemsSolved;
+        }
+
+        /**
+         * @return The number of systems that hit the iteration limit before converging.
+         */
+        public int getUnconverged()
+        {
+            return unconverged;
+        }
+
+        /**
+         * @return The number of systems for which some subsystem was singular.
+         */
+        public int getSingular()
+        {
+            return singular;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%d systems solved (%d warm-started); iterations: %.2f avg, %d max; %d unconverged, %d singular",
+                systemsSolved, warmStarts, getAverageIterations(), maxIterations, unconverged, singular);
+        }
+    }
+
+    /**
+     * Receives the solution of one system.  May be called concurrently from multiple threads, but never twice for the same system.
+     */
+    @FunctionalInterface
+    public interface SolutionConsumer
+    {
+        /**
+         * @param system The index of the system.
+         * @param solution The solution, augmented with the Lagrange multipliers for any equality constraints.
+         *                 This array is reused for the next system and must not be retained.
+         */
+        void accept(int system, double[] solution);
+    }
+
+    /**
+     * Provides the row-major left-hand side matrix or right-hand side vector of a system.
+     */
+    @FunctionalInterface
+    public interface SystemArrays
+    {
+        double[] get(int system);
+    }
+
+    private static final class Workspace
+    {
+        final boolean[] free;
+        final int[] mapping;
+        final double[] x;
+        final double[] s;
+        final double[] w;
+        final double[] subsystem;
+        final double[] subsystemRHS;
+        final double[] sorted;
+
+        int iterations;
+        boolean singular;
+
+        Workspace(int variableCount, int systemSize)
+        {
+            free = new boolean[variableCount];
+            mapping = new int[systemSize];
+            x = new double[systemSize];
+            s = new double[systemSize];
+            w = new double[systemSize];
+            subsystem = new double[systemSize * systemSize];
+            subsystemRHS = new double[systemSize];
+            sorted = new double[systemSize];
+        }
+    }
+
+    /**
+     * @param variableCount The number of non-negative variables in each system.
+     * @param constraintCount The number of equality constraints appended to each system,
+     *                        as described by {@link NonNegativeLeastSquares#solvePremultipliedWithEqualityConstraints}.
+     */
+    public BatchedNonNegativeLeastSquares(int variableCount, int constraintCount)
+    {
+        this.variableCount = variableCount;
+        this.constraintCount = constraintCount;
+        this.systemSize = variableCount + constraintCount;
+    }
+
+    public int getVariableCount()
+    {
+        return variableCount;
+    }
+
+    public int getConstraintCount()
+    {
+        return constraintCount;
+    }
+
+    /**
+     * Solves systems that are packed contiguously into arrays.
+     * @param packedATA The augmented A'A matrices, each row-major, one after another.
+     * @param packedATb The augmented A'b vectors, one after another.
+     * @param systemCount The number of systems.
+     * @param shouldSolve Which systems to solve; others are skipped and their solutions are left untouched.
+     * @param toleranceScale Scale relative to the median of each system's right-hand side at which to stop iterating.
+     * @param freeVariables Optional initial guess for which variables are free in each system, one flag per variable
+     *                      per system; updated with the final free variables of each system that is solved.
+     *                      May be null to always start from all variables fixed at zero.
+     * @param packedSolutions Receives the solutions (augmented with Lagrange multipliers), one after another.
+     * @return Statistics for the batch.
+     */
+    public Statistics solve(double[] packedATA, double[] packedATb, int systemCount, IntPredicate shouldSolve,
+        double toleranceScale, boolean[] freeVariables, double[] packedSolutions)
+    {
+        return solve(systemCount, shouldSolve, toleranceScale, freeVariables,
+            system -> packedATA, system -> system * systemSize * systemSize,
+            system -> packedATb, system -> system * systemSize,
+            (system, solution) -> System.arraycopy(solution, 0, packedSolutions, system * systemSize, systemSize));
+    }
+
+    /**
+     * Solves systems that are each stored in their own arrays (i.e. the backing arrays of separate matrices).
+     * @param systemCount The number of systems.
+     * @param shouldSolve Which systems to solve; others are skipped.
+     * @param toleranceScale Scale relative to the median of each system's right-hand side at which to stop iterating.
+     * @param freeVariables Optional initial guess for which variables are free in each system, one flag per variable
+     *                      per system; updated with the final free variables of each system that is solved.
+     *                      May be null to always start from all variables fixed at zero.
+     * @param augmentedATA The row-major augmented A'A matrix of each system.
+     * @param augmentedATb The augmented A'b vector of each system.
+     * @param solutionConsumer Receives each solution.
+     * @return Statistics for the batch.
+     */
+    public Statistics solve(int systemCount, IntPredicate shouldSolve, double toleranceScale, boolean[] freeVariables,
+        SystemArrays augmentedATA, SystemArrays augmentedATb, SolutionConsumer solutionConsumer)
+    {
+        return solve(systemCount, shouldSolve, toleranceScale, freeVariables,
+            augmentedATA, system -> 0, augmentedATb, system -> 0, solutionConsumer);
+    }
+
+    private Statistics solve(int systemCount, IntPredicate shouldSolve, double toleranceScale, boolean[] freeVariables,
+        SystemArrays lhs, IntUnaryOperator lhsOffset, SystemArrays rhs, IntUnaryOperator rhsOffset,
+        SolutionConsumer solutionConsumer)
+    {
+        if (toleranceScale <= 0.0)
+        {
+            throw new IllegalArgumentException("Tolerance scale must be greater than zero.");
+        }
+
+        AtomicInteger systemsSolved = new AtomicInteger();
+        AtomicInteger warmStarts = new AtomicInteger();
+        AtomicLong totalIterations = new AtomicLong();
+        AtomicInteger maxIterations = new AtomicInteger();
+        AtomicInteger unconverged = new AtomicInteger();
+        AtomicInteger singular = new AtomicInteger();
+
+        int chunkCount = (systemCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream.range(0, chunkCount).parallel().forEach(chunk ->
+        {
+            Workspace workspace = new Workspace(variableCount, systemSize);
+            int chunkSolved = 0;
+            int chunkWarmStarts = 0;
+            long chunkIterations = 0;
+            int chunkMaxIterations = 0;
+            int chunkUnconverged = 0;
+            int chunkSingular = 0;
+
+            for (int system = chunk * CHUNK_SIZE; system < Math.min(systemCount, (chunk + 1) * CHUNK_SIZE); system++)
+            {
+                if (shouldSolve.test(system))
+                {
+                    double[] ata = lhs.get(system);
+                    int ataOffset = lhsOffset.applyAsInt(system);
+                    double[] atb = rhs.get(system);
+                    int atbOffset = rhsOffset.applyAsInt(system);
+
+                    double epsilon = medianPositive(atb, atbOffset, workspace.sorted) * toleranceScale;
+
+                    if (freeVariables != null)
+                    {
+                        System.arraycopy(freeVariables, system * variableCount, workspace.free, 0, variableCount);
+                    }
+                    else
+                    {
+                        Arrays.fill(workspace.free, false);
+                    }
+
+                    boolean warmStarted = initialize(ata, ataOffset, atb, atbOffset, workspace);
+                    boolean converged = solveSystem(ata, ataOffset, atb, atbOffset, epsilon, workspace);
+
+                    if (freeVariables != null)
+                    {
+                        System.arraycopy(workspace.free, 0, freeVariables, system * variableCount, variableCount);
+                    }
+
+                    solutionConsumer.accept(system, workspace.x);
+
+                    chunkSolved++;
+                    chunkWarmStarts += warmStarted ? 1 : 0;
+                    chunkIterations += workspace.iterations;
+                    chunkMaxIterations = Math.max(chunkMaxIterations, workspace.iterations);
+                    chunkUnconverged += converged ? 0 : 1;
+                    chunkSingular += workspace.singular ? 1 : 0;
+                }
+            }
+
+            systemsSolved.addAndGet(chunkSolved);
+            warmStarts.addAndGet(chunkWarmStarts);
+            totalIterations.addAndGet(chunkIterations);
+            maxIterations.accumulateAndGet(chunkMaxIterations, Math::max);
+            unconverged.addAndGet(chunkUnconverged);
+            singular.addAndGet(chunkSingular);
+        });
+
+        return new Statistics(systemsSolved.get(), warmStarts.get(), totalIterations.get(), maxIterations.get(),
+            unconverged.get(), singular.get());
+    }
+
+    /**
+     * Finds the median value of the right-hand side (excluding constraints), or the first positive value after it,
+     * to help calibrate the tolerance; 1.0 if there is no such value.
+     */
+    private double medianPositive(double[] atb, int offset, double[] sorted)
+    {
+        System.arraycopy(atb, offset, sorted, 0, systemSize);
+        Arrays.sort(sorted, 0, systemSize);
+
+        for (int i = systemSize / 2; i < systemSize; i++)
+        {
+            if (sorted[i] > 0)
+            {
+                return sorted[i];
+            }
+        }
+
+        return 1.0;
+    }
+
+    /**
+     * Sets up the starting point from the initial free variables in the workspace.
+     * @return True if the initial free variables gave a feasible starting point; false if starting from zero.
+     */
+    private boolean initialize(double[] ata, int ataOffset, double[] atb, int atbOffset, Workspace workspace)
+    {
+        workspace.iterations = 0;
+        workspace.singular = false;
+        Arrays.fill(workspace.x, 0.0);
+
+        boolean anyFree = false;
+        for (boolean free : workspace.free)
+        {
+            anyFree |= free;
+        }
+
+        boolean warmStarted = false;
+        if (anyFree && solvePartial(ata, ataOffset, atb, atbOffset, workspace) && minFree(workspace) >= 0.0)
+        {
+            System.arraycopy(workspace.s, 0, workspace.x, 0, systemSize);
+            warmStarted = true;
+        }
+        else
+        {
+            Arrays.fill(workspace.free, false);
+        }
+
+        computeGradient(ata, ataOffset, atb, atbOffset, workspace);
+        return warmStarted;
+    }
+
+    /**
+     * The active set iterations of {@link NonNegativeLeastSquares#solvePremultipliedWithEqualityConstraints},
+     * starting from the free variables and solution in the workspace.
+     * @return True if converged; false if the iteration limit was reached.
+     */
+    private boolean solveSystem(double[] ata, int ataOffset, double[] atb, int atbOffset, double epsilon, Workspace workspace)
+    {
+        boolean[] free = workspace.free;
+        double[] x = workspace.x;
+        double[] s = workspace.s;
+        double[] w = workspace.w;
+
+        int sizeP = countFree(workspace);
+        int maxIterations = variableCount * variableCount; // Heuristic for how many iterations until timeout.
+        double maxW;
+
+        do
+        {
+            int k = -1;
+            maxW = Double.NEGATIVE_INFINITY;
+
+            for (int i = 0; i < variableCount; i++)
+            {
+                if (!free[i] && w[i] > maxW)
+                {
+                    k = i;
+                    maxW = w[i];
+                }
+            }
+
+            if (k < 0)
+            {
+                // Every variable is already free.
+                break;
+            }
+
+            // Iterate until effectively no values of w are positive.
+            if (maxW > epsilon || sizeP == 0)
+            {
+                free[k] = true;
+
+                boolean solved = solvePartial(ata, ataOffset, atb, atbOffset, workspace);
+                if (solved)
+                {
+                    // Make sure that none of the free variables went negative.
+                    while (minFree(workspace) < 0.0)
+                    {
+                        double alpha = 1.0;
+                        int j = -1;
+                        for (int i = 0; i < variableCount; i++)
+                        {
+                            if (free[i] && s[i] <= 0.0)
+                            {
+                                double alphaCandidate = x[i] / (x[i] - s[i]);
+                                if (alphaCandidate <= alpha)
+                                {
+                                    alpha = alphaCandidate;
+                                    j = i;
+                                }
+                            }
+                        }
+
+                        if (j < 0)
+                        {
+                            break;
+                        }
+
+                        // x = x + alpha * (s - x)
+                        for (int i = 0; i < systemSize; i++)
+                        {
+                            x[i] += alpha * (s[i] - x[i]);
+                        }
+
+                        // Make sure that at least one previously positive value is set to zero.
+                        // Because of round-off error, this is not necessarily guaranteed.
+                        free[j] = false;
+                        x[j] = 0.0;
+
+                        if (j == k)
+                        {
+                            // Avoid an infinite loop; treat all remaining values in w as insignificant.
+                            maxW = 0.0;
+                        }
+                        else
+                        {
+                            for (int i = 0; i < variableCount; i++)
+                            {
+                                if (free[i] && x[i] <= 0.0)
+                                {
+                                    free[i] = false;
+                                    x[i] = 0.0; // Just in case it went slightly negative due to round-off error.
+                                }
+                            }
+                        }
+
+                        solved = solvePartial(ata, ataOffset, atb, atbOffset, workspace);
+                        if (!solved)
+                        {
+                            break;
+                        }
+                    }
+                }
+
+                if (!solved)
+                {
+                    // Roll back and finish.
+                    free[k] = false;
+                    solvePartial(ata, ataOffset, atb, atbOffset, workspace);
+
+                    // Avoid an infinite loop; treat all remaining values in w as insignificant.
+                    maxW = 0.0;
+                }
+
+                sizeP = countFree(workspace);
+                System.arraycopy(s, 0, x, 0, systemSize);
+                computeGradient(ata, ataOffset, atb, atbOffset, workspace);
+            }
+
+            workspace.iterations++;
+        }
+        while (sizeP < variableCount && maxW > epsilon && workspace.iterations < maxIterations);
+
+        return sizeP == variableCount || maxW <= epsilon;
+    }
+
+    private int countFree(Workspace workspace)
+    {
+        int count = 0;
+        for (boolean free : workspace.free)
+        {
+            count += free ? 1 : 0;
+        }
+        return count;
+    }
+
+    private double minFree(Workspace workspace)
+    {
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < variableCount; i++)
+        {
+            if (workspace.free[i])
+            {
+                min = Math.min(min, workspace.s[i]);
+            }
+        }
+        return min;
+    }
+
+    /**
+     * w = A'b - A'A x
+     */
+    private void computeGradient(double[] ata, int ataOffset, double[] atb, int atbOffset, Workspace workspace)
+    {
+        for (int i = 0; i < systemSize; i++)
+        {
+            double sum = atb[atbOffset + i];
+            int row = ataOffset + i * systemSize;
+            for (int j = 0; j < systemSize; j++)
+            {
+                sum -= ata[row + j] * workspace.x[j];
+            }
+            workspace.w[i] = sum;
+        }
+    }
+
+    /**
+     * Solves the system restricted to the free variables and the constraints, writing the full solution
+     * (with zeros for fixed variables) into the workspace's s vector.
+     * @return False if the restricted system was singular (in which case s is zero).
+     */
+    private boolean solvePartial(double[] ata, int ataOffset, double[] atb, int atbOffset, Workspace workspace)
+    {
+        int[] mapping = workspace.mapping;
+        int size = 0;
+
+        for (int i = 0; i < variableCount; i++)
+        {
+            if (workspace.free[i])
+            {
+                mapping[size++] = i;
+            }
+        }
+
+        // Add equality constraints if there are any.
+        for (int i = variableCount; i < systemSize; i++)
+        {
+            mapping[size++] = i;
+        }
+
+        // Gather the rows and columns corresponding to the free variables.
+        double[] m = workspace.subsystem;
+        double[] b = workspace.subsystemRHS;
+        for (int i = 0; i < size; i++)
+        {
+            int row = ataOffset + mapping[i] * systemSize;
+            b[i] = atb[atbOffset + mapping[i]];
+            for (int j = 0; j < size; j++)
+            {
+                m[i * size + j] = ata[row + mapping[j]];
+            }
+        }
+
+        Arrays.fill(workspace.s, 0.0);
+
+        // Constrained systems are indefinite, so use LU with partial pivoting rather than Cholesky.
+        if (!solveInPlace(m, b, size))
+        {
+            workspace.singular = true;
+            return false;
+        }
+
+        for (int i = 0; i < size; i++)
+        {
+            workspace.s[mapping[i]] = b[i];
+        }
+
+        return true;
+    }
+
+    /**
+     * Gaussian elimination with partial pivoting on a dense row-major size x size matrix; the solution replaces b.
+     * @return False if the matrix is singular.
+     */
+    private static boolean solveInPlace(double[] m, double[] b, int size)
+    {
+        for (int col = 0; col < size; col++)
+        {
+            int pivot = col;
+            double pivotMagnitude = Math.abs(m[col * size + col]);
+            for (int row = col + 1; row < size; row++)
+            {
+                double magnitude = Math.abs(m[row * size + col]);
+                if (magnitude > pivotMagnitude)
+                {
+                    pivot = row;
+                    pivotMagnitude = magnitude;
+                }
+            }
+
+            if (!(pivotMagnitude >= SINGULAR_TOLERANCE))
+            {
+                return false;
+            }
+
+            if (pivot != col)
+            {
+                for (int j = col; j < size; j++)
+                {
+                    double temp = m[col * size + j];
+                    m[col * size + j] = m[pivot * size + j];
+                    m[pivot * size + j] = temp;
+                }
+
+                double temp = b[col];
+                b[col] = b[pivot];
+                b[pivot] = temp;
+            }
+
+            double inversePivot = 1.0 / m[col * size + col];
+            for (int row = col + 1; row < size; row++)
+            {
+                double factor = m[row * size + col] * inversePivot;
+                if (factor != 0.0)
+                {
+                    for (int j = col + 1; j < size; j++)
+                    {
+                        m[row * size + j] -= factor * m[col * size + j];
+                    }
+                    b[row] -= factor * b[col];
+                }
+            }
+        }
+
+        for (int row = size - 1; row >= 0; row--)
+        {
+            double sum = b[row];
+            for (int j = row + 1; j < size; j++)
+            {
+                sum -= m[row * size + j] * b[j];
+            }
+            b[row] = sum / m[row * size + row];
+        }
+
+        return true;
+    }
+}
@@ -12,208 +12,639 @@
 package kintsugi3d.optimization;
 
 import kintsugi3d.gl.vecmath.Vector3;
-import kintsugi3d.gl.vecmath.Vector4;
 import kintsugi3d.util.ColorArrayList;
+import org.ejml.data.FMatrixRMaj;
 import org.ejml.simple.SimpleMatrix;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.function.Function;
 import java.util.stream.IntStream;
 
+/**
+ * k-means clustering of colors with k-means++ initialization.
+ * All work is done on primitive arrays and split into fixed-size chunks which are processed in parallel;
+ * partial results are always combined in chunk order, so a fixed random seed gives reproducible clusters
+ * regardless of the number of threads.
+ */
 public class KMeansClustering
 {
     private static final Logger LOG = LoggerFactory.getLogger(KMeansClustering.class);
     private static final double TOLERANCE = 0.0001;
 
+    /**
+     * Safety net in case the centers oscillate due to floating-point rounding instead of settling.
+     */
+    private static final int MAX_ITERATIONS = 1000;
+
+    /**
+     * Number of samples processed by each parallel task.
+     */
+    private static final int CHUNK_SIZE = 16384;
+
     private final ColorArrayList colorMap;
 
+    private Long randomSeed;
+    private int miniBatchSize;
+    private int miniBatchIterations = 100;
+    private Function<SimpleMatrix, SimpleMatrix> principalAxisFinder;
+
     public KMeansClustering(ColorArrayList colorMap)
     {
         //noinspection AssignmentOrReturnOfFieldWithMutableType
         this.colorMap = colorMap;
     }
 
+    /**
+     * Uses a fixed seed for the random number generator so that the same clusters are produced every time.
+     * By default, a new random seed is used every time.
+     * @param randomSeed The seed to use, or null to use a random seed.
+     * @return This object, for chaining.
+     */
+    public KMeansClustering setRandomSeed(Long randomSeed)
+    {
+        this.randomSeed = randomSeed;
+        return this;
+    }
+
+    /**
+     * Enables mini-batch k-means, which refines the centers using small random batches of samples
+     * rather than the entire color map on every iteration.
+     * This is much faster for very large color maps, at the cost of slightly less accurate centers.
+     * @param miniBatchSize The number of samples in each batch, or zero to use standard (full batch) k-means.
+     * @param iterations The number of batches to process.
+     * @return This object, for chaining.
+     */
+    public KMeansClustering setMiniBatch(int miniBatchSize, int iterations)
+    {
+        this.miniBatchSize = miniBatchSize;
+        this.miniBatchIterations = iterations;
+        return this;
+    }
+
+    /**
+     * Seeds the clusters by repeatedly splitting the cluster with the largest squared error in two along its principal axis
+     * (the "PCA-Part" method of Su and Dy, 2007) instead of using k-means++.
+     * The seeds don't depend on the random number generator, and tend to need fewer refinement iterations.
+     * @param principalAxisFinder Finds the leading right singular vector (as a 3x1 matrix) of a single-precision matrix
+     *                            with one mean-centered color per row (i.e. using {@link FastPartialSVD} or {@link RandomizedPartialSVD}),
+     *                            or null to use k-means++ (the default).
+     * @return This object, for chaining.
+     */
+    public KMeansClustering setPrincipalAxisSplitting(Function<SimpleMatrix, SimpleMatrix> principalAxisFinder)
+    {
+        this.principalAxisFinder = principalAxisFinder;
+        return this;
+    }
+
     public List<Vector3> makeClusters(List<SimpleMatrix> solutionOut)
     {
-        // k-means++ initialization
-        Random random = new SecureRandom();
+        int[] assignments = new int[colorMap.size()];
+        List<Vector3> centers = makeClusters(solutionOut.get(0).getNumElements(), assignments);
 
-        // Randomly choose the first center.
-        int firstCenterIndex;
-        int failsafeCounter = 0;
+        for (int p = 0; p < colorMap.size(); p++)
+        {
+            // Initialize weights to zero.
+            solutionOut.get(p).zero();
 
-        do
+            if (assignments[p] >= 0)
+            {
+                // Set weight to one for the cluster that each pixel belongs to.
+                solutionOut.get(p).set(assignments[p], 1.0);
+            }
+        }
+
+        return centers;
+    }
+
+    /**
+     * Clusters the colors in the color map.
+     * @param basisCount The number of clusters to create.
+     * @param assignmentsOut An array with one element per color, which will be filled with the index of the cluster
+     *                       that each color belongs to, or -1 for colors that are not valid (zero alpha).
+     * @return The cluster centers.
+     */
+    public List<Vector3> makeClusters(int basisCount, int[] assignmentsOut)
+    {
+        long startTime = System.nanoTime();
+
+        Random random = randomSeed == null ? new SecureRandom() : new Random(randomSeed);
+
+        // Pack the valid samples into a contiguous array.
+        int[] validIndices = IntStream.range(0, colorMap.size()).filter(p -> colorMap.getAlpha(p) > 0.0).toArray();
+        int sampleCount = validIndices.length;
+        float[] samples = new float[3 * sampleCount];
+        parallelForChunks(sampleCount, (chunk, start, end) ->
         {
-            firstCenterIndex = random.nextInt(colorMap.size());
-            failsafeCounter++;
+            for (int i = start; i < end; i++)
+            {
+                samples[3 * i] = colorMap.getRed(validIndices[i]);
+                samples[3 * i + 1] = colorMap.getGreen(validIndices[i]);
+                samples[3 * i + 2] = colorMap.getBlue(validIndices[i]);
+            }
+        });
+
+        double[] centers = principalAxisFinder == null ?
+            initializeCenters(basisCount, samples, sampleCount, validIndices, random) :
+            initializeCentersByPrincipalAxes(basisCount, samples, sampleCount);
+
+        LOG.info("Initial centers:");
+        for (int b = 0; b < basisCount; b++)
+        {
+            LOG.info(getCenter(centers, b).toString());
         }
-        while(colorMap.getAlpha(firstCenterIndex) < 1.0 && failsafeCounter <= colorMap.size()); // Make sure the center chosen is valid.
 
-        if (colorMap.getAlpha(firstCenterIndex) < 1.0)
+        int[] sampleAssignments = new int[sampleCount];
+        Arrays.fill(sampleAssignments, -1);
+
+        int iterations;
+        if (miniBatchSize > 0)
+        {
+            iterations = refineMiniBatch(basisCount, samples, sampleCount, centers, random);
+        }
+        else
+        {
+            iterations = refineFullBatch(basisCount, samples, sampleCount, centers, sampleAssignments);
+        }
+
+        // Record the cluster that each pixel belongs to.
+        assign(basisCount, samples, sampleCount, centers, sampleAssignments);
+        Arrays.fill(assignmentsOut, 0, colorMap.size(), -1); // Assume invalid until proven otherwise.
+        for (int i = 0; i < sampleCount; i++)
+        {
+            assignmentsOut[validIndices[i]] = sampleAssignments[i];
+        }
+
+        LOG.info("Clustered {} colors into {} clusters in {} iterations ({} ms)",
+            sampleCount, basisCount, iterations, (System.nanoTime() - startTime) / 1000000);
+
+        // Return the cluster centers.
+        List<Vector3> centerList = new ArrayList<>(basisCount);
+        for (int b = 0; b < basisCount; b++)
+        {
+            centerList.add(getCenter(centers, b));
+        }
+        return centerList;
+    }
+
+    /**
+     * k-means++ initialization.
+     * The squared distance from each sample to its nearest center is cached and updated incrementally as each center is added,
+     * so each new center costs a single pass over the samples.
+     */
+    private double[] initializeCenters(int basisCount, float[] samples, int sampleCount, int[] validIndices, Random random)
+    {
+        // Randomly choose the first center, from among the fully opaque samples.
+        int[] opaqueSamples = IntStream.range(0, sampleCount).filter(i -> colorMap.getAlpha(validIndices[i]) >= 1.0).toArray();
+        if (opaqueSamples.length == 0)
         {
             throw new IllegalStateException("Color map does not contain any valid elements.");
         }
 
-        int basisCount = solutionOut.get(0).getNumElements();
-        Vector3[] centers = new Vector3[basisCount];
-        centers[0] = colorMap.getRGB(firstCenterIndex);
+        double[] centers = new double[3 * basisCount];
+        setCenter(centers, 0, samples, opaqueSamples[random.nextInt(opaqueSamples.length)]);
 
-        // Populate a CDF for the purpose of randomly selecting from a weighted probability distribution.
-        double[] cdf = new double[colorMap.size() + 1];
+        // Squared distance to the nearest center so far, and its sum over each chunk.
+        double[] minDistanceSquared = new double[sampleCount];
+        Arrays.fill(minDistanceSquared, Double.MAX_VALUE);
+        double[] chunkSums = new double[chunkCount(sampleCount)];
 
         for (int b = 1; b < basisCount; b++)
         {
-            cdf[0] = 0.0;
+            updateMinDistances(centers, b - 1, samples, sampleCount, minDistanceSquared, chunkSums);
 
-            for (int p = 0; p < colorMap.size(); p++)
+            double total = 0.0;
+            for (double chunkSum : chunkSums)
             {
-                if (colorMap.getAlpha(p) > 0.0)
+                total += chunkSum;
+            }
+
+            // Randomly select a sample with probability proportional to its squared distance from the nearest center.
+            double x = random.nextDouble() * total;
+            int chunk = 0;
+            while (chunk < chunkSums.length - 1 && x >= chunkSums[chunk])
+            {
+                x -= chunkSums[chunk];
+                chunk++;
+            }
+
+            int end = Math.min(sampleCount, (chunk + 1) * CHUNK_SIZE);
+            int index = -1;
+            for (int i = chunk * CHUNK_SIZE; i < end; i++)
+            {
+                if (minDistanceSquared[i] > 0.0)
                 {
-                    Vector3 sample = colorMap.getRGB(p);
-
-                    // Find the minimum distance from the sample to any of the current centers.
-                    double minDistance = IntStream.range(0, b)
-                        .mapToDouble(b2 -> centers[b2].distance(sample))
-                        .min()
-                        .orElse(Double.MAX_VALUE);
-                    cdf[p + 1] = cdf[p] + minDistance * minDistance;
+                    // Remember the last sample with nonzero weight in case rounding leaves x slightly above the chunk total.
+                    index = i;
+                    x -= minDistanceSquared[i];
+                    if (x < 0.0)
+                    {
+                        break;
+                    }
                 }
-                else
+            }
+
+            if (index < 0)
+            {
+                // Every sample coincides with an existing center, so it doesn't matter which is chosen.
+                index = random.nextInt(sampleCount);
+            }
+
+            // We've found a new center.
+            setCenter(centers, b, samples, index);
+        }
+
+        return centers;
+    }
+
+    /**
+     * PCA-Part initialization: starting with every sample in one cluster, the cluster with the largest squared error
+     * is split by the plane through its mean that is perpendicular to its principal axis, until there are enough clusters.
+     * The centers are the means of the final clusters.
+     */
+    private double[] initializeCentersByPrincipalAxes(int basisCount, float[] samples, int sampleCount)
+    {
+        if (sampleCount == 0)
+        {
+            throw new IllegalStateException("Color map does not contain any valid elements.");
+        }
+
+        double[] centers = new double[3 * basisCount];
+        double[] squaredErrors = new double[basisCount];
+        List<int[]> clusters = new ArrayList<>(basisCount);
+
+        clusters.add(IntStream.range(0, sampleCount).toArray());
+        squaredErrors[0] = updateMean(centers, 0, samples, clusters.get(0));
+
+        while (clusters.size() < basisCount)
+        {
+            int worst = 0;
+            for (int b = 1; b < clusters.size(); b++)
+            {
+                if (squaredErrors[b] > squaredErrors[worst])
                 {
-                    // Forward the old cdf value if the current sample is not valid (and thus has zero contribution).
-                    cdf[p + 1] = cdf[p];
+                    worst = b;
                 }
             }
 
-            double x = random.nextDouble() * cdf[colorMap.size() - 1];
+            if (squaredErrors[worst] <= 0.0)
+            {
+                // No cluster can be split any further, so it doesn't matter which center is duplicated.
+                for (int b = clusters.size(); b < basisCount; b++)
+                {
+                    System.arraycopy(centers, 3 * worst, centers, 3 * b, 3);
+                }
+                break;
+            }
 
-            //noinspection FloatingPointEquality
-            if (x >= cdf[colorMap.size() - 1]) // It's possible but extremely unlikely that floating-point rounding would cause this to happen.
+            int[][] halves = splitAlongPrincipalAxis(centers, worst, samples, clusters.get(worst));
+            if (halves == null)
             {
-                // In that extremely rare case, just set x to 0.0.
-                x = 0.0;
+                // Leave this cluster as it is and split the next worst one instead.
+                squaredErrors[worst] = 0.0;
+                continue;
             }
 
-            // binarySearch returns index of a match if its found, or -insertionPoint - 1 if not (the more likely scenario).
-            // insertionPoint is defined to be the index of the first element greater than the number searched for (the randomly generated value).
-            int index = Arrays.binarySearch(cdf, x);
+            int added = clusters.size();
+            clusters.set(worst, halves[0]);
+            clusters.add(halves[1]);
+            squaredErrors[worst] = updateMean(centers, worst, samples, halves[0]);
+            squaredErrors[added] = updateMean(centers, added, samples, halves[1]);
+        }
+
+        return centers;
+    }
+
+    /**
+     * Sets a center to the mean of the given samples.
+     * @return The sum of the squared distances from the samples to the mean.
+     */
+    private static double updateMean(double[] centers, int b, float[] samples, int[] members)
+    {
+        double r = 0.0;
+        double g = 0.0;
+        double bl = 0.0;
+        for (int i : members)
+        {
+            r += samples[3 * i];
+            g += samples[3 * i + 1];
+            bl += samples[3 * i + 2];
+        }
+
+        centers[3 * b] = r / members.length;
+        centers[3 * b + 1] = g / members.length;
+        centers[3 * b + 2] = bl / members.length;
+
+        double squaredError = 0.0;
+        for (int i : members)
+        {
+            double dr = samples[3 * i] - centers[3 * b];
+            double dg = samples[3 * i + 1] - centers[3 * b + 1];
+            double db = samples[3 * i + 2] - centers[3 * b + 2];
+            squaredError += dr * dr + dg * dg + db * db;
+        }
+
+        return squaredError;
+    }
 
-            if (index < 0) // The vast majority of the time this condition will be true, since floating-point matches are unlikely.
+    /**
+     * @return The members on either side of the plane through the cluster's mean perpendicular to its principal axis,
+     * or null if the cluster can't be split (i.e. the principal axis couldn't be found).
+     */
+    private int[][] splitAlongPrincipalAxis(double[] centers, int b, float[] samples, int[] members)
+    {
+        // Mean-centered samples, one per row.
+        FMatrixRMaj centered = new FMatrixRMaj(members.length, 3);
+        for (int j = 0; j < members.length; j++)
+        {
+            for (int c = 0; c < 3; c++)
             {
-                // We actually want insertionPoint - 1 since the CDF is offset by one from the actual array of colors.
-                // i.e. if the random value falls between indices 3 and 4 in the CDF, the differential between those two indices is due to the color
-                // at index 3, so we want to use 3 as are index.
-                index = -index - 2;
+                centered.data[3 * j + c] = (float) (samples[3 * members[j] + c] - centers[3 * b + c]);
             }
+        }
 
-            assert index < cdf.length - 1;
+        SimpleMatrix axis = principalAxisFinder.apply(SimpleMatrix.wrap(centered));
+        double ar = axis.get(0);
+        double ag = axis.get(1);
+        double ab = axis.get(2);
 
-            // If the index was actually positive to begin with, that's probably fine; just make sure that it's a valid location.
-            // It's also possible in theory for the index to be zero if the random number generator produced 0.0.
-            while (index < 0 || colorMap.getAlpha(index) == 0.0)
-            {
-                // Search forward until a valid index is found.
-                index++;
+        int[] positive = new int[members.length];
+        int[] negative = new int[members.length];
+        int positiveCount = 0;
+        int negativeCount = 0;
+        for (int i : members)
+        {
+            double projection = (samples[3 * i] - centers[3 * b]) * ar
+                + (samples[3 * i + 1] - centers[3 * b + 1]) * ag
+                + (samples[3 * i + 2] - centers[3 * b + 2]) * ab;
 
-                // We shouldn't ever fail to find an index since x should have been less than the final (un-normalized) CDF total.
-                // This means that there has to be some place where the CDF went up, corresponding to a valid index.
-                assert index < cdf.length - 1;
+            if (projection > 0.0)
+            {
+                positive[positiveCount++] = i;
+            }
+            else
+            {
+                negative[negativeCount++] = i;
             }
-
-            // We've found a new center.
-            centers[b] = colorMap.getRGB(index);
         }
 
-        LOG.info("Initial centers:");
-        for (int b = 0; b < basisCount; b++)
+        if (positiveCount == 0 || negativeCount == 0)
+        {
+            return null;
+        }
+        else
         {
-            LOG.info(centers[b].toString());
+            return new int[][] { Arrays.copyOf(positive, positiveCount), Arrays.copyOf(negative, negativeCount) };
         }
+    }
 
-        // Initialization is done; now it's time to iterate.
+    private static void updateMinDistances(double[] centers, int newCenter,
+        float[] samples, int sampleCount, double[] minDistanceSquared, double[] chunkSums)
+    {
+        double cr = centers[3 * newCenter];
+        double cg = centers[3 * newCenter + 1];
+        double cb = centers[3 * newCenter + 2];
+
+        parallelForChunks(sampleCount, (chunk, start, end) ->
+        {
+            double sum = 0.0;
+            for (int i = start; i < end; i++)
+            {
+                double dr = samples[3 * i] - cr;
+                double dg = samples[3 * i + 1] - cg;
+                double db = samples[3 * i + 2] - cb;
+                double distanceSquared = dr * dr + dg * dg + db * db;
+
+                if (distanceSquared < minDistanceSquared[i])
+                {
+                    minDistanceSquared[i] = distanceSquared;
+                }
+
+                sum += minDistanceSquared[i];
+            }
+
+            chunkSums[chunk] = sum;
+        });
+    }
+
+    /**
+     * Standard k-means (Lloyd) iterations over all samples until no sample changes cluster or the centers stop moving.
+     * @return The number of iterations performed.
+     */
+    private static int refineFullBatch(int basisCount, float[] samples, int sampleCount, double[] centers, int[] assignments)
+    {
+        int chunkCount = chunkCount(sampleCount);
+
+        // Per-chunk sums of the samples in each cluster: r, g, b, count
+        double[][] chunkSums = new double[chunkCount][4 * basisCount];
+        int[] chunkChanges = new int[chunkCount];
+
+        int iteration = 0;
         boolean changed;
         do
         {
-            Vector4[] sums = IntStream.range(0, colorMap.size())
-                .parallel()
-                .collect(
-                    // Supplier:
-                    () -> IntStream.range(0, basisCount)
-                        .mapToObj(i -> Vector4.ZERO) // Initialize sums to zero.
-                        .toArray(Vector4[]::new),
-                    // Accumulator:
-                    (partialSums, p) ->
+            parallelForChunks(sampleCount, (chunk, start, end) ->
+            {
+                double[] sums = chunkSums[chunk];
+                Arrays.fill(sums, 0.0);
+                int changes = 0;
+
+                for (int i = start; i < end; i++)
+                {
+                    int bMin = nearestCenter(basisCount, centers, samples, i);
+                    if (bMin != assignments[i])
                     {
-                        if (colorMap.getAlpha(p) > 0.0)
-                        {
-                            int bMin = -1;
-
-                            double minDistance = Double.MAX_VALUE;
-
-                            for (int b = 0; b < basisCount; b++)
-                            {
-                                double distance = centers[b].distance(colorMap.getRGB(p));
-                                if (distance < minDistance)
-                                {
-                                    minDistance = distance;
-                                    bMin = b;
-                                }
-                            }
-
-                            partialSums[bMin] = partialSums[bMin]
-                                .plus(new Vector4(colorMap.getRed(p), colorMap.getGreen(p), colorMap.getBlue(p), 1.0f));
-                        }
-                    },
-                    // Combiner:
-                    (sums1, sums2) -> IntStream.range(0, basisCount)
-                        .forEach(b -> sums1[b] = sums1[b].plus(sums2[b])));
+                        assignments[i] = bMin;
+                        changes++;
+                    }
+
+                    sums[4 * bMin] += samples[3 * i];
+                    sums[4 * bMin + 1] += samples[3 * i + 1];
+                    sums[4 * bMin + 2] += samples[3 * i + 2];
+                    sums[4 * bMin + 3] += 1.0;
+                }
+
+                chunkChanges[chunk] = changes;
+            });
+
+            iteration++;
+
+            int totalChanges = 0;
+            for (int changes : chunkChanges)
+            {
+                totalChanges += changes;
+            }
 
             changed = false;
             for (int b = 0; b < basisCount; b++)
             {
-                if (sums[b].w > 0.0)
+                double r = 0.0;
+                double g = 0.0;
+                double bl = 0.0;
+                double count = 0.0;
+                for (double[] sums : chunkSums)
+                {
+                    r += sums[4 * b];
+                    g += sums[4 * b + 1];
+                    bl += sums[4 * b + 2];
+                    count += sums[4 * b + 3];
+                }
+
+                if (count > 0.0)
                 {
-                    Vector3 newCenter = sums[b].getXYZ().dividedBy(sums[b].w);
-                    changed = changed || newCenter.distance(centers[b]) > TOLERANCE;
-                    centers[b] = newCenter;
+                    changed = moveCenter(centers, b, r / count, g / count, bl / count) || changed;
                 }
             }
+
+            // Stop early once the assignments are stable, since the centers can't change after that.
+            changed = changed && totalChanges > 0;
         }
-        while (changed);
+        while (changed && iteration < MAX_ITERATIONS);
 
-        for (int p = 0; p < colorMap.size(); p++)
+        return iteration;
+    }
+
+    /**
+     * Mini-batch k-means (Sculley, 2010): each iteration assigns a random batch of samples in parallel,
+     * then moves each center towards its assigned samples with a per-center learning rate that decays with the number of samples seen.
+     * @return The number of iterations performed.
+     */
+    private int refineMiniBatch(int basisCount, float[] samples, int sampleCount, double[] centers, Random random)
+    {
+        int batchSize = Math.min(miniBatchSize, sampleCount);
+        int[] batch = new int[batchSize];
+        int[] batchAssignments = new int[batchSize];
+        long[] centerCounts = new long[basisCount];
+
+        int iteration = 0;
+        boolean changed = true;
+        while (changed && iteration < miniBatchIterations)
         {
-            // Initialize weights to zero.
-            solutionOut.get(p).zero();
+            for (int j = 0; j < batchSize; j++)
+            {
+                batch[j] = random.nextInt(sampleCount);
+            }
 
-            if (colorMap.get(p).w > 0.0)
+            parallelForChunks(batchSize, (chunk, start, end) ->
             {
-                int bMin = -1;
+                for (int j = start; j < end; j++)
+                {
+                    batchAssignments[j] = nearestCenter(basisCount, centers, samples, batch[j]);
+                }
+            });
 
-                double minDistance = Double.MAX_VALUE;
+            double[] previousCenters = centers.clone();
 
-                for (int b = 0; b < basisCount; b++)
+            // Gradient step; sequential since the learning rate depends on the order of the samples.
+            for (int j = 0; j < batchSize; j++)
+            {
+                int b = batchAssignments[j];
+                centerCounts[b]++;
+                double learningRate = 1.0 / centerCounts[b];
+                for (int c = 0; c < 3; c++)
                 {
-                    double distance = centers[b].distance(colorMap.get(p).getXYZ());
-                    if (distance < minDistance)
-                    {
-                        minDistance = distance;
-                        bMin = b;
-                    }
+                    centers[3 * b + c] += learningRate * (samples[3 * batch[j] + c] - centers[3 * b + c]);
                 }
+            }
 
-                // Set weight to one for the cluster that each pixel belongs to.
-                solutionOut.get(p).set(bMin, 1.0);
+            changed = false;
+            for (int b = 0; b < basisCount; b++)
+            {
+                changed = changed || distance(centers, b, previousCenters[3 * b], previousCenters[3 * b + 1], previousCenters[3 * b + 2]) > TOLERANCE;
             }
+
+            iteration++;
         }
 
-        // weightMapsOut now contain the final clusters.
+        return iteration;
+    }
 
-        // Return the cluster centers.
-        return Arrays.asList(centers);
+    private static void assign(int basisCount, float[] samples, int sampleCount, double[] centers, int[] assignmentsOut)
+    {
+        parallelForChunks(sampleCount, (chunk, start, end) ->
+        {
+            for (int i = start; i < end; i++)
+            {
+                assignmentsOut[i] = nearestCenter(basisCount, centers, samples, i);
+            }
+        });
+    }
+
+    private static int nearestCenter(int basisCount, double[] centers, float[] samples, int i)
+    {
+        float r = samples[3 * i];
+        float g = samples[3 * i + 1];
+        float bl = samples[3 * i + 2];
+
+        int bMin = 0;
+        double minDistanceSquared = Double.MAX_VALUE;
+        for (int b = 0; b < basisCount; b++)
+        {
+            double dr = r - centers[3 * b];
+            double dg = g - centers[3 * b + 1];
+            double db = bl - centers[3 * b + 2];
+            double distanceSquared = dr * dr + dg * dg + db * db;
+            if (distanceSquared < minDistanceSquared)
+            {
+                minDistanceSquared = distanceSquared;
+                bMin = b;
+            }
+        }
+
+        return bMin;
+    }
+
+    /**
+     * @return True if the center moved by more than the tolerance.
+     */
+    private static boolean moveCenter(double[] centers, int b, double r, double g, double bl)
+    {
+        boolean moved = distance(centers, b, r, g, bl) > TOLERANCE;
+        centers[3 * b] = r;
+        centers[3 * b + 1] = g;
+        centers[3 * b + 2] = bl;
+        return moved;
+    }
+
+    private static double distance(double[] centers, int b, double r, double g, double bl)
+    {
+        double dr = r - centers[3 * b];
+        double dg = g - centers[3 * b + 1];
+        double db = bl - centers[3 * b + 2];
+        return Math.sqrt(dr * dr + dg * dg + db * db);
+    }
+
+    private static void setCenter(double[] centers, int b, float[] samples, int i)
+    {
+        centers[3 * b] = samples[3 * i];
+        centers[3 * b + 1] = samples[3 * i + 1];
+        centers[3 * b + 2] = samples[3 * i + 2];
+    }
+
+    private static Vector3 getCenter(double[] centers, int b)
+    {
+        return new Vector3((float) centers[3 * b], (float) centers[3 * b + 1], (float) centers[3 * b + 2]);
+    }
+
+    private static int chunkCount(int count)
+    {
+        return (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    @FunctionalInterface
+    private interface ChunkTask
+    {
+        void run(int chunk, int start, int end);
+    }
+
+    private static void parallelForChunks(int count, ChunkTask task)
+    {
+        IntStream.range(0, chunkCount(count)).parallel()
+            .forEach(chunk -> task.run(chunk, chunk * CHUNK_SIZE, Math.min(count, (chunk + 1) * CHUNK_SIZE)));
     }
 }
@@ -17,6 +17,7 @@ import org.ejml.data.DMatrixRMaj;
 import org.ejml.simple.SimpleMatrix;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.IntConsumer;
@@ -217,6 +218,119 @@ public class LeastSquaresMatrixBuilder
         });
     }
 
+    /**
+     * Build the matrices that can be used to solve the system, using a model that evaluates samples and basis functions
+     * into primitive arrays.  This produces the same matrices as the generic overload but avoids allocating objects
+     * for every sample: each thread reuses its own scratch arrays, and only the upper triangle of each symmetric matrix
+     * is accumulated directly into its backing array and mirrored into the lower triangle once all views are processed.
+     * @param viewStream A stream of data from the GPU, which typically takes the form of a sequence of framebuffer data
+     *                   from each view in the view set.
+     * @param leastSquaresModel The least squares model that defines the basis functions that are being fit to as well
+     *                          as the method for extracting the "ground truth" data from the view stream.
+     * @param sampleValidator A callback that is invoked whenever a valid sample is encountered.
+     * @param <S> The type of the data bundles coming from the graphics stream.
+     */
+    public <S> void buildMatrices(GraphicsStream<S> viewStream, PrimitiveLeastSquaresModel<S> leastSquaresModel,
+        IntConsumer sampleValidator)
+    {
+        buildMatrices(viewStream, leastSquaresModel, sampleValidator, 0, systemCount);
+    }
+
+    public <S> void buildMatrices(GraphicsStream<S> viewStream, PrimitiveLeastSquaresModel<S> leastSquaresModel,
+        IntConsumer sampleValidator, int rangeStart, int rangeEnd)
+    {
+        int dimensions = leastSquaresModel.getSampleDimensions();
+        int stride = weightCount + constraintCount; // row stride of the augmented matrices
+
+        // Zero out all the matrices, except for the constraints.
+        for (int p = 0; p < weightsQTQAugmented.length; p++)
+        {
+            double[] mQTQ = getData(weightsQTQAugmented[p]);
+            double[] mQTr = getData(weightsQTrAugmented[p]);
+
+            for (int i = 0; i < weightCount; i++)
+            {
+                Arrays.fill(mQTQ, i * stride, i * stride + weightCount, 0.0);
+                mQTr[i] = 0.0;
+            }
+        }
+
+        // Scratch space for each thread so that nothing is allocated per sample.
+        ThreadLocal<double[]> sampleScratch = ThreadLocal.withInitial(() -> new double[dimensions]);
+        ThreadLocal<double[]> basisScratch = ThreadLocal.withInitial(() -> new double[weightCount * dimensions]);
+
+        viewCount = viewStream.getCount();
+
+        viewStream.forEach(reflectanceData ->
+        {
+            // Update matrix for each pixel.
+            IntStream.range(rangeStart, rangeEnd).parallel().forEach(p ->
+            {
+                // Skip samples that aren't visible or are otherwise invalid.
+                if (leastSquaresModel.isValid(reflectanceData, p))
+                {
+                    // Any time we have a visible, valid sample, mark that the corresponding texel is valid.
+                    sampleValidator.accept(p);
+
+                    double weight = leastSquaresModel.getSampleWeight(reflectanceData, p);
+
+                    double[] fActual = sampleScratch.get();
+                    double[] basisEval = basisScratch.get();
+                    leastSquaresModel.fillSamples(reflectanceData, p, fActual);
+                    leastSquaresModel.fillBasisFunctions(reflectanceData, p, basisEval);
+
+                    double[] mQTQ = getData(weightsQTQAugmented[p - rangeStart]);
+                    double[] mQTr = getData(weightsQTrAugmented[p - rangeStart]);
+
+                    for (int b1 = 0; b1 < weightCount; b1++)
+                    {
+                        int offset1 = b1 * dimensions;
+
+                        // Store the weighted product of the basis function and the actual sample in the vector.
+                        double dotActual = 0.0;
+                        for (int d = 0; d < dimensions; d++)
+                        {
+                            dotActual += basisEval[offset1 + d] * fActual[d];
+                        }
+                        mQTr[b1] += weight * dotActual;
+
+                        // Store the weighted product of the two basis functions in the upper triangle of the matrix.
+                        int rowStart = b1 * stride;
+                        for (int b2 = b1; b2 < weightCount; b2++)
+                        {
+                            int offset2 = b2 * dimensions;
+                            double dot = 0.0;
+                            for (int d = 0; d < dimensions; d++)
+                            {
+                                dot += basisEval[offset1 + d] * basisEval[offset2 + d];
+                            }
+                            mQTQ[rowStart + b2] += weight * dot;
+                        }
+                    }
+                }
+            });
+        });
+
+        // Mirror the upper triangle into the lower triangle.
+        IntStream.range(0, rangeEnd - rangeStart).parallel().forEach(p ->
+        {
+            double[] mQTQ = getData(weightsQTQAugmented[p]);
+            for (int b1 = 1; b1 < weightCount; b1++)
+            {
+                for (int b2 = 0; b2 < b1; b2++)
+                {
+                    mQTQ[b1 * stride + b2] = mQTQ[b2 * stride + b1];
+                }
+            }
+        });
+    }
+
+    private static double[] getData(SimpleMatrix matrix)
+    {
+        DMatrixRMaj backingMatrix = matrix.getMatrix();
+        return backingMatrix.data;
+    }
+
     public int getViewCount()
     {
         return viewCount;
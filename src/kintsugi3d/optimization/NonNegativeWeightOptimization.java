@@ -12,15 +12,19 @@
 package kintsugi3d.optimization;
 
 import kintsugi3d.builder.resources.project.stream.GraphicsStream;
+import org.ejml.data.DMatrixRMaj;
 import org.ejml.simple.SimpleMatrix;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Collections;
 import java.util.List;
 import java.util.function.*;
-import java.util.stream.IntStream;
 
 public class NonNegativeWeightOptimization
 {
+    private static final Logger LOG = LoggerFactory.getLogger(NonNegativeWeightOptimization.class);
+
     public static final double DEFAULT_TOLERANCE_SCALE = 0.000000000001;
 
     private final LeastSquaresMatrixBuilder matrixBuilder;
@@ -53,6 +57,17 @@ public class NonNegativeWeightOptimization
         matrixBuilder.buildMatrices(viewStream, leastSquaresModel, sampleValidator, rangeStart, rangeEnd);
     }
 
+    public <S> void buildMatrices(GraphicsStream<S> viewStream, PrimitiveLeastSquaresModel<S> leastSquaresModel, IntConsumer sampleValidator)
+    {
+        matrixBuilder.buildMatrices(viewStream, leastSquaresModel, sampleValidator);
+    }
+
+    public <S> void buildMatrices(GraphicsStream<S> viewStream, PrimitiveLeastSquaresModel<S> leastSquaresModel, IntConsumer sampleValidator,
+        int rangeStart, int rangeEnd)
+    {
+        matrixBuilder.buildMatrices(viewStream, leastSquaresModel, sampleValidator, rangeStart, rangeEnd);
+    }
+
     public void dampenWithPreviousSolution(double dampingFactor, IntFunction<IntToDoubleFunction> previousSolution)
     {
         if (dampingFactor > 0.0)
@@ -80,25 +95,49 @@ public class NonNegativeWeightOptimization
     public void optimizeWeights(IntPredicate areWeightsValid, BiConsumer<Integer, SimpleMatrix> weightSolutionConsumer, double toleranceScale,
         int systemCount)
     {
-        for (int p = 0; p < systemCount; p++)
+        optimizeWeights(areWeightsValid, weightSolutionConsumer, toleranceScale, systemCount, null);
+    }
+
+    /**
+     * Solves the weights for every valid system in parallel.
+     * @param areWeightsValid Which systems to solve.
+     * @param weightSolutionConsumer Receives the solution of each system, augmented with the Lagrange multipliers for the constraints.
+     *                               May be called concurrently from multiple threads (but only once for each system).
+     * @param toleranceScale Tolerance relative to the median of each system's right-hand side.
+     * @param systemCount The number of systems to consider.
+     * @param previousSolution If not null, the weights from a previous iteration, used to warm-start each system
+     *                         with the previously non-zero weights as free variables.
+     */
+    public void optimizeWeights(IntPredicate areWeightsValid, BiConsumer<Integer, SimpleMatrix> weightSolutionConsumer, double toleranceScale,
+        int systemCount, IntFunction<IntToDoubleFunction> previousSolution)
+    {
+        BatchedNonNegativeLeastSquares solver =
+            new BatchedNonNegativeLeastSquares(matrixBuilder.weightCount, matrixBuilder.constraintCount);
+
+        boolean[] freeVariables = null;
+        if (previousSolution != null)
         {
-            if (areWeightsValid.test(p))
+            freeVariables = new boolean[systemCount * matrixBuilder.weightCount];
+            for (int p = 0; p < systemCount; p++)
             {
-                // Find the median value in the RHS of the system to help calibrate the tolerance scale.
-                double median = IntStream.range(0, matrixBuilder.weightsQTrAugmented[p].getNumElements())
-                    .mapToDouble(matrixBuilder.weightsQTrAugmented[p]::get)
-                    .sorted()
-                    .skip(matrixBuilder.weightsQTrAugmented[p].getNumElements() / 2)
-                    .filter(x -> x > 0)
-                    .findFirst()
-                    .orElse(1.0);
-
-                // Solve the system.
-                weightSolutionConsumer.accept(p, NonNegativeLeastSquares.solvePremultipliedWithEqualityConstraints(
-                    matrixBuilder.weightsQTQAugmented[p], matrixBuilder.weightsQTrAugmented[p],
-                    median * toleranceScale, matrixBuilder.constraintCount));
+                if (areWeightsValid.test(p))
+                {
+                    IntToDoubleFunction weights = previousSolution.apply(p);
+                    for (int b = 0; b < matrixBuilder.weightCount; b++)
+                    {
+                        freeVariables[p * matrixBuilder.weightCount + b] = weights.applyAsDouble(b) > 0.0;
+                    }
+                }
             }
         }
+
+        // Solve directly on the arrays backing the matrices built for each system.
+        BatchedNonNegativeLeastSquares.Statistics statistics = solver.solve(systemCount, areWeightsValid, toleranceScale, freeVariables,
+            p -> ((DMatrixRMaj) matrixBuilder.weightsQTQAugmented[p].getMatrix()).data,
+            p -> ((DMatrixRMaj) matrixBuilder.weightsQTrAugmented[p].getMatrix()).data,
+            (p, solution) -> weightSolutionConsumer.accept(p, new SimpleMatrix(solution.length, 1, true, solution)));
+
+        LOG.info("Weight optimization: {}", statistics);
     }
 
     public void optimizeWeights(IntPredicate areWeightsValid, BiConsumer<Integer, SimpleMatrix> weightSolutionConsumer)
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.optimization;
+
+/**
+ * A variant of LeastSquaresModel for models whose samples and basis functions are fixed-length vectors of doubles.
+ * Instead of returning newly allocated objects for every sample and basis function, the model writes them into
+ * scratch arrays supplied by the caller, which allows LeastSquaresMatrixBuilder to accumulate the normal equations
+ * without any per-sample allocation.
+ * The inner product between samples and basis functions is always the ordinary dot product over their components.
+ * @param <S> The type of the data bundles coming from the graphics stream.
+ *            Each bundle should contain no more than one valid sample for each system to be solved.
+ */
+public interface PrimitiveLeastSquaresModel<S>
+{
+    /**
+     * Tests if a data bundle contains a valid sample for a particular system.
+     * See LeastSquaresModel.isValid for details.
+     * @param sampleData The bundled input data
+     * @param systemIndex The index of the system to check for a valid sample.
+     * @return True if a valid sample was found for that system; false otherwise.
+     */
+    boolean isValid(S sampleData, int systemIndex);
+
+    /**
+     * Gets the weight that should be used for the sample for a particular system.
+     * It can be assumed that if this function is being evaluated, isValid(sampleData, systemIndex) is true.
+     * @param sampleData The bundled input data
+     * @param systemIndex The index of the system for which to evaluate the weight function.
+     * @return The weight for the sample in the current data bundle for the specified system.
+     */
+    double getSampleWeight(S sampleData, int systemIndex);
+
+    /**
+     * Gets the number of basis functions
+     * @return
+     */
+    int getBasisFunctionCount();
+
+    /**
+     * Gets the number of components in each sample and each evaluated basis function (i.e. 3 for RGB colors).
+     * @return
+     */
+    int getSampleDimensions();
+
+    /**
+     * Writes the sample for a particular system into an array.
+     * It can be assumed that if this function is being evaluated, isValid(sampleData, systemIndex) is true.
+     * @param sampleData The bundled input data
+     * @param systemIndex The index of the system for which to process the samples.
+     * @param destination The array to fill, which has at least getSampleDimensions() elements.
+     */
+    void fillSamples(S sampleData, int systemIndex, double[] destination);
+
+    /**
+     * Evaluates every basis function for the sample of a particular system and writes the results into an array.
+     * Component d of basis function b should be written to index b * getSampleDimensions() + d.
+     * It can be assumed that if this function is being evaluated, isValid(sampleData, systemIndex) is true.
+     * @param sampleData The bundled input data
+     * @param systemIndex The index of the system for which to evaluate basis functions.
+     * @param destination The array to fill, which has at least getBasisFunctionCount() * getSampleDimensions() elements.
+     */
+    void fillBasisFunctions(S sampleData, int systemIndex, double[] destination);
+}
@@ -0,0 +1,479 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+package kintsugi3d.optimization;
+
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.simple.SimpleMatrix;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Partial SVD using a randomized range finder, for when only a few singular values are needed of a large matrix.
+ * The matrix is multiplied by a block of random vectors (with some oversampling beyond the requested rank),
+ * refined by a few power iterations, and orthonormalized; the SVD of the much smaller projected matrix then gives
+ * the leading singular vectors.  Unlike {@link FastPartialSVD}, all singular vectors are found at once,
+ * convergence does not need to be checked, and the input matrix is not modified.
+ * Matrix products are split over blocks of rows or columns and run in parallel.
+ * See Halko, Martinsson and Tropp, "Finding Structure with Randomness" (2011).
+ */
+public final class RandomizedPartialSVD
+{
+    public static final int DEFAULT_OVERSAMPLING = 10;
+    public static final int DEFAULT_POWER_ITERATIONS = 2;
+
+    /**
+     * Number of rows or columns handled by each parallel task in matrix products.
+     */
+    private static final int BLOCK_SIZE = 4096;
+
+    private static final int MAX_JACOBI_SWEEPS = 60;
+
+    private final int rows;
+    private final int cols;
+    private final int rank;
+
+    private final float[] u; // rows x rank, row-major
+    private final float[] v; // cols x rank, row-major
+    private final float[] singularValues;
+
+    private final double frobeniusNorm;
+    private final double residualNorm;
+
+    private RandomizedPartialSVD(int rows, int cols, int rank, float[] u, float[] v, float[] singularValues,
+        double frobeniusNorm, double residualNorm)
+    {
+        this.rows = rows;
+        this.cols = cols;
+        this.rank = rank;
+        this.u = u;
+        this.v = v;
+        this.singularValues = singularValues;
+        this.frobeniusNorm = frobeniusNorm;
+        this.residualNorm = residualNorm;
+    }
+
+    public static RandomizedPartialSVD compute(SimpleMatrix matrix, int singularValueCount, long seed)
+    {
+        return compute(matrix, singularValueCount, DEFAULT_OVERSAMPLING, DEFAULT_POWER_ITERATIONS, seed);
+    }
+
+    /**
+     * @param matrix A single-precision matrix (as used with {@link FastPartialSVD}).
+     * @param singularValueCount The number of singular values and vectors to find.
+     * @param oversampling Number of additional random vectors beyond the requested count; improves accuracy.
+     * @param powerIterations Number of power iterations; improves accuracy when singular values decay slowly.
+     * @param seed Seed for the random vectors, so that results are reproducible.
+     * @return The partial SVD.
+     */
+    public static RandomizedPartialSVD compute(SimpleMatrix matrix, int singularValueCount, int oversampling, int powerIterations, long seed)
+    {
+        FMatrixRMaj data = matrix.getMatrix();
+        return compute(data.data, data.numRows, data.numCols, singularValueCount, oversampling, powerIterations, seed);
+    }
+
+    /**
+     * @param data A row-major matrix.
+     * @param rows The number of rows in the matrix.
+     * @param cols The number of columns in the matrix.
+     * @param singularValueCount The number of singular values and vectors to find.
+     * @param oversampling Number of additional random vectors beyond the requested count; improves accuracy.
+     * @param powerIterations Number of power iterations; improves accuracy when singular values decay slowly.
+     * @param seed Seed for the random vectors, so that results are reproducible.
+     * @return The partial SVD.
+     */
+    public static RandomizedPartialSVD compute(float[] data, int rows, int cols, int singularValueCount,
+        int oversampling, int powerIterations, long seed)
+    {
+        if (singularValueCount <= 0 || oversampling < 0 || powerIterations < 0)
+        {
+            throw new IllegalArgumentException("Singular value count must be positive; oversampling and power iterations must not be negative.");
+        }
+
+        int rank = Math.min(singularValueCount, Math.min(rows, cols));
+        int sampleCount = Math.min(rank + oversampling, Math.min(rows, cols));
+
+        // Random test matrix; seeded for reproducibility.
+        Random random = new Random(seed);
+        double[] omega = new double[cols * sampleCount];
+        for (int i = 0; i < omega.length; i++)
+        {
+            omega[i] = random.nextGaussian();
+        }
+
+        // Range finder: Q = orth(A * omega), refined by power iterations Q = orth(A * orth(A' * Q)).
+        double[] q = new double[rows * sampleCount];
+        double[] z = new double[cols * sampleCount];
+        multiply(data, rows, cols, omega, sampleCount, q);
+        orthonormalize(q, rows, sampleCount, null);
+
+        for (int i = 0; i < powerIterations; i++)
+        {
+            multiplyTransposed(data, rows, cols, q, sampleCount, z);
+            orthonormalize(z, cols, sampleCount, null);
+            multiply(data, rows, cols, z, sampleCount, q);
+            orthonormalize(q, rows, sampleCount, null);
+        }
+
+        // Project: B = Q' A, computed as its transpose Z = A' Q, then factored as Z = Q2 R.
+        multiplyTransposed(data, rows, cols, q, sampleCount, z);
+        double[] r = new double[sampleCount * sampleCount];
+        orthonormalize(z, cols, sampleCount, r);
+
+        // B = R' Q2', so the SVD of the small matrix R' = W S X' gives B = W S (Q2 X)'.
+        double[] rTranspose = new double[sampleCount * sampleCount];
+        for (int i = 0; i < sampleCount; i++)
+        {
+            for (int j = 0; j < sampleCount; j++)
+            {
+                rTranspose[i * sampleCount + j] = r[j * sampleCount + i];
+            }
+        }
+
+        double[] w = new double[sampleCount * sampleCount];
+        double[] x = new double[sampleCount * sampleCount];
+        double[] sigma = new double[sampleCount];
+        jacobiSVD(rTranspose, sampleCount, w, sigma, x);
+
+        float[] u = new float[rows * rank];
+        float[] v = new float[cols * rank];
+        combine(q, rows, sampleCount, w, rank, u);
+        combine(z, cols, sampleCount, x, rank, v);
+
+        float[] singularValues = new float[rank];
+        double capturedSq = 0.0;
+        for (int k = 0; k < rank; k++)
+        {
+            singularValues[k] = (float) sigma[k];
+            capturedSq += sigma[k] * sigma[k];
+        }
+
+        // The rank-k approximation is an orthogonal projection of A, so its residual is exactly
+        // ||A||^2 - sum of the squared singular values found (up to round-off).
+        double normSq = IntStream.range(0, (rows + BLOCK_SIZE - 1) / BLOCK_SIZE).parallel()
+            .mapToDouble(block ->
+            {
+                double sum = 0.0;
+                for (int i = block * BLOCK_SIZE * cols; i < Math.min(rows, (block + 1) * BLOCK_SIZE) * cols; i++)
+                {
+                    sum += (double) data[i] * data[i];
+                }
+                return sum;
+            })
+            .sum();
+
+        return new RandomizedPartialSVD(rows, cols, rank, u, v, singularValues,
+            Math.sqrt(normSq), Math.sqrt(Math.max(0.0, normSq - capturedSq)));
+    }
+
+    /**
+     * out (rows x k) = A (rows x cols) * m (cols x k); parallel over blocks of rows.
+     */
+    private static void multiply(float[] a, int rows, int cols, double[] m, int k, double[] out)
+    {
+        IntStream.range(0, (rows + BLOCK_SIZE - 1) / BLOCK_SIZE).parallel().forEach(block ->
+        {
+            for (int i = block * BLOCK_SIZE; i < Math.min(rows, (block + 1) * BLOCK_SIZE); i++)
+            {
+                Arrays.fill(out, i * k, (i + 1) * k, 0.0);
+                for (int j = 0; j < cols; j++)
+                {
+                    double aij = a[i * cols + j];
+                    if (aij != 0.0)
+                    {
+                        for (int c = 0; c < k; c++)
+                        {
+                            out[i * k + c] += aij * m[j * k + c];
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * out (cols x k) = A' (cols x rows) * m (rows x k); parallel over blocks of columns so that no reduction is needed.
+     */
+    private static void multiplyTransposed(float[] a, int rows, int cols, double[] m, int k, double[] out)
+    {
+        IntStream.range(0, (cols + BLOCK_SIZE - 1) / BLOCK_SIZE).parallel().forEach(block ->
+        {
+            int start = block * BLOCK_SIZE;
+            int end = Math.min(cols, start + BLOCK_SIZE);
+            Arrays.fill(out, start * k, end * k, 0.0);
+
+            for (int i = 0; i < rows; i++)
+            {
+                for (int j = start; j < end; j++)
+                {
+                    double aij = a[i * cols + j];
+                    if (aij != 0.0)
+                    {
+                        for (int c = 0; c < k; c++)
+                        {
+                            out[j * k + c] += aij * m[i * k + c];
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Orthonormalizes the columns of a tall row-major matrix in place using Gram-Schmidt with reorthogonalization.
+     * Columns that are (numerically) linearly dependent on earlier columns are set to zero.
+     * @param r If not null, receives the k x k upper triangular factor such that the original matrix equals the result times r.
+     */
+    private static void orthonormalize(double[] m, int rows, int k, double[] r)
+    {
+        if (r != null)
+        {
+            Arrays.fill(r, 0.0);
+        }
+
+        int blockCount = (rows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+        for (int c = 0; c < k; c++)
+        {
+            int column = c;
+            double originalNorm = Math.sqrt(columnDot(m, rows, k, column, column, blockCount));
+
+            // Two passes of classical Gram-Schmidt are as accurate as modified Gram-Schmidt and parallelize better.
+            for (int pass = 0; pass < 2 && column > 0; pass++)
+            {
+                double[] coefficients = IntStream.range(0, blockCount).parallel()
+                    .mapToObj(block ->
+                    {
+                        double[] partial = new double[column];
+                        for (int i = block * BLOCK_SIZE; i < Math.min(rows, (block + 1) * BLOCK_SIZE); i++)
+                        {
+                            double value = m[i * k + column];
+                            for (int j = 0; j < column; j++)
+                            {
+                                partial[j] += m[i * k + j] * value;
+                            }
+                        }
+                        return partial;
+                    })
+                    .reduce(new double[column], (left, right) ->
+                    {
+                        double[] sum = new double[column];
+                        for (int j = 0; j < column; j++)
+                        {
+                            sum[j] = left[j] + right[j];
+                        }
+                        return sum;
+                    });
+
+                IntStream.range(0, blockCount).parallel().forEach(block ->
+                {
+                    for (int i = block * BLOCK_SIZE; i < Math.min(rows, (block + 1) * BLOCK_SIZE); i++)
+                    {
+                        double value = m[i * k + column];
+                        for (int j = 0; j < column; j++)
+                        {
+                            value -= coefficients[j] * m[i * k + j];
+                        }
+                        m[i * k + column] = value;
+                    }
+                });
+
+                if (r != null)
+                {
+                    for (int j = 0; j < column; j++)
+                    {
+                        r[j * k + column] += coefficients[j];
+                    }
+                }
+            }
+
+            double norm = Math.sqrt(columnDot(m, rows, k, column, column, blockCount));
+            double scale = norm > originalNorm * 1.0e-10 && norm > 0.0 ? 1.0 / norm : 0.0;
+
+            for (int i = 0; i < rows; i++)
+            {
+                m[i * k + column] *= scale;
+            }
+
+            if (r != null)
+            {
+                r[column * k + column] = scale == 0.0 ? 0.0 : norm;
+            }
+        }
+    }
+
+    private static double columnDot(double[] m, int rows, int k, int c1, int c2, int blockCount)
+    {
+        return IntStream.range(0, blockCount).parallel()
+            .mapToDouble(block ->
+            {
+                double sum = 0.0;
+                for (int i = block * BLOCK_SIZE; i < Math.min(rows, (block + 1) * BLOCK_SIZE); i++)
+                {
+                    sum += m[i * k + c1] * m[i * k + c2];
+                }
+                return sum;
+            })
+            .sum();
+    }
+
+    /**
+     * One-sided Jacobi SVD of a small square row-major matrix: a = u * diag(sigma) * v', sorted by decreasing singular value.
+     */
+    private static void jacobiSVD(double[] a, int n, double[] u, double[] sigma, double[] v)
+    {
+        double[] work = Arrays.copyOf(a, a.length);
+        Arrays.fill(v, 0.0);
+        for (int i = 0; i < n; i++)
+        {
+            v[i * n + i] = 1.0;
+        }
+
+        for (int sweep = 0; sweep < MAX_JACOBI_SWEEPS; sweep++)
+        {
+            boolean rotated = false;
+
+            for (int p = 0; p < n - 1; p++)
+            {
+                for (int q = p + 1; q < n; q++)
+                {
+                    double alpha = 0.0;
+                    double beta = 0.0;
+                    double gamma = 0.0;
+                    for (int i = 0; i < n; i++)
+                    {
+                        alpha += work[i * n + p] * work[i * n + p];
+                        beta += work[i * n + q] * work[i * n + q];
+                        gamma += work[i * n + p] * work[i * n + q];
+                    }
+
+                    if (Math.abs(gamma) > 1.0e-15 * Math.sqrt(alpha * beta))
+                    {
+                        rotated = true;
+
+                        double zeta = (beta - alpha) / (2.0 * gamma);
+                        double t = Math.signum(zeta) / (Math.abs(zeta) + Math.sqrt(1.0 + zeta * zeta));
+                        if (zeta == 0.0)
+                        {
+                            t = 1.0;
+                        }
+                        double c = 1.0 / Math.sqrt(1.0 + t * t);
+                        double s = c * t;
+
+                        rotateColumns(work, n, p, q, c, s);
+                        rotateColumns(v, n, p, q, c, s);
+                    }
+                }
+            }
+
+            if (!rotated)
+            {
+                break;
+            }
+        }
+
+        // Column norms are the singular values; normalized columns are the left singular vectors.
+        Integer[] order = new Integer[n];
+        double[] norms = new double[n];
+        for (int j = 0; j < n; j++)
+        {
+            order[j] = j;
+            double sum = 0.0;
+            for (int i = 0; i < n; i++)
+            {
+                sum += work[i * n + j] * work[i * n + j];
+            }
+            norms[j] = Math.sqrt(sum);
+        }
+
+        Arrays.sort(order, (j1, j2) -> Double.compare(norms[j2], norms[j1]));
+
+        double[] vSorted = new double[n * n];
+        for (int k = 0; k < n; k++)
+        {
+            int j = order[k];
+            sigma[k] = norms[j];
+            for (int i = 0; i < n; i++)
+            {
+                u[i * n + k] = norms[j] > 0.0 ? work[i * n + j] / norms[j] : 0.0;
+                vSorted[i * n + k] = v[i * n + j];
+            }
+        }
+
+        System.arraycopy(vSorted, 0, v, 0, v.length);
+    }
+
+    private static void rotateColumns(double[] m, int n, int p, int q, double c, double s)
+    {
+        for (int i = 0; i < n; i++)
+        {
+            double mp = m[i * n + p];
+            double mq = m[i * n + q];
+            m[i * n + p] = c * mp - s * mq;
+            m[i * n + q] = s * mp + c * mq;
+        }
+    }
+
+    /**
+     * out (rows x rank) = basis (rows x k) * coefficients (k x k), keeping only the first rank columns.
+     */
+    private static void combine(double[] basis, int rows, int k, double[] coefficients, int rank, float[] out)
+    {
+        IntStream.range(0, (rows + BLOCK_SIZE - 1) / BLOCK_SIZE).parallel().forEach(block ->
+        {
+            for (int i = block * BLOCK_SIZE; i < Math.min(rows, (block + 1) * BLOCK_SIZE); i++)
+            {
+                for (int c = 0; c < rank; c++)
+                {
+                    double sum = 0.0;
+                    for (int j = 0; j < k; j++)
+                    {
+                        sum += basis[i * k + j] * coefficients[j * k + c];
+                    }
+                    out[i * rank + c] = (float) sum;
+                }
+            }
+        });
+    }
+
+    public SimpleMatrix getU()
+    {
+        return SimpleMatrix.wrap(new FMatrixRMaj(rows, rank, true, u));
+    }
+
+    public SimpleMatrix getV()
+    {
+        return SimpleMatrix.wrap(new FMatrixRMaj(cols, rank, true, v));
+    }
+
+    public float[] getSingularValues()
+    {
+        return Arrays.copyOf(singularValues, rank);
+    }
+
+    /**
+     * @return The Frobenius norm of the difference between the matrix and its approximation U * diag(singular values) * V'.
+     * This is also an upper bound on the spectral norm of the error.
+     */
+    public double getResidualNorm()
+    {
+        return residualNorm;
+    }
+
+    /**
+     * @return The residual norm relative to the Frobenius norm of the matrix.
+     */
+    public double getRelativeError()
+    {
+        return frobeniusNorm == 0.0 ? 0.0 : residualNorm / frobeniusNorm;
+    }
+}
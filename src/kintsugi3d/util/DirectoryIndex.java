@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the file names in recently searched directories, so that looking for a file among many alternative names
+ * costs one directory listing (and then one timestamp check per search) rather than one filesystem call per name.
+ * A listing is reused until the directory's modification time changes.
+ */
+final class DirectoryIndex
+{
+    private static final Logger LOG = LoggerFactory.getLogger(DirectoryIndex.class);
+
+    /**
+     * Directories modified this recently before they were listed may change again without their modification time
+     * changing, since some file systems (FAT, many network shares) only store timestamps to the nearest second or two.
+     * Names missing from such a listing are double-checked against the file system.
+     */
+    private static final long RACY_WINDOW_MILLIS = 2000;
+
+    private static final int MAX_DIRECTORIES = 64;
+
+    /**
+     * Stands in for the (nonexistent) parent of a file system root; every lookup goes to the file system.
+     */
+    private static final Listing UNLISTED = new Listing(0, 0, Set.of(), null);
+
+    /**
+     * Listings by absolute directory, most recently used last; guarded by itself.
+     */
+    private final Map<File, Listing> listings = new LinkedHashMap<>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, Listing> eldest)
+        {
+            return size() > MAX_DIRECTORIES;
+        }
+    };
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * The names of the entries in a directory at the time it was listed.
+     */
+    static final class Listing
+    {
+        private final long modified;
+        private final long listedAt;
+        private final Set<String> names;
+
+        /**
+         * Lower case names if the directory is on a case-insensitive file system; null otherwise.
+         */
+        private final Set<String> lowerCaseNames;
+
+        private Listing(long modified, long listedAt, Set<String> names, Set<String> lowerCaseNames)
+        {
+            this.modified = modified;
+            this.listedAt = listedAt;
+            this.names = names;
+            this.lowerCaseNames = lowerCaseNames;
+        }
+
+        /**
+         * Checks whether a file exists, using the listing where it can be trusted.
+         * @param file A file in the listed directory.
+         * @return true if the file (or a directory with its name) exists, as {@link File#exists()} would report.
+         */
+        boolean exists(File file)
+        {
+            String name = file.getName();
+            if (names.contains(name) || lowerCaseNames != null && lowerCaseNames.contains(name.toLowerCase(Locale.ROOT)))
+            {
+                return true;
+            }
+            else
+            {
+                // The directory may have changed since it was listed without its timestamp changing.
+                return listedAt - modified < RACY_WINDOW_MILLIS && file.exists();
+            }
+        }
+    }
+
+    /**
+     * Gets the listing of a directory, listing it again if it has been modified since it was last listed.
+     * @param directory The directory; it does not need to exist.
+     *                  If null, the listing returned will check everything against the file system.
+     * @return The listing, which is empty if the directory does not exist.
+     */
+    Listing getListing(File directory)
+    {
+        if (directory == null)
+        {
+            return UNLISTED;
+        }
+
+        File key = directory.getAbsoluteFile();
+        long modified = key.lastModified();
+
+        synchronized (listings)
+        {
+            Listing listing = listings.get(key);
+            if (listing != null && listing.modified == modified)
+            {
+                hitCount.incrementAndGet();
+                return listing;
+            }
+        }
+
+        missCount.incrementAndGet();
+        Listing listing = list(key, modified);
+
+        synchronized (listings)
+        {
+            listings.put(key, listing);
+        }
+
+        return listing;
+    }
+
+    long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    void clear()
+    {
+        synchronized (listings)
+        {
+            listings.clear();
+        }
+    }
+
+    private static Listing list(File directory, long modified)
+    {
+        long listedAt = System.currentTimeMillis();
+        String[] entries = directory.list();
+
+        if (entries == null)
+        {
+            // Doesn't exist (yet) or isn't a directory.
+            return new Listing(modified, listedAt, Set.of(), null);
+        }
+
+        Set<String> names = new HashSet<>(Arrays.asList(entries));
+
+        Set<String> lowerCaseNames = null;
+        if (isCaseInsensitive(directory, names))
+        {
+            lowerCaseNames = new HashSet<>(names.size() * 4 / 3 + 1);
+            for (String name : names)
+            {
+                lowerCaseNames.add(name.toLowerCase(Locale.ROOT));
+            }
+        }
+
+        LOG.debug("Listed {} entries in {}", names.size(), directory);
+        return new Listing(modified, listedAt, names, lowerCaseNames);
+    }
+
+    /**
+     * Tests whether a directory is on a case-insensitive file system by looking up one of its entries
+     * with different capitalization.
+     */
+    private static boolean isCaseInsensitive(File directory, Set<String> names)
+    {
+        for (String name : names)
+        {
+            String otherCase = name.toUpperCase(Locale.ROOT);
+            if (otherCase.equals(name))
+            {
+                otherCase = name.toLowerCase(Locale.ROOT);
+            }
+
+            if (!otherCase.equals(name))
+            {
+                // If both names are listed, the file system must be case-sensitive.
+                return !names.contains(otherCase) && new File(directory, otherCase).exists();
+            }
+        }
+
+        // No names with letters to test; it doesn't matter since lookups will be by exact name in any case.
+        return false;
+    }
+}
@@ -11,16 +11,31 @@
 package kintsugi3d.util;
 
 import kintsugi3d.gl.vecmath.DoubleVector3;
-import kintsugi3d.util.RadianceImageLoader.Image;
+import kintsugi3d.util.RadianceImageLoader.RGBEImage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileFilter;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.stream.IntStream;
 
 /**
  *
  */
 public final class EnvironmentMap {
+  private static final Logger LOG = LoggerFactory.getLogger(EnvironmentMap.class);
+
   public static final int DIR_SIDE = 32;
   public static final int NX = 3;
   public static final int NY = 4;
@@ -35,10 +50,27 @@ public final class EnvironmentMap {
   public static final int[] SPEC_SIDE = {
       32, 32, 32, 32, 64, 64, 64, 64, 64, 64, 128, 128, 128, -1
   };
-  private final float[][] diff;
-  private final float[][] env;
+  /**
+   * .env files starting with this (little-endian) value use the versioned layout described in {@link #write(File)};
+   * anything else is read as the original big-endian layout.
+   */
+  private static final int ENV_FILE_MAGIC = 0x4E45334B; // "K3EN"
+  private static final int ENV_FILE_VERSION = 2;
+  private static final int ENV_FILE_HEADER_SIZE = 128;
+  private static final int ENV_FILE_FLAG_PREFILTERED = 1;
+
+  // When loaded from a version 2 .env file, these are only allocated (and copied from the mapped file)
+  // the first time they are needed; until then they are null.
+  private float[][] diff;
+  private float[][] env;
   private final int side;
-  private final float[][][] spec;
+  private float[][][] spec;
+  private boolean prefiltered;
+
+  // Memory-mapped regions of a version 2 .env file (little-endian), one per face; null if not loaded from one.
+  private ByteBuffer[] mappedEnv;
+  private ByteBuffer[] mappedDiff;
+  private ByteBuffer[][] mappedSpec;
 
   //private final List<StructuredImportanceSampler.Zone> zones;
 
@@ -61,12 +93,37 @@ public final class EnvironmentMap {
     //zones = new ArrayList<>();
   }
 
+  private EnvironmentMap(int side, ByteBuffer[] mappedEnv, ByteBuffer[] mappedDiff, ByteBuffer[][] mappedSpec,
+      boolean prefiltered) {
+    this.side = side;
+    this.mappedEnv = mappedEnv;
+    this.mappedDiff = mappedDiff;
+    this.mappedSpec = mappedSpec;
+    this.prefiltered = prefiltered;
+  }
+
+  private static int specSide(int level, int side) {
+    return SPEC_SIDE[level] < 0 ? side : SPEC_SIDE[level];
+  }
+
+  public static EnvironmentMap createFromHDRFile(File hdrFile) throws IOException {
+    return createFromHDRFile(hdrFile, false);
+  }
+
+  /**
+   * @param computeIrradiance Whether to also compute the diffuse and specular irradiance maps
+   *                          (see {@link #computeDiffuseIrradiance()} and {@link #computeSpecularIrradiance()}).
+   */
   public static EnvironmentMap createFromHDRFile(
-      File hdrFile/*, boolean computeIrradiance, boolean computeStructuredImportance*/) throws
+      File hdrFile, boolean computeIrradiance/*, boolean computeStructuredImportance*/) throws
       IOException {
-    Image hdr;
+    // Keep the panorama in RGBE form while resampling it; expanding it to floats would triple its size.
+    RGBEImage hdr;
     try (BufferedInputStream stream = new BufferedInputStream(new FileInputStream(hdrFile))) {
-      hdr = new RadianceImageLoader().read(stream);
+      hdr = new RadianceImageLoader().readRGBE(stream);
+    }
+    if (hdr == null) {
+      throw new IOException("Not a Radiance HDR file: " + hdrFile);
     }
 
 //    boolean isPanorama = false;
@@ -85,11 +142,11 @@ public final class EnvironmentMap {
       convertPanorama(map.side, map.env, hdr);
     }
 
-//    if (computeIrradiance) {
-//      map.computeDiffuseIrradiance();
-//      map.computeSpecularIrradiance();
-//    }
-//
+    if (computeIrradiance) {
+      map.computeDiffuseIrradiance();
+      map.computeSpecularIrradiance();
+    }
+
 //    if (computeStructuredImportance) {
 //      if (isPanorama) {
 //        map.computeStructuredImportanceFromPano(hdr);
@@ -102,6 +159,13 @@ public final class EnvironmentMap {
   }
 
   public static EnvironmentMap loadFromEnvFile(File cachedData) throws IOException {
+    try (FileChannel channel = FileChannel.open(cachedData.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+      if (channel.size() >= ENV_FILE_HEADER_SIZE && channel.read(magic, 0) == 4 && magic.getInt(0) == ENV_FILE_MAGIC) {
+        return mapEnvFile(channel);
+      }
+    }
+
     try (
         DataInputStream in = new DataInputStream(
             new BufferedInputStream(new FileInputStream(cachedData)))) {
@@ -120,6 +184,8 @@ public final class EnvironmentMap {
       for (int i = 0; i < 6; i++) {
         for (int j = 0; j < map.diff[i].length; j++) {
           map.diff[i][j] = in.readFloat();
+          // .env files written before prefiltering was implemented contain only zeros here.
+          map.prefiltered |= map.diff[i][j] != 0.0f;
         }
       }
 
@@ -146,6 +212,81 @@ public final class EnvironmentMap {
     }
   }
 
+  private static EnvironmentMap mapEnvFile(FileChannel channel) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(ENV_FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    while (header.hasRemaining()) {
+      if (channel.read(header, header.position()) < 0) {
+        throw new IOException("Unexpected end of .env header");
+      }
+    }
+
+    int version = header.getInt(4);
+    if (version != ENV_FILE_VERSION) {
+      throw new IOException("Unsupported .env version: " + version);
+    }
+    int flags = header.getInt(8);
+    int side = header.getInt(12);
+    if (header.getInt(16) != DIR_SIDE || header.getInt(20) != SPEC_COUNT) {
+      throw new IOException("Unexpected diffuse irradiance size or specular level count");
+    }
+    for (int m = 0; m < SPEC_COUNT; m++) {
+      if (header.getInt(24 + 4 * m) != specSide(m, side)) {
+        throw new IOException("Unexpected size of specular level " + m);
+      }
+    }
+
+    // Map each face separately; a single mapping is limited to 2 GB, which large environments can exceed.
+    long[] offset = { ENV_FILE_HEADER_SIZE };
+    ByteBuffer[] mappedEnv = mapFaces(channel, offset, side);
+    ByteBuffer[] mappedDiff = mapFaces(channel, offset, DIR_SIDE);
+    ByteBuffer[][] mappedSpec = new ByteBuffer[SPEC_COUNT][];
+    for (int m = 0; m < SPEC_COUNT; m++) {
+      mappedSpec[m] = mapFaces(channel, offset, specSide(m, side));
+    }
+
+    if (channel.size() < offset[0]) {
+      throw new IOException("Truncated .env file");
+    }
+
+    return new EnvironmentMap(side, mappedEnv, mappedDiff, mappedSpec, (flags & ENV_FILE_FLAG_PREFILTERED) != 0);
+  }
+
+  private static ByteBuffer[] mapFaces(FileChannel channel, long[] offset, int faceSide) throws IOException {
+    long faceBytes = 12L * faceSide * faceSide;
+    ByteBuffer[] faces = new ByteBuffer[6];
+    for (int i = 0; i < 6; i++) {
+      // The mapping stays valid after the channel is closed.
+      faces[i] = channel.map(MapMode.READ_ONLY, offset[0], faceBytes).order(ByteOrder.LITTLE_ENDIAN);
+      offset[0] += faceBytes;
+    }
+    return faces;
+  }
+
+  private static float[][] copyFaces(ByteBuffer[] faces) {
+    float[][] copy = new float[6][];
+    IntStream.range(0, 6).parallel().forEach(i -> {
+      copy[i] = new float[faces[i].capacity() / 4];
+      faces[i].duplicate().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(copy[i]);
+    });
+    return copy;
+  }
+
+  private synchronized void ensureEnvironment() {
+    if (env == null) {
+      env = copyFaces(mappedEnv);
+    }
+  }
+
+  private synchronized void ensureIrradiance() {
+    if (diff == null) {
+      diff = copyFaces(mappedDiff);
+      spec = new float[SPEC_COUNT][][];
+      for (int m = 0; m < SPEC_COUNT; m++) {
+        spec[m] = copyFaces(mappedSpec[m]);
+      }
+    }
+  }
+
   public static EnvironmentMap loadFromFile(
       File data/*, boolean computeIrradiance, boolean computeStructuredImportance*/) throws
       IOException {
@@ -160,6 +301,85 @@ public final class EnvironmentMap {
     }
   }
 
+  /**
+   * Loads an HDR environment, caching the cube map converted from it, along with its diffuse and specular irradiance maps,
+   * as an .env file the first time it is loaded, so that later loads of the same (unmodified) file skip decoding,
+   * resampling and prefiltering the HDR image.
+   * Each HDR file gets its own entry directory within the cache directory (see {@link #getCacheEntryDirectory});
+   * entries for files that have since changed are left for cache cleanup to remove.
+   * If the cache cannot be read or written, the environment is loaded from the HDR file as usual.
+   */
+  public static EnvironmentMap loadCached(File hdrFile, File cacheDirectory) throws IOException {
+    File entryDirectory = getCacheEntryDirectory(hdrFile, cacheDirectory);
+    String name = hdrFile.getName();
+    File cacheFile = new File(entryDirectory, name.substring(0, Math.max(0, name.lastIndexOf('.'))) + ".env");
+
+    if (cacheFile.isFile()) {
+      try {
+        EnvironmentMap cached = loadFromEnvFile(cacheFile);
+
+        if (cached.isPrefiltered()) {
+          // Touch the entry so that age-based cache cleanup sees it as recently used.
+          entryDirectory.setLastModified(System.currentTimeMillis());
+          return cached;
+        }
+
+        LOG.info("Cached environment map {} has no irradiance maps; regenerating it.", cacheFile);
+      } catch (IOException e) {
+        LOG.warn("Failed to read cached environment map {}; regenerating it.", cacheFile, e);
+      }
+    }
+
+    EnvironmentMap map = createFromHDRFile(hdrFile, true);
+
+    // Write to a temporary file first so that an interrupted write never leaves a truncated cache behind.
+    File tempFile = new File(entryDirectory, cacheFile.getName() + ".tmp");
+    try {
+      entryDirectory.mkdirs();
+      map.write(tempFile);
+      Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      LOG.warn("Failed to cache environment map {}", cacheFile, e);
+      tempFile.delete();
+      return map;
+    }
+
+    try {
+      // Use the mapped file from now on so that the faces are only copied onto the heap when needed.
+      return loadFromEnvFile(cacheFile);
+    } catch (IOException e) {
+      LOG.warn("Failed to read back cached environment map {}", cacheFile, e);
+      return map;
+    }
+  }
+
+  /**
+   * Gets the directory within a cache directory that {@link #loadCached} uses for an HDR file.
+   * The directory is named after a SHA-256 digest of the file's absolute path, size and modification time,
+   * so an entry is never reused for a file that has changed since it was cached.
+   * @param hdrFile The HDR file.
+   * @param cacheDirectory The cache directory.
+   * @return The entry directory, which may not exist yet.
+   */
+  public static File getCacheEntryDirectory(File hdrFile, File cacheDirectory) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256.
+      throw new IllegalStateException(e);
+    }
+
+    digest.update(String.join("\n", hdrFile.getAbsolutePath(), Long.toString(hdrFile.length()),
+        Long.toString(hdrFile.lastModified())).getBytes(StandardCharsets.UTF_8));
+
+    StringBuilder hex = new StringBuilder(64);
+    for (byte b : digest.digest()) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return new File(cacheDirectory, hex.toString());
+  }
+
   public static void main(String... args) throws IOException {
     JFileChooser fc = new JFileChooser();
     fc.setFileSelectionMode(JFileChooser.FILES_ONLY);
@@ -188,7 +408,7 @@ public final class EnvironmentMap {
         baseName = nameSansExt;
       }
 
-      EnvironmentMap toCache = loadFromFile(in/*, true, true*/);
+      EnvironmentMap toCache = createFromHDRFile(in, true/*, true*/);
 
       File out = new File(in.getParent() + File.separator + baseName + ".env");
       toCache.write(out);
@@ -367,66 +587,55 @@ public final class EnvironmentMap {
     return new DoubleVector3(Math.cos(lon) * Math.cos(lat), Math.sin(lat), Math.sin(lon) * Math.cos(lat));
   }
 
-//  public void computeDiffuseIrradiance() {
-//    computeDiffuseIrradiance(new Convolution.AshikhminDiffuse());
-//  }
-//
-//  public void computeDiffuseIrradiance(Convolution.ConvolutionFunction func) {
-//    buildEnvSHSamplesMaybe();
-//    Convolution conv = new Convolution(func, DIR_SIDE, diff);
-//    conv.convolveSH(envSH, NUM_SH_BANDS);
-//    //                conv.convolve(env, side);
-//  }
-//
-//  public TextureCubeMap computeOneSpecularIrradiance(
-//      Framework framework, Convolution.ConvolutionFunction func) {
-//    buildEnvSHSamplesMaybe();
-//    Convolution conv = new Convolution(func, SPEC_SIDE[0], spec[0]);
-//    conv.convolveSH(envSH, NUM_SH_BANDS);
-//    //        conv.convolve(env, side);
-//
-//    TextureCubeMapBuilder cmb = framework.newTextureCubeMap();
-//    cmb.side(SPEC_SIDE[0]).wrap(Sampler.WrapMode.CLAMP).interpolated();
-//    CubeImageData<? extends TextureBuilder.BasicColorData> data = cmb.rgb();
-//    data.positiveX(0).from(spec[0][PX]);
-//    data.positiveY(0).from(spec[0][PY]);
-//    data.positiveZ(0).from(spec[0][PZ]);
-//    data.negativeX(0).from(spec[0][NX]);
-//    data.negativeY(0).from(spec[0][NY]);
-//    data.negativeZ(0).from(spec[0][NZ]);
-//
-//    return cmb.build();
-//  }
-//
-//  public void computeSpecularIrradiance() {
-//    buildEnvSHSamplesMaybe();
-//    for (int i = 1; i < spec.length - 1; i++) {
-//      double exp = SPEC_EXP[i];
-//      int s = SPEC_SIDE[i];
-//      Convolution conv = new Convolution(
-//          new Convolution.AshikhminIsotropicSpecular(exp), s, spec[i]);
-//      conv.convolveSH(envSH, NUM_SH_BANDS);
-//    }
-//
-//    // compute environment map scaled by solid angle, which approximates the highest specularity
-//    float[][] scaled = spec[SPEC_COUNT - 1];
-//    for (int i = 0; i < 6; i++) {
-//      for (int y = 0; y < side; y++) {
-//        for (int x = 0; x < side; x++) {
-//          float dsa = (float) texelCoordSolidAngle(x, y, side);
-//          scaled[i][y * side * 3 + x * 3] = dsa * env[i][y * side * 3 + x * 3];
-//          scaled[i][y * side * 3 + x * 3 + 1] = dsa * env[i][y * side * 3 + x * 3 + 1];
-//          scaled[i][y * side * 3 + x * 3 + 2] = dsa * env[i][y * side * 3 + x * 3 + 2];
-//        }
-//      }
-//    }
-//
-//    // duplicate 0th level from 1st
-//    for (int i = 0; i < 6; i++) {
-//      System.arraycopy(spec[1][i], 0, spec[0][i], 0, spec[1][i].length);
-//    }
-//  }
-//
+  /**
+   * Fills the diffuse irradiance cube map (irradiance divided by pi, at {@link #DIR_SIDE} resolution)
+   * from a spherical harmonic projection of the environment.
+   */
+  public void computeDiffuseIrradiance() {
+    ensureEnvironment();
+    ensureIrradiance();
+    EnvironmentPrefilter.computeDiffuseIrradiance(env, side, diff);
+    prefiltered = true;
+  }
+
+  /**
+   * Fills the specular cube maps for each entry of {@link #SPEC_EXP}.
+   * Levels with a positive exponent are the environment convolved with a normalized Phong lobe of that exponent.
+   * The last level is the environment scaled by texel solid angle, which approximates the highest specularity,
+   * and the first level duplicates the second.
+   */
+  public void computeSpecularIrradiance() {
+    long start = System.nanoTime();
+    ensureEnvironment();
+    ensureIrradiance();
+
+    float[][][] mips = EnvironmentPrefilter.buildMipChain(env, side);
+    int[] mipSides = EnvironmentPrefilter.mipSides(mips);
+    for (int m = 1; m < SPEC_COUNT - 1; m++) {
+      EnvironmentPrefilter.computeSpecularIrradiance(mips, mipSides, SPEC_EXP[m], spec[m]);
+    }
+
+    // compute environment map scaled by solid angle, which approximates the highest specularity
+    float[][] scaled = spec[SPEC_COUNT - 1];
+    for (int i = 0; i < 6; i++) {
+      for (int y = 0; y < side; y++) {
+        for (int x = 0; x < side; x++) {
+          float dsa = (float) texelCoordSolidAngle(x, y, side);
+          scaled[i][y * side * 3 + x * 3] = dsa * env[i][y * side * 3 + x * 3];
+          scaled[i][y * side * 3 + x * 3 + 1] = dsa * env[i][y * side * 3 + x * 3 + 1];
+          scaled[i][y * side * 3 + x * 3 + 2] = dsa * env[i][y * side * 3 + x * 3 + 2];
+        }
+      }
+    }
+
+    // duplicate 0th level from 1st
+    for (int i = 0; i < 6; i++) {
+      System.arraycopy(spec[1][i], 0, spec[0][i], 0, spec[1][i].length);
+    }
+
+    LOG.info("Specular irradiance computed in {} ms", (System.nanoTime() - start) / 1_000_000);
+  }
+
 //  public TextureCubeMap createDiffuseMap(Framework framework) {
 //    TextureCubeMapBuilder cmb = framework.newTextureCubeMap();
 //    cmb.side(DIR_SIDE).wrap(Sampler.WrapMode.CLAMP).interpolated();
@@ -544,50 +753,99 @@ public final class EnvironmentMap {
 //  }
 
   public float[][] getData() {
+    ensureEnvironment();
     return env;
   }
 
+  /**
+   * Gets a face of the environment as a buffer that can be uploaded without copying,
+   * if this map was loaded from a memory-mapped .env file in the platform's native byte order.
+   * @param face The index of the face (i.e. {@link #PX}).
+   * @return The RGB floats of the face, or null if the face is only available through {@link #getData()}.
+   */
+  public ByteBuffer getMappedFace(int face) {
+    if (mappedEnv == null || ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+      return null;
+    }
+    return mappedEnv[face].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
   public int getSide() {
     return side;
   }
 
+  /**
+   * @return The diffuse irradiance cube map faces, each {@link #DIR_SIDE} texels square.
+   */
+  public float[][] getDiffuseIrradiance() {
+    ensureIrradiance();
+    return diff;
+  }
+
+  /**
+   * @return The specular cube maps, indexed by level (see {@link #SPEC_EXP}) and then by face.
+   */
+  public float[][][] getSpecularIrradiance() {
+    ensureIrradiance();
+    return spec;
+  }
+
+  /**
+   * @return Whether the diffuse and specular cube maps have been computed or loaded.
+   */
+  public boolean isPrefiltered() {
+    return prefiltered;
+  }
+
 //  public List<StructuredImportanceSampler.Zone> getZones() {
 //    return zones;
 //  }
 
+  /**
+   * Writes this map as a version 2 .env file: a 128-byte header (magic, version, flags, cube side,
+   * diffuse side, specular level count, and the side of each specular level, as little-endian ints, zero padded)
+   * followed by little-endian RGB floats for the six environment faces, the six diffuse irradiance faces,
+   * and then the six faces of each specular level, in that order (faces ordered PX, PY, PZ, NX, NY, NZ).
+   * The layout allows the file to be memory-mapped and the faces to be used in place.
+   */
   public void write(File data) throws IOException {
-    try (
-        DataOutputStream out = new DataOutputStream(
-            new BufferedOutputStream(new FileOutputStream(data)))) {
-      out.writeInt(side);
-      for (int i = 0; i < 6; i++) {
-        for (int j = 0; j < env[i].length; j++) {
-          out.writeFloat(env[i][j]);
-        }
+    ensureEnvironment();
+    ensureIrradiance();
+
+    try (FileChannel channel = FileChannel.open(data.toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer header = ByteBuffer.allocate(ENV_FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(ENV_FILE_MAGIC)
+          .putInt(ENV_FILE_VERSION)
+          .putInt(prefiltered ? ENV_FILE_FLAG_PREFILTERED : 0)
+          .putInt(side)
+          .putInt(DIR_SIDE)
+          .putInt(SPEC_COUNT);
+      for (int m = 0; m < SPEC_COUNT; m++) {
+        header.putInt(specSide(m, side));
       }
+      header.clear();
+      writeFully(channel, header);
 
-      out.writeInt(DIR_SIDE);
-      for (int i = 0; i < 6; i++) {
-        for (int j = 0; j < diff[i].length; j++) {
-          out.writeFloat(diff[i][j]);
-        }
+      writeFaces(channel, env);
+      writeFaces(channel, diff);
+      for (float[][] aSpec : spec) {
+        writeFaces(channel, aSpec);
       }
+    }
+  }
 
-      for (float[][] aSpec : spec)
-      {
-        for (int i = 0; i < 6; i++)
-        {
-          for (int j = 0; j < aSpec[i].length; j++)
-          {
-            out.writeFloat(aSpec[i][j]);
-          }
-        }
-      }
+  private static void writeFaces(FileChannel channel, float[][] faces) throws IOException {
+    for (float[] face : faces) {
+      ByteBuffer buffer = ByteBuffer.allocate(4 * face.length).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.asFloatBuffer().put(face);
+      writeFully(channel, buffer);
+    }
+  }
 
-//      out.writeInt(zones.size());
-//      for (StructuredImportanceSampler.Zone z : zones) {
-//        z.write(out);
-//      }
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
     }
   }
 
@@ -635,7 +893,7 @@ public final class EnvironmentMap {
 
   // FIXME avery says I may have mirrored all the x images (so technically still a valid seamless environment
   // but won't be correct if i'm comparing it to the real place)
-  private static void convertCross(int side, float[][] env, Image cross) {
+  private static void convertCross(int side, float[][] env, RGBEImage cross) {
     // px
     for (int y = 0; y < side; y++) {
       for (int x = 0; x < side; x++) {
@@ -643,10 +901,10 @@ public final class EnvironmentMap {
         int crossY = 3 * side - y - 1;
 
         int faceOffset = 3 * y * side + 3 * x;
-        int crossOffset = 3 * crossY * cross.width + 3 * crossX;
-        env[PX][faceOffset] = cross.data[crossOffset];
-        env[PX][faceOffset + 1] = cross.data[crossOffset + 1];
-        env[PX][faceOffset + 2] = cross.data[crossOffset + 2];
+        int crossPixel = crossY * cross.width + crossX;
+        env[PX][faceOffset] = cross.get(crossPixel, 0);
+        env[PX][faceOffset + 1] = cross.get(crossPixel, 1);
+        env[PX][faceOffset + 2] = cross.get(crossPixel, 2);
       }
     }
 
@@ -657,10 +915,10 @@ public final class EnvironmentMap {
         int crossY = 3 * side + y; // flip y axis
 
         int faceOffset = 3 * y * side + 3 * x;
-        int crossOffset = 3 * crossY * cross.width + 3 * crossX;
-        env[PY][faceOffset] = cross.data[crossOffset];
-        env[PY][faceOffset + 1] = cross.data[crossOffset + 1];
-        env[PY][faceOffset + 2] = cross.data[crossOffset + 2];
+        int crossPixel = crossY * cross.width + crossX;
+        env[PY][faceOffset] = cross.get(crossPixel, 0);
+        env[PY][faceOffset + 1] = cross.get(crossPixel, 1);
+        env[PY][faceOffset + 2] = cross.get(crossPixel, 2);
       }
     }
 
@@ -671,10 +929,10 @@ public final class EnvironmentMap {
         int crossY = y;
 
         int faceOffset = 3 * y * side + 3 * x;
-        int crossOffset = 3 * crossY * cross.width + 3 * crossX;
-        env[PZ][faceOffset] = cross.data[crossOffset];
-        env[PZ][faceOffset + 1] = cross.data[crossOffset + 1];
-        env[PZ][faceOffset + 2] = cross.data[crossOffset + 2];
+        int crossPixel = crossY * cross.width + crossX;
+        env[PZ][faceOffset] = cross.get(crossPixel, 0);
+        env[PZ][faceOffset + 1] = cross.get(crossPixel, 1);
+        env[PZ][faceOffset + 2] = cross.get(crossPixel, 2);
       }
     }
 
@@ -685,10 +943,10 @@ public final class EnvironmentMap {
         int crossY = 3 * side - y - 1;
 
         int faceOffset = 3 * y * side + 3 * x;
-        int crossOffset = 3 * crossY * cross.width + 3 * crossX;
-        env[NX][faceOffset] = cross.data[crossOffset];
-        env[NX][faceOffset + 1] = cross.data[crossOffset + 1];
-        env[NX][faceOffset + 2] = cross.data[crossOffset + 2];
+        int crossPixel = crossY * cross.width + crossX;
+        env[NX][faceOffset] = cross.get(crossPixel, 0);
+        env[NX][faceOffset + 1] = cross.get(crossPixel, 1);
+        env[NX][faceOffset + 2] = cross.get(crossPixel, 2);
       }
     }
 
@@ -699,10 +957,10 @@ public final class EnvironmentMap {
         int crossY = side + y;
 
         int faceOffset = 3 * y * side + 3 * x;
-        int crossOffset = 3 * crossY * cross.width + 3 * crossX;
-        env[NY][faceOffset] = cross.data[crossOffset];
-        env[NY][faceOffset + 1] = cross.data[crossOffset + 1];
-        env[NY][faceOffset + 2] = cross.data[crossOffset + 2];
+        int crossPixel = crossY * cross.width + crossX;
+        env[NY][faceOffset] = cross.get(crossPixel, 0);
+        env[NY][faceOffset + 1] = cross.get(crossPixel, 1);
+        env[NY][faceOffset + 2] = cross.get(crossPixel, 2);
       }
     }
 
@@ -713,68 +971,49 @@ public final class EnvironmentMap {
         int crossY = 3 * side - y - 1;
 
         int faceOffset = 3 * y * side + 3 * x;
-        int crossOffset = 3 * crossY * cross.width + 3 * crossX;
-        env[NZ][faceOffset] = cross.data[crossOffset];
-        env[NZ][faceOffset + 1] = cross.data[crossOffset + 1];
-        env[NZ][faceOffset + 2] = cross.data[crossOffset + 2];
+        int crossPixel = crossY * cross.width + crossX;
+        env[NZ][faceOffset] = cross.get(crossPixel, 0);
+        env[NZ][faceOffset + 1] = cross.get(crossPixel, 1);
+        env[NZ][faceOffset + 2] = cross.get(crossPixel, 2);
       }
     }
   }
 
-  private static void convertPanorama(int side, float[][] env, Image pano) {
+  private static void convertPanorama(int side, float[][] env, RGBEImage pano) {
     // assumes equirectangular projection
-    DoubleVector3 dir = DoubleVector3.ZERO;
-    double[] p = new double[2];
-    for (int i = 0; i < 6; i++) {
-      for (int y = 0; y < side; y++) {
-        for (int x = 0; x < side; x++) {
-          dir = toVectorFromCubeMap(i, x, y, side);
-          // geographic lat/lon spherical coordinates uses elevation angle from xy plane
-
-          toPanoramaCoord(dir, pano.width, pano.height, p);
-
-          double px = p[0];
-          double py = p[1];
-          double ax = px - Math.floor(px);
-          double ay = py - Math.floor(py);
-
-          int o1 =
-              3 * (int) (Math.max(0, Math.min(pano.height - 1, Math.floor(py))) * pano.width + Math
-                  .max(0, Math.min(pano.width - 1, Math.floor(px))));
-          int o2 =
-              3 * (int) (Math.max(0, Math.min(pano.height - 1, Math.floor(py))) * pano.width + Math
-                  .max(0, Math.min(pano.width - 1, Math.floor(px + 1))));
-          int o3 =
-              3 * (int) (Math.max(0, Math.min(pano.height - 1, Math.floor(py + 1))) * pano.width
-                  + Math.max(0, Math.min(pano.width - 1, Math.floor(px))));
-          int o4 =
-              3 * (int) (Math.max(0, Math.min(pano.height - 1, Math.floor(py + 1))) * pano.width
-                  + Math.max(0, Math.min(pano.width - 1, Math.floor(px + 1))));
-
-          int faceIndex = 3 * (y * side + x);
-          env[i][faceIndex] = (float) (
-              (1.0 - ay) * ((1.0 - ax) * pano.data[o1] + ax * pano.data[o2]) + ay * (
-                  (1.0 - ax) * pano.data[o3] + ax * pano.data[o4]));
-          faceIndex++;
-          o1++;
-          o2++;
-          o3++;
-          o4++;
-          env[i][faceIndex] = (float) (
-              (1.0 - ay) * ((1.0 - ax) * pano.data[o1] + ax * pano.data[o2]) + ay * (
-                  (1.0 - ax) * pano.data[o3] + ax * pano.data[o4]));
-          faceIndex++;
-          o1++;
-          o2++;
-          o3++;
-          o4++;
-          env[i][faceIndex] = (float) (
-              (1.0 - ay) * ((1.0 - ax) * pano.data[o1] + ax * pano.data[o2]) + ay * (
-                  (1.0 - ax) * pano.data[o3] + ax * pano.data[o4]));
-          faceIndex++;
+    IntStream.range(0, 6 * side).parallel().forEach(row -> {
+      int i = row / side;
+      int y = row % side;
+      double[] p = new double[2];
+      for (int x = 0; x < side; x++) {
+        DoubleVector3 dir = toVectorFromCubeMap(i, x, y, side);
+        // geographic lat/lon spherical coordinates uses elevation angle from xy plane
+
+        toPanoramaCoord(dir, pano.width, pano.height, p);
+
+        double px = p[0];
+        double py = p[1];
+        double ax = px - Math.floor(px);
+        double ay = py - Math.floor(py);
+
+        int y0 = (int) Math.max(0, Math.min(pano.height - 1, Math.floor(py)));
+        int y1 = (int) Math.max(0, Math.min(pano.height - 1, Math.floor(py + 1)));
+        int x0 = (int) Math.max(0, Math.min(pano.width - 1, Math.floor(px)));
+        int x1 = (int) Math.max(0, Math.min(pano.width - 1, Math.floor(px + 1)));
+
+        int p1 = y0 * pano.width + x0;
+        int p2 = y0 * pano.width + x1;
+        int p3 = y1 * pano.width + x0;
+        int p4 = y1 * pano.width + x1;
+
+        int faceIndex = 3 * (y * side + x);
+        for (int c = 0; c < 3; c++) {
+          env[i][faceIndex + c] = (float) (
+              (1.0 - ay) * ((1.0 - ax) * pano.get(p1, c) + ax * pano.get(p2, c)) + ay * (
+                  (1.0 - ax) * pano.get(p3, c) + ax * pano.get(p4, c)));
         }
       }
-    }
+    });
   }
 
 //  private static float[] scale(float[] env, int side, int newSide) {
@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package kintsugi3d.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.stream.IntStream;
+
+/**
+ * CPU prefiltering of cube map environments for {@link EnvironmentMap}.
+ * Diffuse irradiance is computed by projecting the environment onto order-2 spherical harmonics and convolving with
+ * the clamped cosine lobe (Ramamoorthi and Hanrahan, "An Efficient Representation for Irradiance Environment Maps").
+ * Specular levels are computed by importance sampling a normalized Phong lobe around each texel's direction,
+ * reading from a mip chain of the environment to suppress noise (Colbert and Krivanek, "GPU-Based Importance Sampling").
+ * All faces are expected in the layout used by {@link EnvironmentMap}: packed RGB floats, one array per face.
+ */
+final class EnvironmentPrefilter
+{
+    private static final Logger LOG = LoggerFactory.getLogger(EnvironmentPrefilter.class);
+
+    /**
+     * Number of importance samples per output texel for the specular levels.
+     */
+    private static final int SPECULAR_SAMPLE_COUNT = 64;
+
+    private static final int SH_COEFFICIENT_COUNT = 9;
+
+    /**
+     * Convolution weights of the clamped cosine lobe for SH bands 0, 1, and 2, divided by pi
+     * so that the result is the radiance reflected by a white Lambertian surface.
+     */
+    private static final double[] COSINE_LOBE_BAND_WEIGHTS = { 1.0, 2.0 / 3.0, 0.25 };
+
+    private EnvironmentPrefilter()
+    {
+    }
+
+    /**
+     * Computes diffuse irradiance (divided by pi) for every texel of the destination faces.
+     * @param env The environment faces.
+     * @param side The side length of the environment faces.
+     * @param diff The destination faces; their side length is inferred from their size.
+     */
+    static void computeDiffuseIrradiance(float[][] env, int side, float[][] diff)
+    {
+        long start = System.nanoTime();
+
+        double[] sh = projectSH(env, side);
+
+        // Convolve with the cosine lobe by scaling each band.
+        for (int i = 0; i < SH_COEFFICIENT_COUNT; i++)
+        {
+            int band = i == 0 ? 0 : i < 4 ? 1 : 2;
+            for (int c = 0; c < 3; c++)
+            {
+                sh[3 * i + c] *= COSINE_LOBE_BAND_WEIGHTS[band];
+            }
+        }
+
+        int diffSide = faceSide(diff[0]);
+        IntStream.range(0, 6 * diffSide).parallel().forEach(row ->
+        {
+            int face = row / diffSide;
+            int y = row % diffSide;
+            double[] basis = new double[SH_COEFFICIENT_COUNT];
+            double[] dir = new double[3];
+
+            for (int x = 0; x < diffSide; x++)
+            {
+                texelDirection(face, x, y, diffSide, dir);
+                evaluateSHBasis(dir[0], dir[1], dir[2], basis);
+
+                for (int c = 0; c < 3; c++)
+                {
+                    double value = 0.0;
+                    for (int i = 0; i < SH_COEFFICIENT_COUNT; i++)
+                    {
+                        value += sh[3 * i + c] * basis[i];
+                    }
+
+                    // Ringing from the truncated projection can go slightly negative around very bright sources.
+                    diff[face][3 * (y * diffSide + x) + c] = (float) Math.max(0.0, value);
+                }
+            }
+        });
+
+        LOG.info("Diffuse irradiance computed in {} ms", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Computes a prefiltered specular cube map for a Phong exponent.
+     * @param mips The environment mip chain, as returned by {@link #buildMipChain(float[][], int)}.
+     * @param mipSides The side length of each level of the mip chain.
+     * @param exponent The Phong exponent of the lobe.
+     * @param dest The destination faces; their side length is inferred from their size.
+     */
+    static void computeSpecularIrradiance(float[][][] mips, int[] mipSides, double exponent, float[][] dest)
+    {
+        int destSide = faceSide(dest[0]);
+
+        // Sample directions in the local frame of the lobe, shared by all texels.
+        double[] localX = new double[SPECULAR_SAMPLE_COUNT];
+        double[] localY = new double[SPECULAR_SAMPLE_COUNT];
+        double[] localZ = new double[SPECULAR_SAMPLE_COUNT];
+        double[] sampleLod = new double[SPECULAR_SAMPLE_COUNT];
+
+        double texelSolidAngle = 4.0 * Math.PI / (6.0 * mipSides[0] * mipSides[0]);
+        for (int i = 0; i < SPECULAR_SAMPLE_COUNT; i++)
+        {
+            // Hammersley point set.
+            double u = (i + 0.5) / SPECULAR_SAMPLE_COUNT;
+            double v = Integer.toUnsignedLong(Integer.reverse(i)) * 0x1p-32;
+
+            double cosTheta = Math.pow(u, 1.0 / (exponent + 1.0));
+            double sinTheta = Math.sqrt(Math.max(0.0, 1.0 - cosTheta * cosTheta));
+            double phi = 2.0 * Math.PI * v;
+            localX[i] = sinTheta * Math.cos(phi);
+            localY[i] = sinTheta * Math.sin(phi);
+            localZ[i] = cosTheta;
+
+            // Pick a mip level whose texels roughly cover the solid angle this sample is responsible for.
+            double pdf = (exponent + 1.0) / (2.0 * Math.PI) * Math.pow(cosTheta, exponent);
+            double sampleSolidAngle = 1.0 / (SPECULAR_SAMPLE_COUNT * pdf);
+            sampleLod[i] = Math.max(0.0, Math.min(mips.length - 1, 0.5 * log2(sampleSolidAngle / texelSolidAngle) + 1.0));
+        }
+
+        IntStream.range(0, 6 * destSide).parallel().forEach(row ->
+        {
+            int face = row / destSide;
+            int y = row % destSide;
+            double[] dir = new double[3];
+            double[] tangent = new double[3];
+            double[] bitangent = new double[3];
+            float[] color = new float[3];
+
+            for (int x = 0; x < destSide; x++)
+            {
+                texelDirection(face, x, y, destSide, dir);
+                orthonormalBasis(dir, tangent, bitangent);
+
+                double r = 0.0;
+                double g = 0.0;
+                double b = 0.0;
+                for (int i = 0; i < SPECULAR_SAMPLE_COUNT; i++)
+                {
+                    sampleMipChain(mips, mipSides,
+                        localX[i] * tangent[0] + localY[i] * bitangent[0] + localZ[i] * dir[0],
+                        localX[i] * tangent[1] + localY[i] * bitangent[1] + localZ[i] * dir[1],
+                        localX[i] * tangent[2] + localY[i] * bitangent[2] + localZ[i] * dir[2],
+                        sampleLod[i], color);
+                    r += color[0];
+                    g += color[1];
+                    b += color[2];
+                }
+
+                int offset = 3 * (y * destSide + x);
+                dest[face][offset] = (float) (r / SPECULAR_SAMPLE_COUNT);
+                dest[face][offset + 1] = (float) (g / SPECULAR_SAMPLE_COUNT);
+                dest[face][offset + 2] = (float) (b / SPECULAR_SAMPLE_COUNT);
+            }
+        });
+    }
+
+    /**
+     * Builds a mip chain of the environment by averaging 2x2 blocks of texels, down to a single texel per face.
+     * @param env The environment faces.
+     * @param side The side length of the environment faces.
+     * @return The mip levels, with the original environment (not a copy) as level 0.
+     */
+    static float[][][] buildMipChain(float[][] env, int side)
+    {
+        int levelCount = 1;
+        for (int s = side; s > 1; s = (s + 1) / 2)
+        {
+            levelCount++;
+        }
+
+        float[][][] mips = new float[levelCount][][];
+        mips[0] = env;
+
+        int previousSide = side;
+        for (int level = 1; level < levelCount; level++)
+        {
+            int levelSide = (previousSide + 1) / 2;
+            float[][] previous = mips[level - 1];
+            float[][] current = new float[6][levelSide * levelSide * 3];
+            int sourceSide = previousSide;
+
+            IntStream.range(0, 6 * levelSide).parallel().forEach(row ->
+            {
+                int face = row / levelSide;
+                int y = row % levelSide;
+                int y0 = 2 * y;
+                int y1 = Math.min(y0 + 1, sourceSide - 1);
+
+                for (int x = 0; x < levelSide; x++)
+                {
+                    int x0 = 2 * x;
+                    int x1 = Math.min(x0 + 1, sourceSide - 1);
+                    for (int c = 0; c < 3; c++)
+                    {
+                        current[face][3 * (y * levelSide + x) + c] = 0.25f *
+                            (previous[face][3 * (y0 * sourceSide + x0) + c] + previous[face][3 * (y0 * sourceSide + x1) + c]
+                                + previous[face][3 * (y1 * sourceSide + x0) + c] + previous[face][3 * (y1 * sourceSide + x1) + c]);
+                    }
+                }
+            });
+
+            mips[level] = current;
+            previousSide = levelSide;
+        }
+
+        return mips;
+    }
+
+    static int[] mipSides(float[][][] mips)
+    {
+        int[] sides = new int[mips.length];
+        for (int i = 0; i < mips.length; i++)
+        {
+            sides[i] = faceSide(mips[i][0]);
+        }
+        return sides;
+    }
+
+    private static int faceSide(float[] face)
+    {
+        return (int) Math.round(Math.sqrt(face.length / 3.0));
+    }
+
+    private static double log2(double x)
+    {
+        return Math.log(x) / Math.log(2.0);
+    }
+
+    /**
+     * Projects the environment onto SH bands 0 through 2, weighting each texel by its solid angle.
+     * @return 9 RGB coefficients, interleaved.
+     */
+    private static double[] projectSH(float[][] env, int side)
+    {
+        return IntStream.range(0, 6 * side).parallel()
+            .mapToObj(row ->
+            {
+                int face = row / side;
+                int y = row % side;
+                double[] sum = new double[3 * SH_COEFFICIENT_COUNT];
+                double[] basis = new double[SH_COEFFICIENT_COUNT];
+                double[] dir = new double[3];
+
+                for (int x = 0; x < side; x++)
+                {
+                    texelDirection(face, x, y, side, dir);
+                    evaluateSHBasis(dir[0], dir[1], dir[2], basis);
+                    double solidAngle = EnvironmentMap.texelCoordSolidAngle(x, y, side);
+                    int offset = 3 * (y * side + x);
+
+                    for (int i = 0; i < SH_COEFFICIENT_COUNT; i++)
+                    {
+                        double weight = basis[i] * solidAngle;
+                        sum[3 * i] += weight * env[face][offset];
+                        sum[3 * i + 1] += weight * env[face][offset + 1];
+                        sum[3 * i + 2] += weight * env[face][offset + 2];
+                    }
+                }
+
+                return sum;
+            })
+            .reduce(new double[3 * SH_COEFFICIENT_COUNT], (a, b) ->
+            {
+                double[] sum = new double[a.length];
+                for (int i = 0; i < a.length; i++)
+                {
+                    sum[i] = a[i] + b[i];
+                }
+                return sum;
+            });
+    }
+
+    private static void evaluateSHBasis(double x, double y, double z, double[] basis)
+    {
+        basis[0] = 0.282095;
+        basis[1] = 0.488603 * y;
+        basis[2] = 0.488603 * z;
+        basis[3] = 0.488603 * x;
+        basis[4] = 1.092548 * x * y;
+        basis[5] = 1.092548 * y * z;
+        basis[6] = 0.315392 * (3.0 * z * z - 1.0);
+        basis[7] = 1.092548 * x * z;
+        basis[8] = 0.546274 * (x * x - y * y);
+    }
+
+    /**
+     * Same convention as {@link EnvironmentMap#toVectorFromCubeMap(int, int, int, int)}, without the allocations.
+     */
+    private static void texelDirection(int face, int tx, int ty, int side, double[] dir)
+    {
+        double sc = 2.0 * (tx + 0.5) / side - 1.0;
+        double tc = 2.0 * (ty + 0.5) / side - 1.0;
+
+        switch (face)
+        {
+            case EnvironmentMap.PX:
+                dir[0] = 1.0;
+                dir[1] = -tc;
+                dir[2] = -sc;
+                break;
+            case EnvironmentMap.PY:
+                dir[0] = sc;
+                dir[1] = 1.0;
+                dir[2] = tc;
+                break;
+            case EnvironmentMap.PZ:
+                dir[0] = sc;
+                dir[1] = -tc;
+                dir[2] = 1.0;
+                break;
+            case EnvironmentMap.NX:
+                dir[0] = -1.0;
+                dir[1] = -tc;
+                dir[2] = sc;
+                break;
+            case EnvironmentMap.NY:
+                dir[0] = sc;
+                dir[1] = -1.0;
+                dir[2] = -tc;
+                break;
+            default: // NZ
+                dir[0] = -sc;
+                dir[1] = -tc;
+                dir[2] = -1.0;
+                break;
+        }
+
+        double invLength = 1.0 / Math.sqrt(dir[0] * dir[0] + dir[1] * dir[1] + dir[2] * dir[2]);
+        dir[0] *= invLength;
+        dir[1] *= invLength;
+        dir[2] *= invLength;
+    }
+
+    /**
+     * Branchless orthonormal basis around a unit vector (Duff et al., "Building an Orthonormal Basis, Revisited").
+     */
+    private static void orthonormalBasis(double[] n, double[] tangent, double[] bitangent)
+    {
+        double sign = Math.copySign(1.0, n[2]);
+        double a = -1.0 / (sign + n[2]);
+        double b = n[0] * n[1] * a;
+        tangent[0] = 1.0 + sign * n[0] * n[0] * a;
+        tangent[1] = sign * b;
+        tangent[2] = -sign * n[0];
+        bitangent[0] = b;
+        bitangent[1] = sign + n[1] * n[1] * a;
+        bitangent[2] = -n[1];
+    }
+
+    private static void sampleMipChain(float[][][] mips, int[] mipSides, double x, double y, double z, double lod, float[] color)
+    {
+        int level0 = (int) lod;
+        int level1 = Math.min(level0 + 1, mips.length - 1);
+        float t = (float) (lod - level0);
+
+        sampleCube(mips[level0], mipSides[level0], x, y, z, color);
+        if (t > 0.0f && level1 != level0)
+        {
+            float r = color[0];
+            float g = color[1];
+            float b = color[2];
+            sampleCube(mips[level1], mipSides[level1], x, y, z, color);
+            color[0] = r + t * (color[0] - r);
+            color[1] = g + t * (color[1] - g);
+            color[2] = b + t * (color[2] - b);
+        }
+    }
+
+    /**
+     * Bilinear lookup using the same face selection as {@link EnvironmentMap#sample(float[][], int, kintsugi3d.gl.vecmath.DoubleVector3)}.
+     */
+    private static void sampleCube(float[][] faces, int side, double x, double y, double z, float[] color)
+    {
+        double ax = Math.abs(x);
+        double ay = Math.abs(y);
+        double az = Math.abs(z);
+        double ma;
+        double sc;
+        double tc;
+        int face;
+
+        if (ax > ay && ax > az)
+        {
+            ma = ax;
+            sc = x >= 0.0 ? -z : z;
+            tc = -y;
+            face = x >= 0.0 ? EnvironmentMap.PX : EnvironmentMap.NX;
+        }
+        else if (ay > ax && ay > az)
+        {
+            ma = ay;
+            sc = x;
+            tc = y >= 0.0 ? z : -z;
+            face = y >= 0.0 ? EnvironmentMap.PY : EnvironmentMap.NY;
+        }
+        else
+        {
+            ma = az;
+            sc = z >= 0.0 ? x : -x;
+            tc = -y;
+            face = z >= 0.0 ? EnvironmentMap.PZ : EnvironmentMap.NZ;
+        }
+
+        // Texel centers are at half-integer coordinates.
+        double s = Math.max(0.0, Math.min(0.5 * (sc / ma + 1.0) * side - 0.5, side - 1));
+        double t = Math.max(0.0, Math.min(0.5 * (tc / ma + 1.0) * side - 0.5, side - 1));
+        int x0 = (int) s;
+        int y0 = (int) t;
+        int x1 = Math.min(x0 + 1, side - 1);
+        int y1 = Math.min(y0 + 1, side - 1);
+        float fs = (float) (s - x0);
+        float ft = (float) (t - y0);
+
+        float[] data = faces[face];
+        int o1 = 3 * (y0 * side + x0);
+        int o2 = 3 * (y0 * side + x1);
+        int o3 = 3 * (y1 * side + x0);
+        int o4 = 3 * (y1 * side + x1);
+        for (int c = 0; c < 3; c++)
+        {
+            color[c] = (1 - ft) * ((1 - fs) * data[o1 + c] + fs * data[o2 + c]) + ft * ((1 - fs) * data[o3 + c] + fs * data[o4 + c]);
+        }
+    }
+}
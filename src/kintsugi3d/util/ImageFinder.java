@@ -31,6 +31,8 @@ public final class ImageFinder
     private static final ImageFinder INSTANCE = new ImageFinder();
     private static final Set<String> IMG_FORMATS = Set.of( "png", "PNG", "jpg", "JPG", "jpeg", "JPEG", "tif", "TIF", "tiff", "TIFF");
 
+    private final DirectoryIndex directoryIndex = new DirectoryIndex();
+
     public static ImageFinder getInstance()
     {
         return INSTANCE;
@@ -87,9 +89,21 @@ public final class ImageFinder
         LOG.debug("Search for '{}'; found: {}", requestedFile.getName(), actualFile);
     }
 
+    /**
+     * Finds an image file, trying alternate file extensions (and optionally suffixes) if it doesn't exist as specified.
+     * Candidates are checked against a cached listing of the directory rather than one at a time on the file system,
+     * so this remains cheap on slow (i.e. network) file systems.
+     * @param requestedFile The image file to look for.
+     * @param suffixes Suffixes that may have been appended to the file name before the extension; may be null.
+     * @return The first existing file that matches.
+     * @throws FileNotFoundException If no matching file exists.
+     */
     public File findImageFile(File requestedFile, String... suffixes) throws FileNotFoundException
     {
-        if (requestedFile.exists())
+        File parentFile = requestedFile.getParentFile();
+        DirectoryIndex.Listing listing = directoryIndex.getListing(requestedFile.getAbsoluteFile().getParentFile());
+
+        if (listing.exists(requestedFile))
         {
             return requestedFile;
         }
@@ -97,14 +111,13 @@ public final class ImageFinder
         {
             // Try some alternate file formats/extensions
             // Try appending first (will catch filenames that contain .'s but omit the extension)
-            File parentFile = requestedFile.getParentFile();
 
             for(String extension : IMG_FORMATS)
             {
                 String altFileName = String.join(".", requestedFile.getName(), extension);
                 File imageFileGuess = new File(parentFile, altFileName);
 
-                if (imageFileGuess.exists())
+                if (listing.exists(imageFileGuess))
                 {
                     logFound(requestedFile, imageFileGuess);
                     return imageFileGuess;
@@ -117,7 +130,7 @@ public final class ImageFinder
                         altFileName = String.join(".", String.format("%s%s", requestedFile.getName(), suffix), extension);
                         imageFileGuess = new File(parentFile, altFileName);
 
-                        if (imageFileGuess.exists())
+                        if (listing.exists(imageFileGuess))
                         {
                             logFound(requestedFile, imageFileGuess);
                             return imageFileGuess;
@@ -140,7 +153,7 @@ public final class ImageFinder
 
                     File imageFileGuess = new File(parentFile, altFileName);
 
-                    if (imageFileGuess.exists())
+                    if (listing.exists(imageFileGuess))
                     {
                         logFound(requestedFile, imageFileGuess);
                         return imageFileGuess;
@@ -155,7 +168,7 @@ public final class ImageFinder
 
                             imageFileGuess = new File(parentFile, altFileName);
 
-                            if (imageFileGuess.exists())
+                            if (listing.exists(imageFileGuess))
                             {
                                 logFound(requestedFile, imageFileGuess);
                                 return imageFileGuess;
@@ -191,4 +204,29 @@ public final class ImageFinder
     {
         return tryFindImageFile(requestedFile, (String[]) null);
     }
+
+    /**
+     * @return The number of image searches that used a cached directory listing.
+     */
+    public long getDirectoryIndexHitCount()
+    {
+        return directoryIndex.getHitCount();
+    }
+
+    /**
+     * @return The number of image searches that had to list a directory (again).
+     */
+    public long getDirectoryIndexMissCount()
+    {
+        return directoryIndex.getMissCount();
+    }
+
+    /**
+     * Forgets all cached directory listings; only needed if files may have been changed without the directory's
+     * modification time changing (i.e. replaced by a tool that preserves timestamps).
+     */
+    public void clearDirectoryIndex()
+    {
+        directoryIndex.clear();
+    }
 }
@@ -13,11 +13,15 @@ package kintsugi3d.util;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 /**
  * RadianceImageLoader loads 2D textures in high dynamic range from the Radiance (.hdr) file format.
@@ -45,6 +49,60 @@ public class RadianceImageLoader
         }
     }
 
+    /**
+     * A Radiance image kept in its shared-exponent form (four bytes per pixel rather than twelve),
+     * with rows ordered bottom to top like {@link Image}.
+     * Useful for large panoramas that only need to be resampled once, e.g. into cube map faces.
+     */
+    public static class RGBEImage
+    {
+        public final int width;
+        public final int height;
+        private final byte[] rgbe;
+
+        RGBEImage(int width, int height, byte[] rgbe)
+        {
+            this.width = width;
+            this.height = height;
+            this.rgbe = rgbe;
+        }
+
+        /**
+         * @param pixel The index of the pixel (y * width + x).
+         * @param channel 0, 1, or 2 for red, green, or blue.
+         * @return The decoded value of the channel.
+         */
+        public float get(int pixel, int channel)
+        {
+            return (0xff & rgbe[4 * pixel + channel]) * EXPONENT_SCALE[0xff & rgbe[4 * pixel + 3]];
+        }
+    }
+
+    /**
+     * Multiplier for each possible shared exponent byte (an exponent of zero means black).
+     */
+    private static final float[] EXPONENT_SCALE = new float[256];
+
+    static
+    {
+        for (int e = 1; e < 256; e++)
+        {
+            // 2^(e - 128) / 256
+            // FIXME rereading the text, there might need to be a + 0.5 added to the mantissa
+            EXPONENT_SCALE[e] = Math.scalb(1.0f, e - 136);
+        }
+    }
+
+    /**
+     * Number of scanlines decoded by each parallel task.
+     */
+    private static final int ROWS_PER_TASK = 16;
+
+    /**
+     * Number of encoded bytes read from the stream at a time.
+     */
+    private static final int CHUNK_BYTES = 1 << 22;
+
     public Image read(BufferedInputStream stream) throws IOException
     {
         return this.read(stream, true, true);
@@ -72,120 +130,320 @@ public class RadianceImageLoader
         return new Image(width, height, data);
     }
 
+    /**
+     * Reads an image without expanding it to floating point.
+     * Rows are ordered bottom to top (as with {@link #read(BufferedInputStream)}).
+     * @param stream The stream to read from.
+     * @return The image, or null if the stream does not start with a Radiance header.
+     * @throws IOException If the image could not be read.
+     */
+    public RGBEImage readRGBE(BufferedInputStream stream) throws IOException
+    {
+        stream.mark(128);
+        if (!processMagicNumber(stream))
+        {
+            stream.reset();
+            return null;
+        }
+
+        Map<String, String> vars = processVariables(stream);
+        if (!"32-bit_rle_rgbe".equals(vars.get("FORMAT")))
+        {
+            throw new IOException("Format must be 32-bit_rle_rgbe, not: " + vars.get("FORMAT"));
+        }
+
+        int width = Integer.parseInt(vars.get("WIDTH"));
+        int height = Integer.parseInt(vars.get("HEIGHT"));
+        byte[] rgbe = new byte[4 * width * height];
+
+        decodeScanlines(width, height, stream, (y, scanline) ->
+            // we're using OpenGL's coordinate frame where bottom is 0
+            System.arraycopy(scanline, 0, rgbe, 4 * (height - y - 1) * width, 4 * width));
+
+        return new RGBEImage(width, height, rgbe);
+    }
+
+    @FunctionalInterface
+    private interface ScanlineConsumer
+    {
+        /**
+         * @param y The index of the scanline in file order.
+         * @param scanline The pixels of the scanline, as interleaved RGBE bytes.  Only valid until this method returns.
+         */
+        void accept(int y, byte[] scanline);
+    }
+
     private float[] readImage(int width, int height, boolean topToBottom, boolean leftToRight, InputStream in)
         throws IOException
     {
-        byte[] scan = new byte[width * 4];
         float[] img = new float[width * height * 3];
-        for (int y = 0; y < height; y++)
+        decodeScanlines(width, height, in, (y, scanline) ->
         {
             // we're using OpenGL's coordinate frame where bottom is 0
-            readScanLine(img, topToBottom ? height - y - 1 : y, width, leftToRight, scan, in);
-        }
+            int baseOffset = 3 * (topToBottom ? height - y - 1 : y) * width;
+            for (int x = 0; x < width; x++)
+            {
+                int xOffset = leftToRight ? 3 * x : 3 * (width - x - 1);
+                convertRGBE(img, baseOffset + xOffset, scanline, 4 * x);
+            }
+        });
         return img;
     }
 
-    private void readScanLine(float[] image, int imgY, int imgWidth, boolean leftToRight, byte[] scan,
-        InputStream in) throws IOException
+    /**
+     * Reads the remainder of the stream in chunks of whole scanlines and decodes each chunk in parallel,
+     * while the next chunk is being read.  Locating the scanlines within a chunk is a quick sequential pass
+     * which only has to skip over run lengths.  At most two chunks are held in memory at once,
+     * so the encoded file never needs to be read in its entirety.
+     * The consumer may be called concurrently for different scanlines.
+     */
+    private static void decodeScanlines(int width, int height, InputStream in, ScanlineConsumer consumer)
+        throws IOException
     {
-        int baseOffset = 3 * imgY * imgWidth;
+        // A chunk must be able to hold at least one scanline; it grows later if a run-length encoded scanline doesn't fit.
+        byte[] chunk = new byte[Math.max(CHUNK_BYTES, 4 * width + 4)];
+        int filled = 0;
+        int y = 0;
+        CompletableFuture<Void> pending = CompletableFuture.completedFuture(null);
 
-        Arrays.fill(scan, (byte) 0);
-        // read the first pixel
-        readAll(in, scan, 0, 4);
-        boolean rle = true;
-        if (imgWidth < 8 || imgWidth > 0x7fff)
+        try
         {
-            rle = false; // image is too small
+            while (y < height)
+            {
+                int read = in.readNBytes(chunk, filled, chunk.length - filled);
+                boolean endOfStream = read < chunk.length - filled;
+                filled += read;
+
+                // Find the scanlines that are complete within this chunk.
+                int firstY = y;
+                int[] offsets = new int[Math.min(height - y, filled / 4 + 1)];
+                int p = 0;
+                while (y < height)
+                {
+                    int next = findScanlineEnd(chunk, p, filled, width, y);
+                    if (next < 0)
+                    {
+                        break;
+                    }
+
+                    offsets[y - firstY] = p;
+                    p = next;
+                    y++;
+                }
+
+                if (y == firstY)
+                {
+                    if (endOfStream)
+                    {
+                        throw new IOException("Unexpected end of stream");
+                    }
+                    else
+                    {
+                        // The scanline is larger than the chunk.
+                        chunk = Arrays.copyOf(chunk, 2 * chunk.length);
+                        continue;
+                    }
+                }
+
+                // Only one chunk is decoded at a time, which keeps memory bounded while reading still overlaps decoding.
+                awaitDecoding(pending);
+                pending = decodeChunkAsync(chunk, offsets, firstY, y - firstY, width, consumer);
+
+                // Carry the partial scanline at the end over to the next chunk.
+                byte[] nextChunk = new byte[chunk.length];
+                System.arraycopy(chunk, p, nextChunk, 0, filled - p);
+                filled -= p;
+                chunk = nextChunk;
+            }
+
+            awaitDecoding(pending);
         }
-        if (scan[0] != 2 || scan[1] != 2 || (scan[2] & 0x80) != 0)
+        catch (IOException | RuntimeException e)
         {
-            rle = false; // not an rle scanline
+            // Don't return while consumers may still be running.
+            pending.exceptionally(t -> null).join();
+            throw e;
         }
+    }
+
+    private static CompletableFuture<Void> decodeChunkAsync(byte[] chunk, int[] offsets, int firstY, int count, int width,
+        ScanlineConsumer consumer)
+    {
+        return CompletableFuture.runAsync(() ->
+            IntStream.range(0, (count + ROWS_PER_TASK - 1) / ROWS_PER_TASK).parallel().forEach(task ->
+            {
+                byte[] planes = new byte[4 * width];
+                byte[] scanline = new byte[4 * width];
+                for (int i = task * ROWS_PER_TASK; i < Math.min(count, (task + 1) * ROWS_PER_TASK); i++)
+                {
+                    try
+                    {
+                        decodeScanline(chunk, offsets[i], width, planes, scanline);
+                    }
+                    catch (IOException e)
+                    {
+                        throw new UncheckedIOException(e);
+                    }
+                    consumer.accept(firstY + i, scanline);
+                }
+            }));
+    }
 
-        if (rle)
+    private static void awaitDecoding(CompletableFuture<Void> decoding) throws IOException
+    {
+        try
         {
-            // since we know scan[2]'s 8th bit is a 0, we don't need to mask it to properly preserve unsigned byte-ness
-            // this is not the case for scan[3]
-            int scanWidth = (scan[2] << 8) | (0xff & scan[3]);
-            if (scanWidth != imgWidth)
+            decoding.join();
+        }
+        catch (CompletionException e)
+        {
+            if (e.getCause() instanceof UncheckedIOException)
             {
-                throw new IOException("Wrong scanline width: " + scanWidth);
+                throw ((UncheckedIOException) e.getCause()).getCause();
             }
+            else if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            else if (e.getCause() instanceof Error)
+            {
+                throw (Error) e.getCause();
+            }
+            else
+            {
+                throw e;
+            }
+        }
+    }
 
-            // read each channel of the RGBE data into scan
-            int p = 0;
+    private static boolean isRunLengthEncoded(byte[] data, int offset, int width)
+    {
+        return width >= 8 && width <= 0x7fff // otherwise the image is too small (or too large) for RLE
+            && data[offset] == 2 && data[offset + 1] == 2 && (data[offset + 2] & 0x80) == 0;
+    }
+
+    /**
+     * Finds the end of the scanline starting at the given offset.
+     * @return The offset of the next scanline, or -1 if the scanline is not complete within the first limit bytes.
+     */
+    private static int findScanlineEnd(byte[] data, int offset, int limit, int width, int y) throws IOException
+    {
+        if (offset + 4 > limit)
+        {
+            return -1;
+        }
+
+        if (isRunLengthEncoded(data, offset, width))
+        {
+            int p = offset + 4;
             for (int i = 0; i < 4; i++)
             {
-                while (p < (i + 1) * imgWidth)
+                int count = 0;
+                while (count < width)
                 {
-                    int len = in.read();
+                    if (p >= limit)
+                    {
+                        return -1;
+                    }
+
+                    int len = 0xff & data[p++];
                     if (len > 128)
                     {
-                        len -= 128;
                         // run of same value (which is the next byte)
-                        Arrays.fill(scan, p, p + len, (byte) in.read());
-                        p += len;
+                        len -= 128;
+                        p++;
+                    }
+                    else if (len == 0)
+                    {
+                        throw new IOException("Invalid run length in scanline " + y);
                     }
                     else
                     {
                         // dump of channel
-                        readAll(in, scan, p, len);
                         p += len;
                     }
+                    count += len;
                 }
-            }
-
-            //            System.out.println(Arrays.toString(scan));
 
-            // interpret the channels into pixels
-            byte[] pixel = new byte[4];
-            for (int x = 0; x < imgWidth; x++)
-            {
-                pixel[0] = scan[x];
-                pixel[1] = scan[x + imgWidth];
-                pixel[2] = scan[x + 2 * imgWidth];
-                pixel[3] = scan[x + 3 * imgWidth];
-
-                int xOffset = leftToRight ? 3 * x : 3 * (imgWidth - x - 1);
-                convertRGBE(image, baseOffset + xOffset, pixel, 0);
+                if (count != width)
+                {
+                    throw new IOException("Run overflows scanline " + y);
+                }
             }
-            //            System.out.println();
+
+            return p <= limit ? p : -1;
         }
         else
         {
-            // scanline is flat so read it fully
-            readAll(in, scan, 4);
-            for (int x = 0; x < imgWidth; x++)
-            {
-                int xOffset = leftToRight ? 3 * x : 3 * (imgWidth - x - 1);
-                convertRGBE(image, baseOffset + xOffset, scan, x * 4);
-            }
+            // scanline is flat
+            return offset + 4 * width <= limit ? offset + 4 * width : -1;
         }
     }
 
-    private void convertRGBE(float[] image, int imgOffset, byte[] rgbe, int offset)
+    private static void decodeScanline(byte[] data, int offset, int width, byte[] planes, byte[] scanline)
+        throws IOException
     {
-        if (rgbe[offset + 3] != 0)
+        if (isRunLengthEncoded(data, offset, width))
         {
-            // real pixel
-            float v = (float) Math.pow(2.0, (0xff & rgbe[offset + 3]) - 128) / 256f;
-            // these are meant to be unsigned bytes
-            // FIXME rereading the text, there might need to be a + 0.5
-            // inside the expression multiplied by v
-            image[imgOffset] = v * (0xff & rgbe[offset]);
-            image[imgOffset + 1] = v * (0xff & rgbe[offset + 1]);
-            image[imgOffset + 2] = v * (0xff & rgbe[offset + 2]);
+            // since we know the third byte's 8th bit is a 0, we don't need to mask it to properly preserve unsigned byte-ness
+            // this is not the case for the fourth byte
+            int scanWidth = (data[offset + 2] << 8) | (0xff & data[offset + 3]);
+            if (scanWidth != width)
+            {
+                throw new IOException("Wrong scanline width: " + scanWidth);
+            }
+
+            // read each channel of the RGBE data into planes
+            // (run lengths were already validated while indexing)
+            int p = offset + 4;
+            int q = 0;
+            for (int i = 0; i < 4; i++)
+            {
+                while (q < (i + 1) * width)
+                {
+                    int len = 0xff & data[p++];
+                    if (len > 128)
+                    {
+                        len -= 128;
+                        // run of same value (which is the next byte)
+                        Arrays.fill(planes, q, q + len, data[p++]);
+                    }
+                    else
+                    {
+                        // dump of channel
+                        System.arraycopy(data, p, planes, q, len);
+                        p += len;
+                    }
+                    q += len;
+                }
+            }
+
+            // interleave the channels into pixels
+            for (int x = 0; x < width; x++)
+            {
+                scanline[4 * x] = planes[x];
+                scanline[4 * x + 1] = planes[x + width];
+                scanline[4 * x + 2] = planes[x + 2 * width];
+                scanline[4 * x + 3] = planes[x + 3 * width];
+            }
         }
         else
         {
-            // black
-            image[imgOffset] = 0f;
-            image[imgOffset + 1] = 0f;
-            image[imgOffset + 2] = 0f;
+            // scanline is flat so copy it fully
+            System.arraycopy(data, offset, scanline, 0, 4 * width);
         }
     }
 
+    private static void convertRGBE(float[] image, int imgOffset, byte[] rgbe, int offset)
+    {
+        // an exponent of zero is black
+        float v = EXPONENT_SCALE[0xff & rgbe[offset + 3]];
+        // these are meant to be unsigned bytes
+        image[imgOffset] = v * (0xff & rgbe[offset]);
+        image[imgOffset + 1] = v * (0xff & rgbe[offset + 1]);
+        image[imgOffset + 2] = v * (0xff & rgbe[offset + 2]);
+    }
+
     private boolean processMagicNumber(InputStream in) throws IOException
     {
         // FIXME if we have fewer than this many bytes, we'll throw an exception and that breaks the whole thing
@@ -274,11 +532,6 @@ public class RadianceImageLoader
         readAll(in, array, 0, array.length);
     }
 
-    private static void readAll(InputStream in, byte[] array, int offset) throws IOException
-    {
-        readAll(in, array, offset, array.length - offset);
-    }
-
     // read bytes from the given stream until the array has filled with length
     // fails if the end-of-stream happens before length has been read
     private static void readAll(InputStream in, byte[] array, int offset, int length) throws IOException
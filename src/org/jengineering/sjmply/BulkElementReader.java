@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2019 - 2026 Seth Berrier, Michael Tetzlaff, Jacob Buelow, Luke Denney, Ian Anderson, Zoe Cuthrell, Blane Suess, Isaac Tesch, Nathaniel Willius, Atlas Collins, Simon Cao
+ * Copyright (c) 2019 The Regents of the University of Minnesota
+ *
+ * Licensed under GPLv3
+ * ( http://www.gnu.org/licenses/gpl-3.0.html )
+ *
+ * This code is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later version.
+ * This code is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ */
+
+package org.jengineering.sjmply;
+
+import org.jengineering.sjmply.PLYType.PLYList;
+import org.jengineering.sjmply.PLYType.PLYNum;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static java.lang.String.format;
+import static org.jengineering.sjmply.PLYType.*;
+
+/** Decodes binary PLY element data in bulk. Elements whose properties are all scalars,
+ *  or lists of scalars that have the same length for every element, have a fixed size
+ *  in binary PLY files. Such elements are read a large block of bytes at a time and
+ *  decoded column by column straight from a {@link ByteBuffer}, instead of value by
+ *  value through a {@link DataStreamIn}.
+ *  
+ *  <p> The layout is taken from an element that has already been read, typically the
+ *  first one. Since the list lengths of the remaining elements are only known once they
+ *  are read, the input stream has to support {@link InputStream#mark(int)} for element
+ *  lists with list properties, so that reading can be rewound to the first element that
+ *  does not match the layout. The remaining elements are then left to the value by value
+ *  reader.
+ */
+final class BulkElementReader
+{
+// STATIC FIELDS
+  /** The approximate number of bytes that are read and decoded at once.
+   */
+  private static final int BLOCK_BYTES = 1 << 20;
+
+// STATIC CONSTRUCTOR
+
+// STATIC METHODS
+  /** Reads the elements of an element series for as long as they have the same binary layout as
+   *  the element that precedes them.
+   *  
+   *  @param list  The element series being read.
+   *  @param name  The name of the element series (used in error messages).
+   *  @param in    The stream the binary element data is read from.
+   *  @param order The byte order of the binary element data.
+   *  @param start The index of the first element to be read. The element at <code>start-1</code>
+   *               must already have been read.
+   *  @return The index of the first element that has not been read. The input stream is positioned
+   *          exactly at the start of that element.
+   *  @throws IOException If the stream ends before all elements could be read.
+   */
+  static int read( PLYElementList list, String name, InputStream in, ByteOrder order, int start ) throws IOException
+  {
+    if( start <= 0 || start >= list.size )
+      return start;
+
+    int nProps = list.properties.size();
+    String    [] names  = list.properties.keySet().toArray( new String[nProps] );
+    PLYType<?>[] types  = list.properties.values().toArray( new PLYType<?>[nProps] );
+    Object    [] columns= new Object[nProps];
+    int       [] offsets= new int[nProps],
+                 lengths= new int[nProps];
+
+    long stride = 0;
+    boolean hasLists = false;
+    for( int prop=0; prop < nProps; prop++ )
+    {
+      columns[prop] = list.property(types[prop],names[prop]);
+      offsets[prop] = (int) stride;
+      if( types[prop] instanceof PLYList )
+      {
+        PLYList<?,?> type = (PLYList<?,?>) types[prop];
+        if( ! (type.elemType instanceof PLYNum) )
+          return start;
+        hasLists = true;
+        lengths[prop] = Array.getLength( ( (Object[]) columns[prop] )[start-1] );
+        stride += sizeOf(type.sizeType) + (long) lengths[prop] * sizeOf(type.elemType);
+      }
+      else {
+        lengths[prop] = -1;
+        stride += sizeOf(types[prop]);
+      }
+      if( stride > BLOCK_BYTES )
+        return start;
+    }
+
+    if( 0 == stride || hasLists && ! in.markSupported() )
+      return start;
+
+    int
+      elemBytes = (int) stride,
+      blockSize = BLOCK_BYTES / elemBytes;
+    byte[] bytes = new byte[ blockSize * elemBytes ];
+    ByteBuffer buf = ByteBuffer.wrap(bytes).order(order);
+
+    for( int elem = start; elem < list.size; )
+    {
+      int
+        len = Math.min( blockSize, list.size - elem ) * elemBytes;
+      if( hasLists )
+        in.mark(len);
+      int
+        nRead     = in.readNBytes(bytes,0,len),
+        nComplete = nRead / elemBytes,
+        nMatching = hasLists ? countMatching(buf, nComplete, elemBytes, types, offsets, lengths) : nComplete;
+
+      for( int prop=0; prop < nProps; prop++ )
+        if( lengths[prop] < 0 )
+          decode( buf, offsets[prop], elemBytes, nMatching, types[prop], columns[prop], elem );
+        else
+          decodeLists( buf, offsets[prop], elemBytes, nMatching, (PLYList<?,?>) types[prop], lengths[prop], (Object[]) columns[prop], elem );
+
+      elem += nMatching;
+
+      if( nMatching * elemBytes < len )
+      {
+        if( ! hasLists )
+          throw new IOException( format("Failed to read %s for %s#%d.", names[0], name, elem), new EOFException() );
+        // rewind to the first element that does not match and let the caller read the rest value by value
+        in.reset();
+        if( nMatching * elemBytes != in.readNBytes(bytes, 0, nMatching * elemBytes) )
+          throw new AssertionError();
+        return elem;
+      }
+    }
+    return list.size;
+  }
+
+  private static int sizeOf( PLYType<?> type )
+  {
+    if( INT8    == type || UINT8  == type ) return 1;
+    if( INT16   == type || UINT16 == type ) return 2;
+    if( INT32   == type || UINT32 == type || FLOAT32 == type ) return 4;
+    if( FLOAT64 == type ) return 8;
+    throw new AssertionError();
+  }
+
+  private static int readSize( ByteBuffer buf, int pos, PLYType<?> sizeType )
+  {
+    if( UINT8  == sizeType ) return Byte .toUnsignedInt( buf.get     (pos) );
+    if( UINT16 == sizeType ) return Short.toUnsignedInt( buf.getShort(pos) );
+    if( UINT32 == sizeType ) return                      buf.getInt  (pos);
+    throw new AssertionError();
+  }
+
+  /** Returns the number of leading elements in the buffer whose list lengths all match the expected ones.
+   */
+  private static int countMatching( ByteBuffer buf, int nElems, int elemBytes, PLYType<?>[] types, int[] offsets, int[] lengths )
+  {
+    for( int elem=0; elem < nElems; elem++ )
+      for( int prop=0; prop < types.length; prop++ )
+        if( 0 <= lengths[prop] && lengths[prop] != readSize( buf, elem*elemBytes + offsets[prop], ( (PLYList<?,?>) types[prop] ).sizeType ) )
+          return elem;
+    return nElems;
+  }
+
+  /** Decodes <code>count</code> scalar values which are <code>stride</code> bytes apart into <code>array</code>, starting at <code>index</code>.
+   */
+  private static void decode( ByteBuffer buf, int offset, int stride, int count, PLYType<?> type, Object array, int index )
+  {
+    if( FLOAT32 == type ) {
+      float[] arr = (float[]) array;
+      for( int i=0; i < count; i++ ) arr[index+i] = buf.getFloat( offset + i*stride );
+    }
+    else if( INT32 == type || UINT32 == type ) {
+      int[] arr = (int[]) array;
+      for( int i=0; i < count; i++ ) arr[index+i] = buf.getInt( offset + i*stride );
+    }
+    else if( INT16 == type || UINT16 == type ) {
+      short[] arr = (short[]) array;
+      for( int i=0; i < count; i++ ) arr[index+i] = buf.getShort( offset + i*stride );
+    }
+    else if( INT8 == type || UINT8 == type ) {
+      byte[] arr = (byte[]) array;
+      for( int i=0; i < count; i++ ) arr[index+i] = buf.get( offset + i*stride );
+    }
+    else if( FLOAT64 == type ) {
+      double[] arr = (double[]) array;
+      for( int i=0; i < count; i++ ) arr[index+i] = buf.getDouble( offset + i*stride );
+    }
+    else
+      throw new AssertionError();
+  }
+
+  private static void decodeLists( ByteBuffer buf, int offset, int stride, int count, PLYList<?,?> type, int length, Object[] array, int index )
+  {
+    int
+      sizeBytes = sizeOf(type.sizeType),
+      elemBytes = sizeOf(type.elemType);
+    for( int i=0; i < count; i++ )
+    {
+      Object entry = type.elemType.malloc(length);
+      decode( buf, offset + i*stride + sizeBytes, elemBytes, length, type.elemType, entry, 0 );
+      array[index+i] = entry;
+    }
+  }
+
+// FIELDS
+
+// CONSTRUCTORS
+  private BulkElementReader() {}
+
+// METHODS
+}
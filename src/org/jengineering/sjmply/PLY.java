@@ -12,6 +12,7 @@
 package org.jengineering.sjmply;
 
 import java.io.*;
+import java.nio.ByteOrder;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.Map.Entry;
@@ -109,6 +110,16 @@ public class PLY
      * not seem to allow empty lines.
      */
     public static PLY read(InputStream in) throws IOException
+    {
+        return read(in, true);
+    }
+
+    /**
+     * Reads a PLY file from an InputStream, optionally decoding binary elements with a fixed size in bulk
+     * (see {@link BulkElementReader}) rather than value by value.
+     * Value by value decoding is only needed to compare against bulk decoding; {@link #read(InputStream)} uses bulk decoding.
+     */
+    public static PLY read(InputStream in, boolean bulk) throws IOException
     {
         HeaderInputStream header = new HeaderInputStream(in);
         CharSequence line = header.readLine();
@@ -208,6 +219,17 @@ public class PLY
 
             for (int elem = 0; elem < list.size; elem++)
             {
+                if (bulk && 1 == elem && ASCII != format)
+                {
+                    // The first element determines the layout of the remaining ones.
+                    elem = BulkElementReader.read(list, entry.getKey(), in,
+                        BINARY_BIG_ENDIAN == format ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN, elem);
+                    if (elem == list.size)
+                    {
+                        break;
+                    }
+                }
+
                 for (int prop = 0; prop < properties.length; prop++)
                 {
                     try